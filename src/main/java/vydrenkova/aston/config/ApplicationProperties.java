@@ -0,0 +1,46 @@
+package vydrenkova.aston.config;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Holds the application settings loaded once from the application.properties file.
+ */
+public class ApplicationProperties {
+
+    /**
+     * The properties loaded from the application.properties file.
+     */
+    private static final Properties properties;
+
+    static {
+        try (InputStream input = ApplicationProperties.class.getClassLoader().getResourceAsStream("application.properties")) {
+            properties = new Properties();
+            properties.load(input);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load application properties", e);
+        }
+    }
+
+    /**
+     * Returns the value of the given property.
+     *
+     * @param key The name of the property.
+     * @return The value of the property, or null if it is not set.
+     */
+    public static String getProperty(String key) {
+        return properties.getProperty(key);
+    }
+
+    /**
+     * Returns the value of the given property, or the default value if the property is not set or blank.
+     *
+     * @param key          The name of the property.
+     * @param defaultValue The value to return if the property is not set.
+     * @return The value of the property, or the default value.
+     */
+    public static String getProperty(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+}
@@ -3,14 +3,18 @@ package vydrenkova.aston.config;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
+import vydrenkova.aston.dao.DataSourceRouter;
+
 import javax.sql.DataSource;
-import java.io.InputStream;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configuration class for the DataSource of the application.
  * Uses HikariCP for managing the database connection pool.
- * The configuration is loaded from the application.properties file.
+ * The configuration is loaded from the application.properties file through ApplicationProperties.
+ * Read replicas listed in {@code db.replica.urls} get a pool of their own and are used by the
+ * {@link DataSourceRouter} for read-only queries.
  */
 public class DataSourceConfig {
 
@@ -19,23 +23,43 @@ public class DataSourceConfig {
      */
     private static final HikariDataSource dataSource;
 
-    static {
-        try (InputStream input = DataSourceConfig.class.getClassLoader().getResourceAsStream("application.properties")) {
-            Properties properties = new Properties();
-            properties.load(input);
+    /**
+     * The router over the primary DataSource and the pools of the read replicas.
+     */
+    private static final DataSourceRouter router;
 
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl(properties.getProperty("db.url"));
-            config.setUsername(properties.getProperty("db.username"));
-            config.setPassword(properties.getProperty("db.password"));
-            config.setDriverClassName(properties.getProperty("db.driverClassName"));
+    static {
+        try {
+            HikariConfig config = createConfig(ApplicationProperties.getProperty("db.url"));
+            config.addDataSourceProperty("reWriteBatchedInserts", "true");
 
             dataSource = new HikariDataSource(config);
+
+            List<DataSource> replicas = new ArrayList<>();
+            for (String url : ApplicationProperties.getProperty("db.replica.urls", "").split(",")) {
+                if (!url.isBlank()) {
+                    HikariConfig replicaConfig = createConfig(url.trim());
+                    replicaConfig.setReadOnly(true);
+                    replicaConfig.setPoolName("replica-" + (replicas.size() + 1));
+                    replicas.add(new HikariDataSource(replicaConfig));
+                }
+            }
+            router = new DataSourceRouter(dataSource, replicas,
+                    Long.parseLong(ApplicationProperties.getProperty("db.replica.readYourWritesMillis", "1000")));
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize DataSource", e);
         }
     }
 
+    private static HikariConfig createConfig(String url) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(ApplicationProperties.getProperty("db.username"));
+        config.setPassword(ApplicationProperties.getProperty("db.password"));
+        config.setDriverClassName(ApplicationProperties.getProperty("db.driverClassName"));
+        return config;
+    }
+
     /**
      * Returns the DataSource instance.
      *
@@ -44,4 +68,14 @@ public class DataSourceConfig {
     public static DataSource getDataSource() {
         return dataSource;
     }
+
+    /**
+     * Returns the router that sends read-only queries to the read replicas, if any are configured,
+     * and everything else to the primary DataSource.
+     *
+     * @return the DataSourceRouter of the application.
+     */
+    public static DataSourceRouter getRouter() {
+        return router;
+    }
 }
\ No newline at end of file
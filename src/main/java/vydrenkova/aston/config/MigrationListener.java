@@ -0,0 +1,36 @@
+package vydrenkova.aston.config;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.time.YearMonth;
+
+/**
+ * The MigrationListener class applies the pending schema migrations with {@link MigrationRunner} when the
+ * application starts, before any servlet handles a request. Migrations can be turned off with the
+ * {@code db.migrations.enabled=false} property when the schema is managed outside the application. Opt-in
+ * scripts are applied while the property they are listed with is true. With
+ * {@code orders.partitioning.enabled=true}, which also converts the orders tables to monthly partitions, the
+ * partitions of the coming months are then created by {@link OrderPartitionManager}.
+ */
+@WebListener
+public class MigrationListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        if (Boolean.parseBoolean(ApplicationProperties.getProperty("db.migrations.enabled", "true"))) {
+            int applied = new MigrationRunner(DataSourceConfig.getDataSource(),
+                    property -> Boolean.parseBoolean(ApplicationProperties.getProperty(property, "false"))).migrate();
+            sce.getServletContext().log("Applied " + applied + " schema migration(s)");
+        }
+        if (OrderPartitionManager.isEnabled()) {
+            OrderPartitionManager partitionManager = OrderPartitionManager.fromProperties();
+            if (partitionManager.isPartitioned()) {
+                partitionManager.maintain(YearMonth.now());
+            } else {
+                sce.getServletContext().log("Orders are not partitioned: migration V12__partition_orders_by_month "
+                        + "has not been applied");
+            }
+        }
+    }
+}
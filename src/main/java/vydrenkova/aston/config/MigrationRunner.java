@@ -0,0 +1,219 @@
+package vydrenkova.aston.config;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * The MigrationRunner class brings the database schema up to date with the versioned SQL scripts in
+ * {@code db/migration} on the classpath. The scripts are listed in {@code db/migration/index.txt} and named
+ * {@code V<version>__<description>.sql}. Every script that has not been applied yet runs in its own
+ * transaction together with the insert of its row into the {@code schema_history} table, so a failed script
+ * leaves no trace and is retried on the next start. Applied scripts are verified by checksum and must never
+ * be edited. Concurrent application instances are serialized with a PostgreSQL advisory lock.
+ * <p>
+ * An opt-in script is listed as {@code V<version>__<description>.sql if <property>} and only applied while
+ * the property is turned on; until then it stays pending, so it is applied on the first start with the
+ * property on, also after scripts of later versions.
+ */
+public class MigrationRunner {
+
+    private final static String MIGRATION_LOCATION = "db/migration/";
+    private final static String MIGRATION_INDEX = MIGRATION_LOCATION + "index.txt";
+    private final static Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql(?:\\s+if\\s+(\\S+))?");
+    private final static long ADVISORY_LOCK_KEY = 0x626f6f6b73L;
+
+    private final static String CREATE_SCHEMA_HISTORY = "CREATE TABLE IF NOT EXISTS schema_history (" +
+            "version INT PRIMARY KEY, " +
+            "description VARCHAR(255) NOT NULL, " +
+            "script VARCHAR(255) NOT NULL, " +
+            "checksum BIGINT NOT NULL, " +
+            "installed_on TIMESTAMP NOT NULL DEFAULT now())";
+    private final static String SELECT_APPLIED_MIGRATIONS = "SELECT version, checksum FROM schema_history";
+    private final static String INSERT_INTO_SCHEMA_HISTORY = "INSERT INTO schema_history " +
+            "(version, description, script, checksum) VALUES (?, ?, ?, ?)";
+    private final static String LOCK = "SELECT pg_advisory_lock(?)";
+    private final static String UNLOCK = "SELECT pg_advisory_unlock(?)";
+
+    private final DataSource dataSource;
+    private final Predicate<String> enabledProperties;
+
+    /**
+     * Constructs a new MigrationRunner for the given DataSource that leaves all opt-in scripts pending.
+     *
+     * @param dataSource The DataSource of the database to migrate.
+     */
+    public MigrationRunner(DataSource dataSource) {
+        this(dataSource, property -> false);
+    }
+
+    /**
+     * Constructs a new MigrationRunner for the given DataSource.
+     *
+     * @param dataSource        The DataSource of the database to migrate.
+     * @param enabledProperties Tells whether the property an opt-in script is listed with is turned on.
+     */
+    public MigrationRunner(DataSource dataSource, Predicate<String> enabledProperties) {
+        this.dataSource = dataSource;
+        this.enabledProperties = enabledProperties;
+    }
+
+    /**
+     * Applies all pending migration scripts in version order, skipping the opt-in scripts whose property is off.
+     *
+     * @return The number of scripts applied.
+     * @throws RuntimeException If a script cannot be read, an applied script has been changed, or a script fails.
+     */
+    public int migrate() {
+        List<Migration> migrations = loadMigrations();
+        try (Connection conn = dataSource.getConnection()) {
+            lock(conn, LOCK);
+            try {
+                return applyPending(conn, migrations);
+            } finally {
+                lock(conn, UNLOCK);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to migrate database schema", e);
+        }
+    }
+
+    private int applyPending(Connection conn, List<Migration> migrations) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(CREATE_SCHEMA_HISTORY);
+        }
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_APPLIED_MIGRATIONS)) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+        }
+
+        int count = 0;
+        for (Migration migration : migrations) {
+            Long checksum = applied.get(migration.version);
+            if (checksum == null && migration.property != null && !enabledProperties.test(migration.property)) {
+                continue;
+            }
+            if (checksum == null) {
+                apply(conn, migration);
+                count++;
+            } else if (checksum != migration.checksum) {
+                throw new RuntimeException("Migration " + migration.script + " has been changed after it was applied");
+            }
+        }
+        return count;
+    }
+
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_INTO_SCHEMA_HISTORY)) {
+            stmt.execute(migration.sql);
+            pstmt.setInt(1, migration.version);
+            pstmt.setString(2, migration.description);
+            pstmt.setString(3, migration.script);
+            pstmt.setLong(4, migration.checksum);
+            pstmt.executeUpdate();
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw new SQLException("Migration " + migration.script + " failed", e);
+        } catch (Error e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void lock(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, ADVISORY_LOCK_KEY);
+            pstmt.execute();
+        }
+    }
+
+    /**
+     * Reads the migration index and all scripts listed in it. Blank lines and lines starting with
+     * {@code #} are ignored. Versions must be listed in strictly increasing order.
+     */
+    private static List<Migration> loadMigrations() {
+        List<Migration> migrations = new ArrayList<>();
+        int lastVersion = 0;
+        for (String line : readResource(MIGRATION_INDEX).split("\\R")) {
+            String script = line.trim();
+            if (script.isEmpty() || script.startsWith("#")) {
+                continue;
+            }
+            Matcher matcher = SCRIPT_NAME.matcher(script);
+            if (!matcher.matches()) {
+                throw new RuntimeException("Invalid migration script name: " + script);
+            }
+            script = script.substring(0, matcher.end(2)) + ".sql";
+            int version = Integer.parseInt(matcher.group(1));
+            if (version <= lastVersion) {
+                throw new RuntimeException("Migration " + script + " is out of order");
+            }
+            lastVersion = version;
+            migrations.add(new Migration(version, matcher.group(2).replace('_', ' '), script,
+                    readResource(MIGRATION_LOCATION + script), matcher.group(3)));
+        }
+        return migrations;
+    }
+
+    private static String readResource(String name) {
+        InputStream input = MigrationRunner.class.getClassLoader().getResourceAsStream(name);
+        if (input == null) {
+            throw new RuntimeException("Migration resource not found: " + name);
+        }
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read migration resource " + name, e);
+        }
+        return content.toString();
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final String script;
+        private final String sql;
+        private final long checksum;
+        private final String property;
+
+        private Migration(int version, String description, String script, String sql, String property) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
+            this.sql = sql;
+            CRC32 crc = new CRC32();
+            crc.update(sql.getBytes(StandardCharsets.UTF_8));
+            this.checksum = crc.getValue();
+            this.property = property;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package vydrenkova.aston.config;
+
+import javax.servlet.annotation.WebListener;
+import java.time.YearMonth;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OrderPartitionMaintenanceListener class owns the background thread that maintains the monthly
+ * partitions of orders when {@code orders.partitioning.enabled} is true. Every
+ * {@code orders.partitioning.maintenanceIntervalHours} hours (24 by default), starting one interval after
+ * startup, {@link OrderPartitionManager#maintain(YearMonth)} creates the partitions of the coming months and
+ * detaches those older than the retention period. A failed run is logged and retried at the next interval.
+ * The thread is stopped when the application is undeployed.
+ */
+@WebListener
+public class OrderPartitionMaintenanceListener extends ScheduledTaskListener {
+
+    public OrderPartitionMaintenanceListener() {
+        super("order-partition-maintenance", "Failed to maintain order partitions", TimeUnit.HOURS);
+    }
+
+    @Override
+    protected long interval() {
+        if (!OrderPartitionManager.isEnabled()) {
+            return 0;
+        }
+        return Long.parseLong(ApplicationProperties.getProperty("orders.partitioning.maintenanceIntervalHours", "24"));
+    }
+
+    @Override
+    protected Runnable createTask() {
+        OrderPartitionManager partitionManager = OrderPartitionManager.fromProperties();
+        return () -> partitionManager.maintain(YearMonth.now());
+    }
+}
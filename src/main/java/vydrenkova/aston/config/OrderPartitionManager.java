@@ -0,0 +1,231 @@
+package vydrenkova.aston.config;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The OrderPartitionManager class keeps the monthly partitions of the orders and order_books tables in step
+ * with time. order_books is partitioned by the {@code order_date} it carries, so the books of an order always
+ * live in the partition of the same month as the order.
+ * <p>
+ * The tables are converted by the opt-in migration {@code V12__partition_orders_by_month}, which
+ * {@link MigrationRunner} applies with {@code orders.partitioning.enabled=true} and which creates the
+ * partitions up to the current month. {@link #maintain(YearMonth)} creates the partitions of the coming
+ * months and detaches the partitions of months older than {@code retentionMonths}: a detached partition
+ * stays in the database as a standalone table, but is no longer read by any query on orders, so scans stay
+ * bounded as history grows.
+ * Concurrent application instances are serialized with a PostgreSQL advisory lock.
+ */
+public class OrderPartitionManager {
+
+    private final static long ADVISORY_LOCK_KEY = 0x6f7264657273L;
+    private final static String LOCK = "SELECT pg_advisory_xact_lock(?)";
+    private final static String SELECT_ORDERS_KIND = "SELECT relkind FROM pg_class WHERE oid = 'orders'::regclass";
+    private final static String SELECT_PARTITION = "SELECT to_regclass(?) IS NOT NULL";
+    private final static String CREATE_PARTITION = "CREATE TABLE %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')";
+    private final static String SELECT_ORDER_PARTITIONS = "SELECT c.relname FROM pg_inherits i " +
+            "JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'orders'::regclass " +
+            "ORDER BY c.relname";
+    private final static String DETACH_PARTITION = "ALTER TABLE %s DETACH PARTITION %s";
+    private final static String SELECT_FOREIGN_KEYS = "SELECT conname FROM pg_constraint " +
+            "WHERE conrelid = ?::regclass AND contype = 'f'";
+    private final static String DROP_CONSTRAINT = "ALTER TABLE %s DROP CONSTRAINT \"%s\"";
+
+    private final static String ORDERS = "orders";
+    private final static String ORDER_BOOKS = "order_books";
+    private final static Pattern ORDER_PARTITION_NAME = Pattern.compile("^orders_(\\d{4})_(\\d{2})$");
+
+    private final DataSource dataSource;
+    private final int monthsAhead;
+    private final int retentionMonths;
+
+    /**
+     * Constructs a new OrderPartitionManager.
+     *
+     * @param dataSource      The DataSource of the primary database.
+     * @param monthsAhead     The number of months after the current one to keep partitions ready for.
+     * @param retentionMonths The number of months before the current one whose partitions stay attached, or
+     *                        0 to never detach partitions.
+     */
+    public OrderPartitionManager(DataSource dataSource, int monthsAhead, int retentionMonths) {
+        this.dataSource = dataSource;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    /**
+     * Constructs a new OrderPartitionManager for the primary database, configured with the
+     * {@code orders.partitioning.monthsAhead} (3 by default) and {@code orders.partitioning.retentionMonths}
+     * (24 by default) properties.
+     *
+     * @return The configured OrderPartitionManager.
+     */
+    static OrderPartitionManager fromProperties() {
+        return new OrderPartitionManager(DataSourceConfig.getDataSource(),
+                Integer.parseInt(ApplicationProperties.getProperty("orders.partitioning.monthsAhead", "3")),
+                Integer.parseInt(ApplicationProperties.getProperty("orders.partitioning.retentionMonths", "24")));
+    }
+
+    /**
+     * Tells whether partitioning of orders by month is turned on with the {@code orders.partitioning.enabled}
+     * property (off by default).
+     *
+     * @return true if orders are to be partitioned.
+     */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(ApplicationProperties.getProperty("orders.partitioning.enabled", "false"));
+    }
+
+    /**
+     * Tells whether the orders table is partitioned.
+     *
+     * @return true if orders is a partitioned table.
+     */
+    public boolean isPartitioned() {
+        try (Connection conn = dataSource.getConnection()) {
+            return isPartitioned(conn);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read the kind of the orders table", e);
+        }
+    }
+
+    /**
+     * Creates the missing partitions from the current month up to {@code monthsAhead} months after it and,
+     * unless {@code retentionMonths} is 0, detaches the partitions of the months more than
+     * {@code retentionMonths} months before the current one.
+     *
+     * @param currentMonth The current month.
+     * @throws RuntimeException If orders is not partitioned, or a partition cannot be created or detached,
+     *                          for instance because the default partition holds rows of a new month.
+     */
+    public void maintain(YearMonth currentMonth) {
+        inTransaction("Failed to maintain order partitions", conn -> {
+            if (!isPartitioned(conn)) {
+                throw new IllegalStateException("Orders are not partitioned");
+            }
+            createPartitions(conn, currentMonth, currentMonth.plusMonths(monthsAhead));
+            if (retentionMonths > 0) {
+                detachPartitions(conn, currentMonth.minusMonths(retentionMonths));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Creates the partitions of orders and order_books for the months from {@code from} to {@code to}
+     * inclusive that do not exist yet.
+     */
+    private static void createPartitions(Connection conn, YearMonth from, YearMonth to) throws SQLException {
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            if (exists(conn, partitionName(ORDERS, month))) {
+                continue;
+            }
+            String start = month.atDay(1).toString();
+            String end = month.plusMonths(1).atDay(1).toString();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(String.format(CREATE_PARTITION, partitionName(ORDERS, month), ORDERS, start, end));
+                stmt.execute(String.format(CREATE_PARTITION, partitionName(ORDER_BOOKS, month), ORDER_BOOKS, start, end));
+            }
+        }
+    }
+
+    /**
+     * Detaches the partitions of orders and order_books for the months before {@code before}. The
+     * order_books partition goes first and loses its foreign keys, which would otherwise keep referencing
+     * the orders and books that live on, so that the orders partition can be detached after it.
+     */
+    private static void detachPartitions(Connection conn, YearMonth before) throws SQLException {
+        List<YearMonth> months = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_ORDER_PARTITIONS)) {
+            while (rs.next()) {
+                Matcher matcher = ORDER_PARTITION_NAME.matcher(rs.getString(1));
+                if (matcher.matches()) {
+                    YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+                    if (month.isBefore(before)) {
+                        months.add(month);
+                    }
+                }
+            }
+        }
+        for (YearMonth month : months) {
+            String orderBooksPartition = partitionName(ORDER_BOOKS, month);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(String.format(DETACH_PARTITION, ORDER_BOOKS, orderBooksPartition));
+                for (String constraint : foreignKeys(conn, orderBooksPartition)) {
+                    stmt.execute(String.format(DROP_CONSTRAINT, orderBooksPartition, constraint));
+                }
+                stmt.execute(String.format(DETACH_PARTITION, ORDERS, partitionName(ORDERS, month)));
+            }
+        }
+    }
+
+    private static List<String> foreignKeys(Connection conn, String table) throws SQLException {
+        List<String> constraints = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(SELECT_FOREIGN_KEYS)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    constraints.add(rs.getString(1));
+                }
+            }
+        }
+        return constraints;
+    }
+
+    private static boolean exists(Connection conn, String table) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SELECT_PARTITION)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static boolean isPartitioned(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_ORDERS_KIND)) {
+            return rs.next() && "p".equals(rs.getString(1));
+        }
+    }
+
+    private static String partitionName(String table, YearMonth month) {
+        return String.format("%s_%04d_%02d", table, month.getYear(), month.getMonthValue());
+    }
+
+    private <T> T inTransaction(String failureMessage, SqlWork<T> work) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(LOCK)) {
+                pstmt.setLong(1, ADVISORY_LOCK_KEY);
+                pstmt.execute();
+                T result = work.execute(conn);
+                conn.commit();
+                return result;
+            } catch (Throwable e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(failureMessage, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+}
@@ -0,0 +1,90 @@
+package vydrenkova.aston.config;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ScheduledTaskListener class is the base of the listeners that run a task on a background thread of
+ * their own. The task first runs one interval after startup and then one interval after the previous run
+ * has finished; a failed run is logged and retried at the next interval. The thread is a daemon and is
+ * stopped when the application is undeployed. Subclasses supply only the interval and the task.
+ */
+public abstract class ScheduledTaskListener implements ServletContextListener {
+
+    private final static long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final String threadName;
+    private final String failureMessage;
+    private final TimeUnit unit;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a listener whose task runs on a thread of the given name.
+     *
+     * @param threadName     The name of the background thread.
+     * @param failureMessage The message logged when a run fails.
+     * @param unit           The unit of the interval.
+     */
+    protected ScheduledTaskListener(String threadName, String failureMessage, TimeUnit unit) {
+        this.threadName = threadName;
+        this.failureMessage = failureMessage;
+        this.unit = unit;
+    }
+
+    /**
+     * Returns the interval between the runs of the task.
+     *
+     * @return The interval in the unit of this listener, or 0 or less if the task is turned off.
+     */
+    protected abstract long interval();
+
+    /**
+     * Creates the task; called once, at startup, only if the task is turned on.
+     *
+     * @return The task to run at every interval.
+     */
+    protected abstract Runnable createTask();
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        long interval = interval();
+        if (interval <= 0) {
+            return;
+        }
+        ServletContext context = sce.getServletContext();
+        Runnable task = createTask();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                context.log(failureMessage, e);
+            }
+        }, interval, interval, unit);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
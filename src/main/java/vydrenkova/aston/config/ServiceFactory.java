@@ -1,8 +1,11 @@
 package vydrenkova.aston.config;
 
 import vydrenkova.aston.dao.BookDao;
+import vydrenkova.aston.dao.DataSourceRouter;
 import vydrenkova.aston.dao.OrderDao;
+import vydrenkova.aston.dao.OrderFetchStrategy;
 import vydrenkova.aston.dao.ReviewDao;
+import vydrenkova.aston.dao.TransactionManager;
 import vydrenkova.aston.dao.impl.BookDaoImpl;
 import vydrenkova.aston.dao.impl.OrderDaoImpl;
 import vydrenkova.aston.dao.impl.ReviewDaoImpl;
@@ -16,8 +19,6 @@ import vydrenkova.aston.services.impl.BookServiceImpl;
 import vydrenkova.aston.services.impl.OrderServiceImpl;
 import vydrenkova.aston.services.impl.ReviewServiceImpl;
 
-import javax.sql.DataSource;
-
 /**
  * The ServiceFactory class is a utility class that provides static methods to obtain
  * instances of service classes. Each service class is configured with its corresponding
@@ -26,31 +27,34 @@ import javax.sql.DataSource;
  */
 public class ServiceFactory {
 
-    private static final DataSource dataSource = DataSourceConfig.getDataSource();
-    private static final BookDao bookDao = new BookDaoImpl(dataSource);
+    private static final DataSourceRouter router = DataSourceConfig.getRouter();
+    private static final TransactionManager transactionManager = new TransactionManager(router);
+    private static final BookDao bookDao = new BookDaoImpl(router);
     private static final BookMapper bookMapper = BookMapper.INSTANCE;
-    private static final OrderDao orderDao = new OrderDaoImpl(dataSource);
+    private static final OrderDao orderDao = new OrderDaoImpl(router,
+            OrderFetchStrategy.fromName(ApplicationProperties.getProperty("orders.fetchStrategy", "join")));
     private static final OrderMapper orderMapper = OrderMapper.INSTANCE;
-    private static final ReviewDao reviewDao = new ReviewDaoImpl(dataSource);
+    private static final ReviewDao reviewDao = new ReviewDaoImpl(router);
     private static final ReviewMapper reviewMapper = ReviewMapper.INSTANCE;
 
     /**
-     * Returns an instance of BookService, configured with the appropriate BookDao and BookMapper.
+     * Returns an instance of BookService, configured with the appropriate BookDao, BookMapper and
+     * TransactionManager.
      *
      * @return An instance of BookService.
      */
     public static BookService getBookService() {
-        return new BookServiceImpl(bookDao, bookMapper);
+        return new BookServiceImpl(bookDao, bookMapper, transactionManager);
     }
 
     /**
      * Returns an instance of OrderService, configured with the appropriate OrderDao, OrderMapper,
-     * and BookMapper.
+     * BookMapper and TransactionManager.
      *
      * @return An instance of OrderService.
      */
     public static OrderService getOrderService(){
-        return new OrderServiceImpl(orderDao, orderMapper, bookMapper);
+        return new OrderServiceImpl(orderDao, orderMapper, bookMapper, transactionManager);
     }
 
     /**
@@ -0,0 +1,32 @@
+package vydrenkova.aston.config;
+
+import vydrenkova.aston.services.BookService;
+
+import javax.servlet.annotation.WebListener;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TopBooksRefreshListener class owns the background thread that refreshes the best-selling and
+ * top-rated rankings. The rankings are first refreshed one interval after startup and then every
+ * {@code books.top.refreshIntervalSeconds} seconds (300 by default) after the previous refresh has
+ * finished; a value of 0 or less turns the refresh off. A failed refresh is logged and retried at the
+ * next interval. The thread is stopped when the application is undeployed.
+ */
+@WebListener
+public class TopBooksRefreshListener extends ScheduledTaskListener {
+
+    public TopBooksRefreshListener() {
+        super("top-books-refresh", "Failed to refresh top books", TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected long interval() {
+        return Long.parseLong(ApplicationProperties.getProperty("books.top.refreshIntervalSeconds", "300"));
+    }
+
+    @Override
+    protected Runnable createTask() {
+        BookService bookService = ServiceFactory.getBookService();
+        return bookService::refreshTopBooks;
+    }
+}
@@ -0,0 +1,142 @@
+package vydrenkova.aston.dao;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The BookCriteria class describes a page of books to be retrieved: optional filters on genre, author
+ * and price, the sort order, the keyset cursor of the page, and the fields to load. Filters that are null
+ * are not applied, and null fields load the whole book.
+ * Books with equal sort values are ordered by their ID, so the order is always total. The cursor is the ID
+ * and, unless the books are sorted by ID, the sort value of the last book of the previous page, so the
+ * next page does not depend on that book still existing unchanged.
+ */
+public class BookCriteria {
+    private String genre;
+    private String author;
+    private Double minPrice;
+    private Double maxPrice;
+    private BookSort sort = BookSort.ID;
+    private boolean descending;
+    private Long afterId;
+    private Object afterValue;
+    private int limit;
+    private Set<BookField> fields;
+
+    public BookCriteria(Long afterId, int limit) {
+        this.afterId = afterId;
+        this.limit = limit;
+    }
+
+    public BookCriteria() {
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public void setGenre(String genre) {
+        this.genre = genre;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public Double getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(Double minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public Double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(Double maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public BookSort getSort() {
+        return sort;
+    }
+
+    public void setSort(BookSort sort) {
+        this.sort = sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public Long getAfterId() {
+        return afterId;
+    }
+
+    public void setAfterId(Long afterId) {
+        this.afterId = afterId;
+    }
+
+    public Object getAfterValue() {
+        return afterValue;
+    }
+
+    public void setAfterValue(Object afterValue) {
+        this.afterValue = afterValue;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public Set<BookField> getFields() {
+        return fields;
+    }
+
+    public void setFields(Set<BookField> fields) {
+        this.fields = fields;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BookCriteria that = (BookCriteria) o;
+        return descending == that.descending && limit == that.limit && Objects.equals(genre, that.genre) && Objects.equals(author, that.author) && Objects.equals(minPrice, that.minPrice) && Objects.equals(maxPrice, that.maxPrice) && sort == that.sort && Objects.equals(afterId, that.afterId) && Objects.equals(afterValue, that.afterValue) && Objects.equals(fields, that.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(genre, author, minPrice, maxPrice, sort, descending, afterId, afterValue, limit, fields);
+    }
+
+    @Override
+    public String toString() {
+        return "BookCriteria{" +
+                "genre='" + genre + '\'' +
+                ", author='" + author + '\'' +
+                ", minPrice=" + minPrice +
+                ", maxPrice=" + maxPrice +
+                ", sort=" + sort +
+                ", descending=" + descending +
+                ", afterId=" + afterId +
+                ", afterValue=" + afterValue +
+                ", limit=" + limit +
+                ", fields=" + fields +
+                '}';
+    }
+}
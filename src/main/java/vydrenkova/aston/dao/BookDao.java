@@ -1,7 +1,10 @@
 package vydrenkova.aston.dao;
 
 import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.BookRating;
 
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +22,24 @@ public interface BookDao {
      */
     List<Book> getAllBooks();
 
+    /**
+     * Retrieves a page of books matching the given criteria, in the requested order, starting right after
+     * the cursor book.
+     *
+     * @param criteria The filters, sort order and cursor of the page.
+     * @return A list of Book entities, or an empty list if there are no more matching books.
+     */
+    List<Book> getBooks(BookCriteria criteria);
+
+    /**
+     * Searches books by title and author, tolerating typos, and returns the best matches.
+     *
+     * @param query The search query.
+     * @param limit The maximum number of books to return.
+     * @return The matching Book entities, best match first.
+     */
+    List<Book> searchBooks(String query, int limit);
+
     /**
      * Retrieves a book by its unique identifier.
      *
@@ -27,6 +48,40 @@ public interface BookDao {
      */
     Optional<Book> getBookById(Long id);
 
+    /**
+     * Retrieves the rating summary of a book.
+     *
+     * @param bookId The unique identifier of the book.
+     * @return An Optional containing the summary, with zero counts if the book has no reviews, or an empty
+     * Optional if the book is not found.
+     */
+    Optional<BookRating> getBookRating(Long bookId);
+
+    /**
+     * Retrieves the version tag of a book: an opaque value that changes whenever the book is updated and whenever its rating summary changes.
+     * The lookup reads only version columns.
+     *
+     * @param id The unique identifier of the book.
+     * @return An Optional containing the version tag, or an empty Optional if the book is not found.
+     */
+    Optional<String> getBookVersion(Long id);
+
+    /**
+     * Retrieves the top books of a ranking, optionally within one genre. The rankings are computed
+     * periodically, so they may lag behind the latest orders and reviews.
+     *
+     * @param ranking The ranking to read.
+     * @param genre   The genre to restrict the ranking to, or null for all genres.
+     * @param limit   The maximum number of books to return.
+     * @return The top Book entities, best first.
+     */
+    List<Book> getTopBooks(BookRanking ranking, String genre, int limit);
+
+    /**
+     * Recomputes all rankings read by {@link #getTopBooks(BookRanking, String, int)}.
+     */
+    void refreshTopBooks();
+
     /**
      * Creates a new book in the data store.
      *
@@ -34,6 +89,22 @@ public interface BookDao {
      */
     void createBook(Book book);
 
+    /**
+     * Creates all given books in the data store atomically.
+     *
+     * @param books The Book entities to be created, consumed lazily in order.
+     * @return The generated identifiers of the created books, in input order.
+     */
+    List<Long> createBooks(Iterator<Book> books);
+
+    /**
+     * Bulk-loads the given books into the data store atomically, bypassing per-row inserts.
+     *
+     * @param books The Book entities to be loaded, consumed lazily.
+     * @return The number of books loaded.
+     */
+    long copyBooks(Iterator<Book> books);
+
     /**
      * Updates an existing book in the data store.
      *
@@ -41,10 +112,29 @@ public interface BookDao {
      */
     void updateBook(Book book);
 
+    /**
+     * Updates an existing book in the data store if its version tag still equals the expected one, which
+     * detects concurrent updates without holding locks between reading and writing the book.
+     *
+     * @param book            The Book entity to be updated.
+     * @param expectedVersion The version tag the book must currently have.
+     * @return true if the book was updated, false if it is not found or its version tag differs.
+     */
+    boolean updateBook(Book book, String expectedVersion);
+
     /**
      * Deletes a book from the data store by its unique identifier.
      *
      * @param id The unique identifier of the book to be deleted.
      */
     void deleteBook(Long id);
-}
\ No newline at end of file
+
+    /**
+     * Writes all books to the given stream as CSV with a header line, one row per book. The export reflects
+     * a single consistent snapshot of the data store.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    long exportBooks(OutputStream out);
+}
@@ -0,0 +1,42 @@
+package vydrenkova.aston.dao;
+
+import java.util.Locale;
+
+/**
+ * The BookField enum lists the book properties a client can select. It is the whitelist of selectable
+ * columns: only the column names defined here ever reach the select list of a query.
+ */
+public enum BookField {
+
+    ID("id"),
+    TITLE("title"),
+    AUTHOR("author"),
+    GENRE("genre"),
+    PRICE("price");
+
+    private final String column;
+
+    BookField(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Returns the name of the books column holding this property, which is also its JSON property name.
+     *
+     * @return The column name.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the field with the given name, ignoring case.
+     *
+     * @param name The name of the field, e.g. "title".
+     * @return The matching BookField.
+     * @throws IllegalArgumentException If no field has the given name.
+     */
+    public static BookField fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,51 @@
+package vydrenkova.aston.dao;
+
+import java.util.Locale;
+
+/**
+ * The BookRanking enum lists the top-N lists of books. Each ranking is read from its own materialized view,
+ * ordered by the columns of the view's ranking index; the view and column names defined here are the only
+ * ones that reach the SQL text of a query.
+ */
+public enum BookRanking {
+
+    SALES("book_sales", "t.sales DESC, t.book_id"),
+    RATING("book_ratings", "t.average_rating DESC, t.review_count DESC, t.book_id");
+
+    private final String view;
+    private final String orderBy;
+
+    BookRanking(String view, String orderBy) {
+        this.view = view;
+        this.orderBy = orderBy;
+    }
+
+    /**
+     * Returns the name of the materialized view the ranking is read from.
+     *
+     * @return The view name.
+     */
+    public String getView() {
+        return view;
+    }
+
+    /**
+     * Returns the ORDER BY list of the ranking, with the view aliased as {@code t}.
+     *
+     * @return The ORDER BY list.
+     */
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * Returns the ranking with the given name, ignoring case.
+     *
+     * @param name The name of the ranking, e.g. "sales".
+     * @return The matching BookRanking.
+     * @throws IllegalArgumentException If no ranking has the given name.
+     */
+    public static BookRanking fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
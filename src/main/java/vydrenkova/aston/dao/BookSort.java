@@ -0,0 +1,60 @@
+package vydrenkova.aston.dao;
+
+import java.util.Locale;
+
+/**
+ * The BookSort enum lists the columns books can be sorted by. It is the whitelist of sort columns:
+ * only the column names defined here ever reach the SQL text of a query.
+ */
+public enum BookSort {
+
+    ID("id"),
+    TITLE("title"),
+    AUTHOR("author"),
+    GENRE("genre"),
+    PRICE("price");
+
+    private final String column;
+
+    BookSort(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Returns the name of the books column this sort orders by.
+     *
+     * @return The column name.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Converts the text form of a sort value, as carried by a page cursor, to the type of the column.
+     *
+     * @param value The sort value as text.
+     * @return The sort value as a Long, Double or String, matching the column type.
+     * @throws NumberFormatException If the column is numeric and the text is not a number.
+     */
+    public Object parseValue(String value) {
+        switch (this) {
+            case ID:
+                return Long.valueOf(value);
+            case PRICE:
+                return Double.valueOf(value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Returns the sort with the given name, ignoring case.
+     *
+     * @param name The name of the sort, e.g. "price".
+     * @return The matching BookSort.
+     * @throws IllegalArgumentException If no sort has the given name.
+     */
+    public static BookSort fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,341 @@
+package vydrenkova.aston.dao;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * The DataSourceRouter class chooses the database a DAO call runs on. Writes always go to the primary.
+ * Reads go to one of the read replicas, if any are configured: the replica with the fewest active pooled
+ * connections, with ties broken round-robin, so load spreads evenly across replicas.
+ * <p>
+ * Replicas apply the primary's changes with a delay. To let a caller read its own writes, its reads are sent
+ * to the primary while it has a write in progress and for a configurable window after its last write on the
+ * primary has finished (that is, after the connection has been closed). The window belongs to the caller,
+ * not to the application: reads of other callers keep going to the replicas. A caller is the current thread,
+ * or the scope opened with {@link #beginCaller(Long, LongConsumer)}, which an HTTP request opens with the
+ * time of the client's last write carried over from its previous requests.
+ * <p>
+ * While a {@link TransactionManager} block runs on the current thread, both reads and writes get the
+ * connection bound to that block instead.
+ */
+public final class DataSourceRouter {
+
+    private final static Set<String> IGNORED_IN_TRANSACTION = Set.of("close", "commit", "rollback",
+            "setAutoCommit", "setReadOnly", "setTransactionIsolation");
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final long readYourWritesMillis;
+    private final LongSupplier clock;
+    private final DataSource writeDataSource;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ThreadLocal<Connection> boundConnection = new ThreadLocal<>();
+    private final ThreadLocal<Caller> caller = new ThreadLocal<>();
+
+    /**
+     * Constructs a router without replicas: every call runs on the given DataSource.
+     *
+     * @param primary The DataSource of the primary database.
+     */
+    public DataSourceRouter(DataSource primary) {
+        this(primary, List.of(), 0);
+    }
+
+    /**
+     * Constructs a router over a primary and its read replicas.
+     *
+     * @param primary              The DataSource of the primary database.
+     * @param replicas             The DataSources of the read replicas; may be empty.
+     * @param readYourWritesMillis How long after a write the reads of its caller keep going to the primary,
+     *                             in milliseconds.
+     */
+    public DataSourceRouter(DataSource primary, List<DataSource> replicas, long readYourWritesMillis) {
+        this(primary, replicas, readYourWritesMillis, System::currentTimeMillis);
+    }
+
+    DataSourceRouter(DataSource primary, List<DataSource> replicas, long readYourWritesMillis, LongSupplier clock) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.readYourWritesMillis = readYourWritesMillis;
+        this.clock = clock;
+        this.writeDataSource = new WriteTrackingDataSource(primary, this::writeStarted, this::writeFinished);
+    }
+
+    /**
+     * Opens the scope of a caller on the current thread, such as an HTTP request. Until
+     * {@link #endCaller()}, reads on this thread stay on the primary within the read-your-writes window after
+     * the given time, and every write of the scope is reported to the listener so the caller can carry the
+     * time of its last write over to its next scope.
+     *
+     * @param lastWriteMillis The time of the caller's last write in a previous scope, or null if unknown.
+     * @param onWrite         Called with the time at which a write of the scope finished; only called if
+     *                        there are replicas, since otherwise every read goes to the primary anyway.
+     */
+    public void beginCaller(Long lastWriteMillis, LongConsumer onWrite) {
+        Caller scope = new Caller(onWrite);
+        if (lastWriteMillis != null) {
+            scope.lastWriteMillis = Math.min(lastWriteMillis, clock.getAsLong());
+        }
+        caller.set(scope);
+    }
+
+    /**
+     * Closes the scope opened on the current thread by {@link #beginCaller(Long, LongConsumer)}.
+     */
+    public void endCaller() {
+        caller.remove();
+    }
+
+    /**
+     * Returns how long after a write the reads of its caller keep going to the primary.
+     *
+     * @return The read-your-writes window in milliseconds.
+     */
+    public long getReadYourWritesMillis() {
+        return readYourWritesMillis;
+    }
+
+    /**
+     * Returns the DataSource for a call that writes. Connections obtained from it run on the primary, and
+     * closing them starts the read-your-writes window of the current caller.
+     *
+     * @return The DataSource of the primary.
+     */
+    public DataSource forWrite() {
+        Connection bound = boundConnection.get();
+        if (bound != null) {
+            return new BoundConnectionDataSource(primary, bound);
+        }
+        return writeDataSource;
+    }
+
+    /**
+     * Returns the DataSource for a read-only call: the least loaded replica, or the primary if there are no
+     * replicas, or the current caller has a write in progress or finished one less than the read-your-writes
+     * window ago.
+     *
+     * @return The DataSource to read from.
+     */
+    public DataSource forRead() {
+        Connection bound = boundConnection.get();
+        if (bound != null) {
+            return new BoundConnectionDataSource(primary, bound);
+        }
+        Caller current = caller.get();
+        if (replicas.isEmpty() || (current != null && (current.activeWrites.get() > 0
+                || clock.getAsLong() - current.lastWriteMillis < readYourWritesMillis))) {
+            return primary;
+        }
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        DataSource selected = null;
+        int selectedLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            DataSource replica = replicas.get((start + i) % replicas.size());
+            int load = activeConnections(replica);
+            if (load < selectedLoad) {
+                selected = replica;
+                selectedLoad = load;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Returns the connection bound to the current thread by a {@link TransactionManager}, or null.
+     */
+    Connection boundConnection() {
+        return boundConnection.get();
+    }
+
+    void bind(Connection connection) {
+        boundConnection.set(connection);
+    }
+
+    void unbind() {
+        boundConnection.remove();
+    }
+
+    private Caller writeStarted() {
+        Caller current = caller.get();
+        if (current == null) {
+            current = new Caller(null);
+            caller.set(current);
+        }
+        current.activeWrites.incrementAndGet();
+        return current;
+    }
+
+    private void writeFinished(Caller writer) {
+        long now = clock.getAsLong();
+        writer.lastWriteMillis = now;
+        writer.activeWrites.decrementAndGet();
+        if (writer.onWrite != null && !replicas.isEmpty()) {
+            writer.onWrite.accept(now);
+        }
+    }
+
+    private static int activeConnections(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            return pool == null ? 0 : pool.getActiveConnections();
+        }
+        return 0;
+    }
+
+    /**
+     * The writes of one caller: how many are in progress and when the last one finished.
+     */
+    private static final class Caller {
+
+        private final AtomicInteger activeWrites = new AtomicInteger();
+        private final LongConsumer onWrite;
+
+        private volatile long lastWriteMillis = Long.MIN_VALUE / 2;
+
+        private Caller(LongConsumer onWrite) {
+            this.onWrite = onWrite;
+        }
+    }
+
+    /**
+     * A DataSource that forwards everything but obtaining connections to another DataSource.
+     */
+    private abstract static class ForwardingDataSource implements DataSource {
+
+        protected final DataSource delegate;
+
+        private ForwardingDataSource(DataSource delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public PrintWriter getLogWriter() throws SQLException {
+            return delegate.getLogWriter();
+        }
+
+        @Override
+        public void setLogWriter(PrintWriter out) throws SQLException {
+            delegate.setLogWriter(out);
+        }
+
+        @Override
+        public void setLoginTimeout(int seconds) throws SQLException {
+            delegate.setLoginTimeout(seconds);
+        }
+
+        @Override
+        public int getLoginTimeout() throws SQLException {
+            return delegate.getLoginTimeout();
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            return delegate.getParentLogger();
+        }
+
+        @Override
+        public <T> T unwrap(Class<T> iface) throws SQLException {
+            return delegate.unwrap(iface);
+        }
+
+        @Override
+        public boolean isWrapperFor(Class<?> iface) throws SQLException {
+            return delegate.isWrapperFor(iface);
+        }
+    }
+
+    /**
+     * A DataSource that hands out connections of the primary and reports when each of them is opened and
+     * closed, on behalf of the caller that opened it.
+     */
+    private static final class WriteTrackingDataSource extends ForwardingDataSource {
+
+        private final Supplier<Caller> onOpen;
+        private final Consumer<Caller> onClose;
+
+        private WriteTrackingDataSource(DataSource delegate, Supplier<Caller> onOpen, Consumer<Caller> onClose) {
+            super(delegate);
+            this.onOpen = onOpen;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return track(delegate.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return track(delegate.getConnection(username, password));
+        }
+
+        private Connection track(Connection connection) {
+            Caller writer = onOpen.get();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                                onClose.accept(writer);
+                            }
+                        }
+                    });
+        }
+    }
+
+    /**
+     * A DataSource that hands out the connection bound to the current thread. The transaction of that
+     * connection belongs to the {@link TransactionManager}, so closing it and the calls DAOs use to manage
+     * a transaction of their own are ignored: the DAO simply joins the surrounding transaction.
+     */
+    private static final class BoundConnectionDataSource extends ForwardingDataSource {
+
+        private final Connection connection;
+
+        private BoundConnectionDataSource(DataSource delegate, Connection connection) {
+            super(delegate);
+            this.connection = connection;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (IGNORED_IN_TRANSACTION.contains(method.getName())) {
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) {
+            return getConnection();
+        }
+    }
+}
@@ -2,8 +2,12 @@ package vydrenkova.aston.dao;
 
 import vydrenkova.aston.entities.Order;
 
+import java.io.OutputStream;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * The OrderDao interface defines the contract for data access operations related to Order entities.
@@ -20,6 +24,54 @@ public interface OrderDao {
      */
     List<Order> getAllOrders();
 
+    /**
+     * Retrieves all orders with their item count and total price but without their books.
+     *
+     * @return A list of Order entities with an empty book list, or an empty list if no orders are found.
+     */
+    List<Order> getOrderSummaries();
+
+    /**
+     * Retrieves the orders placed within a date range with their item count and total price but without
+     * their books, oldest first.
+     *
+     * @param from The first date of the range, inclusive, or null for no lower bound.
+     * @param to   The end of the range, exclusive, or null for no upper bound.
+     * @return A list of Order entities with an empty book list, or an empty list if no orders are found.
+     */
+    List<Order> getOrderSummaries(Date from, Date to);
+
+    /**
+     * Retrieves all orders with only the given fields loaded; the other properties stay null. The ID is
+     * always loaded.
+     *
+     * @param fields The fields to load.
+     * @return A list of Order entities, or an empty list if no orders are found.
+     */
+    List<Order> getOrders(Set<OrderField> fields);
+
+    /**
+     * Retrieves one page of the order history of a customer, newest first, with the item count and total
+     * price of each order but without its books.
+     *
+     * @param customer  The customer whose orders to retrieve.
+     * @param before    Only orders placed before this date are returned, or null for no bound.
+     * @param afterDate The date of the last order of the previous page; required with {@code afterId}.
+     * @param afterId   The ID of the last order of the previous page, or null for the first page.
+     * @param limit     The maximum number of orders to return.
+     * @return The Order entities of the page with an empty book list, or an empty list if there are no more
+     * orders.
+     */
+    List<Order> getCustomerOrders(String customer, Date before, Date afterDate, Long afterId, int limit);
+
+    /**
+     * Streams all orders available in the data store to the given consumer, one complete order at a time,
+     * without loading the whole result into memory.
+     *
+     * @param consumer The consumer that receives each order together with its books.
+     */
+    void streamAllOrders(Consumer<Order> consumer);
+
     /**
      * Retrieves an order by its unique identifier.
      *
@@ -28,6 +80,15 @@ public interface OrderDao {
      */
     Optional<Order> getOrderById(Long id);
 
+    /**
+     * Retrieves the version tag of a order: an opaque value that changes whenever the order is updated, whenever books are added to or removed from it and whenever one of its books is updated.
+     * The lookup reads only version columns.
+     *
+     * @param id The unique identifier of the order.
+     * @return An Optional containing the version tag, or an empty Optional if the order is not found.
+     */
+    Optional<String> getOrderVersion(Long id);
+
     /**
      * Creates a new order in the data store.
      *
@@ -42,6 +103,16 @@ public interface OrderDao {
      */
     void updateOrder(Order order);
 
+    /**
+     * Updates an existing order in the data store if its version tag still equals the expected one, which
+     * detects concurrent updates without holding locks between reading and writing the order.
+     *
+     * @param order           The Order entity to be updated.
+     * @param expectedVersion The version tag the order must currently have.
+     * @return true if the order was updated, false if it is not found or its version tag differs.
+     */
+    boolean updateOrder(Order order, String expectedVersion);
+
     /**
      * Deletes an order from the data store by its unique identifier.
      *
@@ -64,4 +135,35 @@ public interface OrderDao {
      * @param bookId  The unique identifier of the book to be removed.
      */
     void removeBookFromOrder(Long orderId, Long bookId);
-}
\ No newline at end of file
+
+    /**
+     * Adds several books to an existing order at once. Books that are already part of the order are skipped.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be added.
+     * @return An Optional containing the number of books actually added, or an empty Optional if the order
+     * is not found.
+     * @throws IllegalArgumentException If any of the books does not exist; then no book is added.
+     */
+    Optional<Integer> addBooksToOrder(Long orderId, List<Long> bookIds);
+
+    /**
+     * Removes several books from an existing order at once.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be removed.
+     * @return An Optional containing the number of books actually removed, or an empty Optional if the order
+     * is not found.
+     */
+    Optional<Integer> removeBooksFromOrder(Long orderId, List<Long> bookIds);
+
+    /**
+     * Writes all orders to the given stream as CSV with a header line, one row per book of an order, and
+     * one row with an empty book_id for an order without books. The export reflects a single consistent
+     * snapshot of the data store.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    long exportOrders(OutputStream out);
+}
@@ -0,0 +1,32 @@
+package vydrenkova.aston.dao;
+
+import java.util.Locale;
+
+/**
+ * The OrderFetchStrategy enum defines how orders are loaded together with their books.
+ */
+public enum OrderFetchStrategy {
+
+    /**
+     * Loads orders and books with a single LEFT JOIN query. Every order column is sent once per book
+     * of the order, and every book column once per order containing the book.
+     */
+    JOIN,
+
+    /**
+     * Loads a page of orders first and then all books of that page with one
+     * {@code WHERE order_id = ANY(?)} query, so every row crosses the wire once.
+     */
+    BATCH;
+
+    /**
+     * Returns the strategy with the given name, ignoring case.
+     *
+     * @param name The name of the strategy, e.g. "join" or "batch".
+     * @return The matching OrderFetchStrategy.
+     * @throws IllegalArgumentException If no strategy has the given name.
+     */
+    public static OrderFetchStrategy fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,69 @@
+package vydrenkova.aston.dao;
+
+/**
+ * The OrderField enum lists the order properties a client can select, with the select list expression
+ * each of them is read from. Only the expressions defined here ever reach the select list of a query.
+ */
+public enum OrderField {
+
+    ID("id", "o.id AS order_id"),
+    CUSTOMER("customer", "o.customer"),
+    DATE("date", "o.date"),
+    STATUS("status", "o.status"),
+    BOOKS("books", null),
+    TOTAL_PRICE("totalPrice", "t.total_price"),
+    ITEM_COUNT("itemCount", "t.item_count");
+
+    private final String property;
+    private final String expression;
+
+    OrderField(String property, String expression) {
+        this.property = property;
+        this.expression = expression;
+    }
+
+    /**
+     * Returns the JSON property name of this field.
+     *
+     * @return The property name, e.g. "totalPrice".
+     */
+    public String getProperty() {
+        return property;
+    }
+
+    /**
+     * Returns the select list expression this field is read from, or null for the books of an order,
+     * which are not a column of the orders table.
+     *
+     * @return The select list expression.
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns whether this field is one of the totals computed over the books of an order.
+     *
+     * @return true for the total price and the item count.
+     */
+    public boolean isTotal() {
+        return this == TOTAL_PRICE || this == ITEM_COUNT;
+    }
+
+    /**
+     * Returns the field with the given JSON property name, ignoring case.
+     *
+     * @param name The property name of the field, e.g. "status".
+     * @return The matching OrderField.
+     * @throws IllegalArgumentException If no field has the given name.
+     */
+    public static OrderField fromName(String name) {
+        String trimmed = name.trim();
+        for (OrderField field : values()) {
+            if (field.property.equalsIgnoreCase(trimmed)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown order field: " + name);
+    }
+}
@@ -2,6 +2,8 @@ package vydrenkova.aston.dao;
 
 import vydrenkova.aston.entities.Review;
 
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,17 +17,50 @@ public interface ReviewDao {
     /**
      * Retrieves a list of all reviews available in the data store.
      *
+     * @param withBooks Whether to load the books of the reviews; otherwise each book holds only its ID.
      * @return A list of Review entities, or an empty list if no reviews are found.
      */
-    List<Review> getAllReviews();
+    List<Review> getAllReviews(boolean withBooks);
 
     /**
      * Retrieves a review by its unique identifier.
      *
-     * @param id The unique identifier of the review.
+     * @param id       The unique identifier of the review.
+     * @param withBook Whether to load the book of the review; otherwise the book holds only its ID.
      * @return An Optional containing the Review entity if found, or an empty Optional if not found.
      */
-    Optional<Review> getReviewById(Long id);
+    Optional<Review> getReviewById(Long id, boolean withBook);
+
+    /**
+     * Retrieves the version tag of a review: an opaque value that changes whenever the review is updated and whenever its book is updated.
+     * The lookup reads only version columns.
+     *
+     * @param id The unique identifier of the review.
+     * @return An Optional containing the version tag, or an empty Optional if the review is not found.
+     */
+    Optional<String> getReviewVersion(Long id);
+
+    /**
+     * Searches the text of the reviews and returns one page of the matches, best match first.
+     *
+     * @param query     The search query.
+     * @param afterRank The rank of the last review of the previous page, or null for the first page.
+     * @param afterId   The ID of the last review of the previous page, or null for the first page.
+     * @param limit     The maximum number of reviews to return.
+     * @param withBooks Whether to load the books of the reviews; otherwise each book holds only its ID.
+     * @return The matching Review entities with their ranks, or an empty list if there are no more matches.
+     */
+    List<Review> searchReviews(String query, Float afterRank, Long afterId, int limit, boolean withBooks);
+
+    /**
+     * Retrieves one page of the reviews of a book, ordered by ID. The book of each review holds only its ID.
+     *
+     * @param bookId  The unique identifier of the book.
+     * @param afterId The ID of the last review of the previous page, or null for the first page.
+     * @param limit   The maximum number of reviews to return.
+     * @return The Review entities of the page, or an empty list if there are no more reviews.
+     */
+    List<Review> getReviewsByBookId(Long bookId, Long afterId, int limit);
 
     /**
      * Creates a new review in the data store.
@@ -34,6 +69,15 @@ public interface ReviewDao {
      */
     void createReview(Review review);
 
+    /**
+     * Bulk-loads the given reviews into the data store atomically, bypassing per-row inserts.
+     * Reviews that reference a book that does not exist are skipped.
+     *
+     * @param reviews The Review entities to be loaded, consumed lazily.
+     * @return The number of reviews loaded.
+     */
+    long copyReviews(Iterator<Review> reviews);
+
     /**
      * Updates an existing review in the data store.
      *
@@ -41,10 +85,29 @@ public interface ReviewDao {
      */
     void updateReview(Review review);
 
+    /**
+     * Updates an existing review in the data store if its version tag still equals the expected one, which
+     * detects concurrent updates without holding locks between reading and writing the review.
+     *
+     * @param review          The Review entity to be updated.
+     * @param expectedVersion The version tag the review must currently have.
+     * @return true if the review was updated, false if it is not found or its version tag differs.
+     */
+    boolean updateReview(Review review, String expectedVersion);
+
     /**
      * Deletes a review from the data store by its unique identifier.
      *
      * @param id The unique identifier of the review to be deleted.
      */
     void deleteReview(Long id);
-}
\ No newline at end of file
+
+    /**
+     * Writes all reviews to the given stream as CSV with a header line, one row per review. The export
+     * reflects a single consistent snapshot of the data store.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    long exportReviews(OutputStream out);
+}
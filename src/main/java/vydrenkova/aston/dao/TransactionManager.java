@@ -0,0 +1,112 @@
+package vydrenkova.aston.dao;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * The TransactionManager class runs a block of DAO calls as one unit of work. The block gets one connection,
+ * bound to the current thread through the {@link DataSourceRouter}, and every DAO call made in it uses that
+ * connection instead of checking out its own. The block runs in one transaction that is committed when it
+ * returns and rolled back when it throws. A block started inside another one joins the outer transaction.
+ * <p>
+ * Read-write blocks run on the primary. Read-only blocks run on the DataSource the router picks for reads,
+ * in a read-only transaction; a read-write block cannot be started inside a read-only one.
+ */
+public class TransactionManager {
+
+    private final DataSourceRouter router;
+
+    /**
+     * Constructs a new TransactionManager that binds connections obtained from the given router.
+     *
+     * @param router The router of the DAOs that take part in the transactions.
+     */
+    public TransactionManager(DataSourceRouter router) {
+        this.router = router;
+    }
+
+    /**
+     * Returns a TransactionManager that runs blocks without a shared connection or transaction, leaving every
+     * DAO call to manage its own. Used where there is no database, such as with mocked DAOs.
+     *
+     * @return A TransactionManager that runs blocks directly.
+     */
+    public static TransactionManager none() {
+        return new TransactionManager(null);
+    }
+
+    /**
+     * Runs the given work in a read-write transaction on the primary.
+     *
+     * @param work The DAO calls to run.
+     * @param <T>  The type of the result.
+     * @return The result of the work.
+     * @throws IllegalStateException If called inside a read-only transaction.
+     */
+    public <T> T inTransaction(Supplier<T> work) {
+        return execute(false, work);
+    }
+
+    /**
+     * Runs the given work in a read-write transaction on the primary.
+     *
+     * @param work The DAO calls to run.
+     * @throws IllegalStateException If called inside a read-only transaction.
+     */
+    public void inTransaction(Runnable work) {
+        execute(false, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the given work in a read-only transaction, typically on a read replica.
+     *
+     * @param work The DAO calls to run.
+     * @param <T>  The type of the result.
+     * @return The result of the work.
+     */
+    public <T> T inReadOnlyTransaction(Supplier<T> work) {
+        return execute(true, work);
+    }
+
+    private <T> T execute(boolean readOnly, Supplier<T> work) {
+        if (router == null) {
+            return work.get();
+        }
+        try {
+            Connection bound = router.boundConnection();
+            if (bound != null) {
+                if (!readOnly && bound.isReadOnly()) {
+                    throw new IllegalStateException("Cannot start a read-write transaction inside a read-only one");
+                }
+                return work.get();
+            }
+            DataSource dataSource = readOnly ? router.forRead() : router.forWrite();
+            try (Connection conn = dataSource.getConnection()) {
+                boolean autoCommit = conn.getAutoCommit();
+                boolean wasReadOnly = conn.isReadOnly();
+                conn.setAutoCommit(false);
+                conn.setReadOnly(readOnly);
+                router.bind(conn);
+                try {
+                    T result = work.get();
+                    conn.commit();
+                    return result;
+                } catch (Throwable e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    router.unbind();
+                    conn.setReadOnly(wasReadOnly);
+                    conn.setAutoCommit(autoCommit);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to run transaction", e);
+        }
+    }
+}
@@ -1,13 +1,23 @@
 package vydrenkova.aston.dao.impl;
 
+import vydrenkova.aston.dao.BookCriteria;
 import vydrenkova.aston.dao.BookDao;
+import vydrenkova.aston.dao.BookField;
+import vydrenkova.aston.dao.BookRanking;
+import vydrenkova.aston.dao.DataSourceRouter;
 import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.BookRating;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * The BookDaoImpl class is an implementation of the BookDao interface. It provides concrete
@@ -16,13 +26,39 @@ import java.util.Optional;
  */
 public class BookDaoImpl implements BookDao {
 
-    private final DataSource dataSource;
+    private final DataSourceRouter router;
 
     private final static String SELECT_FROM_BOOKS = "SELECT * FROM books";
     private final static String SELECT_FROM_BOOKS_WHERE_ID = "SELECT * FROM books WHERE id = ?";
+    private final static String SEARCH_BOOKS = "SELECT * FROM books " +
+            "WHERE ? <% title OR ? <% author " +
+            "ORDER BY GREATEST(word_similarity(?, title), word_similarity(?, author)) DESC, id " +
+            "LIMIT ?";
+    private final static String SELECT_BOOK_RATING = "SELECT b.id, " +
+            "coalesce(s.review_count, 0) AS review_count, coalesce(s.rating_sum, 0) AS rating_sum, " +
+            "coalesce(s.rating_1, 0) AS rating_1, coalesce(s.rating_2, 0) AS rating_2, " +
+            "coalesce(s.rating_3, 0) AS rating_3, coalesce(s.rating_4, 0) AS rating_4, " +
+            "coalesce(s.rating_5, 0) AS rating_5 " +
+            "FROM books b " +
+            "LEFT JOIN book_rating_stats s ON s.book_id = b.id " +
+            "WHERE b.id = ?";
+    private final static String SELECT_TOP_BOOKS = "SELECT b.* FROM %s t JOIN books b ON b.id = t.book_id ";
+    private final static String WHERE_TOP_BOOKS_GENRE = "WHERE t.genre = ? ";
+    private final static String ORDER_TOP_BOOKS = "ORDER BY %s LIMIT ?";
+    private final static String REFRESH_TOP_BOOKS = "REFRESH MATERIALIZED VIEW CONCURRENTLY %s";
     private final static String INSERT_INTO_BOOKS = "INSERT INTO books (title, author, genre, price) VALUES (?, ?, ?, ?)";
-    private final static String UPDATE_BOOK = "UPDATE books SET title = ?, author = ?, genre = ?, price = ? WHERE id = ?";
+    private final static String COPY_INTO_BOOKS = "COPY books (title, author, genre, price) FROM STDIN (FORMAT csv)";
+    private final static String UPDATE_BOOK = "UPDATE books SET title = ?, author = ?, genre = ?, price = ?, " +
+            "version = version + 1 WHERE id = ?";
+    private final static String BOOK_VERSION_TAG = "b.version || '.' || " +
+            "coalesce((SELECT s.version FROM book_rating_stats s WHERE s.book_id = b.id), 0)";
+    private final static String SELECT_BOOK_VERSION = "SELECT " + BOOK_VERSION_TAG + " AS version " +
+            "FROM books b WHERE b.id = ?";
+    private final static String UPDATE_BOOK_IF_VERSION = "UPDATE books b SET title = ?, author = ?, genre = ?, " +
+            "price = ?, version = b.version + 1 WHERE b.id = ? AND " + BOOK_VERSION_TAG + " = ?";
     private final static String DELETE_BOOK = "DELETE FROM books WHERE id = ?";
+    private final static String COPY_BOOKS_TO_STDOUT = "COPY (SELECT id, title, author, genre, price FROM books ORDER BY id) " +
+            "TO STDOUT (FORMAT csv, HEADER)";
 
     private final static String BOOK_ID_COLUMN_NAME = "id";
     private final static String TITLE_COLUMN_NAME = "title";
@@ -30,13 +66,25 @@ public class BookDaoImpl implements BookDao {
     private final static String GENRE_COLUMN_NAME = "genre";
     private final static String PRICE_COLUMN_NAME = "price";
 
+    private final static int INSERT_BATCH_SIZE = 1000;
+
     /**
      * Constructs a new BookDaoImpl with the specified DataSource.
      *
      * @param dataSource The DataSource to be used for database connections.
      */
     public BookDaoImpl(DataSource dataSource) {
-        this.dataSource = dataSource;
+        this(new DataSourceRouter(dataSource));
+    }
+
+    /**
+     * Constructs a new BookDaoImpl that runs read-only queries on the DataSource chosen by the given router,
+     * typically a read replica, and everything else on the primary.
+     *
+     * @param router The router choosing the DataSource for each call.
+     */
+    public BookDaoImpl(DataSourceRouter router) {
+        this.router = router;
     }
 
     /**
@@ -47,7 +95,7 @@ public class BookDaoImpl implements BookDao {
     @Override
     public List<Book> getAllBooks() {
         List<Book> books = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = router.forRead().getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(SELECT_FROM_BOOKS)) {
             while (rs.next()) {
@@ -66,6 +114,83 @@ public class BookDaoImpl implements BookDao {
         return books;
     }
 
+    /**
+     * Retrieves a page of books matching the given criteria, in the requested order, starting right after
+     * the cursor book. The query is built by {@link BookQueryBuilder}. A page is a single index range scan
+     * followed by LIMIT, whose cost depends neither on its position nor on the size of the catalog, only if
+     * it is sorted by ID without filters (primary key), sorted by price with a genre or an author filter and
+     * an optional price range (indexes on (genre, price, id) and (author, price, id)), sorted by price with at
+     * most a price range (index on (price, id)) or sorted by title without filters (index on (title, id)).
+     * Any other combination, e.g. a genre or author filter sorted by title or by ID, or a sort by author or
+     * genre, reads all matching books, or walks an index past the books that do not match, before the LIMIT.
+     * The cursor carries the sort value of the last book of the previous page, so paging is unaffected if
+     * that book has been deleted or changed since. If the criteria name the fields to load, only those
+     * columns, the ID and the sort column are read and the other properties of the books stay null.
+     *
+     * @param criteria The filters, sort order and cursor of the page.
+     * @return A list of Book entities, or an empty list if there are no more matching books.
+     */
+    @Override
+    public List<Book> getBooks(BookCriteria criteria) {
+        BookQueryBuilder query = BookQueryBuilder.forCriteria(criteria);
+        Set<BookField> fields = BookQueryBuilder.loadedFields(criteria);
+        List<Book> books = new ArrayList<>(criteria.getLimit());
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query.getSql())) {
+            query.bind(pstmt);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(fields == null ? new Book(
+                            rs.getLong(BOOK_ID_COLUMN_NAME),
+                            rs.getString(TITLE_COLUMN_NAME),
+                            rs.getString(AUTHOR_COLUMN_NAME),
+                            rs.getString(GENRE_COLUMN_NAME),
+                            rs.getDouble(PRICE_COLUMN_NAME)
+                    ) : mapFields(rs, fields));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return books;
+    }
+
+    /**
+     * Searches books by title and author, tolerating typos and partial words. A book matches when the
+     * query is similar enough to a part of its title or author (the {@code <%} word similarity operator of
+     * pg_trgm, with its default threshold of 0.6), which the trigram GIN indexes on both columns answer
+     * with a bitmap index scan. Matches are ordered by the better of the two similarities.
+     *
+     * @param query The search query.
+     * @param limit The maximum number of books to return.
+     * @return The matching Book entities, best match first.
+     */
+    @Override
+    public List<Book> searchBooks(String query, int limit) {
+        List<Book> books = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SEARCH_BOOKS)) {
+            for (int i = 1; i <= 4; i++) {
+                pstmt.setString(i, query);
+            }
+            pstmt.setInt(5, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(new Book(
+                            rs.getLong(BOOK_ID_COLUMN_NAME),
+                            rs.getString(TITLE_COLUMN_NAME),
+                            rs.getString(AUTHOR_COLUMN_NAME),
+                            rs.getString(GENRE_COLUMN_NAME),
+                            rs.getDouble(PRICE_COLUMN_NAME)
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to search books", e);
+        }
+        return books;
+    }
+
     /**
      * Retrieves a book by its unique identifier.
      *
@@ -74,7 +199,7 @@ public class BookDaoImpl implements BookDao {
      */
     @Override
     public Optional<Book> getBookById(Long id) {
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = router.forRead().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(SELECT_FROM_BOOKS_WHERE_ID)) {
             pstmt.setLong(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -95,6 +220,118 @@ public class BookDaoImpl implements BookDao {
         }
     }
 
+    /**
+     * Retrieves the rating summary of a book from {@code book_rating_stats}, which ReviewDaoImpl keeps
+     * up to date on every review write. This is a primary key lookup whatever the number of reviews.
+     *
+     * @param bookId The unique identifier of the book.
+     * @return An Optional containing the summary, with zero counts if the book has no reviews, or an empty
+     * Optional if the book is not found.
+     */
+    @Override
+    public Optional<BookRating> getBookRating(Long bookId) {
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SELECT_BOOK_RATING)) {
+            pstmt.setLong(1, bookId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    long[] ratingCounts = new long[5];
+                    for (int i = 0; i < ratingCounts.length; i++) {
+                        ratingCounts[i] = rs.getLong("rating_" + (i + 1));
+                    }
+                    return Optional.of(new BookRating(
+                            rs.getLong(BOOK_ID_COLUMN_NAME),
+                            rs.getLong("review_count"),
+                            rs.getLong("rating_sum"),
+                            ratingCounts
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get book rating", e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves the version tag of a book: the version of its row and the version of its rating summary,
+     * which together change whenever the book or its rating does. Both are primary key lookups.
+     *
+     * @param id The unique identifier of the book.
+     * @return An Optional containing the version tag, or an empty Optional if the book is not found.
+     */
+    @Override
+    public Optional<String> getBookVersion(Long id) {
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SELECT_BOOK_VERSION)) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(rs.getString("version"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get book version", e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieves the top books of a ranking from its materialized view. The view is read in the order of its
+     * ranking index, with the genre as the leading index column when a genre is given, so only the first
+     * {@code limit} entries are read before the books themselves are fetched by primary key.
+     *
+     * @param ranking The ranking to read.
+     * @param genre   The genre to restrict the ranking to, or null for all genres.
+     * @param limit   The maximum number of books to return.
+     * @return The top Book entities, best first.
+     */
+    @Override
+    public List<Book> getTopBooks(BookRanking ranking, String genre, int limit) {
+        String sql = String.format(SELECT_TOP_BOOKS, ranking.getView())
+                + (genre == null ? "" : WHERE_TOP_BOOKS_GENRE)
+                + String.format(ORDER_TOP_BOOKS, ranking.getOrderBy());
+        List<Book> books = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (genre != null) {
+                pstmt.setString(index++, genre);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(new Book(
+                            rs.getLong(BOOK_ID_COLUMN_NAME),
+                            rs.getString(TITLE_COLUMN_NAME),
+                            rs.getString(AUTHOR_COLUMN_NAME),
+                            rs.getString(GENRE_COLUMN_NAME),
+                            rs.getDouble(PRICE_COLUMN_NAME)
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get top books", e);
+        }
+        return books;
+    }
+
+    /**
+     * Refreshes the materialized views of all rankings. The views are refreshed concurrently, so readers
+     * keep seeing the previous contents until each refresh commits.
+     */
+    @Override
+    public void refreshTopBooks() {
+        try (Connection conn = router.forWrite().getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (BookRanking ranking : BookRanking.values()) {
+                stmt.execute(String.format(REFRESH_TOP_BOOKS, ranking.getView()));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to refresh top books", e);
+        }
+    }
+
     /**
      * Creates a new book in the database.
      *
@@ -102,7 +339,7 @@ public class BookDaoImpl implements BookDao {
      */
     @Override
     public void createBook(Book book) {
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = router.forWrite().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(INSERT_INTO_BOOKS, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setString(1, book.getTitle());
             pstmt.setString(2, book.getAuthor());
@@ -126,6 +363,88 @@ public class BookDaoImpl implements BookDao {
         }
     }
 
+    /**
+     * Creates all given books in the database in one transaction on one connection. The books are
+     * inserted in JDBC batches of {@value #INSERT_BATCH_SIZE} rows; with the pgjdbc
+     * {@code reWriteBatchedInserts} option each batch is sent as a few multi-row INSERT statements.
+     * If any insert fails, none of the books are created.
+     *
+     * @param books The Book entities to be created, consumed lazily in order.
+     * @return The generated identifiers of the created books, in input order.
+     */
+    @Override
+    public List<Long> createBooks(Iterator<Book> books) {
+        List<Long> ids = new ArrayList<>();
+        try (Connection conn = router.forWrite().getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_INTO_BOOKS, new String[]{BOOK_ID_COLUMN_NAME})) {
+                int pending = 0;
+                while (books.hasNext()) {
+                    Book book = books.next();
+                    pstmt.setString(1, book.getTitle());
+                    pstmt.setString(2, book.getAuthor());
+                    pstmt.setString(3, book.getGenre());
+                    pstmt.setDouble(4, book.getPrice());
+                    pstmt.addBatch();
+                    if (++pending == INSERT_BATCH_SIZE) {
+                        executeInsertBatch(pstmt, ids);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    executeInsertBatch(pstmt, ids);
+                }
+                conn.commit();
+            } catch (Throwable e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to create books", e);
+        }
+        return ids;
+    }
+
+    /**
+     * Bulk-loads the given books into the database with {@code COPY books FROM STDIN}. The rows are
+     * encoded and sent to the server while the iterator is consumed. COPY is a single statement, so
+     * either all books are loaded or none.
+     *
+     * @param books The Book entities to be loaded, consumed lazily.
+     * @return The number of books loaded.
+     */
+    @Override
+    public long copyBooks(Iterator<Book> books) {
+        try (Connection conn = router.forWrite().getConnection()) {
+            return CopySupport.copyIn(conn, COPY_INTO_BOOKS, books, book -> new Object[]{
+                    book.getTitle(), book.getAuthor(), book.getGenre(), book.getPrice()});
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to copy books", e);
+        }
+    }
+
+    /**
+     * Writes all books to the given stream as CSV with a header line, one row per book. The rows are
+     * produced by {@code COPY (query) TO STDOUT} in a read-only REPEATABLE READ transaction and written to
+     * the stream as the server sends them, without being mapped to entities.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    @Override
+    public long exportBooks(OutputStream out) {
+        try (Connection conn = router.forRead().getConnection()) {
+            return CopySupport.copyOut(conn, COPY_BOOKS_TO_STDOUT, out);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to export books", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write books export", e);
+        }
+    }
+
     /**
      * Updates an existing book in the database.
      *
@@ -133,14 +452,35 @@ public class BookDaoImpl implements BookDao {
      */
     @Override
     public void updateBook(Book book) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(UPDATE_BOOK)) {
+        update(book, UPDATE_BOOK, null);
+    }
+
+    /**
+     * Updates an existing book in the database if its version tag still equals the expected one. The tag
+     * is compared in the WHERE clause of the UPDATE itself, so no lock is held between the client reading
+     * the book and writing it back.
+     *
+     * @param book            The Book entity to be updated.
+     * @param expectedVersion The version tag the book must currently have.
+     * @return true if the book was updated, false if it is not found or its version tag differs.
+     */
+    @Override
+    public boolean updateBook(Book book, String expectedVersion) {
+        return update(book, UPDATE_BOOK_IF_VERSION, expectedVersion) > 0;
+    }
+
+    private int update(Book book, String sql, String expectedVersion) {
+        try (Connection conn = router.forWrite().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, book.getTitle());
             pstmt.setString(2, book.getAuthor());
             pstmt.setString(3, book.getGenre());
             pstmt.setDouble(4, book.getPrice());
             pstmt.setLong(5, book.getId());
-            pstmt.executeUpdate();
+            if (expectedVersion != null) {
+                pstmt.setString(6, expectedVersion);
+            }
+            return pstmt.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -153,7 +493,7 @@ public class BookDaoImpl implements BookDao {
      */
     @Override
     public void deleteBook(Long id) {
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = router.forWrite().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(DELETE_BOOK)) {
             pstmt.setLong(1, id);
             pstmt.executeUpdate();
@@ -161,4 +501,30 @@ public class BookDaoImpl implements BookDao {
             throw new RuntimeException(e);
         }
     }
+
+    private static Book mapFields(ResultSet rs, Set<BookField> fields) throws SQLException {
+        Book book = new Book(rs.getLong(BOOK_ID_COLUMN_NAME), null, null, null, null);
+        if (fields.contains(BookField.TITLE)) {
+            book.setTitle(rs.getString(TITLE_COLUMN_NAME));
+        }
+        if (fields.contains(BookField.AUTHOR)) {
+            book.setAuthor(rs.getString(AUTHOR_COLUMN_NAME));
+        }
+        if (fields.contains(BookField.GENRE)) {
+            book.setGenre(rs.getString(GENRE_COLUMN_NAME));
+        }
+        if (fields.contains(BookField.PRICE)) {
+            book.setPrice(rs.getDouble(PRICE_COLUMN_NAME));
+        }
+        return book;
+    }
+
+    private static void executeInsertBatch(PreparedStatement pstmt, List<Long> ids) throws SQLException {
+        pstmt.executeBatch();
+        try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+            while (generatedKeys.next()) {
+                ids.add(generatedKeys.getLong(1));
+            }
+        }
+    }
 }
\ No newline at end of file
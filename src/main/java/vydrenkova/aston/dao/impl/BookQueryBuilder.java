@@ -0,0 +1,136 @@
+package vydrenkova.aston.dao.impl;
+
+import vydrenkova.aston.dao.BookCriteria;
+import vydrenkova.aston.dao.BookField;
+import vydrenkova.aston.dao.BookSort;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The BookQueryBuilder class turns a {@link BookCriteria} into a parameterized SELECT on the books table.
+ * Filter values are always bound as parameters; column names only ever come from {@link BookSort},
+ * {@link BookField} and the constants of this class, so no request input reaches the SQL text.
+ * <p>
+ * If the criteria name the fields to load, only their columns, the ID and the sort column, which the cursor
+ * of the next page needs, are selected.
+ * <p>
+ * The page after a cursor is selected with a row comparison on the sort column and the ID against the
+ * values carried by the cursor, e.g. {@code (price, id) > (?, ?)}, instead of an offset. An index ending
+ * with the sort column and the ID answers it with a range scan, e.g. {@code (genre, price, id)} for a genre
+ * filter sorted by price; {@link BookDaoImpl#getBooks} lists the filters and sorts the indexes serve.
+ */
+final class BookQueryBuilder {
+
+    private final static String SELECT_ALL_COLUMNS = "*";
+    private final static String FROM_BOOKS = " FROM books";
+
+    private final StringBuilder sql = new StringBuilder("SELECT ");
+    private final List<Object> parameters = new ArrayList<>();
+    private boolean hasWhere;
+
+    private BookQueryBuilder() {
+    }
+
+    /**
+     * Builds the query for the given criteria.
+     *
+     * @param criteria The filters, sort and cursor of the page.
+     * @return The builder holding the SQL text and its parameters.
+     */
+    static BookQueryBuilder forCriteria(BookCriteria criteria) {
+        BookQueryBuilder query = new BookQueryBuilder();
+        query.sql.append(selectList(loadedFields(criteria))).append(FROM_BOOKS);
+        query.where("genre = ?", criteria.getGenre());
+        query.where("author = ?", criteria.getAuthor());
+        query.where("price >= ?", criteria.getMinPrice());
+        query.where("price <= ?", criteria.getMaxPrice());
+
+        BookSort sort = criteria.getSort() == null ? BookSort.ID : criteria.getSort();
+        String column = sort.getColumn();
+        String comparison = criteria.isDescending() ? "<" : ">";
+        String direction = criteria.isDescending() ? " DESC" : "";
+        if (sort == BookSort.ID) {
+            query.where("id " + comparison + " ?", criteria.getAfterId());
+            query.sql.append(" ORDER BY id").append(direction);
+        } else {
+            if (criteria.getAfterId() != null) {
+                if (criteria.getAfterValue() == null) {
+                    throw new IllegalArgumentException("The cursor of a page sorted by " + column + " needs its value");
+                }
+                query.where("(" + column + ", id) " + comparison + " (?, ?)", criteria.getAfterValue());
+                query.parameters.add(criteria.getAfterId());
+            }
+            query.sql.append(" ORDER BY ").append(column).append(direction).append(", id").append(direction);
+        }
+        query.sql.append(" LIMIT ?");
+        query.parameters.add(criteria.getLimit());
+        return query;
+    }
+
+    /**
+     * Returns the fields the query for the given criteria loads: the requested fields plus the sort column,
+     * whose value the cursor of the next page carries.
+     *
+     * @param criteria The criteria of the page.
+     * @return The loaded fields, or null if whole books are loaded.
+     */
+    static Set<BookField> loadedFields(BookCriteria criteria) {
+        if (criteria.getFields() == null) {
+            return null;
+        }
+        Set<BookField> fields = EnumSet.noneOf(BookField.class);
+        fields.addAll(criteria.getFields());
+        if (criteria.getSort() != null) {
+            fields.add(BookField.valueOf(criteria.getSort().name()));
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the SQL text of the query.
+     *
+     * @return The SQL text with {@code ?} placeholders.
+     */
+    String getSql() {
+        return sql.toString();
+    }
+
+    /**
+     * Binds the parameters of the query to the given statement.
+     *
+     * @param pstmt The statement prepared from {@link #getSql()}.
+     * @throws SQLException If a database access error occurs.
+     */
+    void bind(PreparedStatement pstmt) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            pstmt.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    private static String selectList(Set<BookField> fields) {
+        if (fields == null) {
+            return SELECT_ALL_COLUMNS;
+        }
+        StringBuilder columns = new StringBuilder(BookField.ID.getColumn());
+        for (BookField field : fields) {
+            if (field != BookField.ID) {
+                columns.append(", ").append(field.getColumn());
+            }
+        }
+        return columns.toString();
+    }
+
+    private void where(String condition, Object value) {
+        if (value == null) {
+            return;
+        }
+        sql.append(hasWhere ? " AND " : " WHERE ").append(condition);
+        parameters.add(value);
+        hasWhere = true;
+    }
+}
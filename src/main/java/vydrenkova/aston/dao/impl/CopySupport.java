@@ -0,0 +1,136 @@
+package vydrenkova.aston.dao.impl;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.function.Function;
+
+/**
+ * The CopySupport class streams rows into PostgreSQL with {@code COPY ... FROM STDIN (FORMAT csv)}
+ * and out of it with {@code COPY ... TO STDOUT} through the pgjdbc CopyManager API. Rows are passed
+ * through a bounded buffer in both directions, so memory use does not depend on the number of rows.
+ */
+final class CopySupport {
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private CopySupport() {
+    }
+
+    /**
+     * Copies all rows into the database with the given COPY statement.
+     *
+     * @param conn    The connection to run the COPY on.
+     * @param copySql The {@code COPY ... FROM STDIN (FORMAT csv)} statement.
+     * @param rows    The rows to copy, consumed lazily.
+     * @param columns The function that returns the column values of a row, in the column order of the COPY.
+     * @param <T>     The type of the rows.
+     * @return The number of rows copied.
+     * @throws SQLException If the COPY fails; in that case nothing is copied.
+     */
+    static <T> long copyIn(Connection conn, String copySql, Iterator<T> rows, Function<T, Object[]> columns)
+            throws SQLException {
+        PGCopyOutputStream out = new PGCopyOutputStream(conn.unwrap(PGConnection.class), copySql, BUFFER_SIZE);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+            while (rows.hasNext()) {
+                writeCsvRow(writer, columns.apply(rows.next()));
+            }
+            writer.flush();
+            return out.endCopy();
+        } catch (IOException e) {
+            cancel(out);
+            throw new SQLException("Failed to write COPY data", e);
+        } catch (SQLException | RuntimeException e) {
+            cancel(out);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the given {@code COPY (query) TO STDOUT} statement in a read-only REPEATABLE READ transaction
+     * and writes the bytes sent by the server to the given stream as they arrive. The transaction pins
+     * a single snapshot, so the export is a consistent point-in-time view no matter how long the client
+     * takes to read it.
+     *
+     * @param conn    The connection to run the COPY on.
+     * @param copySql The {@code COPY ... TO STDOUT} statement.
+     * @param out     The stream to write the exported data to; it is flushed but not closed.
+     * @return The number of rows exported.
+     * @throws SQLException If the COPY fails.
+     * @throws IOException  If writing to the stream fails.
+     */
+    static long copyOut(Connection conn, String copySql, OutputStream out) throws SQLException, IOException {
+        boolean autoCommit = conn.getAutoCommit();
+        boolean readOnly = conn.isReadOnly();
+        int isolation = conn.getTransactionIsolation();
+        conn.setAutoCommit(false);
+        conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        conn.setReadOnly(true);
+        try {
+            long rows = conn.unwrap(PGConnection.class).getCopyAPI().copyOut(copySql, out);
+            out.flush();
+            conn.commit();
+            return rows;
+        } catch (Throwable e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setReadOnly(readOnly);
+            conn.setTransactionIsolation(isolation);
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void cancel(PGCopyOutputStream out) throws SQLException {
+        if (out.isActive()) {
+            out.cancelCopy();
+        }
+    }
+
+    /**
+     * Writes one row in PostgreSQL CSV format. Null values are written as unquoted empty fields,
+     * which COPY reads as NULL; empty strings are quoted so that they stay empty strings.
+     */
+    private static void writeCsvRow(Writer writer, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] == null) {
+                continue;
+            }
+            String value = values[i].toString();
+            if (needsQuoting(value)) {
+                writer.write('"');
+                writer.write(value.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static boolean needsQuoting(String value) {
+        if (value.isEmpty() || value.equals("\\.")) {
+            return true;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,97 +1,392 @@
 package vydrenkova.aston.dao.impl;
 
+import vydrenkova.aston.dao.DataSourceRouter;
 import vydrenkova.aston.dao.OrderDao;
+import vydrenkova.aston.dao.OrderField;
+import vydrenkova.aston.dao.OrderFetchStrategy;
 import vydrenkova.aston.entities.Book;
 import vydrenkova.aston.entities.Order;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * The OrderDaoImpl class is an implementation of the OrderDao interface. It provides concrete
  * implementations for data access operations related to Order entities using a DataSource
  * to interact with the underlying database.
+ * <p>
+ * Every loaded order carries its item count and total price, aggregated by the database: with a window
+ * over the joined rows of an order when the books are joined, and with a LATERAL aggregate over
+ * order_books when they are not. Orders loaded with a subset of their fields carry the totals only if
+ * those are among the fields.
+ * <p>
+ * Every order_books row carries the date of its order in {@code order_date}, so that order_books can be
+ * partitioned by month like orders. Writes keep it equal to the date of the order, and joins match on it
+ * as well as on the order ID, which confines each join to one partition.
  */
 public class OrderDaoImpl implements OrderDao {
 
-    private final DataSource dataSource;
+    private final DataSourceRouter router;
+    private final OrderFetchStrategy fetchStrategy;
 
+    private final static String ORDER_TOTALS = "count(b.id) OVER w AS item_count, " +
+            "coalesce(sum(b.price::numeric) OVER w, 0) AS total_price ";
+    private final static String ORDER_TOTALS_LATERAL = "CROSS JOIN LATERAL (" +
+            "SELECT count(*) AS item_count, coalesce(sum(b.price::numeric), 0) AS total_price " +
+            "FROM order_books ob JOIN books b ON ob.book_id = b.id WHERE ob.order_id = o.id AND ob.order_date = o.date) t ";
     private final static String SELECT_ALL_ORDERS = "SELECT o.id AS order_id, o.customer, o.date, o.status, " +
-            "b.id AS book_id, b.title, b.author, b.genre, b.price " +
+            "b.id AS book_id, b.title, b.author, b.genre, b.price, " + ORDER_TOTALS +
             "FROM orders o " +
-            "LEFT JOIN order_books ob ON o.id = ob.order_id " +
-            "LEFT JOIN books b ON ob.book_id = b.id";
+            "LEFT JOIN order_books ob ON o.id = ob.order_id AND o.date = ob.order_date " +
+            "LEFT JOIN books b ON ob.book_id = b.id " +
+            "WINDOW w AS (PARTITION BY o.id) " +
+            "ORDER BY o.id";
     private final static String SELECT_ORDER_BY_ID = "SELECT o.id AS order_id, o.customer, o.date, o.status, " +
-            "b.id AS book_id, b.title, b.author, b.genre, b.price " +
+            "b.id AS book_id, b.title, b.author, b.genre, b.price, " + ORDER_TOTALS +
             "FROM orders o " +
-            "LEFT JOIN order_books ob ON o.id = ob.order_id " +
+            "LEFT JOIN order_books ob ON o.id = ob.order_id AND o.date = ob.order_date " +
             "LEFT JOIN books b ON ob.book_id = b.id " +
+            "WHERE o.id = ? " +
+            "WINDOW w AS (PARTITION BY o.id)";
+    private final static String SELECT_ORDER_SUMMARIES = "SELECT o.id AS order_id, o.customer, o.date, o.status, " +
+            "t.item_count, t.total_price " +
+            "FROM orders o " + ORDER_TOTALS_LATERAL +
+            "ORDER BY o.id";
+    private final static String SELECT_ORDER_SUMMARIES_BY_DATE = "SELECT o.id AS order_id, o.customer, o.date, o.status, " +
+            "t.item_count, t.total_price " +
+            "FROM orders o " + ORDER_TOTALS_LATERAL;
+    private final static String ORDER_DATE_FROM = "o.date >= ?";
+    private final static String ORDER_DATE_TO = "o.date < ?";
+    private final static String ORDER_BY_DATE = " ORDER BY o.date, o.id";
+    private final static String ORDER_BY_ORDER_ID = "ORDER BY o.id";
+    private final static String SELECT_ORDERS_PAGE = "SELECT o.id AS order_id, o.customer, o.date, o.status, " +
+            "t.item_count, t.total_price " +
+            "FROM orders o " + ORDER_TOTALS_LATERAL +
+            "WHERE o.id > ? ORDER BY o.id LIMIT ?";
+    private final static String SELECT_ORDER_ROW_BY_ID = "SELECT o.id AS order_id, o.customer, o.date, o.status, " +
+            "t.item_count, t.total_price " +
+            "FROM orders o " + ORDER_TOTALS_LATERAL +
             "WHERE o.id = ?";
-    private final static String INSERT_INTO_ORDERS = "INSERT INTO orders (customer, date, status) VALUES (?, ?, ?)";
-    private final static String UPDATE_ORDER = "UPDATE orders SET customer = ?, date = ?, status = ? WHERE id = ?";
+    private final static String SELECT_CUSTOMER_ORDERS = "SELECT o.id AS order_id, o.customer, o.date, o.status, " +
+            "t.item_count, t.total_price " +
+            "FROM orders o " + ORDER_TOTALS_LATERAL +
+            "WHERE o.customer = ? ";
+    private final static String CUSTOMER_ORDERS_BEFORE = "AND o.date < ? ";
+    private final static String CUSTOMER_ORDERS_AFTER = "AND (o.date, o.id) < (?, ?) ";
+    private final static String CUSTOMER_ORDERS_PAGE = "ORDER BY o.date DESC, o.id DESC LIMIT ?";
+    private final static String SELECT_BOOKS_OF_ORDERS = "SELECT ob.order_id, " +
+            "b.id AS book_id, b.title, b.author, b.genre, b.price " +
+            "FROM order_books ob " +
+            "JOIN books b ON ob.book_id = b.id " +
+            "WHERE (ob.order_id, ob.order_date) IN (SELECT * FROM unnest(?::bigint[], ?::timestamp[])) " +
+            "ORDER BY ob.order_id";
+    private final static String INSERT_ORDER_WITH_BOOKS = "WITH o AS (" +
+            "INSERT INTO orders (customer, date, status) VALUES (?, ?, ?) RETURNING id, date), " +
+            "ob AS (INSERT INTO order_books (order_id, book_id, order_date) " +
+            "SELECT o.id, b.book_id, o.date FROM o, (SELECT DISTINCT unnest(?::bigint[]) AS book_id) b " +
+            "WHERE b.book_id IS NOT NULL) " +
+            "SELECT id FROM o";
+    private final static String UPDATE_ORDER_DATE_OF_BOOKS = "ob AS (UPDATE order_books ob SET order_date = u.date " +
+            "FROM u WHERE ob.order_id = u.id AND ob.order_date <> u.date) " +
+            "SELECT count(*) FROM u";
+    private final static String UPDATE_ORDER = "WITH u AS (UPDATE orders SET customer = ?, date = ?, status = ?, " +
+            "version = version + 1 WHERE id = ? RETURNING id, date), " + UPDATE_ORDER_DATE_OF_BOOKS;
+    private final static String ORDER_VERSION_TAG = "o.version || '.' || coalesce((SELECT sum(b.version) " +
+            "FROM order_books ob JOIN books b ON ob.book_id = b.id WHERE ob.order_id = o.id AND ob.order_date = o.date), 0)";
+    private final static String SELECT_ORDER_VERSION = "SELECT " + ORDER_VERSION_TAG + " AS version " +
+            "FROM orders o WHERE o.id = ?";
+    private final static String UPDATE_ORDER_IF_VERSION = "WITH u AS (UPDATE orders o SET customer = ?, date = ?, " +
+            "status = ?, version = o.version + 1 WHERE o.id = ? AND " + ORDER_VERSION_TAG + " = ? " +
+            "RETURNING o.id, o.date), " + UPDATE_ORDER_DATE_OF_BOOKS;
     private final static String DELETE_ORDER = "DELETE FROM orders WHERE id = ?";
-    private final static String INSERT_INTO_ORDER_BOOKS = "INSERT INTO order_books (order_id, book_id) VALUES (?, ?)";
-    private final static String DELETE_FROM_ORDER_BOOKS = "DELETE FROM order_books WHERE order_id = ? AND book_id = ?";
-
-    private final static String ORDER_ID_COLUMN_NAME = "order_id";
-    private final static String CUSTOMER_COLUMN_NAME = "customer";
-    private final static String DATE_COLUMN_NAME = "date";
-    private final static String STATUS_COLUMN_NAME = "status";
-    private final static String BOOK_ID_COLUMN_NAME = "book_id";
-    private final static String TITLE_COLUMN_NAME = "title";
-    private final static String AUTHOR_COLUMN_NAME = "author";
-    private final static String GENRE_COLUMN_NAME = "genre";
-    private final static String PRICE_COLUMN_NAME = "price";
+    private final static String BUMP_ORDER_VERSION = "v AS (UPDATE orders SET version = version + 1 " +
+            "WHERE id = ? AND EXISTS (SELECT 1 FROM changed)) ";
+    private final static String INSERT_INTO_ORDER_BOOKS = "WITH changed AS (" +
+            "INSERT INTO order_books (order_id, book_id, order_date) " +
+            "VALUES (?, ?, (SELECT date FROM orders WHERE id = ?)) RETURNING 1), " +
+            BUMP_ORDER_VERSION + "SELECT count(*) FROM changed";
+    private final static String DELETE_FROM_ORDER_BOOKS = "WITH changed AS (" +
+            "DELETE FROM order_books WHERE order_id = ? AND book_id = ? RETURNING 1), " +
+            BUMP_ORDER_VERSION + "SELECT count(*) FROM changed";
+    private final static String INSERT_BOOKS_INTO_ORDER = "WITH o AS (SELECT id, date FROM orders WHERE id = ?), " +
+            "b AS (SELECT DISTINCT book_id FROM unnest(?::bigint[]) AS book_id WHERE book_id IS NOT NULL), " +
+            "missing AS (SELECT count(*) AS n FROM b WHERE NOT EXISTS (SELECT 1 FROM books WHERE id = b.book_id)), " +
+            "changed AS (INSERT INTO order_books (order_id, book_id, order_date) " +
+            "SELECT o.id, b.book_id, o.date FROM o, b, missing WHERE missing.n = 0 " +
+            "ON CONFLICT DO NOTHING RETURNING 1), " +
+            BUMP_ORDER_VERSION + "SELECT (SELECT count(*) FROM o), (SELECT n FROM missing), (SELECT count(*) FROM changed)";
+    private final static String DELETE_BOOKS_FROM_ORDER = "WITH o AS (SELECT id FROM orders WHERE id = ?), " +
+            "changed AS (DELETE FROM order_books WHERE order_id = ? AND book_id = ANY(?) RETURNING 1), " +
+            BUMP_ORDER_VERSION + "SELECT (SELECT count(*) FROM o), (SELECT count(*) FROM changed)";
+    private final static String COPY_ORDERS_TO_STDOUT = "COPY (SELECT o.id AS order_id, o.customer, o.date, o.status, ob.book_id " +
+            "FROM orders o LEFT JOIN order_books ob ON o.id = ob.order_id AND o.date = ob.order_date " +
+            "ORDER BY o.id, ob.book_id) TO STDOUT (FORMAT csv, HEADER)";
 
+    private final static int STREAM_FETCH_SIZE = 500;
+    private final static int BATCH_PAGE_SIZE = 500;
 
     /**
-     * Constructs a new OrderDaoImpl with the specified DataSource.
+     * Constructs a new OrderDaoImpl with the specified DataSource, loading orders with the
+     * {@link OrderFetchStrategy#JOIN} strategy.
      *
      * @param dataSource The DataSource to be used for database connections.
      */
     public OrderDaoImpl(DataSource dataSource) {
-        this.dataSource = dataSource;
+        this(dataSource, OrderFetchStrategy.JOIN);
+    }
+
+    /**
+     * Constructs a new OrderDaoImpl with the specified DataSource and fetch strategy.
+     *
+     * @param dataSource    The DataSource to be used for database connections.
+     * @param fetchStrategy The strategy used to load orders together with their books.
+     */
+    public OrderDaoImpl(DataSource dataSource, OrderFetchStrategy fetchStrategy) {
+        this(new DataSourceRouter(dataSource), fetchStrategy);
+    }
+
+    /**
+     * Constructs a new OrderDaoImpl that runs read-only queries on the DataSource chosen by the given router,
+     * typically a read replica, and everything else on the primary.
+     *
+     * @param router        The router choosing the DataSource for each call.
+     * @param fetchStrategy The strategy used to load orders together with their books.
+     */
+    public OrderDaoImpl(DataSourceRouter router, OrderFetchStrategy fetchStrategy) {
+        this.router = router;
+        this.fetchStrategy = fetchStrategy;
     }
 
     /**
-     * Retrieves a list of all orders available in the database.
+     * Retrieves a list of all orders available in the database. With the join strategy the joined rows are
+     * sorted by order ID and folded by {@link OrderRowAggregator}, so each order appears once with all of
+     * its books. With the batch strategy orders are loaded page by page, each page followed by one query
+     * for the books of its orders.
      *
      * @return A list of Order entities, or an empty list if no orders are found.
      */
     @Override
     public List<Order> getAllOrders() {
         List<Order> orders = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
+        if (fetchStrategy == OrderFetchStrategy.BATCH) {
+            try {
+                fetchAllInBatches(orders::add);
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to get all orders", e);
+            }
+            return orders;
+        }
+        try (Connection conn = router.forRead().getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(SELECT_ALL_ORDERS)) {
+            OrderRowAggregator.aggregate(rs, orders::add);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get all orders", e);
+        }
+        return orders;
+    }
+
+    /**
+     * Retrieves all orders without their books. The item count and total price of each order are computed
+     * by a LATERAL aggregate over its order_books rows, which reads the primary key index of order_books
+     * and the books by primary key; no book rows are returned to the application.
+     *
+     * @return A list of Order entities with totals and an empty book list, or an empty list if no orders
+     * are found.
+     */
+    @Override
+    public List<Order> getOrderSummaries() {
+        List<Order> orders = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_ORDER_SUMMARIES)) {
             while (rs.next()) {
-                Order order = new Order(
-                        rs.getLong(ORDER_ID_COLUMN_NAME),
-                        rs.getString(CUSTOMER_COLUMN_NAME),
-                        rs.getTimestamp(DATE_COLUMN_NAME),
-                        rs.getString(STATUS_COLUMN_NAME));
-                orders.add(order);
-
-                if (rs.getLong(BOOK_ID_COLUMN_NAME) != 0) {
-                    Book book = new Book(
-                            rs.getLong(BOOK_ID_COLUMN_NAME),
-                            rs.getString(TITLE_COLUMN_NAME),
-                            rs.getString(AUTHOR_COLUMN_NAME),
-                            rs.getString(GENRE_COLUMN_NAME),
-                            rs.getDouble(PRICE_COLUMN_NAME)
-                    );
-                    order.getBooks().add(book);
+                orders.add(OrderRowAggregator.mapOrder(rs));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get order summaries", e);
+        }
+        return orders;
+    }
+
+    /**
+     * Retrieves the orders placed within a date range without their books, oldest first. The range is
+     * matched by plain comparisons on {@code date}, which the BRIN index on that column answers by reading
+     * only the block ranges that can hold matching orders, and which prune the partitions outside the range
+     * when orders are partitioned by month. The totals are computed by the LATERAL aggregate.
+     *
+     * @param from The first date of the range, inclusive, or null for no lower bound.
+     * @param to   The end of the range, exclusive, or null for no upper bound.
+     * @return A list of Order entities with totals and an empty book list, ordered by date and ID.
+     */
+    @Override
+    public List<Order> getOrderSummaries(Date from, Date to) {
+        StringBuilder sql = new StringBuilder(SELECT_ORDER_SUMMARIES_BY_DATE);
+        if (from != null) {
+            sql.append("WHERE ").append(ORDER_DATE_FROM);
+        }
+        if (to != null) {
+            sql.append(from == null ? "WHERE " : " AND ").append(ORDER_DATE_TO);
+        }
+        sql.append(ORDER_BY_DATE);
+        List<Order> orders = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            if (from != null) {
+                pstmt.setTimestamp(index++, new Timestamp(from.getTime()));
+            }
+            if (to != null) {
+                pstmt.setTimestamp(index, new Timestamp(to.getTime()));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    orders.add(OrderRowAggregator.mapOrder(rs));
                 }
             }
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to get all orders", e);
+            throw new RuntimeException("Failed to get order summaries by date", e);
         }
         return orders;
     }
 
+    /**
+     * Retrieves all orders with only the given fields loaded. Without the books no join is needed: only the
+     * requested columns of the orders table are selected, plus the LATERAL totals aggregate if a total is
+     * requested. With the books the orders are loaded in full by {@link #getAllOrders()}.
+     *
+     * @param fields The fields to load.
+     * @return A list of Order entities, or an empty list if no orders are found.
+     */
+    @Override
+    public List<Order> getOrders(Set<OrderField> fields) {
+        if (fields.contains(OrderField.BOOKS)) {
+            return getAllOrders();
+        }
+        StringBuilder sql = new StringBuilder("SELECT ").append(OrderField.ID.getExpression());
+        boolean totals = false;
+        for (OrderField field : fields) {
+            if (field != OrderField.ID) {
+                sql.append(", ").append(field.getExpression());
+                totals |= field.isTotal();
+            }
+        }
+        sql.append(" FROM orders o ");
+        if (totals) {
+            sql.append(ORDER_TOTALS_LATERAL);
+        }
+        sql.append(ORDER_BY_ORDER_ID);
+        List<Order> orders = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql.toString())) {
+            while (rs.next()) {
+                orders.add(OrderRowAggregator.mapFields(rs, fields));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get orders", e);
+        }
+        return orders;
+    }
+
+    /**
+     * Retrieves one page of the order history of a customer, newest first, with the ID as tie-breaker. The
+     * page after a cursor is selected by comparing (date, id) with the date and ID carried by the cursor,
+     * so it stays correct if the cursor order is deleted or its date changes in between, and every page is a single range scan of the {@code (customer, date DESC, id DESC)} index, which also
+     * holds the status and therefore answers the orders part of the query without reading the table. The
+     * totals of the page are computed by the LATERAL aggregate, once per returned order.
+     *
+     * @param customer  The customer whose orders to retrieve.
+     * @param before    Only orders placed before this date are returned, or null for no bound.
+     * @param afterDate The date of the last order of the previous page, or null for the first page.
+     * @param afterId   The ID of the last order of the previous page, or null for the first page.
+     * @param limit     The maximum number of orders to return.
+     * @return The Order entities of the page, newest first.
+     */
+    @Override
+    public List<Order> getCustomerOrders(String customer, Date before, Date afterDate, Long afterId, int limit) {
+        StringBuilder sql = new StringBuilder(SELECT_CUSTOMER_ORDERS);
+        if (before != null) {
+            sql.append(CUSTOMER_ORDERS_BEFORE);
+        }
+        if (afterId != null) {
+            sql.append(CUSTOMER_ORDERS_AFTER);
+        }
+        sql.append(CUSTOMER_ORDERS_PAGE);
+        List<Order> orders = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            pstmt.setString(index++, customer);
+            if (before != null) {
+                pstmt.setTimestamp(index++, new Timestamp(before.getTime()));
+            }
+            if (afterId != null) {
+                // A Timestamp keeps the microseconds of the column, so the cursor order itself is excluded.
+                pstmt.setTimestamp(index++, afterDate instanceof Timestamp
+                        ? (Timestamp) afterDate : new Timestamp(afterDate.getTime()));
+                pstmt.setLong(index++, afterId);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    orders.add(OrderRowAggregator.mapOrder(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get customer orders", e);
+        }
+        return orders;
+    }
+
+    /**
+     * Streams all orders available in the database to the given consumer. The query runs with autocommit
+     * disabled and a bounded fetch size, so the driver uses a server-side cursor and keeps only one batch
+     * of rows in memory. Rows arrive sorted by order ID and are folded by {@link OrderRowAggregator}, so
+     * each order is handed to the consumer as soon as all of its books have been read. With the batch
+     * strategy only one page of orders is held in memory at a time.
+     *
+     * @param consumer The consumer that receives each order together with its books.
+     */
+    @Override
+    public void streamAllOrders(Consumer<Order> consumer) {
+        if (fetchStrategy == OrderFetchStrategy.BATCH) {
+            try {
+                fetchAllInBatches(consumer);
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to stream orders", e);
+            }
+            return;
+        }
+        try (Connection conn = router.forRead().getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(SELECT_ALL_ORDERS)) {
+                pstmt.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    OrderRowAggregator.aggregate(rs, consumer);
+                }
+                conn.commit();
+            } catch (Throwable e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to stream orders", e);
+        }
+    }
+
     /**
      * Retrieves an order by its unique identifier.
      *
@@ -100,30 +395,16 @@ public class OrderDaoImpl implements OrderDao {
      */
     @Override
     public Optional<Order> getOrderById(Long id) {
-        try (Connection conn = dataSource.getConnection();
+        if (fetchStrategy == OrderFetchStrategy.BATCH) {
+            return getOrderByIdInBatch(id);
+        }
+        try (Connection conn = router.forRead().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(SELECT_ORDER_BY_ID)) {
             pstmt.setLong(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    Order order = new Order(
-                            rs.getLong(ORDER_ID_COLUMN_NAME),
-                            rs.getString(CUSTOMER_COLUMN_NAME),
-                            rs.getTimestamp(DATE_COLUMN_NAME),
-                            rs.getString(STATUS_COLUMN_NAME)
-                    );
-                    if (rs.getLong(BOOK_ID_COLUMN_NAME) != 0) {
-                        Book book = new Book(
-                                rs.getLong(BOOK_ID_COLUMN_NAME),
-                                rs.getString(TITLE_COLUMN_NAME),
-                                rs.getString(AUTHOR_COLUMN_NAME),
-                                rs.getString(GENRE_COLUMN_NAME),
-                                rs.getDouble(PRICE_COLUMN_NAME)
-                        );
-                        order.getBooks().add(book);
-                    }
-                    return Optional.of(order);
-                }
-                return Optional.empty();
+                List<Order> orders = new ArrayList<>(1);
+                OrderRowAggregator.aggregate(rs, orders::add);
+                return orders.stream().findFirst();
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to get order by id", e);
@@ -131,22 +412,50 @@ public class OrderDaoImpl implements OrderDao {
     }
 
     /**
-     * Creates a new order in the database.
+     * Retrieves the version tag of an order: the version of its row and the sum of the versions of its books.
+     * The order version is incremented by updates of the order and by every change of its set of books, and
+     * book versions only grow, so the tag changes whenever the order or one of its books does.
+     *
+     * @param id The unique identifier of the order.
+     * @return An Optional containing the version tag, or an empty Optional if the order is not found.
+     */
+    @Override
+    public Optional<String> getOrderVersion(Long id) {
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SELECT_ORDER_VERSION)) {
+            pstmt.setLong(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.of(rs.getString("version"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get order version", e);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Creates a new order in the database together with its links to the order's books. The order row
+     * and all order_books rows are inserted by one statement: a CTE inserts the order and feeds the
+     * generated ID into an INSERT ... SELECT over {@code unnest} of the book IDs, so an order with N books
+     * takes one round trip and is stored atomically. Duplicate book IDs are linked once; an unknown
+     * book ID fails the whole statement.
      *
      * @param order The Order entity to be created.
      */
     @Override
     public void createOrder(Order order) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(INSERT_INTO_ORDERS, Statement.RETURN_GENERATED_KEYS)) {
+        try (Connection conn = router.forWrite().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_ORDER_WITH_BOOKS)) {
             pstmt.setString(1, order.getCustomer());
             pstmt.setTimestamp(2, new Timestamp(order.getDate().getTime()));
             pstmt.setString(3, order.getStatus());
-            pstmt.executeUpdate();
+            pstmt.setArray(4, conn.createArrayOf("bigint", bookIds(order)));
 
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    order.setId(generatedKeys.getLong(1));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    order.setId(rs.getLong(1));
                 }
             }
         } catch (SQLException e) {
@@ -155,19 +464,64 @@ public class OrderDaoImpl implements OrderDao {
     }
 
     /**
-     * Updates an existing order in the database.
+     * Writes all orders to the given stream as CSV with a header line, one row per book of an order, and
+     * one row with an empty book_id for an order without books. The rows are produced by {@code COPY
+     * (query) TO STDOUT} in a read-only REPEATABLE READ transaction and written to the stream as the server
+     * sends them, without being mapped to entities.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    @Override
+    public long exportOrders(OutputStream out) {
+        try (Connection conn = router.forRead().getConnection()) {
+            return CopySupport.copyOut(conn, COPY_ORDERS_TO_STDOUT, out);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to export orders", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write orders export", e);
+        }
+    }
+
+    /**
+     * Updates an existing order in the database. The same statement moves the order_books rows of the order
+     * to its new date, which they carry as the partition key.
      *
      * @param order The Order entity to be updated.
      */
     @Override
     public void updateOrder(Order order) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(UPDATE_ORDER)) {
+        update(order, UPDATE_ORDER, null);
+    }
+
+    /**
+     * Updates an existing order in the database if its version tag still equals the expected one. The tag
+     * is compared in the WHERE clause of the UPDATE itself, so no lock is held between the client reading
+     * the order and writing it back. The order_books rows of the order follow its date, as above.
+     *
+     * @param order           The Order entity to be updated.
+     * @param expectedVersion The version tag the order must currently have.
+     * @return true if the order was updated, false if it is not found or its version tag differs.
+     */
+    @Override
+    public boolean updateOrder(Order order, String expectedVersion) {
+        return update(order, UPDATE_ORDER_IF_VERSION, expectedVersion) > 0;
+    }
+
+    private int update(Order order, String sql, String expectedVersion) {
+        try (Connection conn = router.forWrite().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, order.getCustomer());
             pstmt.setTimestamp(2, new Timestamp(order.getDate().getTime()));
             pstmt.setString(3, order.getStatus());
             pstmt.setLong(4, order.getId());
-            pstmt.executeUpdate();
+            if (expectedVersion != null) {
+                pstmt.setString(5, expectedVersion);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to update order", e);
         }
@@ -180,7 +534,7 @@ public class OrderDaoImpl implements OrderDao {
      */
     @Override
     public void deleteOrder(Long id) {
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = router.forWrite().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(DELETE_ORDER)) {
             pstmt.setLong(1, id);
             pstmt.executeUpdate();
@@ -197,11 +551,13 @@ public class OrderDaoImpl implements OrderDao {
      */
     @Override
     public void addBookToOrder(Long orderId, Long bookId) {
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = router.forWrite().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(INSERT_INTO_ORDER_BOOKS)) {
             pstmt.setLong(1, orderId);
             pstmt.setLong(2, bookId);
-            pstmt.executeUpdate();
+            pstmt.setLong(3, orderId);
+            pstmt.setLong(4, orderId);
+            pstmt.executeQuery().close();
         } catch (SQLException e) {
             throw new RuntimeException("Failed to add book to order", e);
         }
@@ -215,13 +571,155 @@ public class OrderDaoImpl implements OrderDao {
      */
     @Override
     public void removeBookFromOrder(Long orderId, Long bookId) {
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = router.forWrite().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(DELETE_FROM_ORDER_BOOKS)) {
             pstmt.setLong(1, orderId);
             pstmt.setLong(2, bookId);
-            pstmt.executeUpdate();
+            pstmt.setLong(3, orderId);
+            pstmt.executeQuery().close();
         } catch (SQLException e) {
             throw new RuntimeException("Failed to remove book from order", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Adds several books to an existing order with one {@code INSERT ... SELECT} over the array of book IDs.
+     * Books that are already part of the order are skipped by {@code ON CONFLICT DO NOTHING}. The same
+     * statement reports whether the order exists and how many of the book IDs are unknown; nothing is
+     * inserted unless the order exists and all books do. If any book was added, the statement also
+     * increments the version of the order.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be added.
+     * @return An Optional containing the number of books actually added, or an empty Optional if the order
+     * is not found.
+     * @throws IllegalArgumentException If any of the books does not exist.
+     */
+    @Override
+    public Optional<Integer> addBooksToOrder(Long orderId, List<Long> bookIds) {
+        try (Connection conn = router.forWrite().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_BOOKS_INTO_ORDER)) {
+            pstmt.setLong(1, orderId);
+            pstmt.setArray(2, conn.createArrayOf("bigint", bookIds.toArray()));
+            pstmt.setLong(3, orderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                if (rs.getInt(1) == 0) {
+                    return Optional.empty();
+                }
+                if (rs.getInt(2) > 0) {
+                    throw new IllegalArgumentException(rs.getInt(2) + " of the books do not exist");
+                }
+                return Optional.of(rs.getInt(3));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to add books to order", e);
+        }
+    }
+
+    /**
+     * Removes several books from an existing order with one {@code DELETE ... WHERE book_id = ANY(?)}. If any
+     * book was removed, the same statement increments the version of the order.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be removed.
+     * @return An Optional containing the number of books actually removed, or an empty Optional if the order
+     * is not found.
+     */
+    @Override
+    public Optional<Integer> removeBooksFromOrder(Long orderId, List<Long> bookIds) {
+        try (Connection conn = router.forWrite().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(DELETE_BOOKS_FROM_ORDER)) {
+            pstmt.setLong(1, orderId);
+            pstmt.setLong(2, orderId);
+            pstmt.setArray(3, conn.createArrayOf("bigint", bookIds.toArray()));
+            pstmt.setLong(4, orderId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1) == 0 ? Optional.empty() : Optional.of(rs.getInt(2));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to remove books from order", e);
+        }
+    }
+
+    private Optional<Order> getOrderByIdInBatch(Long id) {
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement orderStmt = conn.prepareStatement(SELECT_ORDER_ROW_BY_ID);
+             PreparedStatement booksStmt = conn.prepareStatement(SELECT_BOOKS_OF_ORDERS)) {
+            orderStmt.setLong(1, id);
+            Order order;
+            try (ResultSet rs = orderStmt.executeQuery()) {
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                order = OrderRowAggregator.mapOrder(rs);
+            }
+            attachBooks(conn, booksStmt, List.of(order));
+            return Optional.of(order);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get order by id", e);
+        }
+    }
+
+    private void fetchAllInBatches(Consumer<Order> consumer) throws SQLException {
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement ordersStmt = conn.prepareStatement(SELECT_ORDERS_PAGE);
+             PreparedStatement booksStmt = conn.prepareStatement(SELECT_BOOKS_OF_ORDERS)) {
+            long afterId = 0;
+            List<Order> page;
+            do {
+                page = new ArrayList<>(BATCH_PAGE_SIZE);
+                ordersStmt.setLong(1, afterId);
+                ordersStmt.setInt(2, BATCH_PAGE_SIZE);
+                try (ResultSet rs = ordersStmt.executeQuery()) {
+                    while (rs.next()) {
+                        page.add(OrderRowAggregator.mapOrder(rs));
+                    }
+                }
+                if (!page.isEmpty()) {
+                    attachBooks(conn, booksStmt, page);
+                    page.forEach(consumer);
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == BATCH_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Loads the books of the given orders with one query and adds them to the orders. The book rows are
+     * selected by (order ID, order date), so with partitioned tables only the partitions of those dates are
+     * probed. Both the orders and the book rows are sorted by order ID, so they are merged in a single pass.
+     */
+    private static void attachBooks(Connection conn, PreparedStatement booksStmt, List<Order> orders) throws SQLException {
+        Array orderIds = conn.createArrayOf("bigint", orders.stream().map(Order::getId).toArray());
+        // the dates are read with getTimestamp, which keeps the microseconds the match depends on
+        Array orderDates = conn.createArrayOf("timestamp", orders.stream().map(Order::getDate).toArray());
+        try {
+            booksStmt.setArray(1, orderIds);
+            booksStmt.setArray(2, orderDates);
+            try (ResultSet rs = booksStmt.executeQuery()) {
+                int index = 0;
+                while (rs.next()) {
+                    long orderId = OrderRowAggregator.orderId(rs);
+                    while (orders.get(index).getId() != orderId) {
+                        index++;
+                    }
+                    orders.get(index).addBook(OrderRowAggregator.mapBook(rs));
+                }
+            }
+        } finally {
+            orderIds.free();
+            orderDates.free();
+        }
+    }
+
+    private static Long[] bookIds(Order order) {
+        List<Book> books = order.getBooks() == null ? List.of() : order.getBooks();
+        Long[] ids = new Long[books.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = books.get(i) == null ? null : books.get(i).getId();
+        }
+        return ids;
+    }
+}
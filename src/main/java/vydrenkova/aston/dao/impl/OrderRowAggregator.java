@@ -0,0 +1,157 @@
+package vydrenkova.aston.dao.impl;
+
+import vydrenkova.aston.dao.OrderField;
+import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.Order;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The OrderRowAggregator class folds the rows of an {@code orders LEFT JOIN order_books LEFT JOIN books}
+ * query into Order entities in a single pass. The rows must arrive sorted by order ID, so an order is
+ * complete as soon as a row of the next order is seen. Only the order currently being built is kept in
+ * memory and no lookup table is needed: exactly one Order is allocated per order and one Book per joined
+ * book row.
+ */
+public class OrderRowAggregator {
+
+    private final static String ORDER_ID_COLUMN_NAME = "order_id";
+    private final static String CUSTOMER_COLUMN_NAME = "customer";
+    private final static String DATE_COLUMN_NAME = "date";
+    private final static String STATUS_COLUMN_NAME = "status";
+    private final static String BOOK_ID_COLUMN_NAME = "book_id";
+    private final static String TITLE_COLUMN_NAME = "title";
+    private final static String AUTHOR_COLUMN_NAME = "author";
+    private final static String GENRE_COLUMN_NAME = "genre";
+    private final static String PRICE_COLUMN_NAME = "price";
+    private final static String ITEM_COUNT_COLUMN_NAME = "item_count";
+    private final static String TOTAL_PRICE_COLUMN_NAME = "total_price";
+
+    private final Consumer<Order> consumer;
+    private Order current;
+
+    /**
+     * Constructs a new OrderRowAggregator that hands every completed order to the given consumer.
+     *
+     * @param consumer The consumer that receives each order together with all of its books.
+     */
+    public OrderRowAggregator(Consumer<Order> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Reads all remaining rows of the result set and hands every folded order to the given consumer.
+     *
+     * @param rs       The result set positioned before its first row and sorted by order ID.
+     * @param consumer The consumer that receives each order together with all of its books.
+     * @throws SQLException If a database access error occurs.
+     */
+    public static void aggregate(ResultSet rs, Consumer<Order> consumer) throws SQLException {
+        OrderRowAggregator aggregator = new OrderRowAggregator(consumer);
+        while (rs.next()) {
+            aggregator.accept(rs);
+        }
+        aggregator.finish();
+    }
+
+    /**
+     * Folds the current row of the result set into the order being built. If the row belongs to
+     * a different order, the previous order is handed to the consumer first.
+     *
+     * @param rs The result set positioned on the row to fold.
+     * @throws SQLException If a database access error occurs.
+     */
+    public void accept(ResultSet rs) throws SQLException {
+        long orderId = orderId(rs);
+        if (current == null || current.getId() != orderId) {
+            finish();
+            current = mapOrder(rs);
+        }
+        if (rs.getLong(BOOK_ID_COLUMN_NAME) != 0) {
+            current.addBook(mapBook(rs));
+        }
+    }
+
+    /**
+     * Maps the order columns of the current row, including the item_count and total_price aggregates, to
+     * a new Order entity without books.
+     *
+     * @param rs The result set positioned on the row to map.
+     * @return The mapped Order entity.
+     * @throws SQLException If a database access error occurs.
+     */
+    static Order mapOrder(ResultSet rs) throws SQLException {
+        Order order = new Order(
+                rs.getLong(ORDER_ID_COLUMN_NAME),
+                rs.getString(CUSTOMER_COLUMN_NAME),
+                rs.getTimestamp(DATE_COLUMN_NAME),
+                rs.getString(STATUS_COLUMN_NAME));
+        order.setItemCount(rs.getInt(ITEM_COUNT_COLUMN_NAME));
+        order.setTotalPrice(rs.getDouble(TOTAL_PRICE_COLUMN_NAME));
+        return order;
+    }
+
+    /**
+     * Maps the columns of the given fields of the current row to a new Order entity without books. The
+     * order ID is always mapped; the other properties of the order stay null.
+     *
+     * @param rs     The result set positioned on the row to map.
+     * @param fields The fields whose columns were selected.
+     * @return The mapped Order entity.
+     * @throws SQLException If a database access error occurs.
+     */
+    static Order mapFields(ResultSet rs, Set<OrderField> fields) throws SQLException {
+        Order order = new Order(
+                rs.getLong(ORDER_ID_COLUMN_NAME),
+                fields.contains(OrderField.CUSTOMER) ? rs.getString(CUSTOMER_COLUMN_NAME) : null,
+                fields.contains(OrderField.DATE) ? rs.getTimestamp(DATE_COLUMN_NAME) : null,
+                fields.contains(OrderField.STATUS) ? rs.getString(STATUS_COLUMN_NAME) : null);
+        if (fields.contains(OrderField.ITEM_COUNT)) {
+            order.setItemCount(rs.getInt(ITEM_COUNT_COLUMN_NAME));
+        }
+        if (fields.contains(OrderField.TOTAL_PRICE)) {
+            order.setTotalPrice(rs.getDouble(TOTAL_PRICE_COLUMN_NAME));
+        }
+        return order;
+    }
+
+    /**
+     * Maps the book columns of the current row to a new Book entity.
+     *
+     * @param rs The result set positioned on the row to map.
+     * @return The mapped Book entity.
+     * @throws SQLException If a database access error occurs.
+     */
+    static Book mapBook(ResultSet rs) throws SQLException {
+        return new Book(
+                rs.getLong(BOOK_ID_COLUMN_NAME),
+                rs.getString(TITLE_COLUMN_NAME),
+                rs.getString(AUTHOR_COLUMN_NAME),
+                rs.getString(GENRE_COLUMN_NAME),
+                rs.getDouble(PRICE_COLUMN_NAME));
+    }
+
+    /**
+     * Returns the order ID of the current row.
+     *
+     * @param rs The result set positioned on the row.
+     * @return The value of the order ID column.
+     * @throws SQLException If a database access error occurs.
+     */
+    static long orderId(ResultSet rs) throws SQLException {
+        return rs.getLong(ORDER_ID_COLUMN_NAME);
+    }
+
+    /**
+     * Hands the order being built, if any, to the consumer. Must be called after the last row.
+     */
+    public void finish() {
+        if (current != null) {
+            consumer.accept(current);
+            current = null;
+        }
+    }
+}
@@ -1,44 +1,119 @@
 package vydrenkova.aston.dao.impl;
 
+import vydrenkova.aston.dao.DataSourceRouter;
 import vydrenkova.aston.dao.ReviewDao;
 import vydrenkova.aston.entities.Book;
 import vydrenkova.aston.entities.Review;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * The ReviewDaoImpl class is an implementation of the ReviewDao interface. It provides concrete
  * implementations for data access operations related to Review entities using a DataSource
  * to interact with the underlying database.
+ * <p>
+ * Reviews are read from the reviews table alone, with books that hold only their ID. If the books are
+ * requested, the distinct books of the loaded reviews are read afterwards with one {@code WHERE id = ANY(?)}
+ * query instead of being joined to every review row.
+ * <p>
+ * Every write also updates the {@code book_rating_stats} row of the affected book in the same transaction,
+ * adding the review to or removing it from the count, the sum and the histogram of ratings, so the summary
+ * always matches the reviews without ever being recomputed from them.
  */
 public class ReviewDaoImpl implements ReviewDao {
 
-    private final DataSource dataSource;
-
-    private final static String SELECT_ALL_FROM_REVIEWS = "SELECT r.id, r.book_id, r.reviewer, r.rating, r.text, " +
-            "b.title, b.author, b.genre, b.price " +
-            "FROM reviews r " +
-            "JOIN books b ON r.book_id = b.id";
-    private final static String SELECT_REVIEW_BY_ID = "SELECT r.id, r.book_id, r.reviewer, r.rating, r.text, " +
-            "b.title, b.author, b.genre, b.price " +
-            "FROM reviews r " +
-            "JOIN books b ON r.book_id = b.id " +
-            "WHERE r.id = ?";
+    private final DataSourceRouter router;
+
+    private final static String SELECT_ALL_FROM_REVIEWS = "SELECT r.id, r.book_id, r.reviewer, r.rating, r.text " +
+            "FROM reviews r";
+    private final static String SELECT_REVIEW_BY_ID = SELECT_ALL_FROM_REVIEWS + " WHERE r.id = ?";
+    private final static String SEARCH_REVIEWS = "SELECT r.id, r.book_id, r.reviewer, r.rating, r.text, " +
+            "ts_rank(r.text_tsv, q) AS rank " +
+            "FROM reviews r, " +
+            "websearch_to_tsquery('english', ?) q " +
+            "WHERE r.text_tsv @@ q ";
+    private final static String SEARCH_REVIEWS_FIRST_PAGE = SEARCH_REVIEWS +
+            "ORDER BY ts_rank(r.text_tsv, q) DESC, r.id DESC LIMIT ?";
+    private final static String SEARCH_REVIEWS_AFTER = SEARCH_REVIEWS +
+            "AND (ts_rank(r.text_tsv, q), r.id) < (?, ?) " +
+            "ORDER BY ts_rank(r.text_tsv, q) DESC, r.id DESC LIMIT ?";
+    private final static String SELECT_REVIEWS_BY_BOOK_ID_FIRST_PAGE = SELECT_ALL_FROM_REVIEWS +
+            " WHERE r.book_id = ? ORDER BY r.id LIMIT ?";
+    private final static String SELECT_REVIEWS_BY_BOOK_ID_AFTER = SELECT_ALL_FROM_REVIEWS +
+            " WHERE r.book_id = ? AND r.id > ? ORDER BY r.id LIMIT ?";
+    private final static String SELECT_BOOKS_BY_IDS = "SELECT id, title, author, genre, price FROM books " +
+            "WHERE id = ANY(?)";
     private final static String INSERT_INTO_REVIEWS = "INSERT INTO reviews (book_id, reviewer, rating, text) " +
             "VALUES (?, ?, ?, ?)";
-    private final static String UPDATE_REVIEW = "UPDATE reviews SET book_id = ?, reviewer = ?, rating = ?, text = ? " +
-            "WHERE id = ?";
-    private final static String DELETE_FROM_REVIEW = "DELETE FROM reviews WHERE id = ?";
+    private final static String CREATE_REVIEW_IMPORT_TABLE = "CREATE TEMP TABLE review_import " +
+            "(book_id BIGINT, reviewer VARCHAR(255), rating INT, text TEXT) ON COMMIT DROP";
+    private final static String COPY_INTO_REVIEW_IMPORT = "COPY review_import (book_id, reviewer, rating, text) " +
+            "FROM STDIN (FORMAT csv)";
+    private final static String INSERT_INTO_REVIEWS_FROM_IMPORT = "INSERT INTO reviews (book_id, reviewer, rating, text) " +
+            "SELECT i.book_id, i.reviewer, i.rating, i.text " +
+            "FROM review_import i " +
+            "JOIN books b ON i.book_id = b.id";
+    private final static String UPDATE_REVIEW = "UPDATE reviews SET book_id = ?, reviewer = ?, rating = ?, text = ?, " +
+            "version = version + 1 WHERE id = ?";
+    private final static String REVIEW_VERSION_TAG = "r.version || '.' || " +
+            "coalesce((SELECT b.version FROM books b WHERE b.id = r.book_id), 0)";
+    private final static String SELECT_REVIEW_VERSION = "SELECT " + REVIEW_VERSION_TAG + " AS version " +
+            "FROM reviews r WHERE r.id = ?";
+    private final static String UPDATE_REVIEW_IF_VERSION = "UPDATE reviews r SET book_id = ?, reviewer = ?, rating = ?, " +
+            "text = ?, version = r.version + 1 WHERE r.id = ? AND " + REVIEW_VERSION_TAG + " = ?";
+    private final static String SELECT_REVIEW_RATING_FOR_UPDATE = "SELECT book_id, rating FROM reviews WHERE id = ? FOR UPDATE";
+    private final static String DELETE_FROM_REVIEW = "DELETE FROM reviews WHERE id = ? RETURNING book_id, rating";
+    private final static String ADD_TO_RATING_STATS = "ON CONFLICT (book_id) DO UPDATE SET " +
+            "review_count = s.review_count + EXCLUDED.review_count, " +
+            "rating_sum = s.rating_sum + EXCLUDED.rating_sum, " +
+            "rating_1 = s.rating_1 + EXCLUDED.rating_1, " +
+            "rating_2 = s.rating_2 + EXCLUDED.rating_2, " +
+            "rating_3 = s.rating_3 + EXCLUDED.rating_3, " +
+            "rating_4 = s.rating_4 + EXCLUDED.rating_4, " +
+            "rating_5 = s.rating_5 + EXCLUDED.rating_5, " +
+            "version = s.version + 1";
+    private final static String UPSERT_RATING_STATS = "INSERT INTO book_rating_stats AS s " +
+            "(book_id, review_count, rating_sum, rating_1, rating_2, rating_3, rating_4, rating_5) " +
+            "SELECT d.book_id, d.delta, d.delta * d.rating, " +
+            "CASE WHEN d.rating = 1 THEN d.delta ELSE 0 END, " +
+            "CASE WHEN d.rating = 2 THEN d.delta ELSE 0 END, " +
+            "CASE WHEN d.rating = 3 THEN d.delta ELSE 0 END, " +
+            "CASE WHEN d.rating = 4 THEN d.delta ELSE 0 END, " +
+            "CASE WHEN d.rating = 5 THEN d.delta ELSE 0 END " +
+            "FROM (VALUES (?::bigint, ?::int, ?::int)) AS d (book_id, delta, rating) " +
+            ADD_TO_RATING_STATS;
+    private final static String UPSERT_RATING_STATS_FROM_IMPORT = "INSERT INTO book_rating_stats AS s " +
+            "(book_id, review_count, rating_sum, rating_1, rating_2, rating_3, rating_4, rating_5) " +
+            "SELECT i.book_id, count(*), sum(i.rating), " +
+            "count(*) FILTER (WHERE i.rating = 1), " +
+            "count(*) FILTER (WHERE i.rating = 2), " +
+            "count(*) FILTER (WHERE i.rating = 3), " +
+            "count(*) FILTER (WHERE i.rating = 4), " +
+            "count(*) FILTER (WHERE i.rating = 5) " +
+            "FROM review_import i " +
+            "JOIN books b ON i.book_id = b.id " +
+            "GROUP BY i.book_id " +
+            "ORDER BY i.book_id " +
+            ADD_TO_RATING_STATS;
+    private final static String COPY_REVIEWS_TO_STDOUT = "COPY (SELECT id, book_id, reviewer, rating, text FROM reviews ORDER BY id) " +
+            "TO STDOUT (FORMAT csv, HEADER)";
 
     private final static String ID_COLUMN_NAME = "id";
     private final static String REVIEWER_COLUMN_NAME = "reviewer";
     private final static String RATING_COLUMN_NAME = "rating";
     private final static String TEXT_COLUMN_NAME = "text";
     private final static String BOOK_ID_COLUMN_NAME = "book_id";
+    private final static String RANK_COLUMN_NAME = "rank";
     private final static String TITLE_COLUMN_NAME = "title";
     private final static String AUTHOR_COLUMN_NAME = "author";
     private final static String GENRE_COLUMN_NAME = "genre";
@@ -50,36 +125,38 @@ public class ReviewDaoImpl implements ReviewDao {
      * @param dataSource The DataSource to be used for database connections.
      */
     public ReviewDaoImpl(DataSource dataSource) {
-        this.dataSource = dataSource;
+        this(new DataSourceRouter(dataSource));
+    }
+
+    /**
+     * Constructs a new ReviewDaoImpl that runs read-only queries on the DataSource chosen by the given router,
+     * typically a read replica, and everything else on the primary.
+     *
+     * @param router The router choosing the DataSource for each call.
+     */
+    public ReviewDaoImpl(DataSourceRouter router) {
+        this.router = router;
     }
 
     /**
-     * Retrieves a list of all reviews available in the database.
+     * Retrieves a list of all reviews available in the database. Only the reviews table is queried; with
+     * {@code withBooks} the distinct books of the reviews are then loaded with one query.
      *
+     * @param withBooks Whether to load the books of the reviews; otherwise each book holds only its ID.
      * @return A list of Review entities, or an empty list if no reviews are found.
      */
     @Override
-    public List<Review> getAllReviews() {
+    public List<Review> getAllReviews(boolean withBooks) {
         List<Review> reviews = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(SELECT_ALL_FROM_REVIEWS)) {
-            while (rs.next()) {
-                Book book = new Book(
-                        rs.getLong(BOOK_ID_COLUMN_NAME),
-                        rs.getString(TITLE_COLUMN_NAME),
-                        rs.getString(AUTHOR_COLUMN_NAME),
-                        rs.getString(GENRE_COLUMN_NAME),
-                        rs.getDouble(PRICE_COLUMN_NAME)
-                );
-                Review review = new Review(
-                        rs.getLong(ID_COLUMN_NAME),
-                        book,
-                        rs.getString(REVIEWER_COLUMN_NAME),
-                        rs.getInt(RATING_COLUMN_NAME),
-                        rs.getString(TEXT_COLUMN_NAME)
-                );
-                reviews.add(review);
+        try (Connection conn = router.forRead().getConnection()) {
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(SELECT_ALL_FROM_REVIEWS)) {
+                while (rs.next()) {
+                    reviews.add(mapReview(rs));
+                }
+            }
+            if (withBooks) {
+                attachBooks(conn, reviews);
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to get all reviews", e);
@@ -90,38 +167,133 @@ public class ReviewDaoImpl implements ReviewDao {
     /**
      * Retrieves a review by its unique identifier.
      *
-     * @param id The unique identifier of the review.
+     * @param id       The unique identifier of the review.
+     * @param withBook Whether to load the book of the review; otherwise the book holds only its ID.
      * @return An Optional containing the Review entity if found, or an empty Optional if not found.
      */
     @Override
-    public Optional<Review> getReviewById(Long id) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(SELECT_REVIEW_BY_ID)) {
+    public Optional<Review> getReviewById(Long id, boolean withBook) {
+        try (Connection conn = router.forRead().getConnection()) {
+            Review review;
+            try (PreparedStatement pstmt = conn.prepareStatement(SELECT_REVIEW_BY_ID)) {
+                pstmt.setLong(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return Optional.empty();
+                    }
+                    review = mapReview(rs);
+                }
+            }
+            if (withBook) {
+                attachBooks(conn, List.of(review));
+            }
+            return Optional.of(review);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get review by id", e);
+        }
+    }
+
+    /**
+     * Retrieves the version tag of a review: the version of its row and the version of its book, which
+     * together change whenever the review or the book embedded in it is updated.
+     *
+     * @param id The unique identifier of the review.
+     * @return An Optional containing the version tag, or an empty Optional if the review is not found.
+     */
+    @Override
+    public Optional<String> getReviewVersion(Long id) {
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(SELECT_REVIEW_VERSION)) {
             pstmt.setLong(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    Book book = new Book(
-                            rs.getLong(BOOK_ID_COLUMN_NAME),
-                            rs.getString(TITLE_COLUMN_NAME),
-                            rs.getString(AUTHOR_COLUMN_NAME),
-                            rs.getString(GENRE_COLUMN_NAME),
-                            rs.getDouble(PRICE_COLUMN_NAME)
-                    );
-                    return Optional.of(new Review(
-                            rs.getLong(ID_COLUMN_NAME),
-                            book,
-                            rs.getString(REVIEWER_COLUMN_NAME),
-                            rs.getInt(RATING_COLUMN_NAME),
-                            rs.getString(TEXT_COLUMN_NAME)
-                    ));
+                    return Optional.of(rs.getString("version"));
                 }
             }
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to get review by id", e);
+            throw new RuntimeException("Failed to get review version", e);
         }
         return Optional.empty();
     }
 
+    /**
+     * Searches the text of the reviews. The query is parsed with {@code websearch_to_tsquery}, so any user
+     * input is accepted (quoted phrases, {@code or}, {@code -word}) and matched against the generated
+     * {@code text_tsv} column through its GIN index. Reviews are ordered by {@code ts_rank}, best match
+     * first, with the ID as tie-breaker; the page after a cursor is selected by comparing (rank, id) with
+     * the rank and ID carried in the cursor, so it does not depend on the cursor review still existing.
+     * With {@code withBooks} the books of the page are loaded
+     * afterwards with one query.
+     *
+     * @param query     The search query.
+     * @param afterRank The rank of the last review of the previous page, or null for the first page.
+     * @param afterId   The ID of the last review of the previous page, or null for the first page.
+     * @param limit     The maximum number of reviews to return.
+     * @param withBooks Whether to load the books of the reviews; otherwise each book holds only its ID.
+     * @return The matching Review entities with their ranks, best match first.
+     */
+    @Override
+    public List<Review> searchReviews(String query, Float afterRank, Long afterId, int limit, boolean withBooks) {
+        List<Review> reviews = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(afterId == null ? SEARCH_REVIEWS_FIRST_PAGE : SEARCH_REVIEWS_AFTER)) {
+                int index = 1;
+                pstmt.setString(index++, query);
+                if (afterId != null) {
+                    pstmt.setFloat(index++, afterRank);
+                    pstmt.setLong(index++, afterId);
+                }
+                pstmt.setInt(index, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Review review = mapReview(rs);
+                        review.setRank(rs.getFloat(RANK_COLUMN_NAME));
+                        reviews.add(review);
+                    }
+                }
+            }
+            if (withBooks) {
+                attachBooks(conn, reviews);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to search reviews", e);
+        }
+        return reviews;
+    }
+
+    /**
+     * Retrieves one page of the reviews of a book. The page is selected with {@code WHERE book_id = ?} and,
+     * after a cursor, {@code AND id > ?}, ordered by ID, so it is a single range scan of the
+     * {@code (book_id, id)} index followed by LIMIT, however many reviews the book has.
+     *
+     * @param bookId  The unique identifier of the book.
+     * @param afterId The ID of the last review of the previous page, or null for the first page.
+     * @param limit   The maximum number of reviews to return.
+     * @return The Review entities of the page, ordered by ID.
+     */
+    @Override
+    public List<Review> getReviewsByBookId(Long bookId, Long afterId, int limit) {
+        List<Review> reviews = new ArrayList<>();
+        try (Connection conn = router.forRead().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(afterId == null
+                     ? SELECT_REVIEWS_BY_BOOK_ID_FIRST_PAGE : SELECT_REVIEWS_BY_BOOK_ID_AFTER)) {
+            int index = 1;
+            pstmt.setLong(index++, bookId);
+            if (afterId != null) {
+                pstmt.setLong(index++, afterId);
+            }
+            pstmt.setInt(index, limit);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    reviews.add(mapReview(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to get reviews by book id", e);
+        }
+        return reviews;
+    }
+
     /**
      * Creates a new review in the database.
      *
@@ -129,42 +301,122 @@ public class ReviewDaoImpl implements ReviewDao {
      */
     @Override
     public void createReview(Review review) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(INSERT_INTO_REVIEWS, Statement.RETURN_GENERATED_KEYS)) {
-            pstmt.setLong(1, review.getBook().getId());
-            pstmt.setString(2, review.getReviewer());
-            pstmt.setInt(3, review.getRating());
-            pstmt.setString(4, review.getText());
-            pstmt.executeUpdate();
-
-            try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    review.setId(generatedKeys.getLong(1));
+        inTransaction("Failed to create review", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_INTO_REVIEWS, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement stats = conn.prepareStatement(UPSERT_RATING_STATS)) {
+                pstmt.setLong(1, review.getBook().getId());
+                pstmt.setString(2, review.getReviewer());
+                pstmt.setInt(3, review.getRating());
+                pstmt.setString(4, review.getText());
+                pstmt.executeUpdate();
+
+                try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        review.setId(generatedKeys.getLong(1));
+                    }
                 }
+                addRatingDelta(stats, review.getBook().getId(), 1, review.getRating());
+                stats.executeBatch();
             }
+            return null;
+        });
+    }
+
+    /**
+     * Bulk-loads the given reviews into the database. The rows are streamed with
+     * {@code COPY ... FROM STDIN} into a temporary staging table and then moved into {@code reviews}
+     * with one INSERT ... SELECT that skips reviews of unknown books instead of failing the whole load
+     * on the foreign key. The rating summary of every affected book is then updated with one aggregated
+     * upsert from the staging table. Everything runs in one transaction.
+     *
+     * @param reviews The Review entities to be loaded, consumed lazily.
+     * @return The number of reviews loaded.
+     */
+    @Override
+    public long copyReviews(Iterator<Review> reviews) {
+        return inTransaction("Failed to copy reviews", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(CREATE_REVIEW_IMPORT_TABLE);
+                CopySupport.copyIn(conn, COPY_INTO_REVIEW_IMPORT, reviews, review -> new Object[]{
+                        review.getBook().getId(), review.getReviewer(), review.getRating(), review.getText()});
+                long inserted = stmt.executeUpdate(INSERT_INTO_REVIEWS_FROM_IMPORT);
+                stmt.executeUpdate(UPSERT_RATING_STATS_FROM_IMPORT);
+                return inserted;
+            }
+        });
+    }
+
+    /**
+     * Writes all reviews to the given stream as CSV with a header line, one row per review. The rows are
+     * produced by {@code COPY (query) TO STDOUT} in a read-only REPEATABLE READ transaction and written to
+     * the stream as the server sends them, without being mapped to entities.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    @Override
+    public long exportReviews(OutputStream out) {
+        try (Connection conn = router.forRead().getConnection()) {
+            return CopySupport.copyOut(conn, COPY_REVIEWS_TO_STDOUT, out);
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to create review", e);
+            throw new RuntimeException("Failed to export reviews", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write reviews export", e);
         }
     }
 
     /**
-     * Updates an existing review in the database.
+     * Updates an existing review in the database. The current book and rating of the review are read
+     * under a row lock first, so that its old rating can be taken out of the summary of its old book.
      *
      * @param review The Review entity to be updated.
      */
     @Override
     public void updateReview(Review review) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(UPDATE_REVIEW)) {
-            pstmt.setLong(1, review.getBook().getId());
-            pstmt.setString(2, review.getReviewer());
-            pstmt.setInt(3, review.getRating());
-            pstmt.setString(4, review.getText());
-            pstmt.setLong(5, review.getId());
-            pstmt.executeUpdate();
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to update review", e);
-        }
+        update(review, UPDATE_REVIEW, null);
+    }
+
+    /**
+     * Updates an existing review in the database if its version tag still equals the expected one. The tag
+     * is compared in the WHERE clause of the UPDATE itself; the rating summaries are only changed if the
+     * review was updated.
+     *
+     * @param review          The Review entity to be updated.
+     * @param expectedVersion The version tag the review must currently have.
+     * @return true if the review was updated, false if it is not found or its version tag differs.
+     */
+    @Override
+    public boolean updateReview(Review review, String expectedVersion) {
+        return update(review, UPDATE_REVIEW_IF_VERSION, expectedVersion);
+    }
+
+    private boolean update(Review review, String sql, String expectedVersion) {
+        return inTransaction("Failed to update review", conn -> {
+            try (PreparedStatement select = conn.prepareStatement(SELECT_REVIEW_RATING_FOR_UPDATE);
+                 PreparedStatement pstmt = conn.prepareStatement(sql);
+                 PreparedStatement stats = conn.prepareStatement(UPSERT_RATING_STATS)) {
+                select.setLong(1, review.getId());
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        addRatingDelta(stats, rs.getLong(BOOK_ID_COLUMN_NAME), -1, rs.getInt(RATING_COLUMN_NAME));
+                    }
+                }
+                pstmt.setLong(1, review.getBook().getId());
+                pstmt.setString(2, review.getReviewer());
+                pstmt.setInt(3, review.getRating());
+                pstmt.setString(4, review.getText());
+                pstmt.setLong(5, review.getId());
+                if (expectedVersion != null) {
+                    pstmt.setString(6, expectedVersion);
+                }
+                if (pstmt.executeUpdate() > 0) {
+                    addRatingDelta(stats, review.getBook().getId(), 1, review.getRating());
+                    stats.executeBatch();
+                    return true;
+                }
+                return false;
+            }
+        });
     }
 
     /**
@@ -174,12 +426,99 @@ public class ReviewDaoImpl implements ReviewDao {
      */
     @Override
     public void deleteReview(Long id) {
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(DELETE_FROM_REVIEW)) {
-            pstmt.setLong(1, id);
-            pstmt.executeUpdate();
+        inTransaction("Failed to delete review", conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(DELETE_FROM_REVIEW);
+                 PreparedStatement stats = conn.prepareStatement(UPSERT_RATING_STATS)) {
+                pstmt.setLong(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        addRatingDelta(stats, rs.getLong(BOOK_ID_COLUMN_NAME), -1, rs.getInt(RATING_COLUMN_NAME));
+                        stats.executeBatch();
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs the given work in a transaction on a new connection, rolling it back if the work fails.
+     */
+    private <T> T inTransaction(String errorMessage, TransactionWork<T> work) {
+        try (Connection conn = router.forWrite().getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                T result = work.execute(conn);
+                conn.commit();
+                return result;
+            } catch (Throwable e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to delete review", e);
+            throw new RuntimeException(errorMessage, e);
         }
     }
-}
\ No newline at end of file
+
+    private static void addRatingDelta(PreparedStatement stats, long bookId, int delta, int rating) throws SQLException {
+        stats.setLong(1, bookId);
+        stats.setInt(2, delta);
+        stats.setInt(3, rating);
+        stats.addBatch();
+    }
+
+    /**
+     * Loads the books of the given reviews with one query, reading each distinct book once however many of
+     * the reviews belong to it, and replaces the ID-only books of the reviews with them.
+     */
+    private static void attachBooks(Connection conn, List<Review> reviews) throws SQLException {
+        if (reviews.isEmpty()) {
+            return;
+        }
+        Array bookIds = conn.createArrayOf("bigint",
+                reviews.stream().map(review -> review.getBook().getId()).distinct().toArray());
+        Map<Long, Book> books = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(SELECT_BOOKS_BY_IDS)) {
+            pstmt.setArray(1, bookIds);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Book book = new Book(
+                            rs.getLong(ID_COLUMN_NAME),
+                            rs.getString(TITLE_COLUMN_NAME),
+                            rs.getString(AUTHOR_COLUMN_NAME),
+                            rs.getString(GENRE_COLUMN_NAME),
+                            rs.getDouble(PRICE_COLUMN_NAME)
+                    );
+                    books.put(book.getId(), book);
+                }
+            }
+        } finally {
+            bookIds.free();
+        }
+        for (Review review : reviews) {
+            Book book = books.get(review.getBook().getId());
+            if (book != null) {
+                review.setBook(book);
+            }
+        }
+    }
+
+    private static Review mapReview(ResultSet rs) throws SQLException {
+        Book book = new Book(rs.getLong(BOOK_ID_COLUMN_NAME), null, null, null, null);
+        return new Review(
+                rs.getLong(ID_COLUMN_NAME),
+                book,
+                rs.getString(REVIEWER_COLUMN_NAME),
+                rs.getInt(RATING_COLUMN_NAME),
+                rs.getString(TEXT_COLUMN_NAME)
+        );
+    }
+
+    @FunctionalInterface
+    private interface TransactionWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+}
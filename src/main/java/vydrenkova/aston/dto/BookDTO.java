@@ -1,11 +1,15 @@
 package vydrenkova.aston.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 public class BookDTO {
     private Long id;
     private String title;
     private String author;
     private String genre;
     private Double price;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private BookRatingDTO rating;
 
     public BookDTO(Long id, String title, String author, String genre, Double price) {
         this.id = id;
@@ -58,6 +62,14 @@ public class BookDTO {
         this.price = price;
     }
 
+    public BookRatingDTO getRating() {
+        return rating;
+    }
+
+    public void setRating(BookRatingDTO rating) {
+        this.rating = rating;
+    }
+
     @Override
     public String toString() {
         return "BookDTO{" +
@@ -66,6 +78,7 @@ public class BookDTO {
                 ", author='" + author + '\'' +
                 ", genre='" + genre + '\'' +
                 ", price=" + price +
+                ", rating=" + rating +
                 '}';
     }
 }
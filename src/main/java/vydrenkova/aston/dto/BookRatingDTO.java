@@ -0,0 +1,62 @@
+package vydrenkova.aston.dto;
+
+import java.util.Map;
+
+public class BookRatingDTO {
+    private Long bookId;
+    private long reviewCount;
+    private Double averageRating;
+    private Map<Integer, Long> histogram;
+
+    public BookRatingDTO(Long bookId, long reviewCount, Double averageRating, Map<Integer, Long> histogram) {
+        this.bookId = bookId;
+        this.reviewCount = reviewCount;
+        this.averageRating = averageRating;
+        this.histogram = histogram;
+    }
+
+    public BookRatingDTO() {
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+
+    public long getReviewCount() {
+        return reviewCount;
+    }
+
+    public void setReviewCount(long reviewCount) {
+        this.reviewCount = reviewCount;
+    }
+
+    public Double getAverageRating() {
+        return averageRating;
+    }
+
+    public void setAverageRating(Double averageRating) {
+        this.averageRating = averageRating;
+    }
+
+    public Map<Integer, Long> getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(Map<Integer, Long> histogram) {
+        this.histogram = histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "BookRatingDTO{" +
+                "bookId=" + bookId +
+                ", reviewCount=" + reviewCount +
+                ", averageRating=" + averageRating +
+                ", histogram=" + histogram +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+package vydrenkova.aston.dto;
+
+
+public class ImportResultDTO {
+    private long importedRows;
+    private long rejectedRows;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+
+    public ImportResultDTO(long importedRows, long rejectedRows, long elapsedMillis) {
+        this.importedRows = importedRows;
+        this.rejectedRows = rejectedRows;
+        this.elapsedMillis = elapsedMillis;
+        this.rowsPerSecond = elapsedMillis > 0 ? importedRows * 1000.0 / elapsedMillis : importedRows;
+    }
+
+    public ImportResultDTO() {
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public void setImportedRows(long importedRows) {
+        this.importedRows = importedRows;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    public void setRejectedRows(long rejectedRows) {
+        this.rejectedRows = rejectedRows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResultDTO{" +
+                "importedRows=" + importedRows +
+                ", rejectedRows=" + rejectedRows +
+                ", elapsedMillis=" + elapsedMillis +
+                ", rowsPerSecond=" + rowsPerSecond +
+                '}';
+    }
+}
@@ -1,5 +1,7 @@
 package vydrenkova.aston.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 
 import java.util.Date;
 import java.util.List;
@@ -9,7 +11,12 @@ public class OrderDTO {
     private String customer;
     private Date date;
     private String status;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<BookDTO> books;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double totalPrice;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer itemCount;
 
     public OrderDTO(Long id, String customer, Date date, String status, List<BookDTO> books) {
         this.id = id;
@@ -69,6 +76,22 @@ public class OrderDTO {
         this.books = books;
     }
 
+    public Double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public void setTotalPrice(Double totalPrice) {
+        this.totalPrice = totalPrice;
+    }
+
+    public Integer getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Integer itemCount) {
+        this.itemCount = itemCount;
+    }
+
     @Override
     public String toString() {
         return "OrderDTO{" +
@@ -77,6 +100,8 @@ public class OrderDTO {
                 ", date=" + date +
                 ", status='" + status + '\'' +
                 ", books=" + books +
+                ", totalPrice=" + totalPrice +
+                ", itemCount=" + itemCount +
                 '}';
     }
 }
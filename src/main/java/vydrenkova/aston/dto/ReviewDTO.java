@@ -1,12 +1,17 @@
 package vydrenkova.aston.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 public class ReviewDTO {
     private Long id;
+    private Long bookId;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private BookDTO book;
     private String reviewer;
     private Integer rating;
     private String text;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Float rank;
 
     public ReviewDTO(Long id, BookDTO book, String reviewer, Integer rating, String text) {
         this.id = id;
@@ -27,6 +32,14 @@ public class ReviewDTO {
         this.id = id;
     }
 
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+
     public BookDTO getBook() {
         return book;
     }
@@ -59,14 +72,24 @@ public class ReviewDTO {
         this.text = text;
     }
 
+    public Float getRank() {
+        return rank;
+    }
+
+    public void setRank(Float rank) {
+        this.rank = rank;
+    }
+
     @Override
     public String toString() {
         return "ReviewDTO{" +
                 "id=" + id +
+                ", bookId=" + bookId +
                 ", book=" + book +
                 ", reviewer='" + reviewer + '\'' +
                 ", rating=" + rating +
                 ", text='" + text + '\'' +
+                ", rank=" + rank +
                 '}';
     }
 }
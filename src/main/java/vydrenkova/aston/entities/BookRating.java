@@ -0,0 +1,80 @@
+package vydrenkova.aston.entities;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+public class BookRating {
+
+    private Long bookId;
+    private long reviewCount;
+    private long ratingSum;
+    private long[] ratingCounts;
+
+    public BookRating(Long bookId, long reviewCount, long ratingSum, long[] ratingCounts) {
+        this.bookId = bookId;
+        this.reviewCount = reviewCount;
+        this.ratingSum = ratingSum;
+        this.ratingCounts = ratingCounts;
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public void setBookId(Long bookId) {
+        this.bookId = bookId;
+    }
+
+    public long getReviewCount() {
+        return reviewCount;
+    }
+
+    public void setReviewCount(long reviewCount) {
+        this.reviewCount = reviewCount;
+    }
+
+    public long getRatingSum() {
+        return ratingSum;
+    }
+
+    public void setRatingSum(long ratingSum) {
+        this.ratingSum = ratingSum;
+    }
+
+    /**
+     * Returns the number of reviews per rating: element 0 holds the number of reviews rated 1,
+     * element 4 the number of reviews rated 5.
+     *
+     * @return The rating histogram.
+     */
+    public long[] getRatingCounts() {
+        return ratingCounts;
+    }
+
+    public void setRatingCounts(long[] ratingCounts) {
+        this.ratingCounts = ratingCounts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BookRating that = (BookRating) o;
+        return reviewCount == that.reviewCount && ratingSum == that.ratingSum && Objects.equals(bookId, that.bookId) && Arrays.equals(ratingCounts, that.ratingCounts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(bookId, reviewCount, ratingSum) + Arrays.hashCode(ratingCounts);
+    }
+
+    @Override
+    public String toString() {
+        return "BookRating{" +
+                "bookId=" + bookId +
+                ", reviewCount=" + reviewCount +
+                ", ratingSum=" + ratingSum +
+                ", ratingCounts=" + Arrays.toString(ratingCounts) +
+                '}';
+    }
+}
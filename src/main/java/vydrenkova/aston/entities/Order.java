@@ -11,6 +11,8 @@ public class Order {
     private Date date;
     private String status;
     private List<Book> books;
+    private Double totalPrice;
+    private Integer itemCount;
 
     public Order(Long id, String customer, Date date, String status) {
         this.id = id;
@@ -64,6 +66,33 @@ public class Order {
         this.books = books;
     }
 
+    /**
+     * Returns the sum of the prices of the order's books, as computed by the data store when the order was
+     * loaded. Like {@link #getItemCount()}, it is derived from the books and not part of equality.
+     *
+     * @return The total price, or null if the order was not loaded from the data store.
+     */
+    public Double getTotalPrice() {
+        return totalPrice;
+    }
+
+    public void setTotalPrice(Double totalPrice) {
+        this.totalPrice = totalPrice;
+    }
+
+    /**
+     * Returns the number of books in the order, as computed by the data store when the order was loaded.
+     *
+     * @return The number of books, or null if the order was not loaded from the data store.
+     */
+    public Integer getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Integer itemCount) {
+        this.itemCount = itemCount;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -85,6 +114,8 @@ public class Order {
                 ", date=" + date +
                 ", status='" + status + '\'' +
                 ", books=" + books +
+                ", totalPrice=" + totalPrice +
+                ", itemCount=" + itemCount +
                 '}';
     }
 }
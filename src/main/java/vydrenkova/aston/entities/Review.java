@@ -8,6 +8,7 @@ public class Review {
     private String reviewer;
     private Integer rating;
     private String text;
+    private Float rank;
 
     public Review(Long id, Book book, String reviewer, Integer rating, String text) {
         this.id = id;
@@ -57,6 +58,20 @@ public class Review {
         this.text = text;
     }
 
+    /**
+     * Returns the search rank of the review. It is set only on the results of a text search and is not part
+     * of the review itself, so it is left out of equals and hashCode.
+     *
+     * @return The {@code ts_rank} of the review for the search query, or null if it was not searched.
+     */
+    public Float getRank() {
+        return rank;
+    }
+
+    public void setRank(Float rank) {
+        this.rank = rank;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
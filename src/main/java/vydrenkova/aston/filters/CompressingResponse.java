@@ -0,0 +1,323 @@
+package vydrenkova.aston.filters;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * The CompressingResponse class compresses the body of a response on the fly. The first bytes of the body
+ * are held back until there are more than the minimum size: a body that stays below it is sent as is, with
+ * a Content-Length. Otherwise, if the content type is compressible and the servlet has not encoded the body
+ * itself, the body is compressed while it is written, with a deflater borrowed from a {@link DeflaterPool}.
+ * A flush of a compressed body is passed on as a zlib sync flush, so streamed responses reach the client
+ * as they are produced.
+ * <p>
+ * A strong ETag describes the identity-encoded body, so the ETag of a compressed response gets a
+ * {@code --gzip} or {@code --deflate} suffix, which {@link CompressionFilter} removes from conditional
+ * request headers again.
+ */
+final class CompressingResponse extends HttpServletResponseWrapper {
+
+    private final static String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private final static String ETAG_HEADER = "ETag";
+    private final static int DEFLATER_BUFFER_SIZE = 8 * 1024;
+    private final static byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private enum State {BUFFERING, COMPRESSING, PASSING_THROUGH, FINISHED}
+
+    private final String encoding;
+    private final DeflaterPool deflaterPool;
+    private final byte[] buffer;
+
+    private State state = State.BUFFERING;
+    private int buffered;
+    private long contentLength = -1;
+    private String etag;
+    private CompressingOutputStream outputStream;
+    private PrintWriter writer;
+    private Deflater deflater;
+    private DeflaterOutputStream deflaterStream;
+    private CRC32 crc;
+
+    /**
+     * Constructs a new CompressingResponse.
+     *
+     * @param response     The response to wrap.
+     * @param encoding     The content coding to apply: {@code gzip} or {@code deflate}.
+     * @param deflaterPool The pool of deflaters matching the content coding.
+     * @param minSize      The size in bytes a body must exceed to be compressed.
+     */
+    CompressingResponse(HttpServletResponse response, String encoding, DeflaterPool deflaterPool, int minSize) {
+        super(response);
+        this.encoding = encoding;
+        this.deflaterPool = deflaterPool;
+        this.buffer = new byte[minSize];
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (outputStream == null) {
+            outputStream = new CompressingOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called for this response");
+            }
+            outputStream = new CompressingOutputStream();
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        contentLength = len;
+        if (state == State.PASSING_THROUGH) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (ETAG_HEADER.equalsIgnoreCase(name)) {
+            etag = value;
+        }
+        super.setHeader(name, value);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (ETAG_HEADER.equalsIgnoreCase(name)) {
+            etag = value;
+        }
+        super.addHeader(name, value);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (outputStream != null) {
+            outputStream.flush();
+        }
+        if (state != State.BUFFERING) {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        buffered = 0;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        buffered = 0;
+        contentLength = -1;
+        etag = null;
+    }
+
+    /**
+     * Completes the body: sends a body that is still held back as is, or writes the end of the compressed
+     * stream and returns the deflater to its pool.
+     *
+     * @throws IOException If writing to the wrapped response fails.
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        switch (state) {
+            case BUFFERING:
+                state = State.FINISHED;
+                if (buffered > 0) {
+                    if (!isCommitted()) {
+                        super.setContentLength(buffered);
+                    }
+                    getResponse().getOutputStream().write(buffer, 0, buffered);
+                }
+                break;
+            case COMPRESSING:
+                state = State.FINISHED;
+                try {
+                    deflaterStream.finish();
+                    if (crc != null) {
+                        writeGzipTrailer(getResponse().getOutputStream());
+                    }
+                } finally {
+                    releaseDeflater();
+                }
+                break;
+            case PASSING_THROUGH:
+                state = State.FINISHED;
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the deflater to its pool without completing the body, after the request has failed.
+     */
+    void abort() {
+        state = State.FINISHED;
+        releaseDeflater();
+    }
+
+    private void releaseDeflater() {
+        if (deflater != null) {
+            deflaterPool.release(deflater);
+            deflater = null;
+        }
+    }
+
+    /**
+     * Decides how the body continues once it exceeds the minimum size, and sends what has been held back.
+     */
+    private void leaveBuffering() throws IOException {
+        OutputStream target = getResponse().getOutputStream();
+        if (isCompressible()) {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            response.setHeader(CONTENT_ENCODING_HEADER, encoding);
+            if (etag != null) {
+                response.setHeader(ETAG_HEADER, etag.substring(0, etag.length() - 1) + "--" + encoding + "\"");
+            }
+            deflater = deflaterPool.borrow();
+            if (CompressionFilter.GZIP.equals(encoding)) {
+                target.write(GZIP_HEADER);
+                crc = new CRC32();
+            }
+            deflaterStream = new DeflaterOutputStream(target, deflater, DEFLATER_BUFFER_SIZE, true);
+            state = State.COMPRESSING;
+            writeCompressed(buffer, 0, buffered);
+        } else {
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+            state = State.PASSING_THROUGH;
+            target.write(buffer, 0, buffered);
+        }
+        buffered = 0;
+    }
+
+    private boolean isCompressible() {
+        if (containsHeader(CONTENT_ENCODING_HEADER)) {
+            return false;
+        }
+        String contentType = getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        return contentType.startsWith("application/json") || contentType.startsWith("application/x-ndjson")
+                || contentType.startsWith("text/");
+    }
+
+    private void writeCompressed(byte[] b, int off, int len) throws IOException {
+        if (crc != null) {
+            crc.update(b, off, len);
+        }
+        deflaterStream.write(b, off, len);
+    }
+
+    private void writeGzipTrailer(OutputStream target) throws IOException {
+        writeIntLE(target, (int) crc.getValue());
+        writeIntLE(target, (int) deflater.getBytesRead());
+    }
+
+    private static void writeIntLE(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    /**
+     * The stream the servlet writes the body to.
+     */
+    private final class CompressingOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            switch (state) {
+                case BUFFERING:
+                    if (buffered + len <= buffer.length) {
+                        System.arraycopy(b, off, buffer, buffered, len);
+                        buffered += len;
+                        return;
+                    }
+                    leaveBuffering();
+                    write(b, off, len);
+                    return;
+                case COMPRESSING:
+                    writeCompressed(b, off, len);
+                    return;
+                case PASSING_THROUGH:
+                    getResponse().getOutputStream().write(b, off, len);
+                    return;
+                default:
+                    throw new IOException("Response has already been completed");
+            }
+        }
+
+        /**
+         * Flushes a compressed or passed-through body to the client. A body that is still held back stays
+         * held back, since it may yet turn out to be too small to compress.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (state == State.COMPRESSING) {
+                deflaterStream.flush();
+            } else if (state == State.PASSING_THROUGH) {
+                getResponse().getOutputStream().flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        /**
+         * Rejects non-blocking writes: {@link CompressionFilter} does not support asynchronous requests, and
+         * the servlet API only allows a write listener on those.
+         */
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new IllegalStateException("Non-blocking writes need an asynchronous request, "
+                    + "which CompressionFilter does not support");
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package vydrenkova.aston.filters;
+
+import vydrenkova.aston.config.ApplicationProperties;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * The CompressionFilter class compresses the JSON and CSV responses of the API with gzip or deflate,
+ * whichever the client accepts in its {@code Accept-Encoding} header, gzip first. Responses of up to
+ * {@code compression.minSizeBytes} bytes are sent uncompressed, since compressing them saves little and
+ * costs a deflater. Compression happens while the response is written, so streamed responses stay streamed.
+ * Deflaters are taken from a pool per content coding instead of being allocated for every response.
+ * <p>
+ * The filter does not support asynchronous requests: the servlets behind it write their responses with
+ * blocking I/O, and the compressing stream rejects a {@link javax.servlet.WriteListener}.
+ */
+@WebFilter(urlPatterns = {"/books/*", "/orders/*", "/reviews/*"}, asyncSupported = false)
+public class CompressionFilter implements Filter {
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private final static String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private final static String VARY_HEADER = "Vary";
+    private final static String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private final static String IF_MATCH_HEADER = "If-Match";
+    private final static int MAX_IDLE_DEFLATERS = 32;
+
+    private int minSize;
+    private DeflaterPool gzipPool;
+    private DeflaterPool deflatePool;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        minSize = Integer.parseInt(ApplicationProperties.getProperty("compression.minSizeBytes", "1024"));
+        gzipPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, true, MAX_IDLE_DEFLATERS);
+        deflatePool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION, false, MAX_IDLE_DEFLATERS);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest req = new ConditionalRequest((HttpServletRequest) request);
+        HttpServletResponse resp = (HttpServletResponse) response;
+        resp.addHeader(VARY_HEADER, ACCEPT_ENCODING_HEADER);
+        String encoding = negotiate(req.getHeader(ACCEPT_ENCODING_HEADER));
+        if (encoding == null) {
+            chain.doFilter(req, resp);
+            return;
+        }
+        CompressingResponse compressing = new CompressingResponse(resp, encoding,
+                GZIP.equals(encoding) ? gzipPool : deflatePool, minSize);
+        try {
+            chain.doFilter(req, compressing);
+        } catch (IOException | ServletException | RuntimeException e) {
+            compressing.abort();
+            throw e;
+        }
+        compressing.finish();
+    }
+
+    @Override
+    public void destroy() {
+        gzipPool.close();
+        deflatePool.close();
+    }
+
+    DeflaterPool getGzipPool() {
+        return gzipPool;
+    }
+
+    /**
+     * Picks the content coding for a response from the {@code Accept-Encoding} header of the request.
+     *
+     * @param acceptEncoding The value of the header, or null.
+     * @return {@code gzip}, {@code deflate}, or null if the client accepts neither.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        boolean any = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            if (!isAccepted(tokens)) {
+                continue;
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = true;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = true;
+            } else if (coding.equals("*")) {
+                any = true;
+            }
+        }
+        if (gzip || any) {
+            return GZIP;
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    private static boolean isAccepted(String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            String parameter = tokens[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A request whose conditional headers have the content coding suffix that {@link CompressingResponse}
+     * adds to ETags removed, so that the servlets compare them with the ETags they produce.
+     */
+    private static final class ConditionalRequest extends HttpServletRequestWrapper {
+
+        private ConditionalRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            return isConditional(name) ? stripCodingSuffix(value) : value;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (!isConditional(name)) {
+                return super.getHeaders(name);
+            }
+            return Collections.enumeration(Collections.list(super.getHeaders(name)).stream()
+                    .map(ConditionalRequest::stripCodingSuffix)
+                    .collect(Collectors.toList()));
+        }
+
+        private static boolean isConditional(String name) {
+            return IF_NONE_MATCH_HEADER.equalsIgnoreCase(name) || IF_MATCH_HEADER.equalsIgnoreCase(name);
+        }
+
+        private static String stripCodingSuffix(String value) {
+            if (value == null) {
+                return null;
+            }
+            return value.replace("--" + GZIP + "\"", "\"").replace("--" + DEFLATE + "\"", "\"");
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package vydrenkova.aston.filters;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * The DeflaterPool class keeps idle {@link Deflater} instances for reuse. A Deflater holds a few hundred
+ * kilobytes of native zlib memory that is only freed by {@link Deflater#end()} or finalization, so creating
+ * one per response is expensive under load. Returned deflaters are reset and kept up to a fixed number;
+ * the excess is ended right away.
+ */
+final class DeflaterPool {
+
+    private final int level;
+    private final boolean nowrap;
+    private final int maxIdle;
+    private final ConcurrentLinkedQueue<Deflater> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Constructs a new DeflaterPool.
+     *
+     * @param level   The compression level of the deflaters.
+     * @param nowrap  Whether the deflaters produce raw deflate data (for gzip) instead of the zlib format.
+     * @param maxIdle The maximum number of idle deflaters kept.
+     */
+    DeflaterPool(int level, boolean nowrap, int maxIdle) {
+        this.level = level;
+        this.nowrap = nowrap;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Takes an idle deflater from the pool, or creates a new one if there is none.
+     *
+     * @return A deflater ready for a new stream.
+     */
+    Deflater borrow() {
+        Deflater deflater = idle.poll();
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+        idleCount.decrementAndGet();
+        return deflater;
+    }
+
+    /**
+     * Returns a deflater to the pool. It must not be used by the caller afterwards.
+     *
+     * @param deflater The deflater to return.
+     */
+    void release(Deflater deflater) {
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        idle.offer(deflater);
+    }
+
+    /**
+     * Returns the number of idle deflaters in the pool.
+     */
+    int idleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Frees the native memory of all idle deflaters.
+     */
+    void close() {
+        Deflater deflater;
+        while ((deflater = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+}
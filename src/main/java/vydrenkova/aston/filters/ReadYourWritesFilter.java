@@ -0,0 +1,87 @@
+package vydrenkova.aston.filters;
+
+import vydrenkova.aston.config.DataSourceConfig;
+import vydrenkova.aston.dao.DataSourceRouter;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * The ReadYourWritesFilter class scopes the read-your-writes window of the {@link DataSourceRouter} to the
+ * client. A request that writes gets a {@value #LAST_WRITE_COOKIE} cookie with the time of the write that
+ * lives as long as the window; each request runs as a caller of the router with the time from that cookie,
+ * so only the reads of the client that wrote go to the primary, and reads of other clients keep going to
+ * the replicas.
+ */
+@WebFilter(urlPatterns = {"/books/*", "/orders/*", "/reviews/*"})
+public class ReadYourWritesFilter implements Filter {
+
+    static final String LAST_WRITE_COOKIE = "last-write";
+
+    private DataSourceRouter router;
+
+    public ReadYourWritesFilter() {
+    }
+
+    ReadYourWritesFilter(DataSourceRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        if (router == null) {
+            router = DataSourceConfig.getRouter();
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse resp = (HttpServletResponse) response;
+        router.beginCaller(lastWrite(req), millis -> resp.addCookie(lastWriteCookie(req, millis)));
+        try {
+            chain.doFilter(req, resp);
+        } finally {
+            router.endCaller();
+        }
+    }
+
+    private Cookie lastWriteCookie(HttpServletRequest req, long millis) {
+        Cookie cookie = new Cookie(LAST_WRITE_COOKIE, String.valueOf(millis));
+        cookie.setPath(req.getContextPath().isEmpty() ? "/" : req.getContextPath());
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, (router.getReadYourWritesMillis() + 999) / 1000));
+        return cookie;
+    }
+
+    private static Long lastWrite(HttpServletRequest req) {
+        Cookie[] cookies = req.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+        for (Cookie cookie : cookies) {
+            if (LAST_WRITE_COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,6 +1,7 @@
 package vydrenkova.aston.mappers;
 
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.factory.Mappers;
 import vydrenkova.aston.dto.BookDTO;
 import vydrenkova.aston.entities.Book;
@@ -24,6 +25,7 @@ public interface BookMapper {
      * @param book The Book entity to be converted.
      * @return The corresponding BookDTO.
      */
+    @Mapping(target = "rating", ignore = true)
     BookDTO toDTO(Book book);
 
     /**
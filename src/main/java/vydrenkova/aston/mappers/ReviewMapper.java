@@ -4,12 +4,15 @@ import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.factory.Mappers;
 import vydrenkova.aston.dto.ReviewDTO;
+import vydrenkova.aston.entities.Book;
 import vydrenkova.aston.entities.Review;
 
 /**
  * The ReviewMapper interface defines the mapping between Review entities and ReviewDTO objects.
  * It uses the MapStruct framework to automatically generate the implementation for converting
- * between the two types. The mapping of the 'book' field is explicitly ignored in this mapper.
+ * between the two types. The 'book' field is not mapped in full: a Review entity only carries the ID of its
+ * book to the 'bookId' field of the DTO, and a ReviewDTO only carries its book ID, from 'bookId' or else from
+ * the ID of the embedded 'book', to a Book reference of the entity.
  */
 @Mapper
 public interface ReviewMapper {
@@ -20,20 +23,39 @@ public interface ReviewMapper {
     ReviewMapper INSTANCE = Mappers.getMapper(ReviewMapper.class);
 
     /**
-     * Converts a Review entity to a ReviewDTO. The 'book' field is ignored during the conversion.
+     * Converts a Review entity to a ReviewDTO. The 'book' field is ignored during the conversion and only
+     * the ID of the book is mapped, to 'bookId'.
      *
      * @param review The Review entity to be converted.
      * @return The corresponding ReviewDTO.
      */
     @Mapping(target = "book", ignore = true)
+    @Mapping(target = "bookId", source = "book.id")
     ReviewDTO toDTO(Review review);
 
     /**
-     * Converts a ReviewDTO to a Review entity. The 'book' field is ignored during the conversion.
+     * Converts a ReviewDTO to a Review entity. The book becomes a reference holding only its ID, see
+     * {@link #toBookReference(ReviewDTO)}; the search 'rank' is ignored during the conversion.
      *
      * @param reviewDTO The ReviewDTO to be converted.
      * @return The corresponding Review entity.
      */
-    @Mapping(target = "book", ignore = true)
+    @Mapping(target = "book", expression = "java(toBookReference(reviewDTO))")
+    @Mapping(target = "rank", ignore = true)
     Review toEntity(ReviewDTO reviewDTO);
+
+    /**
+     * Returns the book of a ReviewDTO as a Book holding only its ID: the 'bookId' of the DTO, or, if that is
+     * not set, the ID of the embedded 'book'.
+     *
+     * @param reviewDTO The ReviewDTO whose book to reference.
+     * @return The Book reference, or null if the DTO has no book ID.
+     */
+    default Book toBookReference(ReviewDTO reviewDTO) {
+        Long bookId = reviewDTO.getBookId();
+        if (bookId == null && reviewDTO.getBook() != null) {
+            bookId = reviewDTO.getBook().getId();
+        }
+        return bookId == null ? null : new Book(bookId, null, null, null, null);
+    }
 }
\ No newline at end of file
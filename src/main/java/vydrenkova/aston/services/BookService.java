@@ -1,7 +1,14 @@
 package vydrenkova.aston.services;
 
+import vydrenkova.aston.dao.BookCriteria;
+import vydrenkova.aston.dao.BookRanking;
 import vydrenkova.aston.dto.BookDTO;
+import vydrenkova.aston.dto.BookRatingDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
 
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,13 +27,64 @@ public interface BookService {
     List<BookDTO> getAllBooks();
 
     /**
-     * Retrieves a book by its unique identifier.
+     * Retrieves a page of books matching the given criteria, in the requested order, starting right after
+     * the cursor book.
+     *
+     * @param criteria The filters, sort order and cursor of the page.
+     * @return A list of BookDTO objects representing the requested page.
+     */
+    List<BookDTO> getBooks(BookCriteria criteria);
+
+    /**
+     * Searches books by title and author, tolerating typos, and returns the best matches.
+     *
+     * @param query The search query.
+     * @param limit The maximum number of books to return.
+     * @return A list of BookDTO objects, best match first.
+     */
+    List<BookDTO> searchBooks(String query, int limit);
+
+    /**
+     * Retrieves a book by its unique identifier, together with its rating summary.
      *
      * @param id The unique identifier of the book.
      * @return An Optional containing the BookDTO if found, or an empty Optional if not found.
      */
     Optional<BookDTO> getBookById(Long id);
 
+    /**
+     * Retrieves the rating summary of a book: the number of reviews, the average rating and the number of
+     * reviews per rating.
+     *
+     * @param bookId The unique identifier of the book.
+     * @return An Optional containing the BookRatingDTO, or an empty Optional if the book is not found.
+     */
+    Optional<BookRatingDTO> getBookRating(Long bookId);
+
+    /**
+     * Retrieves the version tag of a book, which changes whenever the representation of the book does.
+     *
+     * @param id The unique identifier of the book.
+     * @return An Optional containing the version tag, or an empty Optional if the book is not found.
+     */
+    Optional<String> getBookVersion(Long id);
+
+    /**
+     * Retrieves the best-selling or top-rated books, optionally within one genre. The rankings are
+     * recomputed periodically by {@link #refreshTopBooks()}.
+     *
+     * @param ranking The ranking to read.
+     * @param genre   The genre to restrict the ranking to, or null for all genres.
+     * @param limit   The maximum number of books to return.
+     * @return A list of BookDTO objects, best first.
+     */
+    List<BookDTO> getTopBooks(BookRanking ranking, String genre, int limit);
+
+    /**
+     * Recomputes the best-selling and top-rated rankings from the current orders and reviews.
+     */
+    void refreshTopBooks();
+
     /**
      * Creates a new book in the system.
      *
@@ -34,6 +92,32 @@ public interface BookService {
      */
     void createBook(BookDTO bookDTO);
 
+    /**
+     * Creates all given books in the system atomically.
+     *
+     * @param bookDTOs The BookDTO objects representing the books to be created, consumed lazily in order.
+     * @return The identifiers of the created books, in input order.
+     */
+    List<Long> createBooks(Iterator<BookDTO> bookDTOs);
+
+    /**
+     * Bulk-imports books from a CSV or NDJSON document. Valid records are imported atomically,
+     * invalid records are skipped.
+     *
+     * @param reader The document to import, read incrementally.
+     * @param format The format of the document.
+     * @return The number of imported and rejected records and the import throughput.
+     */
+    ImportResultDTO importBooks(Reader reader, ImportFormat format);
+
+    /**
+     * Writes all books to the given stream as CSV, from a consistent snapshot of the system.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    long exportBooks(OutputStream out);
+
     /**
      * Updates an existing book in the system.
      *
@@ -41,6 +125,15 @@ public interface BookService {
      */
     void updateBook(BookDTO bookDTO);
 
+    /**
+     * Updates an existing book in the system if its version tag still equals the expected one.
+     *
+     * @param bookDTO         The BookDTO object representing the book to be updated.
+     * @param expectedVersion The version tag the book must currently have.
+     * @return true if the book was updated, false if it is not found or has been modified since.
+     */
+    boolean updateBook(BookDTO bookDTO, String expectedVersion);
+
     /**
      * Deletes a book from the system by its unique identifier.
      *
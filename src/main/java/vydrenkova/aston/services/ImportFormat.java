@@ -0,0 +1,56 @@
+package vydrenkova.aston.services;
+
+import java.util.Optional;
+
+/**
+ * The ImportFormat enum lists the request body formats accepted by the bulk import endpoints,
+ * together with the media type that selects each of them.
+ */
+public enum ImportFormat {
+
+    /**
+     * Comma-separated values, one record per line, with an optional header line.
+     */
+    CSV("text/csv"),
+
+    /**
+     * Newline-delimited JSON, one object per line.
+     */
+    NDJSON("application/x-ndjson");
+
+    private final String mediaType;
+
+    ImportFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Returns the media type that selects this format.
+     *
+     * @return The media type, without parameters.
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Resolves the format from the value of a Content-Type header. Parameters such as
+     * {@code charset} are ignored.
+     *
+     * @param contentType The Content-Type header value, may be null.
+     * @return An Optional containing the matching format, or an empty Optional if the type is not supported.
+     */
+    public static Optional<ImportFormat> fromContentType(String contentType) {
+        if (contentType == null) {
+            return Optional.empty();
+        }
+        int semicolon = contentType.indexOf(';');
+        String mediaType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim();
+        for (ImportFormat format : values()) {
+            if (format.mediaType.equalsIgnoreCase(mediaType)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
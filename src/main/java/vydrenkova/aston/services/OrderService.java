@@ -1,9 +1,14 @@
 package vydrenkova.aston.services;
 
+import vydrenkova.aston.dao.OrderField;
 import vydrenkova.aston.dto.OrderDTO;
 
+import java.io.OutputStream;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * The OrderService interface defines the contract for services that handle operations
@@ -20,6 +25,14 @@ public interface OrderService {
      */
     Optional<OrderDTO> getOrderById(Long id);
 
+    /**
+     * Retrieves the version tag of a order, which changes whenever the representation of the order does.
+     *
+     * @param id The unique identifier of the order.
+     * @return An Optional containing the version tag, or an empty Optional if the order is not found.
+     */
+    Optional<String> getOrderVersion(Long id);
+
     /**
      * Retrieves a list of all orders available in the system.
      *
@@ -28,23 +41,107 @@ public interface OrderService {
     List<OrderDTO> getAllOrders();
 
     /**
-     * Creates a new order in the system.
+     * Retrieves all orders with their item count and total price but without their books.
+     *
+     * @return A list of OrderDTO objects whose books are null.
+     */
+    List<OrderDTO> getOrderSummaries();
+
+    /**
+     * Retrieves the orders placed within a date range with their item count and total price but without
+     * their books, oldest first.
+     *
+     * @param from The first date of the range, inclusive, or null for no lower bound.
+     * @param to   The end of the range, exclusive, or null for no upper bound.
+     * @return A list of OrderDTO objects whose books are null.
+     */
+    List<OrderDTO> getOrderSummaries(Date from, Date to);
+
+    /**
+     * Retrieves all orders with only the given fields loaded.
+     *
+     * @param fields The fields to load.
+     * @return A list of OrderDTO objects whose other properties are null.
+     */
+    List<OrderDTO> getOrders(Set<OrderField> fields);
+
+    /**
+     * Retrieves one page of the order history of a customer, newest first, without the books of the orders.
+     *
+     * @param customer  The customer whose orders to retrieve.
+     * @param before    Only orders placed before this date are returned, or null for no bound.
+     * @param afterDate The date of the last order of the previous page; required with {@code afterId}.
+     * @param afterId   The ID of the last order of the previous page, or null for the first page.
+     * @param limit     The maximum number of orders to return.
+     * @return A list of OrderDTO objects whose books are null.
+     */
+    List<OrderDTO> getCustomerOrders(String customer, Date before, Date afterDate, Long afterId, int limit);
+
+    /**
+     * Streams all orders available in the system to the given consumer, one order at a time.
+     *
+     * @param consumer The consumer that receives each OrderDTO as soon as it is complete.
+     */
+    void streamAllOrders(Consumer<OrderDTO> consumer);
+
+    /**
+     * Creates a new order in the system together with its books, atomically.
      *
      * @param orderDTO The OrderDTO object representing the order to be created.
      */
     void createOrder(OrderDTO orderDTO);
 
     /**
-     * Updates an existing order in the system.
+     * Writes all orders to the given stream as CSV, from a consistent snapshot of the system.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    long exportOrders(OutputStream out);
+
+    /**
+     * Updates an existing order in the system. If the DTO has books, they replace the books of the order.
      *
      * @param orderDTO The OrderDTO object representing the order to be updated.
+     * @throws IllegalArgumentException If any of the books does not exist; then the order is not changed.
      */
     void updateOrder(OrderDTO orderDTO);
 
+    /**
+     * Updates an existing order in the system if its version tag still equals the expected one.
+     *
+     * @param orderDTO        The OrderDTO object representing the order to be updated.
+     * @param expectedVersion The version tag the order must currently have.
+     * @return true if the order was updated, false if it is not found or has been modified since.
+     * @throws IllegalArgumentException If any of the books does not exist; then the order is not changed.
+     */
+    boolean updateOrder(OrderDTO orderDTO, String expectedVersion);
+
     /**
      * Deletes an order from the system by its unique identifier.
      *
      * @param id The unique identifier of the order to be deleted.
      */
     void deleteOrder(Long id);
+
+    /**
+     * Adds several books to an existing order. Books that are already part of the order are skipped.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be added.
+     * @return An Optional containing the number of books actually added, or an empty Optional if the order
+     * is not found.
+     * @throws IllegalArgumentException If any of the books does not exist; then no book is added.
+     */
+    Optional<Integer> addBooksToOrder(Long orderId, List<Long> bookIds);
+
+    /**
+     * Removes several books from an existing order.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be removed.
+     * @return An Optional containing the number of books actually removed, or an empty Optional if the order
+     * is not found.
+     */
+    Optional<Integer> removeBooksFromOrder(Long orderId, List<Long> bookIds);
 }
\ No newline at end of file
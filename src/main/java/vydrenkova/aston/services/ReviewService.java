@@ -1,7 +1,10 @@
 package vydrenkova.aston.services;
 
+import vydrenkova.aston.dto.ImportResultDTO;
 import vydrenkova.aston.dto.ReviewDTO;
 
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,17 +18,49 @@ public interface ReviewService {
     /**
      * Retrieves a review by its unique identifier.
      *
-     * @param id The unique identifier of the review.
+     * @param id         The unique identifier of the review.
+     * @param expandBook Whether to embed the book of the review; otherwise only its ID is set.
      * @return An Optional containing the ReviewDTO if found, or an empty Optional if not found.
      */
-    Optional<ReviewDTO> getReviewById(Long id);
+    Optional<ReviewDTO> getReviewById(Long id, boolean expandBook);
+
+    /**
+     * Retrieves the version tag of a review, which changes whenever the representation of the review does.
+     *
+     * @param id The unique identifier of the review.
+     * @return An Optional containing the version tag, or an empty Optional if the review is not found.
+     */
+    Optional<String> getReviewVersion(Long id);
 
     /**
      * Retrieves a list of all reviews available in the system.
      *
+     * @param expandBook Whether to embed the book of each review; otherwise only its ID is set.
      * @return A list of ReviewDTO objects representing all reviews.
      */
-    List<ReviewDTO> getAllReviews();
+    List<ReviewDTO> getAllReviews(boolean expandBook);
+
+    /**
+     * Searches the text of the reviews and returns one page of the matches, ranked by relevance.
+     *
+     * @param query      The search query.
+     * @param afterRank  The rank of the last review of the previous page, or null for the first page.
+     * @param afterId    The ID of the last review of the previous page, or null for the first page.
+     * @param limit      The maximum number of reviews to return.
+     * @param expandBook Whether to embed the book of each review; otherwise only its ID is set.
+     * @return A list of ReviewDTO objects with their ranks, best match first.
+     */
+    List<ReviewDTO> searchReviews(String query, Float afterRank, Long afterId, int limit, boolean expandBook);
+
+    /**
+     * Retrieves one page of the reviews of a book, ordered by ID. Each review holds only the ID of the book.
+     *
+     * @param bookId  The unique identifier of the book.
+     * @param afterId The ID of the last review of the previous page, or null for the first page.
+     * @param limit   The maximum number of reviews to return.
+     * @return A list of ReviewDTO objects, or an empty list if there are no more reviews.
+     */
+    List<ReviewDTO> getReviewsByBookId(Long bookId, Long afterId, int limit);
 
     /**
      * Creates a new review in the system.
@@ -34,6 +69,24 @@ public interface ReviewService {
      */
     void createReview(ReviewDTO reviewDTO);
 
+    /**
+     * Bulk-imports reviews from a CSV or NDJSON document. Valid records are imported atomically;
+     * invalid records and reviews of books that do not exist are skipped.
+     *
+     * @param reader The document to import, read incrementally.
+     * @param format The format of the document.
+     * @return The number of imported and rejected records and the import throughput.
+     */
+    ImportResultDTO importReviews(Reader reader, ImportFormat format);
+
+    /**
+     * Writes all reviews to the given stream as CSV, from a consistent snapshot of the system.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    long exportReviews(OutputStream out);
+
     /**
      * Updates an existing review in the system.
      *
@@ -41,6 +94,15 @@ public interface ReviewService {
      */
     void updateReview(ReviewDTO reviewDTO);
 
+    /**
+     * Updates an existing review in the system if its version tag still equals the expected one.
+     *
+     * @param reviewDTO       The ReviewDTO object representing the review to be updated.
+     * @param expectedVersion The version tag the review must currently have.
+     * @return true if the review was updated, false if it is not found or has been modified since.
+     */
+    boolean updateReview(ReviewDTO reviewDTO, String expectedVersion);
+
     /**
      * Deletes a review from the system by its unique identifier.
      *
@@ -1,12 +1,24 @@
 package vydrenkova.aston.services.impl;
 
+import vydrenkova.aston.dao.BookCriteria;
 import vydrenkova.aston.dao.BookDao;
+import vydrenkova.aston.dao.BookRanking;
+import vydrenkova.aston.dao.TransactionManager;
 import vydrenkova.aston.dto.BookDTO;
+import vydrenkova.aston.dto.BookRatingDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
 import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.BookRating;
 import vydrenkova.aston.mappers.BookMapper;
 import vydrenkova.aston.services.BookService;
+import vydrenkova.aston.services.ImportFormat;
 
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -17,18 +29,34 @@ import java.util.stream.Collectors;
  */
 public class BookServiceImpl implements BookService {
 
+    private final static List<String> IMPORT_CSV_COLUMNS = List.of("title", "author", "genre", "price");
+
     private final BookDao bookDao;
     private final BookMapper bookMapper;
+    private final TransactionManager transactionManager;
 
     /**
-     * Constructs a new BookServiceImpl with the specified BookDao and BookMapper.
+     * Constructs a new BookServiceImpl with the specified BookDao and BookMapper, without a shared
+     * transaction: every DAO call manages its own connection.
      *
      * @param bookDao     The BookDao to be used for data access.
      * @param bookMapper  The BookMapper to be used for mapping between entities and DTOs.
      */
     public BookServiceImpl(BookDao bookDao, BookMapper bookMapper) {
+        this(bookDao, bookMapper, TransactionManager.none());
+    }
+
+    /**
+     * Constructs a new BookServiceImpl with the specified BookDao, BookMapper and TransactionManager.
+     *
+     * @param bookDao            The BookDao to be used for data access.
+     * @param bookMapper         The BookMapper to be used for mapping between entities and DTOs.
+     * @param transactionManager The TransactionManager running operations that make several DAO calls.
+     */
+    public BookServiceImpl(BookDao bookDao, BookMapper bookMapper, TransactionManager transactionManager) {
         this.bookDao = bookDao;
         this.bookMapper = bookMapper;
+        this.transactionManager = transactionManager;
     }
 
     /**
@@ -46,19 +74,87 @@ public class BookServiceImpl implements BookService {
     }
 
     /**
-     * Retrieves a book by its unique identifier.
+     * Retrieves a page of books matching the given criteria, in the requested order, starting right after
+     * the cursor book.
+     *
+     * @param criteria The filters, sort order and cursor of the page.
+     * @return A list of BookDTO objects representing the requested page.
+     */
+    @Override
+    public List<BookDTO> getBooks(BookCriteria criteria) {
+        return bookDao.getBooks(criteria).stream()
+                .map(bookMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Searches books by title and author, tolerating typos, and returns the best matches.
+     *
+     * @param query The search query.
+     * @param limit The maximum number of books to return.
+     * @return A list of BookDTO objects, best match first.
+     */
+    @Override
+    public List<BookDTO> searchBooks(String query, int limit) {
+        return bookDao.searchBooks(query, limit).stream()
+                .map(bookMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves a book by its unique identifier, together with its rating summary. Both are read in one
+     * read-only transaction on one connection.
      *
      * @param id The unique identifier of the book.
      * @return An Optional containing the BookDTO if found, or an empty Optional if not found.
      */
     @Override
     public Optional<BookDTO> getBookById(Long id) {
-        Optional<Book> book = bookDao.getBookById(id);
-        if (book.isPresent()) {
-            return Optional.of(bookMapper.toDTO(book.get()));
-        } else {
-            return Optional.empty();
-        }
+        return transactionManager.inReadOnlyTransaction(() -> {
+            Optional<Book> book = bookDao.getBookById(id);
+            if (book.isPresent()) {
+                BookDTO bookDTO = bookMapper.toDTO(book.get());
+                bookDTO.setRating(getBookRating(id).orElse(null));
+                return Optional.of(bookDTO);
+            } else {
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * Retrieves the rating summary of a book. The summary is maintained incrementally by the data store,
+     * so this never reads the reviews themselves.
+     *
+     * @param bookId The unique identifier of the book.
+     * @return An Optional containing the BookRatingDTO, or an empty Optional if the book is not found.
+     */
+    @Override
+    public Optional<BookRatingDTO> getBookRating(Long bookId) {
+        return bookDao.getBookRating(bookId).map(BookServiceImpl::toRatingDTO);
+    }
+
+    /**
+     * Retrieves the best-selling or top-rated books, optionally within one genre.
+     *
+     * @param ranking The ranking to read.
+     * @param genre   The genre to restrict the ranking to, or null for all genres.
+     * @param limit   The maximum number of books to return.
+     * @return A list of BookDTO objects, best first.
+     */
+    @Override
+    public List<BookDTO> getTopBooks(BookRanking ranking, String genre, int limit) {
+        return bookDao.getTopBooks(ranking, genre, limit).stream()
+                .map(bookMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Recomputes the best-selling and top-rated rankings from the current orders and reviews.
+     */
+    @Override
+    public void refreshTopBooks() {
+        bookDao.refreshTopBooks();
     }
 
     /**
@@ -72,6 +168,63 @@ public class BookServiceImpl implements BookService {
         bookDao.createBook(book);
     }
 
+    /**
+     * Creates all given books in the system atomically. The DTOs are mapped to entities one by one
+     * while the DAO consumes them, so the input is never held in memory as a whole.
+     *
+     * @param bookDTOs The BookDTO objects representing the books to be created, consumed lazily in order.
+     * @return The identifiers of the created books, in input order.
+     */
+    @Override
+    public List<Long> createBooks(Iterator<BookDTO> bookDTOs) {
+        return bookDao.createBooks(toEntities(bookDTOs));
+    }
+
+    /**
+     * Bulk-imports books from a CSV or NDJSON document. CSV records have the columns title, author,
+     * genre and price; NDJSON records are BookDTO objects. Records are parsed, validated and handed
+     * to the DAO one at a time, so the document is never held in memory as a whole. Records with
+     * a missing or blank title, author or genre, or a missing, non-numeric or negative price, are rejected.
+     *
+     * @param reader The document to import, read incrementally.
+     * @param format The format of the document.
+     * @return The number of imported and rejected records and the import throughput.
+     */
+    @Override
+    public ImportResultDTO importBooks(Reader reader, ImportFormat format) {
+        long start = System.nanoTime();
+        RecordReader<BookDTO> records = new RecordReader<>(reader, format, BookDTO.class, IMPORT_CSV_COLUMNS,
+                fields -> new BookDTO(null, emptyToNull(fields.get(0)), emptyToNull(fields.get(1)),
+                        emptyToNull(fields.get(2)), Double.valueOf(fields.get(3).trim())),
+                BookServiceImpl::isImportable);
+        long imported = bookDao.copyBooks(toEntities(records));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return new ImportResultDTO(imported, records.getRejectedRows(), elapsedMillis);
+    }
+
+    /**
+     * Writes all books to the given stream as CSV. The data is streamed from the database as is,
+     * without being mapped to entities or DTOs.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    @Override
+    public long exportBooks(OutputStream out) {
+        return bookDao.exportBooks(out);
+    }
+
+    /**
+     * Retrieves the version tag of a book, which changes whenever the representation of the book does.
+     *
+     * @param id The unique identifier of the book.
+     * @return An Optional containing the version tag, or an empty Optional if the book is not found.
+     */
+    @Override
+    public Optional<String> getBookVersion(Long id) {
+        return bookDao.getBookVersion(id);
+    }
+
     /**
      * Updates an existing book in the system.
      *
@@ -83,6 +236,18 @@ public class BookServiceImpl implements BookService {
         bookDao.updateBook(book);
     }
 
+    /**
+     * Updates an existing book in the system if its version tag still equals the expected one.
+     *
+     * @param bookDTO         The BookDTO object representing the book to be updated.
+     * @param expectedVersion The version tag the book must currently have.
+     * @return true if the book was updated, false if it is not found or has been modified since.
+     */
+    @Override
+    public boolean updateBook(BookDTO bookDTO, String expectedVersion) {
+        return bookDao.updateBook(bookMapper.toEntity(bookDTO), expectedVersion);
+    }
+
     /**
      * Deletes a book from the system by its unique identifier.
      *
@@ -92,4 +257,40 @@ public class BookServiceImpl implements BookService {
     public void deleteBook(Long id) {
         bookDao.deleteBook(id);
     }
-}
\ No newline at end of file
+
+    private Iterator<Book> toEntities(Iterator<BookDTO> bookDTOs) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return bookDTOs.hasNext();
+            }
+
+            @Override
+            public Book next() {
+                return bookMapper.toEntity(bookDTOs.next());
+            }
+        };
+    }
+
+    private static boolean isImportable(BookDTO book) {
+        return isPresent(book.getTitle()) && isPresent(book.getAuthor()) && isPresent(book.getGenre())
+                && book.getPrice() != null && book.getPrice() >= 0 && !book.getPrice().isInfinite();
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static BookRatingDTO toRatingDTO(BookRating rating) {
+        Map<Integer, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < rating.getRatingCounts().length; i++) {
+            histogram.put(i + 1, rating.getRatingCounts()[i]);
+        }
+        Double average = rating.getReviewCount() == 0 ? null : (double) rating.getRatingSum() / rating.getReviewCount();
+        return new BookRatingDTO(rating.getBookId(), rating.getReviewCount(), average, histogram);
+    }
+}
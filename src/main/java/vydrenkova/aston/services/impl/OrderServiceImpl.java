@@ -1,16 +1,23 @@
 package vydrenkova.aston.services.impl;
 
 import vydrenkova.aston.dao.OrderDao;
+import vydrenkova.aston.dao.OrderField;
+import vydrenkova.aston.dao.TransactionManager;
 import vydrenkova.aston.dto.BookDTO;
 import vydrenkova.aston.dto.OrderDTO;
+import vydrenkova.aston.entities.Book;
 import vydrenkova.aston.entities.Order;
 import vydrenkova.aston.mappers.BookMapper;
 import vydrenkova.aston.mappers.OrderMapper;
 import vydrenkova.aston.services.OrderService;
 
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -24,18 +31,35 @@ public class OrderServiceImpl implements OrderService {
     private final OrderDao orderDao;
     private final OrderMapper orderMapper;
     private final BookMapper bookMapper;
+    private final TransactionManager transactionManager;
 
     /**
-     * Constructs a new OrderServiceImpl with the specified OrderDao, OrderMapper, and BookMapper.
+     * Constructs a new OrderServiceImpl with the specified OrderDao, OrderMapper, and BookMapper, without a
+     * shared transaction: every DAO call manages its own connection.
      *
      * @param orderDao     The OrderDao to be used for data access.
      * @param orderMapper  The OrderMapper to be used for mapping between entities and DTOs.
      * @param bookMapper   The BookMapper to be used for mapping between book entities and DTOs.
      */
     public OrderServiceImpl(OrderDao orderDao, OrderMapper orderMapper, BookMapper bookMapper) {
+        this(orderDao, orderMapper, bookMapper, TransactionManager.none());
+    }
+
+    /**
+     * Constructs a new OrderServiceImpl with the specified OrderDao, OrderMapper, BookMapper and
+     * TransactionManager.
+     *
+     * @param orderDao           The OrderDao to be used for data access.
+     * @param orderMapper        The OrderMapper to be used for mapping between entities and DTOs.
+     * @param bookMapper         The BookMapper to be used for mapping between book entities and DTOs.
+     * @param transactionManager The TransactionManager running operations that make several DAO calls.
+     */
+    public OrderServiceImpl(OrderDao orderDao, OrderMapper orderMapper, BookMapper bookMapper,
+                            TransactionManager transactionManager) {
         this.orderDao = orderDao;
         this.orderMapper = orderMapper;
         this.bookMapper = bookMapper;
+        this.transactionManager = transactionManager;
     }
 
     /**
@@ -48,12 +72,7 @@ public class OrderServiceImpl implements OrderService {
     public Optional<OrderDTO> getOrderById(Long id) {
         Optional<Order> order = orderDao.getOrderById(id);
         if (order.isPresent()) {
-            OrderDTO orderDTO = orderMapper.toDTO(order.get());
-            List<BookDTO> books = order.get().getBooks().stream()
-                    .map(bookMapper::toDTO)
-                    .collect(Collectors.toList());
-            orderDTO.setBooks(books);
-            return Optional.of(orderDTO);
+            return Optional.of(toDTOWithBooks(order.get()));
         } else {
             return Optional.empty();
         }
@@ -69,36 +88,155 @@ public class OrderServiceImpl implements OrderService {
         List<Order> orders = orderDao.getAllOrders();
         List<OrderDTO> orderDTOS = new ArrayList<>();
         for (Order order : orders) {
-            OrderDTO orderDTO = orderMapper.toDTO(order);
-            List<BookDTO> books = order.getBooks().stream()
-                    .map(bookMapper::toDTO)
-                    .collect(Collectors.toList());
-            orderDTO.setBooks((ArrayList<BookDTO>) books);
-            orderDTOS.add(orderDTO);
+            orderDTOS.add(toDTOWithBooks(order));
         }
         return orderDTOS;
     }
 
     /**
-     * Creates a new order in the system.
+     * Retrieves all orders with their item count and total price but without their books.
+     *
+     * @return A list of OrderDTO objects whose books are null.
+     */
+    @Override
+    public List<OrderDTO> getOrderSummaries() {
+        return orderDao.getOrderSummaries().stream()
+                .map(orderMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the orders placed within a date range with their item count and total price but without
+     * their books, oldest first.
+     *
+     * @param from The first date of the range, inclusive, or null for no lower bound.
+     * @param to   The end of the range, exclusive, or null for no upper bound.
+     * @return A list of OrderDTO objects whose books are null.
+     */
+    @Override
+    public List<OrderDTO> getOrderSummaries(Date from, Date to) {
+        return orderDao.getOrderSummaries(from, to).stream()
+                .map(orderMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves all orders with only the given fields loaded. The books are mapped only if they are among
+     * the fields.
+     *
+     * @param fields The fields to load.
+     * @return A list of OrderDTO objects whose other properties are null.
+     */
+    @Override
+    public List<OrderDTO> getOrders(Set<OrderField> fields) {
+        boolean withBooks = fields.contains(OrderField.BOOKS);
+        return orderDao.getOrders(fields).stream()
+                .map(order -> withBooks ? toDTOWithBooks(order) : orderMapper.toDTO(order))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves one page of the order history of a customer, newest first, without the books of the orders.
+     *
+     * @param customer  The customer whose orders to retrieve.
+     * @param before    Only orders placed before this date are returned, or null for no bound.
+     * @param afterDate The date of the last order of the previous page; required with {@code afterId}.
+     * @param afterId   The ID of the last order of the previous page, or null for the first page.
+     * @param limit     The maximum number of orders to return.
+     * @return A list of OrderDTO objects whose books are null.
+     */
+    @Override
+    public List<OrderDTO> getCustomerOrders(String customer, Date before, Date afterDate, Long afterId, int limit) {
+        return orderDao.getCustomerOrders(customer, before, afterDate, afterId, limit).stream()
+                .map(orderMapper::toDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Streams all orders available in the system to the given consumer, one order at a time.
+     *
+     * @param consumer The consumer that receives each OrderDTO as soon as it is complete.
+     */
+    @Override
+    public void streamAllOrders(Consumer<OrderDTO> consumer) {
+        orderDao.streamAllOrders(order -> consumer.accept(toDTOWithBooks(order)));
+    }
+
+    /**
+     * Creates a new order in the system together with its books. Only the IDs of the books are used;
+     * the books must already exist.
      *
      * @param orderDTO The OrderDTO object representing the order to be created.
      */
     @Override
     public void createOrder(OrderDTO orderDTO) {
         Order order = orderMapper.toEntity(orderDTO);
+        if (orderDTO.getBooks() != null) {
+            order.setBooks(orderDTO.getBooks().stream()
+                    .map(bookMapper::toEntity)
+                    .collect(Collectors.toList()));
+        }
         orderDao.createOrder(order);
     }
 
     /**
-     * Updates an existing order in the system.
+     * Writes all orders to the given stream as CSV. The data is streamed from the database as is,
+     * without being mapped to entities or DTOs.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    @Override
+    public long exportOrders(OutputStream out) {
+        return orderDao.exportOrders(out);
+    }
+
+    /**
+     * Retrieves the version tag of a order, which changes whenever the representation of the order does.
+     *
+     * @param id The unique identifier of the order.
+     * @return An Optional containing the version tag, or an empty Optional if the order is not found.
+     */
+    @Override
+    public Optional<String> getOrderVersion(Long id) {
+        return orderDao.getOrderVersion(id);
+    }
+
+    /**
+     * Updates an existing order in the system. If the DTO has books, they replace the books of the order;
+     * the order and its books are updated in one transaction, so nothing is changed if any step fails.
      *
      * @param orderDTO The OrderDTO object representing the order to be updated.
+     * @throws IllegalArgumentException If any of the books does not exist; then the order is not changed.
      */
     @Override
     public void updateOrder(OrderDTO orderDTO) {
         Order order = orderMapper.toEntity(orderDTO);
-        orderDao.updateOrder(order);
+        transactionManager.inTransaction(() -> {
+            orderDao.updateOrder(order);
+            replaceBooks(order.getId(), orderDTO.getBooks());
+        });
+    }
+
+    /**
+     * Updates an existing order in the system if its version tag still equals the expected one. If the DTO
+     * has books, they replace the books of the order in the same transaction.
+     *
+     * @param orderDTO        The OrderDTO object representing the order to be updated.
+     * @param expectedVersion The version tag the order must currently have.
+     * @return true if the order was updated, false if it is not found or has been modified since.
+     * @throws IllegalArgumentException If any of the books does not exist; then the order is not changed.
+     */
+    @Override
+    public boolean updateOrder(OrderDTO orderDTO, String expectedVersion) {
+        Order order = orderMapper.toEntity(orderDTO);
+        return transactionManager.inTransaction(() -> {
+            if (!orderDao.updateOrder(order, expectedVersion)) {
+                return false;
+            }
+            replaceBooks(order.getId(), orderDTO.getBooks());
+            return true;
+        });
     }
 
     /**
@@ -110,4 +248,61 @@ public class OrderServiceImpl implements OrderService {
     public void deleteOrder(Long id) {
         orderDao.deleteOrder(id);
     }
+
+    /**
+     * Adds several books to an existing order. Books that are already part of the order are skipped.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be added.
+     * @return An Optional containing the number of books actually added, or an empty Optional if the order
+     * is not found.
+     * @throws IllegalArgumentException If any of the books does not exist; then no book is added.
+     */
+    @Override
+    public Optional<Integer> addBooksToOrder(Long orderId, List<Long> bookIds) {
+        return orderDao.addBooksToOrder(orderId, bookIds);
+    }
+
+    /**
+     * Removes several books from an existing order.
+     *
+     * @param orderId The unique identifier of the order.
+     * @param bookIds The unique identifiers of the books to be removed.
+     * @return An Optional containing the number of books actually removed, or an empty Optional if the order
+     * is not found.
+     */
+    @Override
+    public Optional<Integer> removeBooksFromOrder(Long orderId, List<Long> bookIds) {
+        return orderDao.removeBooksFromOrder(orderId, bookIds);
+    }
+
+    private void replaceBooks(Long orderId, List<BookDTO> books) {
+        if (books == null) {
+            return;
+        }
+        List<Long> bookIds = books.stream()
+                .map(BookDTO::getId)
+                .collect(Collectors.toList());
+        List<Long> removed = orderDao.getOrderById(orderId)
+                .map(order -> order.getBooks().stream()
+                        .map(Book::getId)
+                        .filter(id -> !bookIds.contains(id))
+                        .collect(Collectors.toList()))
+                .orElse(List.of());
+        if (!removed.isEmpty()) {
+            orderDao.removeBooksFromOrder(orderId, removed);
+        }
+        if (!bookIds.isEmpty()) {
+            orderDao.addBooksToOrder(orderId, bookIds);
+        }
+    }
+
+    private OrderDTO toDTOWithBooks(Order order) {
+        OrderDTO orderDTO = orderMapper.toDTO(order);
+        List<BookDTO> books = order.getBooks().stream()
+                .map(bookMapper::toDTO)
+                .collect(Collectors.toList());
+        orderDTO.setBooks(books);
+        return orderDTO;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+package vydrenkova.aston.services.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import vydrenkova.aston.services.ImportFormat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The RecordReader class reads the records of a CSV or NDJSON import body one at a time and converts
+ * them to DTOs, so that an import never holds the whole body in memory. Records that cannot be parsed
+ * or converted, or that fail validation, are skipped and counted as rejected. Blank lines are ignored.
+ * <p>
+ * CSV records follow RFC 4180: fields may be quoted, quotes inside quoted fields are doubled and quoted
+ * fields may span several lines. The first record is skipped if it repeats the expected column names.
+ *
+ * @param <T> The type of the DTOs produced from the records.
+ */
+class RecordReader<T> implements Iterator<T> {
+
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+
+    private final BufferedReader reader;
+    private final ImportFormat format;
+    private final Class<T> type;
+    private final List<String> csvColumns;
+    private final Function<List<String>, T> csvMapper;
+    private final Predicate<T> validator;
+
+    private boolean firstRecord = true;
+    private T next;
+    private long acceptedRows;
+    private long rejectedRows;
+
+    /**
+     * Constructs a new RecordReader over the given import body.
+     *
+     * @param reader     The import body.
+     * @param format     The format of the import body.
+     * @param type       The DTO type NDJSON records are deserialized to.
+     * @param csvColumns The expected CSV columns, in order.
+     * @param csvMapper  The function that converts the fields of a CSV record to a DTO.
+     * @param validator  The predicate that accepts the DTOs to be imported.
+     */
+    RecordReader(Reader reader, ImportFormat format, Class<T> type, List<String> csvColumns,
+                 Function<List<String>, T> csvMapper, Predicate<T> validator) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.format = format;
+        this.type = type;
+        this.csvColumns = csvColumns;
+        this.csvMapper = csvMapper;
+        this.validator = validator;
+    }
+
+    /**
+     * Returns the number of valid records returned so far.
+     *
+     * @return The number of accepted records.
+     */
+    long getAcceptedRows() {
+        return acceptedRows;
+    }
+
+    /**
+     * Returns the number of records rejected so far.
+     *
+     * @return The number of rejected records.
+     */
+    long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null) {
+                T record = format == ImportFormat.CSV ? readCsvRecord() : readJsonRecord();
+                if (record == null) {
+                    return false;
+                }
+                if (validator.test(record)) {
+                    next = record;
+                } else {
+                    rejectedRows++;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read import data", e);
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T record = next;
+        next = null;
+        acceptedRows++;
+        return record;
+    }
+
+    /**
+     * Reads the next NDJSON line that could be deserialized, counting the ones that could not.
+     *
+     * @return The deserialized DTO, or null at the end of the input.
+     */
+    private T readJsonRecord() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                return MAPPER.readValue(line, type);
+            } catch (JsonProcessingException e) {
+                rejectedRows++;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the next CSV record that could be converted, counting the ones that could not.
+     *
+     * @return The converted DTO, or null at the end of the input.
+     */
+    private T readCsvRecord() throws IOException {
+        List<String> fields;
+        while ((fields = readCsvFields()) != null) {
+            boolean header = firstRecord && isHeader(fields);
+            firstRecord = false;
+            if (header || (fields.size() == 1 && fields.get(0).isBlank())) {
+                continue;
+            }
+            if (fields.size() != csvColumns.size()) {
+                rejectedRows++;
+                continue;
+            }
+            try {
+                return csvMapper.apply(fields);
+            } catch (RuntimeException e) {
+                rejectedRows++;
+            }
+        }
+        return null;
+    }
+
+    private boolean isHeader(List<String> fields) {
+        if (fields.size() != csvColumns.size()) {
+            return false;
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            if (!csvColumns.get(i).equalsIgnoreCase(fields.get(i).trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the fields of one CSV record. A record left open by an unterminated quoted field at the end
+     * of the input is counted as rejected.
+     *
+     * @return The fields of the record, or null at the end of the input.
+     */
+    private List<String> readCsvFields() throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    rejectedRows++;
+                    return null;
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == -1 || c == '\n') {
+                break;
+            } else if (c == '\r') {
+                reader.mark(1);
+                if (reader.read() != '\n') {
+                    reader.reset();
+                }
+                break;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -1,13 +1,19 @@
 package vydrenkova.aston.services.impl;
 
 import vydrenkova.aston.dao.ReviewDao;
+import vydrenkova.aston.dto.BookDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
 import vydrenkova.aston.dto.ReviewDTO;
 import vydrenkova.aston.entities.Review;
 import vydrenkova.aston.mappers.BookMapper;
 import vydrenkova.aston.mappers.ReviewMapper;
+import vydrenkova.aston.services.ImportFormat;
 import vydrenkova.aston.services.ReviewService;
 
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,6 +25,8 @@ import java.util.Optional;
  */
 public class ReviewServiceImpl implements ReviewService {
 
+    private final static List<String> IMPORT_CSV_COLUMNS = List.of("book_id", "reviewer", "rating", "text");
+
     private final ReviewDao reviewDao;
     private final ReviewMapper reviewMapper;
     private final BookMapper bookMapper;
@@ -37,59 +45,147 @@ public class ReviewServiceImpl implements ReviewService {
     }
 
     /**
-     * Retrieves a review by its unique identifier.
+     * Retrieves a review by its unique identifier. The book is only read and mapped if it is embedded.
      *
-     * @param id The unique identifier of the review.
+     * @param id         The unique identifier of the review.
+     * @param expandBook Whether to embed the book of the review; otherwise only its ID is set.
      * @return An Optional containing the ReviewDTO if found, or an empty Optional if not found.
      */
     @Override
-    public Optional<ReviewDTO> getReviewById(Long id) {
-        Optional<Review> review = reviewDao.getReviewById(id);
-        if (review.isPresent()) {
-            ReviewDTO reviewDTO = reviewMapper.toDTO(review.get());
-            reviewDTO.setBook(bookMapper.toDTO(review.get().getBook()));
-            return Optional.of(reviewDTO);
-        }
-        return Optional.empty();
+    public Optional<ReviewDTO> getReviewById(Long id, boolean expandBook) {
+        return reviewDao.getReviewById(id, expandBook).map(review -> toDTO(review, expandBook));
     }
 
     /**
      * Retrieves a list of all reviews available in the system.
      *
+     * @param expandBook Whether to embed the book of each review; otherwise only its ID is set.
      * @return A list of ReviewDTO objects representing all reviews.
      */
     @Override
-    public List<ReviewDTO> getAllReviews() {
-        List<Review> reviews = reviewDao.getAllReviews();
-        List<ReviewDTO> reviewDTOS = new ArrayList<>();
-        for (Review review : reviews) {
-            ReviewDTO reviewDTO = reviewMapper.toDTO(review);
-            reviewDTO.setBook(bookMapper.toDTO(review.getBook()));
-            reviewDTOS.add(reviewDTO);
-        }
-        return reviewDTOS;
+    public List<ReviewDTO> getAllReviews(boolean expandBook) {
+        return toDTOs(reviewDao.getAllReviews(expandBook), expandBook);
+    }
+
+    /**
+     * Searches the text of the reviews and returns one page of the matches, ranked by relevance.
+     *
+     * @param query      The search query.
+     * @param afterRank  The rank of the last review of the previous page, or null for the first page.
+     * @param afterId    The ID of the last review of the previous page, or null for the first page.
+     * @param limit      The maximum number of reviews to return.
+     * @param expandBook Whether to embed the book of each review; otherwise only its ID is set.
+     * @return A list of ReviewDTO objects with their ranks, best match first.
+     */
+    @Override
+    public List<ReviewDTO> searchReviews(String query, Float afterRank, Long afterId, int limit, boolean expandBook) {
+        return toDTOs(reviewDao.searchReviews(query, afterRank, afterId, limit, expandBook), expandBook);
+    }
+
+    /**
+     * Retrieves one page of the reviews of a book, ordered by ID. Each review holds only the ID of the book.
+     *
+     * @param bookId  The unique identifier of the book.
+     * @param afterId The ID of the last review of the previous page, or null for the first page.
+     * @param limit   The maximum number of reviews to return.
+     * @return A list of ReviewDTO objects, or an empty list if there are no more reviews.
+     */
+    @Override
+    public List<ReviewDTO> getReviewsByBookId(Long bookId, Long afterId, int limit) {
+        return toDTOs(reviewDao.getReviewsByBookId(bookId, afterId, limit), false);
     }
 
     /**
      * Creates a new review in the system.
      *
      * @param reviewDTO The ReviewDTO object representing the review to be created.
+     * @throws IllegalArgumentException If the review has neither a bookId nor a book with an ID.
      */
     @Override
     public void createReview(ReviewDTO reviewDTO) {
-        Review review = reviewMapper.toEntity(reviewDTO);
-        reviewDao.createReview(review);
+        reviewDao.createReview(toEntityWithBook(reviewDTO));
+    }
+
+    /**
+     * Bulk-imports reviews from a CSV or NDJSON document. CSV records have the columns book_id, reviewer,
+     * rating and text; NDJSON records are ReviewDTO objects with a bookId or a book holding at least the ID.
+     * Records are parsed, validated and handed to the DAO one at a time, so the document is never held
+     * in memory as a whole. Records without a book ID, reviewer, rating or text are rejected, and so are
+     * reviews of books that do not exist.
+     *
+     * @param reader The document to import, read incrementally.
+     * @param format The format of the document.
+     * @return The number of imported and rejected records and the import throughput.
+     */
+    @Override
+    public ImportResultDTO importReviews(Reader reader, ImportFormat format) {
+        long start = System.nanoTime();
+        RecordReader<ReviewDTO> records = new RecordReader<>(reader, format, ReviewDTO.class, IMPORT_CSV_COLUMNS,
+                fields -> new ReviewDTO(null,
+                        new BookDTO(Long.valueOf(fields.get(0).trim()), null, null, null, null),
+                        emptyToNull(fields.get(1)), Integer.valueOf(fields.get(2).trim()), emptyToNull(fields.get(3))),
+                ReviewServiceImpl::isImportable);
+        long imported = reviewDao.copyReviews(new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public Review next() {
+                return reviewMapper.toEntity(records.next());
+            }
+        });
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        long rejected = records.getRejectedRows() + records.getAcceptedRows() - imported;
+        return new ImportResultDTO(imported, rejected, elapsedMillis);
+    }
+
+    /**
+     * Writes all reviews to the given stream as CSV. The data is streamed from the database as is,
+     * without being mapped to entities or DTOs.
+     *
+     * @param out The stream to write the CSV to; it is not closed.
+     * @return The number of rows written.
+     */
+    @Override
+    public long exportReviews(OutputStream out) {
+        return reviewDao.exportReviews(out);
+    }
+
+    /**
+     * Retrieves the version tag of a review, which changes whenever the representation of the review does.
+     *
+     * @param id The unique identifier of the review.
+     * @return An Optional containing the version tag, or an empty Optional if the review is not found.
+     */
+    @Override
+    public Optional<String> getReviewVersion(Long id) {
+        return reviewDao.getReviewVersion(id);
     }
 
     /**
      * Updates an existing review in the system.
      *
      * @param reviewDTO The ReviewDTO object representing the review to be updated.
+     * @throws IllegalArgumentException If the review has neither a bookId nor a book with an ID.
      */
     @Override
     public void updateReview(ReviewDTO reviewDTO) {
-        Review review = reviewMapper.toEntity(reviewDTO);
-        reviewDao.updateReview(review);
+        reviewDao.updateReview(toEntityWithBook(reviewDTO));
+    }
+
+    /**
+     * Updates an existing review in the system if its version tag still equals the expected one.
+     *
+     * @param reviewDTO       The ReviewDTO object representing the review to be updated.
+     * @param expectedVersion The version tag the review must currently have.
+     * @return true if the review was updated, false if it is not found or has been modified since.
+     * @throws IllegalArgumentException If the review has neither a bookId nor a book with an ID.
+     */
+    @Override
+    public boolean updateReview(ReviewDTO reviewDTO, String expectedVersion) {
+        return reviewDao.updateReview(toEntityWithBook(reviewDTO), expectedVersion);
     }
 
     /**
@@ -101,4 +197,38 @@ public class ReviewServiceImpl implements ReviewService {
     public void deleteReview(Long id) {
         reviewDao.deleteReview(id);
     }
-}
\ No newline at end of file
+
+    private List<ReviewDTO> toDTOs(List<Review> reviews, boolean expandBook) {
+        List<ReviewDTO> reviewDTOS = new ArrayList<>();
+        for (Review review : reviews) {
+            reviewDTOS.add(toDTO(review, expandBook));
+        }
+        return reviewDTOS;
+    }
+
+    private ReviewDTO toDTO(Review review, boolean expandBook) {
+        ReviewDTO reviewDTO = reviewMapper.toDTO(review);
+        if (expandBook) {
+            reviewDTO.setBook(bookMapper.toDTO(review.getBook()));
+        }
+        return reviewDTO;
+    }
+
+    private Review toEntityWithBook(ReviewDTO reviewDTO) {
+        Review review = reviewMapper.toEntity(reviewDTO);
+        if (review.getBook() == null) {
+            throw new IllegalArgumentException("Missing book ID");
+        }
+        return review;
+    }
+
+    private static boolean isImportable(ReviewDTO review) {
+        return (review.getBookId() != null || review.getBook() != null && review.getBook().getId() != null)
+                && review.getReviewer() != null && !review.getReviewer().isBlank()
+                && review.getRating() != null && review.getText() != null;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
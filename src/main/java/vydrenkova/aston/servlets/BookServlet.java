@@ -1,9 +1,20 @@
 package vydrenkova.aston.servlets;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import vydrenkova.aston.config.ServiceFactory;
+import vydrenkova.aston.dao.BookCriteria;
+import vydrenkova.aston.dao.BookField;
+import vydrenkova.aston.dao.BookRanking;
+import vydrenkova.aston.dao.BookSort;
 import vydrenkova.aston.dto.BookDTO;
+import vydrenkova.aston.dto.BookRatingDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
+import vydrenkova.aston.dto.ReviewDTO;
+import vydrenkova.aston.services.ImportFormat;
 import vydrenkova.aston.services.BookService;
+import vydrenkova.aston.services.ReviewService;
 
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
@@ -13,6 +24,10 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * The BookServlet class is a servlet that handles HTTP requests related to books.
@@ -23,11 +38,22 @@ import java.util.Optional;
 @WebServlet("/books/*")
 public class BookServlet extends HttpServlet {
 
+    static final String BATCH_PATH = "/batch";
+    static final String IMPORT_PATH = "/import";
+    static final String SEARCH_PATH = "/search";
+    static final String TOP_PATH = "/top";
+    static final int DEFAULT_TOP_SIZE = 10;
+    static final Pattern BOOK_RATING_PATH = Pattern.compile("^/(\\d+)/rating/?$");
+    static final Pattern BOOK_REVIEWS_PATH = Pattern.compile("^/(\\d+)/reviews/?$");
+
     private BookService bookService;
+    private ReviewService reviewService;
     private ObjectMapper objectMapper;
+    private ObjectMapper projectingMapper;
 
     public BookServlet() {
         this.bookService = ServiceFactory.getBookService();
+        this.reviewService = ServiceFactory.getReviewService();
         this.objectMapper = new ObjectMapper();
     }
 
@@ -40,6 +66,15 @@ public class BookServlet extends HttpServlet {
         this.bookService = bookService;
     }
 
+    /**
+     * Sets the ReviewService instance to be used by this servlet.
+     *
+     * @param reviewService The ReviewService to be used.
+     */
+    public void setReviewService(ReviewService reviewService) {
+        this.reviewService = reviewService;
+    }
+
     /**
      * Sets the ObjectMapper instance to be used by this servlet.
      *
@@ -47,10 +82,25 @@ public class BookServlet extends HttpServlet {
      */
     public void setObjectMapper(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
+        this.projectingMapper = null;
     }
 
     /**
-     * Handles GET requests. Retrieves all books or a specific book by ID.
+     * Handles GET requests. Retrieves a page of books or a specific book by ID.
+     * Pages are requested with the {@code after} (the cursor of the previous page) and {@code limit} query
+     * parameters; the cursor for the next page is returned in the {@value PageRequest#NEXT_CURSOR_HEADER} header. The
+     * cursor is the ID of the last book, followed by its sort value if the books are not sorted by ID. Books can be
+     * filtered with the {@code genre}, {@code author}, {@code minPrice} and {@code maxPrice} parameters and
+     * sorted with {@code sort} (a column name, prefixed with {@code -} for descending order). With
+     * {@code fields} (e.g. {@code fields=id,title,price}) only the named properties are loaded and returned.
+     * On {@code /books/export}, streams all books as a CSV file. On {@code /books/search}, returns up to
+     * {@code limit} books whose title or author is similar to the {@code q} parameter, best match first.
+     * On {@code /books/{id}/rating}, returns the rating summary of the book. On {@code /books/{id}/reviews},
+     * returns a page of the reviews of the book, ordered by ID and paged with {@code after} and {@code limit}
+     * like the books. On {@code /books/top}, returns
+     * the best-selling ({@code by=sales}, the default) or top-rated ({@code by=rating}) books, optionally
+     * within a {@code genre}. A single book is returned with an ETag; a request whose {@code If-None-Match}
+     * header matches it gets 304 Not Modified.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -60,15 +110,28 @@ public class BookServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
+        Matcher bookRating = BOOK_RATING_PATH.matcher(String.valueOf(pathInfo));
+        Matcher bookReviews = BOOK_REVIEWS_PATH.matcher(String.valueOf(pathInfo));
         if (pathInfo == null || pathInfo.equals("/")) {
-            getAllBooks(resp);
+            getBooks(req, resp);
+        } else if (pathInfo.equals(CsvExport.EXPORT_PATH)) {
+            CsvExport.write(req, resp, "books", bookService::exportBooks);
+        } else if (pathInfo.equals(SEARCH_PATH)) {
+            searchBooks(req, resp);
+        } else if (pathInfo.equals(TOP_PATH)) {
+            getTopBooks(req, resp);
+        } else if (bookRating.matches()) {
+            getBookRating(resp, Long.parseLong(bookRating.group(1)));
+        } else if (bookReviews.matches()) {
+            getBookReviews(req, resp, Long.parseLong(bookReviews.group(1)));
         } else {
-            getBookById(resp, pathInfo);
+            getBookById(req, resp, pathInfo);
         }
     }
 
     /**
-     * Handles POST requests. Creates a new book.
+     * Handles POST requests. Creates a new book, or, on {@code /books/batch}, all books of a JSON array.
+     * On {@code /books/import}, bulk-imports books from a CSV or NDJSON body selected by the Content-Type.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -77,13 +140,22 @@ public class BookServlet extends HttpServlet {
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (BATCH_PATH.equals(req.getPathInfo())) {
+            createBooks(req, resp);
+            return;
+        }
+        if (IMPORT_PATH.equals(req.getPathInfo())) {
+            importBooks(req, resp);
+            return;
+        }
         BookDTO bookDTO = objectMapper.readValue(req.getReader(), BookDTO.class);
         bookService.createBook(bookDTO);
         resp.setStatus(HttpServletResponse.SC_CREATED);
     }
 
     /**
-     * Handles PUT requests. Updates an existing book.
+     * Handles PUT requests. Updates an existing book. With an {@code If-Match} header the book is only
+     * updated if its ETag is still one of the given ones; otherwise 412 Precondition Failed is returned.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -100,7 +172,15 @@ public class BookServlet extends HttpServlet {
         Long id = Long.parseLong(pathInfo.substring(1));
         BookDTO bookDTO = objectMapper.readValue(req.getReader(), BookDTO.class);
         bookDTO.setId(id);
-        bookService.updateBook(bookDTO);
+        if (req.getHeader(ETags.IF_MATCH_HEADER) == null) {
+            bookService.updateBook(bookDTO);
+        } else {
+            Optional<String> version = ETags.ifMatch(req, bookService.getBookVersion(id));
+            if (version.isEmpty() || !bookService.updateBook(bookDTO, version.get())) {
+                resp.sendError(HttpServletResponse.SC_PRECONDITION_FAILED, "Book has been modified");
+                return;
+            }
+        }
         resp.setStatus(HttpServletResponse.SC_OK);
     }
 
@@ -124,14 +204,202 @@ public class BookServlet extends HttpServlet {
         resp.setStatus(HttpServletResponse.SC_OK);
     }
 
-    private void getAllBooks(HttpServletResponse resp) throws IOException {
-        List<BookDTO> books = bookService.getAllBooks();
+    private void getBooks(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        PageRequest page = PageRequest.parse(req, resp);
+        if (page == null) {
+            return;
+        }
+        BookCriteria criteria = new BookCriteria();
+        criteria.setLimit(page.getLimit());
+
+        criteria.setGenre(req.getParameter("genre"));
+        criteria.setAuthor(req.getParameter("author"));
+        try {
+            String minPrice = req.getParameter("minPrice");
+            String maxPrice = req.getParameter("maxPrice");
+            criteria.setMinPrice(minPrice == null ? null : Double.parseDouble(minPrice));
+            criteria.setMaxPrice(maxPrice == null ? null : Double.parseDouble(maxPrice));
+        } catch (NumberFormatException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid price filter");
+            return;
+        }
+
+        String sort = req.getParameter("sort");
+        if (sort != null) {
+            criteria.setDescending(sort.startsWith("-"));
+            try {
+                criteria.setSort(BookSort.fromName(criteria.isDescending() ? sort.substring(1) : sort));
+            } catch (IllegalArgumentException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid sort parameter");
+                return;
+            }
+        }
+        if (page.getCursor() != null) {
+            criteria.setAfterId(page.getAfterId());
+            if (criteria.getSort() != BookSort.ID) {
+                criteria.setAfterValue(parseSortValue(criteria.getSort(), page.getCursor().getValue()));
+                if (criteria.getAfterValue() == null) {
+                    PageRequest.reject(resp);
+                    return;
+                }
+            }
+        }
+
+        try {
+            criteria.setFields(FieldProjection.parse(req, BookField.class, BookField::fromName));
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid fields parameter");
+            return;
+        }
+
+        List<BookDTO> books = bookService.getBooks(criteria);
+        if (page.isFull(books)) {
+            BookDTO last = books.get(books.size() - 1);
+            resp.setHeader(PageRequest.NEXT_CURSOR_HEADER, PageCursor.encode(last.getId(), sortValue(last, criteria.getSort())));
+        }
+        resp.setContentType("application/json");
+        if (criteria.getFields() == null) {
+            resp.getWriter().write(objectMapper.writeValueAsString(books));
+        } else {
+            Set<String> properties = criteria.getFields().stream()
+                    .map(BookField::getColumn)
+                    .collect(Collectors.toSet());
+            resp.getWriter().write(FieldProjection.write(projectingMapper(), books, properties));
+        }
+    }
+
+    private static Object parseSortValue(BookSort sort, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return sort.parseValue(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String sortValue(BookDTO book, BookSort sort) {
+        switch (sort) {
+            case TITLE:
+                return book.getTitle();
+            case AUTHOR:
+                return book.getAuthor();
+            case GENRE:
+                return book.getGenre();
+            case PRICE:
+                return String.valueOf(book.getPrice());
+            default:
+                return null;
+        }
+    }
+
+    private ObjectMapper projectingMapper() {
+        if (projectingMapper == null) {
+            projectingMapper = FieldProjection.projecting(objectMapper, BookDTO.class);
+        }
+        return projectingMapper;
+    }
+
+    private void searchBooks(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String query = req.getParameter("q");
+        if (query == null || query.isBlank()) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing search query");
+            return;
+        }
+        PageRequest page = PageRequest.parseLimit(req, resp, PageRequest.DEFAULT_PAGE_SIZE);
+        if (page == null) {
+            return;
+        }
+        List<BookDTO> books = bookService.searchBooks(query.trim(), page.getLimit());
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(books));
+    }
+
+    private void getTopBooks(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        BookRanking ranking;
+        try {
+            String by = req.getParameter("by");
+            ranking = by == null ? BookRanking.SALES : BookRanking.fromName(by);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid ranking");
+            return;
+        }
+        PageRequest page = PageRequest.parseLimit(req, resp, DEFAULT_TOP_SIZE);
+        if (page == null) {
+            return;
+        }
+        List<BookDTO> books = bookService.getTopBooks(ranking, req.getParameter("genre"), page.getLimit());
         resp.setContentType("application/json");
         resp.getWriter().write(objectMapper.writeValueAsString(books));
     }
 
-    private void getBookById(HttpServletResponse resp, String pathInfo) throws IOException {
+    private void createBooks(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        List<Long> ids;
+        try (MappingIterator<BookDTO> books = objectMapper.readerFor(BookDTO.class).readValues(req.getReader())) {
+            ids = bookService.createBooks(books);
+        } catch (JsonProcessingException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid books payload");
+            return;
+        } catch (RuntimeException e) {
+            // MappingIterator reports malformed elements as unchecked exceptions wrapping the parser error
+            if (!(e.getCause() instanceof JsonProcessingException)) {
+                throw e;
+            }
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid books payload");
+            return;
+        }
+        resp.setStatus(HttpServletResponse.SC_CREATED);
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(ids));
+    }
+
+    private void importBooks(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Optional<ImportFormat> format = ImportFormat.fromContentType(req.getContentType());
+        if (format.isEmpty()) {
+            resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported import format");
+            return;
+        }
+        if (req.getCharacterEncoding() == null) {
+            req.setCharacterEncoding("UTF-8");
+        }
+        ImportResultDTO result = bookService.importBooks(req.getReader(), format.get());
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(result));
+    }
+
+    private void getBookRating(HttpServletResponse resp, Long id) throws IOException {
+        Optional<BookRatingDTO> rating = bookService.getBookRating(id);
+        if (rating.isPresent()) {
+            resp.setContentType("application/json");
+            resp.getWriter().write(objectMapper.writeValueAsString(rating.get()));
+        } else {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Book not found");
+        }
+    }
+
+    private void getBookReviews(HttpServletRequest req, HttpServletResponse resp, Long id) throws IOException {
+        PageRequest page = PageRequest.parse(req, resp);
+        if (page == null) {
+            return;
+        }
+        List<ReviewDTO> reviews = reviewService.getReviewsByBookId(id, page.getAfterId(), page.getLimit());
+        if (reviews.isEmpty() && page.getCursor() == null && bookService.getBookVersion(id).isEmpty()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Book not found");
+            return;
+        }
+        if (page.isFull(reviews)) {
+            resp.setHeader(PageRequest.NEXT_CURSOR_HEADER, String.valueOf(reviews.get(reviews.size() - 1).getId()));
+        }
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(reviews));
+    }
+
+    private void getBookById(HttpServletRequest req, HttpServletResponse resp, String pathInfo) throws IOException {
         Long id = Long.parseLong(pathInfo.substring(1));
+        if (ETags.notModified(req, resp, bookService.getBookVersion(id))) {
+            return;
+        }
         Optional<BookDTO> book = bookService.getBookById(id);
         if (book.isPresent()) {
             resp.setContentType("application/json");
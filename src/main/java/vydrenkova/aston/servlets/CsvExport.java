@@ -0,0 +1,64 @@
+package vydrenkova.aston.servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The CsvExport class writes the response of the {@code /export} endpoints. The CSV produced by the
+ * service is written straight to the response output stream, optionally gzip-compressed when the request
+ * has the {@code compress=gzip} query parameter, and offered to the client as a file download.
+ */
+final class CsvExport {
+
+    static final String EXPORT_PATH = "/export";
+    static final String COMPRESS_PARAMETER = "compress";
+    static final String GZIP = "gzip";
+
+    private final static int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private CsvExport() {
+    }
+
+    /**
+     * Writes an export to the response.
+     *
+     * @param req      The HttpServletRequest object.
+     * @param resp     The HttpServletResponse object.
+     * @param name     The base name of the downloaded file, without extension.
+     * @param exporter The function that writes the CSV to the given stream.
+     * @throws IOException If an input or output error is detected while writing the response.
+     */
+    static void write(HttpServletRequest req, HttpServletResponse resp, String name,
+                      Consumer<OutputStream> exporter) throws IOException {
+        String compress = req.getParameter(COMPRESS_PARAMETER);
+        boolean gzip = GZIP.equals(compress);
+        if (compress != null && !gzip) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported compression");
+            return;
+        }
+        if (gzip) {
+            resp.setContentType("application/gzip");
+            resp.setHeader("Content-Disposition", "attachment; filename=\"" + name + ".csv.gz\"");
+        } else {
+            resp.setContentType("text/csv");
+            resp.setCharacterEncoding("UTF-8");
+            resp.setHeader("Content-Disposition", "attachment; filename=\"" + name + ".csv\"");
+        }
+        try {
+            if (gzip) {
+                try (GZIPOutputStream out = new GZIPOutputStream(resp.getOutputStream(), GZIP_BUFFER_SIZE)) {
+                    exporter.accept(out);
+                }
+            } else {
+                exporter.accept(resp.getOutputStream());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
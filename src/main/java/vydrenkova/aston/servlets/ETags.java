@@ -0,0 +1,86 @@
+package vydrenkova.aston.servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Optional;
+
+/**
+ * The ETags class implements conditional requests for single books, orders and reviews. The strong ETag
+ * of a resource is its version tag in quotes. A GET with a matching {@code If-None-Match} is answered with
+ * {@code 304 Not Modified} after a version lookup only, without loading and serializing the resource;
+ * a PUT with {@code If-Match} updates the resource only if its version tag is still one of the given ones.
+ */
+final class ETags {
+
+    static final String ETAG_HEADER = "ETag";
+    static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    static final String IF_MATCH_HEADER = "If-Match";
+
+    private final static String WEAK_PREFIX = "W/";
+    private final static String ANY = "*";
+
+    private ETags() {
+    }
+
+    /**
+     * Sets the ETag header of a GET response and answers it with {@code 304 Not Modified} if the request
+     * has an {@code If-None-Match} header matching the version. The version must be looked up before the
+     * resource is loaded, so that a concurrent update makes the ETag older rather than newer than the body.
+     *
+     * @param req     The HttpServletRequest object.
+     * @param resp    The HttpServletResponse object.
+     * @param version The version tag of the resource, or an empty Optional if it is not found.
+     * @return true if the response has been completed with 304, false if the resource must be written.
+     */
+    static boolean notModified(HttpServletRequest req, HttpServletResponse resp, Optional<String> version) {
+        if (version.isEmpty()) {
+            return false;
+        }
+        resp.setHeader(ETAG_HEADER, format(version.get()));
+        if (matches(req.getHeader(IF_NONE_MATCH_HEADER), version.get(), true)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks the {@code If-Match} header of a PUT against the current version of the resource, with the
+     * strong comparison required for If-Match: weak ETags never match.
+     *
+     * @param req     The HttpServletRequest object.
+     * @param version The current version tag of the resource, or an empty Optional if it is not found.
+     * @return The version tag the update must be made conditional on, or an empty Optional if the
+     * precondition fails.
+     */
+    static Optional<String> ifMatch(HttpServletRequest req, Optional<String> version) {
+        return version.filter(current -> matches(req.getHeader(IF_MATCH_HEADER), current, false));
+    }
+
+    static String format(String version) {
+        return "\"" + version + "\"";
+    }
+
+    private static boolean matches(String header, String version, boolean weakComparison) {
+        if (header == null) {
+            return false;
+        }
+        String expected = format(version);
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.equals(ANY)) {
+                return true;
+            }
+            if (tag.startsWith(WEAK_PREFIX)) {
+                if (!weakComparison) {
+                    continue;
+                }
+                tag = tag.substring(WEAK_PREFIX.length());
+            }
+            if (tag.equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,86 @@
+package vydrenkova.aston.servlets;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The FieldProjection class implements the {@code fields} query parameter of the list endpoints, which
+ * names the properties a client wants, e.g. {@code ?fields=id,title,price}. The DAOs select only the
+ * columns of these properties, and the response is serialized with a Jackson property filter that writes
+ * only these properties, so the other ones are neither read from the database nor sent as nulls.
+ */
+final class FieldProjection {
+
+    static final String FIELDS_PARAMETER = "fields";
+
+    private final static String FILTER_ID = "fieldProjection";
+
+    private FieldProjection() {
+    }
+
+    /**
+     * Parses the {@code fields} parameter of the request.
+     *
+     * @param req      The HttpServletRequest object.
+     * @param type     The enum of the selectable fields.
+     * @param fromName The function returning the field with a given name.
+     * @param <E>      The type of the selectable fields.
+     * @return The requested fields, or null if the request has no {@code fields} parameter.
+     * @throws IllegalArgumentException If a name is not a selectable field or no field is named.
+     */
+    static <E extends Enum<E>> Set<E> parse(HttpServletRequest req, Class<E> type, Function<String, E> fromName) {
+        String value = req.getParameter(FIELDS_PARAMETER);
+        if (value == null) {
+            return null;
+        }
+        Set<E> fields = EnumSet.noneOf(type);
+        for (String name : value.split(",")) {
+            if (!name.isBlank()) {
+                fields.add(fromName.apply(name));
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("No fields requested");
+        }
+        return fields;
+    }
+
+    /**
+     * Creates a copy of the given ObjectMapper that applies the property filter of this class to the given
+     * type. The copy has its own serializer caches, so it should be created once and reused.
+     *
+     * @param objectMapper The ObjectMapper to copy.
+     * @param type         The type whose properties are filtered.
+     * @return The projecting ObjectMapper.
+     */
+    static ObjectMapper projecting(ObjectMapper objectMapper, Class<?> type) {
+        return objectMapper.copy().addMixIn(type, Projected.class);
+    }
+
+    /**
+     * Serializes the given value with only the given properties of the projected type.
+     *
+     * @param projecting The ObjectMapper created by {@link #projecting(ObjectMapper, Class)}.
+     * @param value      The value to serialize.
+     * @param properties The names of the properties to write.
+     * @return The JSON text.
+     * @throws JsonProcessingException If the value cannot be serialized.
+     */
+    static String write(ObjectMapper projecting, Object value, Set<String> properties) throws JsonProcessingException {
+        SimpleFilterProvider filters = new SimpleFilterProvider()
+                .addFilter(FILTER_ID, SimpleBeanPropertyFilter.filterOutAllExcept(properties));
+        return projecting.writer(filters).writeValueAsString(value);
+    }
+
+    @JsonFilter(FILTER_ID)
+    private static abstract class Projected {
+    }
+}
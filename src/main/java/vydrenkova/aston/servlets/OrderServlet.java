@@ -1,7 +1,11 @@
 package vydrenkova.aston.servlets;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import vydrenkova.aston.config.ServiceFactory;
+import vydrenkova.aston.dao.OrderField;
 import vydrenkova.aston.dto.OrderDTO;
 import vydrenkova.aston.services.OrderService;
 
@@ -11,7 +15,19 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * The OrderServlet class is a servlet that handles HTTP requests related to orders.
@@ -22,7 +38,26 @@ import java.util.Optional;
 @WebServlet("/orders/*")
 public class OrderServlet extends HttpServlet {
 
+    static final Pattern ORDER_BOOKS_PATH = Pattern.compile("^/(\\d+)/books/?$");
+    static final String VIEW_PARAMETER = "view";
+    static final String SUMMARY_VIEW = "summary";
+    static final String CUSTOMER_PARAMETER = "customer";
+    static final String STREAM_PARAMETER = "stream";
+
+    /**
+     * The parameters that each select a different shape of the order list; at most one may be given.
+     */
+    private final static List<String> LIST_PARAMETERS = List.of(VIEW_PARAMETER, CUSTOMER_PARAMETER,
+            FieldProjection.FIELDS_PARAMETER, STREAM_PARAMETER);
+    /**
+     * The parameters that only refine one of the list shapes, by the parameter selecting that shape.
+     */
+    private final static Map<String, List<String>> REFINING_PARAMETERS = Map.of(
+            VIEW_PARAMETER, List.of("from", "to"),
+            CUSTOMER_PARAMETER, List.of("before", "after", "limit"));
+
     private ObjectMapper objectMapper;
+    private ObjectMapper projectingMapper;
     private OrderService orderService;
 
     public OrderServlet() {
@@ -37,6 +72,7 @@ public class OrderServlet extends HttpServlet {
      */
     public void setObjectMapper(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
+        this.projectingMapper = null;
     }
 
     /**
@@ -50,6 +86,21 @@ public class OrderServlet extends HttpServlet {
 
     /**
      * Handles GET requests. Retrieves all orders or a specific order by ID.
+     * With {@code ?stream=true} the order list is streamed to the client while it is being read from the database.
+     * With {@code ?view=summary} the orders are returned with their item count and total price but without
+     * their books; with {@code from} and/or {@code to} (ISO-8601 or epoch milliseconds) only the orders placed
+     * within that range are returned, oldest first. With {@code ?fields=} (e.g. {@code fields=id,status})
+     * only the named properties of the orders are loaded and returned; the books are joined only if
+     * {@code books} is among them.
+     * With {@code ?customer=} a page of the orders of that customer is returned, newest first and without
+     * books, optionally only orders placed {@code before} a date (ISO-8601 or epoch milliseconds). Further
+     * pages are requested with {@code after}, the ID from the {@value PageRequest#NEXT_CURSOR_HEADER} header.
+     * Only one of {@code view}, {@code customer}, {@code fields} and {@code stream} may be given, and
+     * {@code from}/{@code to} and {@code before}/{@code after}/{@code limit} only with the parameter they
+     * refine; other combinations get 400 Bad Request rather than a list of another shape than asked for.
+     * On {@code /orders/export}, streams all orders with their book IDs as a CSV file.
+     * A single order is returned with an ETag; a request whose {@code If-None-Match} header matches it gets
+     * 304 Not Modified.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -60,14 +111,33 @@ public class OrderServlet extends HttpServlet {
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
         if (pathInfo == null || pathInfo.equals("/")) {
-            getAllOrders(resp);
+            String view = req.getParameter(VIEW_PARAMETER);
+            if (hasConflictingParameters(req)) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Conflicting parameters");
+            } else if (view != null && !view.equals(SUMMARY_VIEW)) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid view");
+            } else if (view != null) {
+                getOrderSummaries(req, resp);
+            } else if (req.getParameter(CUSTOMER_PARAMETER) != null) {
+                getCustomerOrders(req, resp);
+            } else if (req.getParameter(FieldProjection.FIELDS_PARAMETER) != null) {
+                getOrders(req, resp);
+            } else if (Boolean.parseBoolean(req.getParameter(STREAM_PARAMETER))) {
+                streamAllOrders(resp);
+            } else {
+                getAllOrders(resp);
+            }
+        } else if (pathInfo.equals(CsvExport.EXPORT_PATH)) {
+            CsvExport.write(req, resp, "orders", orderService::exportOrders);
         } else {
-            getOrderById(resp, pathInfo);
+            getOrderById(req, resp, pathInfo);
         }
     }
 
     /**
-     * Handles POST requests. Creates a new order.
+     * Handles POST requests. Creates a new order, or, on {@code /orders/{id}/books}, adds the books
+     * whose IDs are given as a JSON array to an existing order; an unknown order gets 404 Not Found, and
+     * unknown book IDs get 400 Bad Request without any book being added.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -76,13 +146,21 @@ public class OrderServlet extends HttpServlet {
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        Matcher orderBooks = ORDER_BOOKS_PATH.matcher(String.valueOf(req.getPathInfo()));
+        if (orderBooks.matches()) {
+            updateOrderBooks(req, resp, Long.parseLong(orderBooks.group(1)), true);
+            return;
+        }
         OrderDTO orderDTO = objectMapper.readValue(req.getReader(), OrderDTO.class);
         orderService.createOrder(orderDTO);
         resp.setStatus(HttpServletResponse.SC_CREATED);
     }
 
     /**
-     * Handles PUT requests. Updates an existing order.
+     * Handles PUT requests. Updates an existing order; if the payload has books, they replace the books of
+     * the order in the same transaction, and unknown book IDs are rejected with 400 without changing the
+     * order. With an {@code If-Match} header the order is only updated if its ETag is still one of the given
+     * ones; otherwise 412 Precondition Failed is returned.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -99,12 +177,26 @@ public class OrderServlet extends HttpServlet {
         Long id = Long.parseLong(pathInfo.substring(1));
         OrderDTO orderDTO = objectMapper.readValue(req.getReader(), OrderDTO.class);
         orderDTO.setId(id);
-        orderService.updateOrder(orderDTO);
+        try {
+            if (req.getHeader(ETags.IF_MATCH_HEADER) == null) {
+                orderService.updateOrder(orderDTO);
+            } else {
+                Optional<String> version = ETags.ifMatch(req, orderService.getOrderVersion(id));
+                if (version.isEmpty() || !orderService.updateOrder(orderDTO, version.get())) {
+                    resp.sendError(HttpServletResponse.SC_PRECONDITION_FAILED, "Order has been modified");
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown book IDs");
+            return;
+        }
         resp.setStatus(HttpServletResponse.SC_OK);
     }
 
     /**
-     * Handles DELETE requests. Deletes an order by ID.
+     * Handles DELETE requests. Deletes an order by ID, or, on {@code /orders/{id}/books}, removes the books
+     * whose IDs are given as a JSON array from an existing order; an unknown order gets 404 Not Found.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -118,13 +210,52 @@ public class OrderServlet extends HttpServlet {
             resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing order ID");
             return;
         }
+        Matcher orderBooks = ORDER_BOOKS_PATH.matcher(pathInfo);
+        if (orderBooks.matches()) {
+            updateOrderBooks(req, resp, Long.parseLong(orderBooks.group(1)), false);
+            return;
+        }
         Long id = Long.parseLong(pathInfo.substring(1));
         orderService.deleteOrder(id);
         resp.setStatus(HttpServletResponse.SC_OK);
     }
 
-    private void getOrderById(HttpServletResponse resp, String pathInfo) throws IOException {
+    private void updateOrderBooks(HttpServletRequest req, HttpServletResponse resp, Long orderId, boolean add)
+            throws IOException {
+        Long[] ids;
+        try {
+            ids = objectMapper.readValue(req.getReader(), Long[].class);
+        } catch (JsonProcessingException e) {
+            ids = null;
+        }
+        if (ids == null) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid book IDs");
+            return;
+        }
+        List<Long> bookIds = Arrays.asList(ids);
+        Optional<Integer> changed;
+        if (add) {
+            try {
+                changed = orderService.addBooksToOrder(orderId, bookIds);
+            } catch (IllegalArgumentException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown book IDs");
+                return;
+            }
+        } else {
+            changed = orderService.removeBooksFromOrder(orderId, bookIds);
+        }
+        if (changed.isEmpty()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Order not found");
+            return;
+        }
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    private void getOrderById(HttpServletRequest req, HttpServletResponse resp, String pathInfo) throws IOException {
         Long id = Long.parseLong(pathInfo.substring(1));
+        if (ETags.notModified(req, resp, orderService.getOrderVersion(id))) {
+            return;
+        }
         Optional<OrderDTO> order = orderService.getOrderById(id);
         if (order.isPresent()) {
             resp.setContentType("application/json");
@@ -138,4 +269,138 @@ public class OrderServlet extends HttpServlet {
         resp.setContentType("application/json");
         resp.getWriter().write(objectMapper.writeValueAsString(orderService.getAllOrders()));
     }
+
+    private static boolean hasConflictingParameters(HttpServletRequest req) {
+        List<String> given = LIST_PARAMETERS.stream()
+                .filter(parameter -> req.getParameter(parameter) != null)
+                .collect(Collectors.toList());
+        if (given.size() > 1) {
+            return true;
+        }
+        return REFINING_PARAMETERS.entrySet().stream()
+                .filter(refined -> !given.contains(refined.getKey()))
+                .flatMap(refined -> refined.getValue().stream())
+                .anyMatch(parameter -> req.getParameter(parameter) != null);
+    }
+
+    private void getOrderSummaries(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String fromParam = req.getParameter("from");
+        String toParam = req.getParameter("to");
+        List<OrderDTO> orders;
+        if (fromParam == null && toParam == null) {
+            orders = orderService.getOrderSummaries();
+        } else {
+            Date from;
+            Date to;
+            try {
+                from = fromParam == null ? null : parseDate(fromParam.trim());
+                to = toParam == null ? null : parseDate(toParam.trim());
+            } catch (NumberFormatException | DateTimeParseException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid date range");
+                return;
+            }
+            orders = orderService.getOrderSummaries(from, to);
+        }
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(orders));
+    }
+
+    private void getCustomerOrders(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String customer = req.getParameter(CUSTOMER_PARAMETER);
+        if (customer.isBlank()) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing customer");
+            return;
+        }
+        PageRequest page = PageRequest.parse(req, resp);
+        if (page == null) {
+            return;
+        }
+        Date before;
+        try {
+            String beforeParam = req.getParameter("before");
+            before = beforeParam == null ? null : parseDate(beforeParam.trim());
+        } catch (NumberFormatException | DateTimeParseException e) {
+            PageRequest.reject(resp);
+            return;
+        }
+        Timestamp afterDate = null;
+        if (page.getCursor() != null) {
+            afterDate = parseCursorDate(page.getCursor().getValue());
+            if (afterDate == null) {
+                PageRequest.reject(resp);
+                return;
+            }
+        }
+
+        List<OrderDTO> orders = orderService.getCustomerOrders(customer, before, afterDate, page.getAfterId(),
+                page.getLimit());
+        if (page.isFull(orders)) {
+            OrderDTO last = orders.get(orders.size() - 1);
+            resp.setHeader(PageRequest.NEXT_CURSOR_HEADER,
+                    PageCursor.encode(last.getId(), last.getDate().toInstant().toString()));
+        }
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(orders));
+    }
+
+    private static Timestamp parseCursorDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Timestamp.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Date parseDate(String value) {
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            return new Date(Long.parseLong(value));
+        }
+        return Date.from(Instant.parse(value));
+    }
+
+    private void getOrders(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Set<OrderField> fields;
+        try {
+            fields = FieldProjection.parse(req, OrderField.class, OrderField::fromName);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid fields parameter");
+            return;
+        }
+        if (projectingMapper == null) {
+            projectingMapper = FieldProjection.projecting(objectMapper, OrderDTO.class);
+        }
+        Set<String> properties = fields.stream().map(OrderField::getProperty).collect(Collectors.toSet());
+        resp.setContentType("application/json");
+        resp.getWriter().write(FieldProjection.write(projectingMapper, orderService.getOrders(fields), properties));
+    }
+
+    /**
+     * Streams all orders as a JSON array. The array is only closed once the last order has been written: if
+     * reading the orders fails midway, the exception propagates and the client receives a truncated body
+     * that is not valid JSON, rather than a well-formed array that silently lacks the remaining orders.
+     */
+    private void streamAllOrders(HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        try (JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(resp.getOutputStream(), JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)) {
+            generator.writeStartArray();
+            try {
+                orderService.streamAllOrders(order -> {
+                    try {
+                        generator.writeObject(order);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+        }
+    }
 }
\ No newline at end of file
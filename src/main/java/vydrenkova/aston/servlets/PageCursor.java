@@ -0,0 +1,71 @@
+package vydrenkova.aston.servlets;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The PageCursor class is the keyset cursor returned in the {@code X-Next-Cursor} header and sent back in
+ * the {@code after} parameter. It holds the ID of the last item of a page and, for lists that are not
+ * ordered by ID, the sort value of that item, so the next page can be selected from the cursor alone: it
+ * stays correct if the item is deleted or its sort value changes in between.
+ * <p>
+ * A cursor without a sort value is the plain ID; otherwise it is the ID, a dot and the URL-safe Base64 of
+ * the sort value, e.g. {@code 42.MTAuMA} for the ID 42 and the value {@code 10.0}.
+ */
+final class PageCursor {
+
+    private final static String SEPARATOR = ".";
+
+    private final long id;
+    private final String value;
+
+    private PageCursor(long id, String value) {
+        this.id = id;
+        this.value = value;
+    }
+
+    /**
+     * Encodes the cursor of the item with the given ID and sort value.
+     *
+     * @param id    The ID of the last item of the page.
+     * @param value The sort value of that item, or null if the list is ordered by ID only.
+     * @return The cursor text.
+     */
+    static String encode(long id, String value) {
+        if (value == null) {
+            return String.valueOf(id);
+        }
+        return id + SEPARATOR + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor produced by {@link #encode(long, String)}.
+     *
+     * @param cursor The cursor text.
+     * @return The decoded cursor.
+     * @throws IllegalArgumentException If the text is not a valid cursor.
+     */
+    static PageCursor decode(String cursor) {
+        int separator = cursor.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return new PageCursor(Long.parseLong(cursor), null);
+        }
+        long id = Long.parseLong(cursor.substring(0, separator));
+        byte[] value = Base64.getUrlDecoder().decode(cursor.substring(separator + 1));
+        return new PageCursor(id, new String(value, StandardCharsets.UTF_8));
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the sort value of the cursor.
+     *
+     * @return The sort value, or null if the cursor is a plain ID.
+     */
+    String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,123 @@
+package vydrenkova.aston.servlets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The PageRequest class holds the paging parameters of a list endpoint: the {@code after} cursor of the
+ * previous page and the {@code limit} of the page. A limit above {@value #MAX_PAGE_SIZE} is lowered to it;
+ * the cursor for the next page is returned in the {@value #NEXT_CURSOR_HEADER} header.
+ */
+final class PageRequest {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+
+    private final static String INVALID_PAGING_PARAMETERS = "Invalid paging parameters";
+
+    private final PageCursor cursor;
+    private final int limit;
+
+    private PageRequest(PageCursor cursor, int limit) {
+        this.cursor = cursor;
+        this.limit = limit;
+    }
+
+    /**
+     * Parses the {@code after} and {@code limit} parameters of the request, with a default limit of
+     * {@value #DEFAULT_PAGE_SIZE}.
+     *
+     * @param req  The HttpServletRequest object.
+     * @param resp The HttpServletResponse object, used to reject invalid parameters.
+     * @return The page request, or null if the parameters are invalid and 400 Bad Request has been sent.
+     * @throws IOException If the error response could not be sent.
+     */
+    static PageRequest parse(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String after = req.getParameter("after");
+        PageCursor cursor;
+        try {
+            cursor = after == null ? null : PageCursor.decode(after);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, INVALID_PAGING_PARAMETERS);
+            return null;
+        }
+        return parse(req, resp, cursor, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Parses the {@code limit} parameter of a list that is not paged with a cursor.
+     *
+     * @param req          The HttpServletRequest object.
+     * @param resp         The HttpServletResponse object, used to reject an invalid limit.
+     * @param defaultLimit The limit if the request has no {@code limit} parameter.
+     * @return The page request, or null if the limit is invalid and 400 Bad Request has been sent.
+     * @throws IOException If the error response could not be sent.
+     */
+    static PageRequest parseLimit(HttpServletRequest req, HttpServletResponse resp, int defaultLimit)
+            throws IOException {
+        return parse(req, resp, null, defaultLimit);
+    }
+
+    private static PageRequest parse(HttpServletRequest req, HttpServletResponse resp, PageCursor cursor,
+                                     int defaultLimit) throws IOException {
+        String limitParam = req.getParameter("limit");
+        int limit;
+        try {
+            limit = limitParam == null ? defaultLimit : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            limit = 0;
+        }
+        if (limit < 1) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, INVALID_PAGING_PARAMETERS);
+            return null;
+        }
+        return new PageRequest(cursor, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Sends the 400 Bad Request of invalid paging parameters for a parameter that only the endpoint can
+     * check, e.g. a cursor without the sort value the list is ordered by.
+     *
+     * @param resp The HttpServletResponse object.
+     * @throws IOException If the error response could not be sent.
+     */
+    static void reject(HttpServletResponse resp) throws IOException {
+        resp.sendError(HttpServletResponse.SC_BAD_REQUEST, INVALID_PAGING_PARAMETERS);
+    }
+
+    /**
+     * Returns the cursor of the previous page.
+     *
+     * @return The cursor, or null for the first page.
+     */
+    PageCursor getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Returns the ID of the last item of the previous page.
+     *
+     * @return The ID from the cursor, or null for the first page.
+     */
+    Long getAfterId() {
+        return cursor == null ? null : cursor.getId();
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Tells whether a page is full, so more items may follow and the {@value #NEXT_CURSOR_HEADER} header
+     * is to be set.
+     *
+     * @param items The items of the page.
+     * @return True if the page holds {@code limit} items.
+     */
+    boolean isFull(List<?> items) {
+        return items.size() == limit;
+    }
+}
@@ -3,6 +3,8 @@ package vydrenkova.aston.servlets;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import vydrenkova.aston.config.ServiceFactory;
 import vydrenkova.aston.dto.ReviewDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
+import vydrenkova.aston.services.ImportFormat;
 import vydrenkova.aston.services.ReviewService;
 
 import javax.servlet.ServletException;
@@ -11,6 +13,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -22,6 +25,13 @@ import java.util.Optional;
 @WebServlet("/reviews/*")
 public class ReviewServlet extends HttpServlet {
 
+    static final String IMPORT_PATH = "/import";
+    static final String SEARCH_PATH = "/search";
+    static final String EXPAND_PARAMETER = "expand";
+    static final String EXPAND_BOOK = "book";
+
+    private final static String MISSING_BOOK_ID = "Missing book ID";
+
     private ObjectMapper objectMapper;
     private ReviewService reviewService;
 
@@ -50,6 +60,13 @@ public class ReviewServlet extends HttpServlet {
 
     /**
      * Handles GET requests. Retrieves all reviews or a specific review by ID.
+     * On {@code /reviews/export}, streams all reviews as a CSV file. On {@code /reviews/search}, returns the
+     * reviews whose text matches the {@code q} parameter, best match first, paged with the {@code after}
+     * and {@code limit} parameters like {@code /books}; the cursor carries the rank of the last review.
+     * A single review is returned with an ETag; a request whose {@code If-None-Match} header matches it
+     * gets 304 Not Modified.
+     * Reviews carry the ID of their book in {@code bookId}; with {@code expand=book} the book itself is
+     * embedded as well.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -59,15 +76,27 @@ public class ReviewServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         String pathInfo = req.getPathInfo();
+        String expand = req.getParameter(EXPAND_PARAMETER);
+        if (expand != null && !expand.equals(EXPAND_BOOK)) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid expand parameter");
+            return;
+        }
+        boolean expandBook = expand != null;
         if (pathInfo == null || pathInfo.equals("/")) {
-            getAllReviews(resp);
+            getAllReviews(resp, expandBook);
+        } else if (pathInfo.equals(CsvExport.EXPORT_PATH)) {
+            CsvExport.write(req, resp, "reviews", reviewService::exportReviews);
+        } else if (pathInfo.equals(SEARCH_PATH)) {
+            searchReviews(req, resp, expandBook);
         } else {
-            getReviewById(resp, pathInfo);
+            getReviewById(req, resp, pathInfo, expandBook);
         }
     }
 
     /**
-     * Handles POST requests. Creates a new review.
+     * Handles POST requests. Creates a new review, or, on {@code /reviews/import}, bulk-imports reviews
+     * from a CSV or NDJSON body selected by the Content-Type. A review without a {@code bookId} or a
+     * {@code book} with an ID is rejected with 400 Bad Request.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -76,13 +105,24 @@ public class ReviewServlet extends HttpServlet {
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (IMPORT_PATH.equals(req.getPathInfo())) {
+            importReviews(req, resp);
+            return;
+        }
         ReviewDTO reviewDTO = objectMapper.readValue(req.getReader(), ReviewDTO.class);
-        reviewService.createReview(reviewDTO);
+        try {
+            reviewService.createReview(reviewDTO);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, MISSING_BOOK_ID);
+            return;
+        }
         resp.setStatus(HttpServletResponse.SC_CREATED);
     }
 
     /**
-     * Handles PUT requests. Updates an existing review.
+     * Handles PUT requests. Updates an existing review. With an {@code If-Match} header the review is only
+     * updated if its ETag is still one of the given ones; otherwise 412 Precondition Failed is returned. A
+     * review without a {@code bookId} or a {@code book} with an ID is rejected with 400 Bad Request.
      *
      * @param req  The HttpServletRequest object.
      * @param resp The HttpServletResponse object.
@@ -99,7 +139,20 @@ public class ReviewServlet extends HttpServlet {
         Long id = Long.parseLong(pathInfo.substring(1));
         ReviewDTO reviewDTO = objectMapper.readValue(req.getReader(), ReviewDTO.class);
         reviewDTO.setId(id);
-        reviewService.updateReview(reviewDTO);
+        try {
+            if (req.getHeader(ETags.IF_MATCH_HEADER) == null) {
+                reviewService.updateReview(reviewDTO);
+            } else {
+                Optional<String> version = ETags.ifMatch(req, reviewService.getReviewVersion(id));
+                if (version.isEmpty() || !reviewService.updateReview(reviewDTO, version.get())) {
+                    resp.sendError(HttpServletResponse.SC_PRECONDITION_FAILED, "Review has been modified");
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, MISSING_BOOK_ID);
+            return;
+        }
         resp.setStatus(HttpServletResponse.SC_OK);
     }
 
@@ -123,9 +176,67 @@ public class ReviewServlet extends HttpServlet {
         resp.setStatus(HttpServletResponse.SC_OK);
     }
 
-    private void getReviewById(HttpServletResponse resp, String pathInfo) throws IOException {
+    private void importReviews(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Optional<ImportFormat> format = ImportFormat.fromContentType(req.getContentType());
+        if (format.isEmpty()) {
+            resp.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported import format");
+            return;
+        }
+        if (req.getCharacterEncoding() == null) {
+            req.setCharacterEncoding("UTF-8");
+        }
+        ImportResultDTO result = reviewService.importReviews(req.getReader(), format.get());
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(result));
+    }
+
+    private void searchReviews(HttpServletRequest req, HttpServletResponse resp, boolean expandBook) throws IOException {
+        String query = req.getParameter("q");
+        if (query == null || query.isBlank()) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing search query");
+            return;
+        }
+        PageRequest page = PageRequest.parse(req, resp);
+        if (page == null) {
+            return;
+        }
+        Float afterRank = null;
+        if (page.getCursor() != null) {
+            afterRank = parseRank(page.getCursor().getValue());
+            if (afterRank == null) {
+                PageRequest.reject(resp);
+                return;
+            }
+        }
+
+        List<ReviewDTO> reviews = reviewService.searchReviews(query, afterRank, page.getAfterId(), page.getLimit(),
+                expandBook);
+        if (page.isFull(reviews)) {
+            ReviewDTO last = reviews.get(reviews.size() - 1);
+            resp.setHeader(PageRequest.NEXT_CURSOR_HEADER, PageCursor.encode(last.getId(), Float.toString(last.getRank())));
+        }
+        resp.setContentType("application/json");
+        resp.getWriter().write(objectMapper.writeValueAsString(reviews));
+    }
+
+    private static Float parseRank(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Float.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void getReviewById(HttpServletRequest req, HttpServletResponse resp, String pathInfo, boolean expandBook)
+            throws IOException {
         Long id = Long.parseLong(pathInfo.substring(1));
-        Optional<ReviewDTO> review = reviewService.getReviewById(id);
+        if (ETags.notModified(req, resp, reviewService.getReviewVersion(id))) {
+            return;
+        }
+        Optional<ReviewDTO> review = reviewService.getReviewById(id, expandBook);
         if (review.isPresent()) {
             resp.setContentType("application/json");
             resp.getWriter().write(objectMapper.writeValueAsString(review.get()));
@@ -134,8 +245,8 @@ public class ReviewServlet extends HttpServlet {
         }
     }
 
-    private void getAllReviews(HttpServletResponse resp) throws IOException {
+    private void getAllReviews(HttpServletResponse resp, boolean expandBook) throws IOException {
         resp.setContentType("application/json");
-        resp.getWriter().write(objectMapper.writeValueAsString(reviewService.getAllReviews()));
+        resp.getWriter().write(objectMapper.writeValueAsString(reviewService.getAllReviews(expandBook)));
     }
 }
\ No newline at end of file
@@ -0,0 +1,5 @@
+-- Order history of a customer for GET /orders?customer=: WHERE customer = ? ORDER BY date DESC, id DESC
+-- LIMIT ?, with the page after a cursor selected by (date, id) < (?, ?). The index matches that order,
+-- so every page is one range scan, and holds the status as well, so all columns of orders the query
+-- reads come from the index (an index-only scan while the visibility map is current).
+CREATE INDEX IF NOT EXISTS orders_customer_date_id_idx ON orders (customer, date DESC, id DESC) INCLUDE (status);
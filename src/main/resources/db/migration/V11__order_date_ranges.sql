@@ -0,0 +1,22 @@
+-- Date-range reporting over orders (GET /orders?view=summary&from=&to=). orders is append-mostly and its
+-- rows arrive roughly in date order, so a BRIN index on date, a few pages in size, lets a range scan skip
+-- every block range whose dates lie outside the range.
+CREATE INDEX IF NOT EXISTS orders_date_brin_idx ON orders USING brin (date);
+
+-- order_books carries the date of its order, the key by which both tables can be partitioned by month
+-- (see OrderPartitionManager). The foreign key includes it, so it always equals the date of the order;
+-- OrderDaoImpl moves the order_books rows together with the order when its date changes.
+ALTER TABLE order_books ADD COLUMN IF NOT EXISTS order_date TIMESTAMP;
+
+UPDATE order_books ob SET order_date = o.date
+FROM orders o
+WHERE o.id = ob.order_id AND ob.order_date IS NULL;
+
+ALTER TABLE order_books ALTER COLUMN order_date SET NOT NULL;
+
+ALTER TABLE orders ADD CONSTRAINT orders_id_date_key UNIQUE (id, date);
+
+ALTER TABLE order_books DROP CONSTRAINT IF EXISTS order_books_order_id_fkey;
+
+ALTER TABLE order_books ADD CONSTRAINT order_books_order_id_order_date_fkey
+    FOREIGN KEY (order_id, order_date) REFERENCES orders (id, date);
@@ -0,0 +1,87 @@
+-- Monthly partitions of orders (by date) and order_books (by order_date), applied only with
+-- orders.partitioning.enabled=true (see index.txt). Each table gets a partition per month from the oldest
+-- to the newest order, at least up to the current month, and a default partition for all other dates;
+-- OrderPartitionManager then creates the partitions of the coming months and detaches old ones. The
+-- conversion rewrites every row under an exclusive lock of both tables.
+--
+-- The keys of a partitioned table must include its partition column, so the primary keys become
+-- (id, date) and (order_id, book_id, order_date); orders_id_date_key is covered by the new primary key of
+-- orders and is not recreated. Everything else below is recreated as created by V1-V11.
+
+LOCK TABLE orders, order_books IN ACCESS EXCLUSIVE MODE;
+
+DROP MATERIALIZED VIEW book_sales;
+ALTER SEQUENCE orders_id_seq OWNED BY NONE;
+ALTER TABLE order_books RENAME TO order_books_unpartitioned;
+ALTER TABLE orders RENAME TO orders_unpartitioned;
+
+CREATE TABLE orders (
+    id INT NOT NULL DEFAULT nextval('orders_id_seq'),
+    customer VARCHAR(255) NOT NULL,
+    date TIMESTAMP NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    version BIGINT NOT NULL DEFAULT 1
+) PARTITION BY RANGE (date);
+
+CREATE TABLE order_books (
+    order_id BIGINT NOT NULL,
+    book_id BIGINT NOT NULL,
+    order_date TIMESTAMP NOT NULL
+) PARTITION BY RANGE (order_date);
+
+CREATE TABLE orders_default PARTITION OF orders DEFAULT;
+CREATE TABLE order_books_default PARTITION OF order_books DEFAULT;
+
+-- Partition names match those OrderPartitionManager creates and detaches.
+DO $$
+DECLARE
+    partition_month date;
+BEGIN
+    FOR partition_month IN
+        SELECT generate_series(date_trunc('month', min(date)),
+                               greatest(date_trunc('month', max(date)), date_trunc('month', localtimestamp)),
+                               interval '1 month')::date
+        FROM orders_unpartitioned
+    LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF orders FOR VALUES FROM (%L) TO (%L)',
+                'orders' || to_char(partition_month, '_YYYY_MM'), partition_month,
+                partition_month + interval '1 month');
+        EXECUTE format('CREATE TABLE %I PARTITION OF order_books FOR VALUES FROM (%L) TO (%L)',
+                'order_books' || to_char(partition_month, '_YYYY_MM'), partition_month,
+                partition_month + interval '1 month');
+    END LOOP;
+END
+$$;
+
+INSERT INTO orders (id, customer, date, status, version)
+SELECT id, customer, date, status, version FROM orders_unpartitioned;
+
+INSERT INTO order_books (order_id, book_id, order_date)
+SELECT order_id, book_id, order_date FROM order_books_unpartitioned;
+
+DROP TABLE order_books_unpartitioned;
+DROP TABLE orders_unpartitioned;
+ALTER SEQUENCE orders_id_seq OWNED BY orders.id;
+
+ALTER TABLE orders ADD CONSTRAINT orders_pkey PRIMARY KEY (id, date);
+ALTER TABLE order_books ADD CONSTRAINT order_books_pkey PRIMARY KEY (order_id, book_id, order_date);
+ALTER TABLE order_books ADD CONSTRAINT order_books_order_id_order_date_fkey
+    FOREIGN KEY (order_id, order_date) REFERENCES orders (id, date);
+ALTER TABLE order_books ADD CONSTRAINT order_books_book_id_fkey
+    FOREIGN KEY (book_id) REFERENCES books (id);
+
+-- V2, V10 and V11.
+CREATE INDEX order_books_book_id_idx ON order_books (book_id);
+CREATE INDEX orders_customer_date_id_idx ON orders (customer, date DESC, id DESC) INCLUDE (status);
+CREATE INDEX orders_date_brin_idx ON orders USING brin (date);
+
+-- V7.
+CREATE MATERIALIZED VIEW book_sales AS
+SELECT ob.book_id, b.genre, count(*) AS sales
+FROM order_books ob
+JOIN books b ON b.id = ob.book_id
+GROUP BY ob.book_id, b.genre;
+
+CREATE UNIQUE INDEX book_sales_book_id_idx ON book_sales (book_id);
+CREATE INDEX book_sales_rank_idx ON book_sales (sales DESC, book_id);
+CREATE INDEX book_sales_genre_rank_idx ON book_sales (genre, sales DESC, book_id);
@@ -0,0 +1,18 @@
+-- Documents which GET /books queries the indexes of V3 serve. The header of V3 claims every filtered and
+-- sorted page is a single index range scan, which only holds for the combinations below; V3 is applied and
+-- cannot be changed, so the corrected description is kept on the indexes themselves (\di+ in psql).
+-- A page sorted by ID without filters is read along the primary key. Any other combination, e.g. a genre or
+-- author filter sorted by title or by ID, or a sort by author or genre, reads all matching books, or walks
+-- an index past the books that do not match, before the LIMIT.
+
+COMMENT ON INDEX books_genre_price_id_idx IS
+    'GET /books with a genre filter, an optional price range and sorted by price';
+
+COMMENT ON INDEX books_author_price_id_idx IS
+    'GET /books with an author filter, an optional price range and sorted by price';
+
+COMMENT ON INDEX books_price_id_idx IS
+    'GET /books sorted by price, with a price range or without filters';
+
+COMMENT ON INDEX books_title_id_idx IS
+    'GET /books sorted by title without filters';
@@ -0,0 +1,30 @@
+-- Baseline schema. IF NOT EXISTS lets the baseline be recorded on databases created before migrations existed.
+
+CREATE TABLE IF NOT EXISTS books (
+    id SERIAL PRIMARY KEY,
+    title VARCHAR(255) NOT NULL,
+    author VARCHAR(255) NOT NULL,
+    genre VARCHAR(255) NOT NULL,
+    price DOUBLE PRECISION NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS orders (
+    id SERIAL PRIMARY KEY,
+    customer VARCHAR(255) NOT NULL,
+    date TIMESTAMP NOT NULL,
+    status VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS order_books (
+    order_id BIGINT REFERENCES orders(id),
+    book_id BIGINT REFERENCES books(id),
+    PRIMARY KEY (order_id, book_id)
+);
+
+CREATE TABLE IF NOT EXISTS reviews (
+    id SERIAL PRIMARY KEY,
+    book_id BIGINT REFERENCES books(id),
+    reviewer VARCHAR(255) NOT NULL,
+    rating INT NOT NULL,
+    text TEXT NOT NULL
+);
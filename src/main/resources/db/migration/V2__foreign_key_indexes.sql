@@ -0,0 +1,8 @@
+-- PostgreSQL does not index the referencing side of a foreign key. Without these indexes the
+-- book joins and lookups by book (and the foreign key checks of DELETE FROM books) scan whole tables.
+
+-- order_books(order_id, ...) is already covered by the primary key.
+CREATE INDEX IF NOT EXISTS order_books_book_id_idx ON order_books (book_id);
+
+-- reviews of a book: the books join in ReviewDaoImpl and the staging insert of the review import.
+CREATE INDEX IF NOT EXISTS reviews_book_id_idx ON reviews (book_id);
@@ -0,0 +1,15 @@
+-- Composite indexes for filtering and sorting GET /books (see BookQueryBuilder).
+-- Every index ends with id, the tie-breaker of the keyset cursor, so a filtered and sorted page
+-- is a single index range scan followed by LIMIT.
+
+-- genre filter, optionally with a price range and/or sorted by price
+CREATE INDEX IF NOT EXISTS books_genre_price_id_idx ON books (genre, price, id);
+
+-- author filter, optionally with a price range and/or sorted by price
+CREATE INDEX IF NOT EXISTS books_author_price_id_idx ON books (author, price, id);
+
+-- price range without other filters, sort by price
+CREATE INDEX IF NOT EXISTS books_price_id_idx ON books (price, id);
+
+-- sort by title
+CREATE INDEX IF NOT EXISTS books_title_id_idx ON books (title, id);
@@ -0,0 +1,9 @@
+-- Full-text search over review text (GET /reviews/search). The tsvector is a stored generated column,
+-- so it is computed once per write instead of once per row on every search, and the GIN index turns
+-- the @@ match into an index lookup. The text search configuration must be given explicitly for the
+-- expression to be immutable.
+
+ALTER TABLE reviews ADD COLUMN IF NOT EXISTS text_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', text)) STORED;
+
+CREATE INDEX IF NOT EXISTS reviews_text_tsv_idx ON reviews USING GIN (text_tsv);
@@ -0,0 +1,10 @@
+-- Typo-tolerant search over book titles and authors (GET /books/search). pg_trgm splits strings into
+-- three-character trigrams; the GIN indexes answer the word similarity operator <% without reading
+-- the whole table, so a search stays an index lookup on a catalog of millions of books.
+-- pg_trgm is a trusted extension, so the application user can create it on PostgreSQL 13 and later.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS books_title_trgm_idx ON books USING GIN (title gin_trgm_ops);
+
+CREATE INDEX IF NOT EXISTS books_author_trgm_idx ON books USING GIN (author gin_trgm_ops);
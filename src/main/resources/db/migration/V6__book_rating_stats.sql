@@ -0,0 +1,28 @@
+-- Per-book rating summary (GET /books/{id}/rating). ReviewDaoImpl keeps it up to date in the same
+-- transaction as every review write, so reading the rating of a book is one primary key lookup instead
+-- of an aggregate over all of its reviews. rating_N counts the reviews with rating N; ratings outside
+-- 1-5 only count towards review_count and rating_sum.
+
+CREATE TABLE IF NOT EXISTS book_rating_stats (
+    book_id BIGINT PRIMARY KEY REFERENCES books(id) ON DELETE CASCADE,
+    review_count BIGINT NOT NULL DEFAULT 0,
+    rating_sum BIGINT NOT NULL DEFAULT 0,
+    rating_1 BIGINT NOT NULL DEFAULT 0,
+    rating_2 BIGINT NOT NULL DEFAULT 0,
+    rating_3 BIGINT NOT NULL DEFAULT 0,
+    rating_4 BIGINT NOT NULL DEFAULT 0,
+    rating_5 BIGINT NOT NULL DEFAULT 0
+);
+
+-- Backfill from the existing reviews.
+INSERT INTO book_rating_stats (book_id, review_count, rating_sum, rating_1, rating_2, rating_3, rating_4, rating_5)
+SELECT book_id, count(*), sum(rating),
+       count(*) FILTER (WHERE rating = 1),
+       count(*) FILTER (WHERE rating = 2),
+       count(*) FILTER (WHERE rating = 3),
+       count(*) FILTER (WHERE rating = 4),
+       count(*) FILTER (WHERE rating = 5)
+FROM reviews
+WHERE book_id IS NOT NULL
+GROUP BY book_id
+ON CONFLICT (book_id) DO NOTHING;
@@ -0,0 +1,13 @@
+-- Row versions for ETags and optimistic concurrency. Every update of a row increments its version.
+-- The version tag of a book, order or review combines the version of its own row with the versions of
+-- the rows embedded in its JSON (the rating summary of a book, the books of an order, the book of a
+-- review), so the tag changes whenever the representation does. Constant defaults make the columns
+-- cheap to add: existing rows are not rewritten.
+
+ALTER TABLE books ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+
+ALTER TABLE orders ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+
+ALTER TABLE reviews ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+
+ALTER TABLE book_rating_stats ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
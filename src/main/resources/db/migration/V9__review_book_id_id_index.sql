@@ -0,0 +1,7 @@
+-- GET /books/{id}/reviews pages through the reviews of a book with WHERE book_id = ? AND id > ?
+-- ORDER BY id LIMIT ?. An index on (book_id, id) serves every page as one range scan in ID order,
+-- without sorting the reviews of the book. It also covers everything reviews_book_id_idx did,
+-- including the foreign key checks of DELETE FROM books, so that index is dropped.
+CREATE INDEX IF NOT EXISTS reviews_book_id_id_idx ON reviews (book_id, id);
+
+DROP INDEX IF EXISTS reviews_book_id_idx;
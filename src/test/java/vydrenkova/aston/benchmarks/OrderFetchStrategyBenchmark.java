@@ -0,0 +1,100 @@
+package vydrenkova.aston.benchmarks;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testcontainers.containers.PostgreSQLContainer;
+import vydrenkova.aston.containers.PostgresTestContainer;
+import vydrenkova.aston.dao.OrderDao;
+import vydrenkova.aston.dao.OrderFetchStrategy;
+import vydrenkova.aston.dao.impl.OrderDaoImpl;
+import vydrenkova.aston.entities.Order;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Compares the latency of loading all orders with their books using the join and the batch
+ * {@link OrderFetchStrategy}. Before measuring, every trial logs the number of bytes received from
+ * the server by one {@code getAllOrders} call, counted by {@link CountingSocketFactory}.
+ * Requires Docker, since the database runs in a Testcontainers PostgreSQL container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderFetchStrategyBenchmark {
+
+    private final static Logger LOGGER = Logger.getLogger(OrderFetchStrategyBenchmark.class.getName());
+
+    static final int BOOKS = 1_000;
+    static final int ORDERS = 5_000;
+    static final int BOOKS_PER_ORDER = 10;
+
+    @Param({"JOIN", "BATCH"})
+    public OrderFetchStrategy strategy;
+
+    private PostgreSQLContainer<?> container;
+    private HikariDataSource dataSource;
+    private OrderDao orderDao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        container = new PostgreSQLContainer<>("postgres:14");
+        container.start();
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(container.getJdbcUrl());
+        config.setUsername(container.getUsername());
+        config.setPassword(container.getPassword());
+        config.addDataSourceProperty("socketFactory", CountingSocketFactory.class.getName());
+        dataSource = new HikariDataSource(config);
+
+        PostgresTestContainer.createTables(dataSource);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO books (title, author, genre, price) " +
+                    "SELECT 'A fairly long book title number ' || g, 'Author ' || (g % 100), 'Genre ' || (g % 10), " +
+                    "(g % 50) + 0.99 FROM generate_series(1, " + BOOKS + ") g");
+            stmt.execute("INSERT INTO orders (customer, date, status) " +
+                    "SELECT 'customer' || g || '@example.com', now() - g * interval '1 minute', 'DELIVERED' " +
+                    "FROM generate_series(1, " + ORDERS + ") g");
+            stmt.execute("INSERT INTO order_books (order_id, book_id, order_date) " +
+                    "SELECT o.id, ((o.id * 31 + k * 97) % " + BOOKS + ") + 1, o.date " +
+                    "FROM orders o, generate_series(1, " + BOOKS_PER_ORDER + ") k");
+            stmt.execute("ANALYZE");
+        }
+
+        orderDao = new OrderDaoImpl(dataSource, strategy);
+        long before = CountingSocketFactory.bytesReceived();
+        orderDao.getAllOrders();
+        LOGGER.info(String.format("%s: %d bytes received per getAllOrders() call",
+                strategy, CountingSocketFactory.bytesReceived() - before));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+        container.stop();
+    }
+
+    @Benchmark
+    public List<Order> getAllOrders() {
+        return orderDao.getAllOrders();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderFetchStrategyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
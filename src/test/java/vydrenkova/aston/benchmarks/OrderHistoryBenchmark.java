@@ -0,0 +1,132 @@
+package vydrenkova.aston.benchmarks;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.testcontainers.containers.PostgreSQLContainer;
+import vydrenkova.aston.containers.PostgresTestContainer;
+import vydrenkova.aston.dao.OrderDao;
+import vydrenkova.aston.dao.impl.OrderDaoImpl;
+import vydrenkova.aston.entities.Order;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Measures the latency of one page of a customer's order history ({@code OrderDao.getCustomerOrders}) on
+ * a table of 10 million orders spread over 100,000 customers, with and without the
+ * {@code (customer, date DESC, id DESC)} index. Every call picks a random customer; {@code firstPage}
+ * reads the newest orders, {@code firstPageBeforeDate} the newest orders before a date, and
+ * {@code pageAfterCursor} the page after an order in the middle of the history.
+ * Before measuring, every trial logs the plan of the first page query and fails if the indexed variant
+ * does not use the index. The orders have no books, so the LATERAL totals cost the same in both variants
+ * and the measurement isolates the orders lookup. Filling the table takes a few minutes. Requires Docker,
+ * since the database runs in a Testcontainers PostgreSQL container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderHistoryBenchmark {
+
+    private final static Logger LOGGER = Logger.getLogger(OrderHistoryBenchmark.class.getName());
+
+    static final int ORDERS = 10_000_000;
+    static final int CUSTOMERS = 100_000;
+    static final int PAGE_SIZE = 20;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private PostgreSQLContainer<?> container;
+    private HikariDataSource dataSource;
+    private OrderDao orderDao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        container = new PostgreSQLContainer<>("postgres:14");
+        container.start();
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(container.getJdbcUrl());
+        config.setUsername(container.getUsername());
+        config.setPassword(container.getPassword());
+        dataSource = new HikariDataSource(config);
+
+        PostgresTestContainer.createTables(dataSource);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            if (!indexed) {
+                stmt.execute("DROP INDEX orders_customer_date_id_idx");
+            }
+            stmt.execute("INSERT INTO orders (customer, date, status) " +
+                    "SELECT 'customer' || (g % " + CUSTOMERS + ") || '@example.com', " +
+                    "timestamp '2024-01-01' - g * interval '1 second', 'DELIVERED' " +
+                    "FROM generate_series(1, " + ORDERS + ") g");
+            stmt.execute("VACUUM ANALYZE orders");
+            try (ResultSet rs = stmt.executeQuery("EXPLAIN (ANALYZE, BUFFERS) " +
+                    "SELECT id, customer, date, status FROM orders WHERE customer = 'customer42@example.com' " +
+                    "ORDER BY date DESC, id DESC LIMIT " + PAGE_SIZE)) {
+                StringBuilder plan = new StringBuilder();
+                while (rs.next()) {
+                    plan.append(System.lineSeparator()).append(rs.getString(1));
+                }
+                LOGGER.info("indexed=" + indexed + ", plan of the first page:" + plan);
+                if (indexed && plan.indexOf("orders_customer_date_id_idx") < 0) {
+                    throw new IllegalStateException("The first page is not read with orders_customer_date_id_idx");
+                }
+            }
+        }
+
+        orderDao = new OrderDaoImpl(dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dataSource.close();
+        container.stop();
+    }
+
+    @Benchmark
+    public List<Order> firstPage() {
+        return orderDao.getCustomerOrders(randomCustomer(), null, null, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Order> pageAfterCursor() {
+        int customer = ThreadLocalRandom.current().nextInt(CUSTOMERS);
+        long middleOrderId = (long) (ORDERS / CUSTOMERS / 2) * CUSTOMERS + customer;
+        Timestamp middleOrderDate = Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 0, 0).minusSeconds(middleOrderId));
+        return orderDao.getCustomerOrders("customer" + customer + "@example.com", null, middleOrderDate,
+                middleOrderId, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Order> firstPageBeforeDate() {
+        Timestamp before = Timestamp.valueOf("2023-12-01 00:00:00");
+        return orderDao.getCustomerOrders(randomCustomer(), before, null, null, PAGE_SIZE);
+    }
+
+    private static String randomCustomer() {
+        return "customer" + ThreadLocalRandom.current().nextInt(CUSTOMERS) + "@example.com";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderHistoryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+package vydrenkova.aston.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vydrenkova.aston.dao.impl.OrderRowAggregator;
+import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.Order;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the allocation per joined row of the previous row-per-order mapping of the
+ * order/book LEFT JOIN with {@link OrderRowAggregator}. Both variants read the same rows from an
+ * in-memory {@link CachedRowSet}, so no database is needed and the difference comes from the mapping alone.
+ * Run the {@link #main} method and compare the {@code gc.alloc.rate.norm} (bytes per row) lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(OrderRowAggregatorBenchmark.ROWS)
+public class OrderRowAggregatorBenchmark {
+
+    static final int ORDERS = 2_000;
+    static final int BOOKS_PER_ORDER = 5;
+    static final int ROWS = ORDERS * BOOKS_PER_ORDER;
+
+    private CachedRowSet rows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        String[] columns = {"order_id", "customer", "date", "status", "book_id", "title", "author", "genre", "price",
+                "item_count", "total_price"};
+        int[] types = {Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.BIGINT,
+                Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.DOUBLE, Types.BIGINT, Types.NUMERIC};
+        metaData.setColumnCount(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            metaData.setColumnName(i + 1, columns[i]);
+            metaData.setColumnLabel(i + 1, columns[i]);
+            metaData.setColumnType(i + 1, types[i]);
+        }
+
+        rows = RowSetProvider.newFactory().createCachedRowSet();
+        rows.setMetaData(metaData);
+        Timestamp date = new Timestamp(System.currentTimeMillis());
+        for (long orderId = 1; orderId <= ORDERS; orderId++) {
+            for (long book = 1; book <= BOOKS_PER_ORDER; book++) {
+                rows.moveToInsertRow();
+                rows.updateLong(1, orderId);
+                rows.updateString(2, "Customer" + orderId);
+                rows.updateTimestamp(3, date);
+                rows.updateString(4, "NEW");
+                rows.updateLong(5, book);
+                rows.updateString(6, "Title" + book);
+                rows.updateString(7, "Author" + book);
+                rows.updateString(8, "Genre");
+                rows.updateDouble(9, 10.0 * book);
+                rows.updateLong(10, BOOKS_PER_ORDER);
+                rows.updateBigDecimal(11, BigDecimal.valueOf(10 * BOOKS_PER_ORDER * (BOOKS_PER_ORDER + 1) / 2));
+                rows.insertRow();
+            }
+        }
+        rows.moveToCurrentRow();
+    }
+
+    /**
+     * The mapping used before {@link OrderRowAggregator}: a new Order (with its own book list) per joined row.
+     */
+    @Benchmark
+    public void orderPerRow(Blackhole blackhole) throws SQLException {
+        rows.beforeFirst();
+        while (rows.next()) {
+            Order order = new Order(
+                    rows.getLong("order_id"),
+                    rows.getString("customer"),
+                    rows.getTimestamp("date"),
+                    rows.getString("status"));
+            if (rows.getLong("book_id") != 0) {
+                order.getBooks().add(new Book(
+                        rows.getLong("book_id"),
+                        rows.getString("title"),
+                        rows.getString("author"),
+                        rows.getString("genre"),
+                        rows.getDouble("price")));
+            }
+            blackhole.consume(order);
+        }
+    }
+
+    @Benchmark
+    public void foldedByAggregator(Blackhole blackhole) throws SQLException {
+        rows.beforeFirst();
+        OrderRowAggregator.aggregate(rows, blackhole::consume);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OrderRowAggregatorBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+package vydrenkova.aston.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import vydrenkova.aston.containers.PostgresTestContainer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(PostgresTestContainer.class)
+public class MigrationRunnerTest {
+
+    private DataSource dataSource;
+
+    @BeforeEach
+    public void setUp() {
+        dataSource = PostgresTestContainer.getDataSource();
+    }
+
+    @Test
+    public void testMigrationsAreRecorded() throws SQLException {
+        List<String> scripts = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT script FROM schema_history ORDER BY version")) {
+            while (rs.next()) {
+                scripts.add(rs.getString("script"));
+            }
+        }
+
+        assertEquals(List.of("V1__create_tables.sql", "V2__foreign_key_indexes.sql",
+                "V3__book_query_indexes.sql"), scripts.subList(0, 3));
+    }
+
+    @Test
+    public void testMigrateIsIdempotent() {
+        assertEquals(0, new MigrationRunner(dataSource).migrate());
+    }
+
+    @Test
+    public void testForeignKeyIndexesExist() throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT indexname FROM pg_indexes WHERE schemaname = 'public'")) {
+            while (rs.next()) {
+                indexes.add(rs.getString("indexname"));
+            }
+        }
+
+        assertTrue(indexes.contains("order_books_book_id_idx"));
+        assertTrue(indexes.contains("reviews_book_id_id_idx"));
+        assertFalse(indexes.contains("reviews_book_id_idx"));
+        assertTrue(indexes.contains("books_genre_price_id_idx"));
+    }
+}
@@ -0,0 +1,129 @@
+package vydrenkova.aston.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import vydrenkova.aston.containers.PostgresTestContainer;
+import vydrenkova.aston.dao.BookDao;
+import vydrenkova.aston.dao.OrderDao;
+import vydrenkova.aston.dao.OrderFetchStrategy;
+import vydrenkova.aston.dao.impl.BookDaoImpl;
+import vydrenkova.aston.dao.impl.OrderDaoImpl;
+import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.Order;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(PostgresTestContainer.class)
+public class OrderPartitionManagerTest {
+
+    private DataSource dataSource;
+    private OrderDao orderDao;
+    private BookDao bookDao;
+
+    @BeforeEach
+    public void setUp() {
+        dataSource = PostgresTestContainer.getDataSource();
+        orderDao = new OrderDaoImpl(dataSource);
+        bookDao = new BookDaoImpl(dataSource);
+    }
+
+    @Test
+    public void testPartitionMaintainAndDetach() throws SQLException {
+        Book book = new Book(null, "Title", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        Order january = new Order(null, "Customer", Timestamp.valueOf("2024-01-10 10:00:00"), "Status1");
+        Order march = new Order(null, "Customer", Timestamp.valueOf("2024-03-10 10:00:00"), "Status2");
+        orderDao.createOrder(january);
+        orderDao.createOrder(march);
+        orderDao.addBookToOrder(january.getId(), book.getId());
+        orderDao.addBookToOrder(march.getId(), book.getId());
+        OrderPartitionManager partitionManager = new OrderPartitionManager(dataSource, 1, 2);
+        MigrationRunner migrationRunner = new MigrationRunner(dataSource, "orders.partitioning.enabled"::equals);
+
+        assertFalse(partitionManager.isPartitioned());
+        assertEquals(0, new MigrationRunner(dataSource).migrate());
+        assertFalse(partitionManager.isPartitioned());
+        assertEquals(1, migrationRunner.migrate());
+        assertEquals(0, migrationRunner.migrate());
+
+        assertTrue(partitionManager.isPartitioned());
+        assertEquals(1, count("SELECT count(*) FROM schema_history WHERE script = 'V12__partition_orders_by_month.sql'"));
+        String currentPartition = String.format("orders_%1$tY_%1$tm", YearMonth.now().atDay(1));
+        assertEquals(List.of("orders_2024_01", "orders_2024_02", "orders_2024_03"), partitions().subList(0, 3));
+        assertTrue(partitions().contains(currentPartition));
+        assertEquals("orders_default", partitions().get(partitions().size() - 1));
+        assertEquals(2, orderDao.getAllOrders().size());
+        assertEquals(List.of("book_sales_book_id_idx", "book_sales_genre_rank_idx", "book_sales_rank_idx",
+                        "order_books_book_id_idx", "order_books_pkey", "orders_customer_date_id_idx",
+                        "orders_date_brin_idx", "orders_pkey"),
+                indexes("book_sales", "order_books", "orders"));
+        assertEquals(2, count("SELECT sales FROM book_sales WHERE book_id = " + book.getId()));
+        assertEquals(List.of(book), orderDao.getOrderById(january.getId()).orElseThrow().getBooks());
+        assertEquals(List.of(book), new OrderDaoImpl(dataSource, OrderFetchStrategy.BATCH)
+                .getOrderById(march.getId()).orElseThrow().getBooks());
+
+        Order april = new Order(null, "Customer", Timestamp.valueOf("2024-04-01 00:00:00"), "Status3");
+        orderDao.createOrder(april);
+        assertTrue(april.getId() > march.getId());
+        march.setDate(Timestamp.valueOf("2024-02-20 10:00:00"));
+        orderDao.updateOrder(march);
+        assertEquals(List.of(book), orderDao.getOrderById(march.getId()).orElseThrow().getBooks());
+        assertEquals(1, count("SELECT count(*) FROM order_books_2024_02"));
+
+        partitionManager.maintain(YearMonth.of(2024, 4));
+
+        assertEquals(List.of("orders_2024_02", "orders_2024_03", "orders_2024_04", "orders_2024_05"),
+                partitions().subList(0, 4));
+        assertEquals(List.of(march.getId(), april.getId()),
+                orderDao.getOrderSummaries(null, null).stream().map(Order::getId).toList());
+        assertEquals(1, count("SELECT count(*) FROM orders_2024_01"));
+        assertEquals(1, count("SELECT count(*) FROM order_books_2024_01"));
+    }
+
+    private List<String> partitions() throws SQLException {
+        List<String> partitions = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT c.relname FROM pg_inherits i " +
+                     "JOIN pg_class c ON c.oid = i.inhrelid " +
+                     "WHERE i.inhparent = 'orders'::regclass ORDER BY c.relname")) {
+            while (rs.next()) {
+                partitions.add(rs.getString(1));
+            }
+        }
+        return partitions;
+    }
+
+    private List<String> indexes(String... tables) throws SQLException {
+        List<String> indexes = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT indexname FROM pg_indexes " +
+                     "WHERE tablename IN ('" + String.join("', '", tables) + "') ORDER BY indexname")) {
+            while (rs.next()) {
+                indexes.add(rs.getString(1));
+            }
+        }
+        return indexes;
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
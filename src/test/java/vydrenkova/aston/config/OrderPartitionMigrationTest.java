@@ -0,0 +1,97 @@
+package vydrenkova.aston.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import vydrenkova.aston.containers.PostgresTestContainer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(PostgresTestContainer.class)
+public class OrderPartitionMigrationTest {
+
+    private DataSource dataSource;
+
+    @BeforeEach
+    public void setUp() {
+        dataSource = PostgresTestContainer.getDataSource();
+    }
+
+    @Test
+    public void testPartitionMigrationKeepsRowsAndForeignKeys() throws SQLException {
+        execute("INSERT INTO books (title, author, genre, price) " +
+                "SELECT 'Title' || g, 'Author', 'Genre', 10.0 FROM generate_series(1, 3) g");
+        execute("INSERT INTO orders (customer, date, status) " +
+                "SELECT 'Customer' || (g % 5), timestamp '2024-01-01' + g * interval '1 day', 'Status' " +
+                "FROM generate_series(1, 100) g");
+        execute("INSERT INTO order_books (order_id, book_id, order_date) " +
+                "SELECT o.id, b.id, o.date FROM orders o JOIN books b ON b.id <= 1 + o.id % 3");
+        long orders = count("SELECT count(*) FROM orders");
+        long orderBooks = count("SELECT count(*) FROM order_books");
+        long maxId = count("SELECT max(id) FROM orders");
+        execute("REFRESH MATERIALIZED VIEW book_sales");
+        List<String> sales = strings("SELECT book_id || ':' || sales FROM book_sales ORDER BY book_id");
+
+        assertEquals(1, new MigrationRunner(dataSource, "orders.partitioning.enabled"::equals).migrate());
+
+        assertEquals("p", strings("SELECT relkind::text FROM pg_class WHERE oid = 'orders'::regclass").get(0));
+        assertEquals("p", strings("SELECT relkind::text FROM pg_class WHERE oid = 'order_books'::regclass").get(0));
+        assertEquals(orders, count("SELECT count(*) FROM orders"));
+        assertEquals(orderBooks, count("SELECT count(*) FROM order_books"));
+        assertEquals(0, count("SELECT count(*) FROM orders_default"));
+        assertEquals(0, count("SELECT count(*) FROM order_books_default"));
+        assertEquals(3, sales.size());
+        assertEquals(sales, strings("SELECT book_id || ':' || sales FROM book_sales ORDER BY book_id"));
+
+        assertEquals(List.of("order_books_book_id_fkey FOREIGN KEY (book_id) REFERENCES books(id)",
+                        "order_books_order_id_order_date_fkey FOREIGN KEY (order_id, order_date) " +
+                                "REFERENCES orders(id, date)"),
+                strings("SELECT conname || ' ' || pg_get_constraintdef(oid) FROM pg_constraint " +
+                        "WHERE conrelid = 'order_books'::regclass AND contype = 'f' ORDER BY conname"));
+        assertThrows(SQLException.class, () -> execute("INSERT INTO order_books (order_id, book_id, order_date) " +
+                "VALUES (" + (maxId + 1) + ", 1, timestamp '2024-01-02')"));
+        assertThrows(SQLException.class, () -> execute("INSERT INTO order_books (order_id, book_id, order_date) " +
+                "SELECT id, 1000, date FROM orders LIMIT 1"));
+        assertThrows(SQLException.class, () -> execute("INSERT INTO order_books (order_id, book_id, order_date) " +
+                "SELECT id, 3, date + interval '1 day' FROM orders LIMIT 1"));
+
+        execute("INSERT INTO orders (customer, date, status) VALUES ('Customer', timestamp '2024-02-01', 'Status')");
+        assertEquals(maxId + 1, count("SELECT max(id) FROM orders"));
+    }
+
+    private List<String> strings(String sql) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
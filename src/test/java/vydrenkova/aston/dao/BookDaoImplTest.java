@@ -9,9 +9,12 @@ import vydrenkova.aston.dao.impl.BookDaoImpl;
 import vydrenkova.aston.entities.Book;
 
 import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -33,6 +36,9 @@ public class BookDaoImplTest {
     public void tearDown() throws SQLException {
         try (Connection conn = dataSource.getConnection();
              Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM reviews");
+            stmt.execute("DELETE FROM order_books");
+            stmt.execute("DELETE FROM orders");
             stmt.execute("DELETE FROM books");
         }
     }
@@ -54,6 +60,110 @@ public class BookDaoImplTest {
         assertTrue(books.contains(book2));
     }
 
+    @Test
+    public void testSearchBooks() {
+        Book master = new Book(null, "The Master and Margarita", "Mikhail Bulgakov", "Novel", 10.0);
+        Book crime = new Book(null, "Crime and Punishment", "Fyodor Dostoevsky", "Novel", 12.0);
+        Book war = new Book(null, "War and Peace", "Leo Tolstoy", "Novel", 15.0);
+        bookDao.createBook(master);
+        bookDao.createBook(crime);
+        bookDao.createBook(war);
+
+        assertEquals(List.of(master), bookDao.searchBooks("Margarta", 10));
+        assertEquals(List.of(crime), bookDao.searchBooks("dostoevski", 10));
+        assertTrue(bookDao.searchBooks("Hemingway", 10).isEmpty());
+    }
+
+    @Test
+    public void testGetTopBooks() throws SQLException {
+        Book novel1 = new Book(null, "Novel1", "Author1", "Novel", 10.0);
+        Book novel2 = new Book(null, "Novel2", "Author2", "Novel", 10.0);
+        Book poetry = new Book(null, "Poetry", "Author3", "Poetry", 10.0);
+        bookDao.createBook(novel1);
+        bookDao.createBook(novel2);
+        bookDao.createBook(poetry);
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO orders (id, customer, date, status) VALUES " +
+                    "(1, 'Customer', now(), 'NEW'), (2, 'Customer', now(), 'NEW'), (3, 'Customer', now(), 'NEW')");
+            stmt.execute("INSERT INTO order_books (order_id, book_id, order_date) " +
+                    "SELECT o.id, b.book_id, o.date FROM orders o JOIN (VALUES " +
+                    "(1, " + poetry.getId() + "), (2, " + poetry.getId() + "), (3, " + poetry.getId() + "), " +
+                    "(1, " + novel2.getId() + "), (2, " + novel2.getId() + "), (1, " + novel1.getId() + ")" +
+                    ") AS b (order_id, book_id) ON b.order_id = o.id");
+            stmt.execute("INSERT INTO reviews (book_id, reviewer, rating, text) VALUES " +
+                    "(" + novel1.getId() + ", 'Reviewer', 5, 'Text'), (" + novel2.getId() + ", 'Reviewer', 3, 'Text')");
+        }
+
+        assertTrue(bookDao.getTopBooks(BookRanking.SALES, null, 10).isEmpty());
+
+        bookDao.refreshTopBooks();
+
+        assertEquals(List.of(poetry, novel2), bookDao.getTopBooks(BookRanking.SALES, null, 2));
+        assertEquals(List.of(novel2, novel1), bookDao.getTopBooks(BookRanking.SALES, "Novel", 10));
+        assertEquals(List.of(novel1, novel2), bookDao.getTopBooks(BookRanking.RATING, null, 10));
+        assertTrue(bookDao.getTopBooks(BookRanking.RATING, "Poetry", 10).isEmpty());
+    }
+
+    @Test
+    public void testGetBooksPage() {
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+        Book book3 = new Book(null, "Title3", "Author3", "Genre3", 30.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        bookDao.createBook(book3);
+
+        List<Book> firstPage = bookDao.getBooks(new BookCriteria(null, 2));
+        List<Book> secondPage = bookDao.getBooks(new BookCriteria(firstPage.get(1).getId(), 2));
+
+        assertEquals(List.of(book1, book2), firstPage);
+        assertEquals(List.of(book3), secondPage);
+        assertTrue(bookDao.getBooks(new BookCriteria(book3.getId(), 2)).isEmpty());
+    }
+
+    @Test
+    public void testGetBooksFilteredAndSortedByPrice() {
+        Book cheap = new Book(null, "Cheap", "Author1", "Fantasy", 5.0);
+        Book middle1 = new Book(null, "Middle1", "Author2", "Fantasy", 10.0);
+        Book middle2 = new Book(null, "Middle2", "Author1", "Fantasy", 10.0);
+        Book expensive = new Book(null, "Expensive", "Author1", "Fantasy", 50.0);
+        Book otherGenre = new Book(null, "Other", "Author1", "Poetry", 10.0);
+        for (Book book : List.of(cheap, middle1, middle2, expensive, otherGenre)) {
+            bookDao.createBook(book);
+        }
+        BookCriteria criteria = new BookCriteria(null, 2);
+        criteria.setGenre("Fantasy");
+        criteria.setMinPrice(6.0);
+        criteria.setSort(BookSort.PRICE);
+        criteria.setDescending(true);
+
+        List<Book> firstPage = bookDao.getBooks(criteria);
+        criteria.setAfterId(firstPage.get(1).getId());
+        criteria.setAfterValue(firstPage.get(1).getPrice());
+        bookDao.deleteBook(middle2.getId());
+        List<Book> secondPage = bookDao.getBooks(criteria);
+
+        assertEquals(List.of(expensive, middle2), firstPage);
+        assertEquals(List.of(middle1), secondPage);
+    }
+
+    @Test
+    public void testGetBooksWithFields() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        bookDao.createBook(book);
+        BookCriteria criteria = new BookCriteria(null, 10);
+        criteria.setFields(EnumSet.of(BookField.TITLE, BookField.PRICE));
+
+        Book loaded = bookDao.getBooks(criteria).get(0);
+
+        assertEquals(book.getId(), loaded.getId());
+        assertEquals("Title", loaded.getTitle());
+        assertEquals(15.0, loaded.getPrice());
+        assertNull(loaded.getAuthor());
+        assertNull(loaded.getGenre());
+    }
+
     @Test
     public void testGetBookById() {
         // Arrange
@@ -88,6 +198,78 @@ public class BookDaoImplTest {
         assertEquals(15.0, foundBook.get().getPrice());
     }
 
+    @Test
+    public void testCreateBooks() {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            books.add(new Book(null, "Title" + i, "Author" + i, "Genre", (double) i));
+        }
+
+        List<Long> ids = bookDao.createBooks(books.iterator());
+
+        assertEquals(2500, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Optional<Book> foundBook = bookDao.getBookById(ids.get(i));
+            assertTrue(foundBook.isPresent());
+            assertEquals("Title" + i, foundBook.get().getTitle());
+        }
+    }
+
+    @Test
+    public void testCreateBooksRollsBackOnFailure() {
+        List<Book> books = List.of(
+                new Book(null, "Title1", "Author1", "Genre1", 10.0),
+                new Book(null, null, "Author2", "Genre2", 20.0));
+
+        assertThrows(RuntimeException.class, () -> bookDao.createBooks(books.iterator()));
+
+        assertTrue(bookDao.getAllBooks().isEmpty());
+    }
+
+    @Test
+    public void testCopyBooks() {
+        List<Book> books = List.of(
+                new Book(null, "Title, with comma", "Author \"quoted\"", "Multi\nline", 10.5),
+                new Book(null, "", "\\.", "Genre", 20.0));
+
+        long copied = bookDao.copyBooks(books.iterator());
+
+        assertEquals(2, copied);
+        List<Book> found = bookDao.getAllBooks();
+        assertEquals("Title, with comma", found.get(0).getTitle());
+        assertEquals("Author \"quoted\"", found.get(0).getAuthor());
+        assertEquals("Multi\nline", found.get(0).getGenre());
+        assertEquals("", found.get(1).getTitle());
+        assertEquals("\\.", found.get(1).getAuthor());
+    }
+
+    @Test
+    public void testCopyBooksRollsBackOnFailure() {
+        List<Book> books = List.of(
+                new Book(null, "Title1", "Author1", "Genre1", 10.0),
+                new Book(null, null, "Author2", "Genre2", 20.0));
+
+        assertThrows(RuntimeException.class, () -> bookDao.copyBooks(books.iterator()));
+
+        assertTrue(bookDao.getAllBooks().isEmpty());
+    }
+
+    @Test
+    public void testExportBooks() {
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.5);
+        Book book2 = new Book(null, "Title, 2", "Author2", "Genre2", 20.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = bookDao.exportBooks(out);
+
+        assertEquals(2, rows);
+        assertEquals("id,title,author,genre,price\n" +
+                book1.getId() + ",Title1,Author1,Genre1,10.5\n" +
+                book2.getId() + ",\"Title, 2\",Author2,Genre2,20\n", out.toString());
+    }
+
     @Test
     public void testUpdateBook() {
         Book book = new Book(null, "Title", "Author", "Genre", 15.0);
@@ -108,6 +290,39 @@ public class BookDaoImplTest {
         assertEquals(20.0, updatedBook.get().getPrice());
     }
 
+    @Test
+    public void testUpdateBookIfVersionMatches() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        bookDao.createBook(book);
+        String version = bookDao.getBookVersion(book.getId()).orElseThrow();
+
+        book.setTitle("New Title");
+        assertTrue(bookDao.updateBook(book, version));
+        String newVersion = bookDao.getBookVersion(book.getId()).orElseThrow();
+        assertNotEquals(version, newVersion);
+
+        book.setTitle("Stale Title");
+        assertFalse(bookDao.updateBook(book, version));
+        assertEquals("New Title", bookDao.getBookById(book.getId()).orElseThrow().getTitle());
+        assertEquals(newVersion, bookDao.getBookVersion(book.getId()).orElseThrow());
+        assertFalse(bookDao.getBookVersion(-1L).isPresent());
+    }
+
+    @Test
+    public void testBookVersionChangesWithRating() throws SQLException {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        bookDao.createBook(book);
+        String version = bookDao.getBookVersion(book.getId()).orElseThrow();
+
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO book_rating_stats (book_id, review_count, rating_sum, rating_5) " +
+                    "VALUES (" + book.getId() + ", 1, 5, 1)");
+        }
+
+        assertNotEquals(version, bookDao.getBookVersion(book.getId()).orElseThrow());
+    }
+
     @Test
     public void testDeleteBook() {
         Book book = new Book(null, "Title", "Author", "Genre", 15.0);
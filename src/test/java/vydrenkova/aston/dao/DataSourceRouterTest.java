@@ -0,0 +1,122 @@
+package vydrenkova.aston.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class DataSourceRouterTest {
+
+    private DataSource primary;
+    private DataSource replica1;
+    private DataSource replica2;
+    private Connection connection;
+    private AtomicLong clock;
+    private DataSourceRouter router;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        replica1 = mock(DataSource.class);
+        replica2 = mock(DataSource.class);
+        connection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(connection);
+        clock = new AtomicLong(10_000);
+        router = new DataSourceRouter(primary, List.of(replica1, replica2), 1000, clock::get);
+    }
+
+    @Test
+    public void testReadsWithoutReplicasGoToPrimary() {
+        DataSourceRouter single = new DataSourceRouter(primary);
+
+        assertSame(primary, single.forRead());
+    }
+
+    @Test
+    public void testReadsAreSpreadRoundRobin() {
+        assertSame(replica1, router.forRead());
+        assertSame(replica2, router.forRead());
+        assertSame(replica1, router.forRead());
+    }
+
+    @Test
+    public void testReadsStayOnPrimaryDuringAndAfterWrite() throws SQLException {
+        Connection conn = router.forWrite().getConnection();
+        conn.prepareStatement("UPDATE books SET price = 1");
+        verify(connection).prepareStatement("UPDATE books SET price = 1");
+        assertSame(primary, router.forRead());
+
+        clock.addAndGet(5000);
+        conn.close();
+        verify(connection).close();
+        assertSame(primary, router.forRead());
+
+        clock.addAndGet(999);
+        assertSame(primary, router.forRead());
+
+        clock.addAndGet(1);
+        assertSame(replica1, router.forRead());
+    }
+
+    @Test
+    public void testClosingTwiceEndsWriteOnce() throws SQLException {
+        Connection first = router.forWrite().getConnection();
+        Connection second = router.forWrite().getConnection();
+        first.close();
+        first.close();
+        clock.addAndGet(1000);
+
+        assertSame(primary, router.forRead());
+
+        second.close();
+        clock.addAndGet(1000);
+        assertNotSame(primary, router.forRead());
+    }
+
+    @Test
+    public void testWritesOfOneCallerDoNotMoveReadsOfAnother() throws Exception {
+        ExecutorService clientA = Executors.newSingleThreadExecutor();
+        try {
+            Connection conn = clientA.submit(() -> router.forWrite().getConnection()).get();
+
+            assertNotSame(primary, router.forRead());
+            assertSame(primary, clientA.submit(router::forRead).get());
+
+            clientA.submit(() -> {
+                conn.close();
+                return null;
+            }).get();
+
+            assertNotSame(primary, router.forRead());
+            assertSame(primary, clientA.submit(router::forRead).get());
+        } finally {
+            clientA.shutdown();
+        }
+    }
+
+    @Test
+    public void testCallerScopeCarriesLastWrite() throws SQLException {
+        List<Long> writes = new ArrayList<>();
+        router.beginCaller(clock.get() - 400, writes::add);
+        assertSame(primary, router.forRead());
+        clock.addAndGet(600);
+        assertNotSame(primary, router.forRead());
+
+        router.forWrite().getConnection().close();
+        assertEquals(List.of(clock.get()), writes);
+        assertSame(primary, router.forRead());
+
+        router.endCaller();
+        assertNotSame(primary, router.forRead());
+    }
+}
@@ -11,12 +11,16 @@ import vydrenkova.aston.entities.Book;
 import vydrenkova.aston.entities.Order;
 
 import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -56,6 +60,238 @@ public class OrderDaoImplTest {
         assertTrue(orders.contains(order2));
     }
 
+    @Test
+    public void testGetAllOrdersFoldsBooksIntoOneOrder() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDao.createOrder(order);
+
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        orderDao.addBookToOrder(order.getId(), book1.getId());
+        orderDao.addBookToOrder(order.getId(), book2.getId());
+
+        List<Order> orders = orderDao.getAllOrders();
+
+        assertEquals(1, orders.size());
+        assertEquals(2, orders.get(0).getBooks().size());
+    }
+
+    @Test
+    public void testOrderTotals() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        Order emptyOrder = new Order(null, "Customer2", new Timestamp(System.currentTimeMillis()), "Status2");
+        orderDao.createOrder(order);
+        orderDao.createOrder(emptyOrder);
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.1);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.2);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        orderDao.addBooksToOrder(order.getId(), List.of(book1.getId(), book2.getId()));
+
+        Order loaded = orderDao.getOrderById(order.getId()).orElseThrow();
+        List<Order> summaries = orderDao.getOrderSummaries();
+
+        assertEquals(2, loaded.getItemCount());
+        assertEquals(30.3, loaded.getTotalPrice());
+        assertEquals(2, summaries.size());
+        assertEquals(order.getId(), summaries.get(0).getId());
+        assertEquals(2, summaries.get(0).getItemCount());
+        assertEquals(30.3, summaries.get(0).getTotalPrice());
+        assertTrue(summaries.get(0).getBooks().isEmpty());
+        assertEquals(0, summaries.get(1).getItemCount());
+        assertEquals(0.0, summaries.get(1).getTotalPrice());
+        assertEquals(0, new OrderDaoImpl(dataSource, OrderFetchStrategy.BATCH).getOrderById(emptyOrder.getId())
+                .orElseThrow().getItemCount());
+    }
+
+    @Test
+    public void testGetOrdersWithFields() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDao.createOrder(order);
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        bookDao.createBook(book);
+        orderDao.addBookToOrder(order.getId(), book.getId());
+
+        List<Order> statuses = orderDao.getOrders(EnumSet.of(OrderField.STATUS));
+        List<Order> totals = orderDao.getOrders(EnumSet.of(OrderField.ID, OrderField.ITEM_COUNT));
+        List<Order> withBooks = orderDao.getOrders(EnumSet.of(OrderField.ID, OrderField.BOOKS));
+
+        assertEquals(order.getId(), statuses.get(0).getId());
+        assertEquals("Status", statuses.get(0).getStatus());
+        assertNull(statuses.get(0).getCustomer());
+        assertNull(statuses.get(0).getItemCount());
+        assertTrue(statuses.get(0).getBooks().isEmpty());
+        assertEquals(1, totals.get(0).getItemCount());
+        assertNull(totals.get(0).getTotalPrice());
+        assertEquals(1, withBooks.get(0).getBooks().size());
+    }
+
+    @Test
+    public void testGetCustomerOrders() {
+        Order oldest = new Order(null, "Customer", Timestamp.valueOf("2024-01-01 10:00:00"), "Status1");
+        Order sameTime1 = new Order(null, "Customer", Timestamp.valueOf("2024-01-02 10:00:00"), "Status2");
+        Order sameTime2 = new Order(null, "Customer", Timestamp.valueOf("2024-01-02 10:00:00"), "Status3");
+        Order newest = new Order(null, "Customer", Timestamp.valueOf("2024-01-03 10:00:00"), "Status4");
+        Order other = new Order(null, "Other", Timestamp.valueOf("2024-01-02 12:00:00"), "Status5");
+        for (Order order : List.of(oldest, sameTime1, sameTime2, newest, other)) {
+            orderDao.createOrder(order);
+        }
+
+        List<Order> firstPage = orderDao.getCustomerOrders("Customer", null, null, null, 2);
+        Order cursor = firstPage.get(1);
+        orderDao.deleteOrder(cursor.getId());
+        List<Order> secondPage = orderDao.getCustomerOrders("Customer", null, cursor.getDate(), cursor.getId(), 2);
+        List<Order> before = orderDao.getCustomerOrders("Customer", Timestamp.valueOf("2024-01-02 10:00:00"), null,
+                null, 10);
+
+        assertEquals(List.of(newest.getId(), sameTime2.getId()), firstPage.stream().map(Order::getId).toList());
+        assertEquals(List.of(sameTime1.getId(), oldest.getId()), secondPage.stream().map(Order::getId).toList());
+        assertEquals(List.of(oldest.getId()), before.stream().map(Order::getId).toList());
+        assertEquals(0, firstPage.get(0).getItemCount());
+        assertTrue(firstPage.get(0).getBooks().isEmpty());
+    }
+
+    @Test
+    public void testGetOrderSummariesByDate() {
+        Order january = new Order(null, "Customer", Timestamp.valueOf("2024-01-31 23:59:59"), "Status1");
+        Order february = new Order(null, "Customer", Timestamp.valueOf("2024-02-01 00:00:00"), "Status2");
+        Order march = new Order(null, "Customer", Timestamp.valueOf("2024-03-01 00:00:00"), "Status3");
+        for (Order order : List.of(march, january, february)) {
+            orderDao.createOrder(order);
+        }
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book = new Book(null, "Title", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        orderDao.addBookToOrder(february.getId(), book.getId());
+
+        List<Order> range = orderDao.getOrderSummaries(Timestamp.valueOf("2024-02-01 00:00:00"),
+                Timestamp.valueOf("2024-03-01 00:00:00"));
+        List<Order> from = orderDao.getOrderSummaries(Timestamp.valueOf("2024-02-01 00:00:00"), null);
+        List<Order> to = orderDao.getOrderSummaries(null, Timestamp.valueOf("2024-02-01 00:00:00"));
+
+        assertEquals(List.of(february.getId()), range.stream().map(Order::getId).toList());
+        assertEquals(1, range.get(0).getItemCount());
+        assertEquals(10.0, range.get(0).getTotalPrice());
+        assertTrue(range.get(0).getBooks().isEmpty());
+        assertEquals(List.of(february.getId(), march.getId()), from.stream().map(Order::getId).toList());
+        assertEquals(List.of(january.getId()), to.stream().map(Order::getId).toList());
+        assertEquals(3, orderDao.getOrderSummaries(null, null).size());
+    }
+
+    @Test
+    public void testUpdateOrderDateKeepsBooks() {
+        Order order = new Order(null, "Customer", Timestamp.valueOf("2024-01-15 10:00:00"), "Status");
+        orderDao.createOrder(order);
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book = new Book(null, "Title", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        orderDao.addBookToOrder(order.getId(), book.getId());
+
+        order.setDate(Timestamp.valueOf("2024-02-15 10:00:00"));
+        orderDao.updateOrder(order);
+
+        Order loaded = orderDao.getOrderById(order.getId()).orElseThrow();
+        assertEquals(Timestamp.valueOf("2024-02-15 10:00:00"), loaded.getDate());
+        assertEquals(List.of(book), loaded.getBooks());
+        assertEquals(1, loaded.getItemCount());
+    }
+
+    @Test
+    public void testExportOrders() {
+        Order order = new Order(null, "Customer", Timestamp.valueOf("2024-01-02 03:04:05"), "Status");
+        Order emptyOrder = new Order(null, "Customer2", Timestamp.valueOf("2024-01-03 00:00:00"), "Status2");
+        orderDao.createOrder(order);
+        orderDao.createOrder(emptyOrder);
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book = new Book(null, "Title", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        orderDao.addBookToOrder(order.getId(), book.getId());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = orderDao.exportOrders(out);
+
+        assertEquals(2, rows);
+        assertEquals("order_id,customer,date,status,book_id\n" +
+                order.getId() + ",Customer,2024-01-02 03:04:05,Status," + book.getId() + "\n" +
+                emptyOrder.getId() + ",Customer2,2024-01-03 00:00:00,Status2,\n", out.toString());
+    }
+
+    @Test
+    public void testGetOrderByIdReturnsAllBooks() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDao.createOrder(order);
+
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        orderDao.addBookToOrder(order.getId(), book1.getId());
+        orderDao.addBookToOrder(order.getId(), book2.getId());
+
+        Optional<Order> foundOrder = orderDao.getOrderById(order.getId());
+
+        assertTrue(foundOrder.isPresent());
+        assertEquals(2, foundOrder.get().getBooks().size());
+    }
+
+    @Test
+    public void testBatchStrategyLoadsOrdersWithBooks() {
+        OrderDao batchOrderDao = new OrderDaoImpl(dataSource, OrderFetchStrategy.BATCH);
+        Order order1 = new Order(null, "Customer1", new Timestamp(System.currentTimeMillis()), "Status1");
+        Order order2 = new Order(null, "Customer2", new Timestamp(System.currentTimeMillis()), "Status2");
+        batchOrderDao.createOrder(order1);
+        batchOrderDao.createOrder(order2);
+
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        batchOrderDao.addBookToOrder(order2.getId(), book1.getId());
+        batchOrderDao.addBookToOrder(order2.getId(), book2.getId());
+
+        List<Order> orders = batchOrderDao.getAllOrders();
+        Optional<Order> foundOrder = batchOrderDao.getOrderById(order2.getId());
+
+        assertEquals(2, orders.size());
+        assertTrue(orders.get(0).getBooks().isEmpty());
+        assertEquals(2, orders.get(1).getBooks().size());
+        assertTrue(foundOrder.isPresent());
+        assertEquals(orders.get(1), foundOrder.get());
+        assertFalse(batchOrderDao.getOrderById(-1L).isPresent());
+    }
+
+    @Test
+    public void testStreamAllOrders() {
+        Order order1 = new Order(null, "Customer1", new Timestamp(System.currentTimeMillis()), "Status1");
+        Order order2 = new Order(null, "Customer2", new Timestamp(System.currentTimeMillis()), "Status2");
+        orderDao.createOrder(order1);
+        orderDao.createOrder(order2);
+
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        orderDao.addBookToOrder(order1.getId(), book1.getId());
+        orderDao.addBookToOrder(order1.getId(), book2.getId());
+
+        List<Order> streamed = new ArrayList<>();
+        orderDao.streamAllOrders(streamed::add);
+
+        assertEquals(2, streamed.size());
+        assertEquals(order1.getId(), streamed.get(0).getId());
+        assertEquals(2, streamed.get(0).getBooks().size());
+        assertEquals(order2.getId(), streamed.get(1).getId());
+        assertTrue(streamed.get(1).getBooks().isEmpty());
+    }
+
     @Test
     public void testGetOrderById() {
         Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
@@ -83,6 +319,34 @@ public class OrderDaoImplTest {
         assertEquals("Status", foundOrder.get().getStatus());
     }
 
+    @Test
+    public void testCreateOrderWithBooks() {
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        order.setBooks(List.of(book1, book2, book1));
+
+        orderDao.createOrder(order);
+
+        Optional<Order> foundOrder = orderDao.getOrderById(order.getId());
+        assertTrue(foundOrder.isPresent());
+        assertEquals(List.of(book1.getId(), book2.getId()),
+                foundOrder.get().getBooks().stream().map(Book::getId).sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCreateOrderWithUnknownBookIsRolledBack() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        order.setBooks(List.of(new Book(Long.MAX_VALUE, "Title", "Author", "Genre", 10.0)));
+
+        assertThrows(RuntimeException.class, () -> orderDao.createOrder(order));
+
+        assertTrue(orderDao.getAllOrders().isEmpty());
+    }
+
     @Test
     public void testUpdateOrder() {
         Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
@@ -99,6 +363,23 @@ public class OrderDaoImplTest {
         assertEquals("New Status", updatedOrder.get().getStatus());
     }
 
+    @Test
+    public void testOrderWritesRollBackAsUnit() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDao.createOrder(order);
+        DataSourceRouter router = new DataSourceRouter(dataSource);
+        OrderDao transactionalDao = new OrderDaoImpl(router, OrderFetchStrategy.JOIN);
+        TransactionManager transactionManager = new TransactionManager(router);
+
+        order.setStatus("New Status");
+        assertThrows(IllegalArgumentException.class, () -> transactionManager.inTransaction(() -> {
+            transactionalDao.updateOrder(order);
+            transactionalDao.addBooksToOrder(order.getId(), List.of(-1L));
+        }));
+
+        assertEquals("Status", orderDao.getOrderById(order.getId()).orElseThrow().getStatus());
+    }
+
     @Test
     public void testDeleteOrder() {
         Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
@@ -130,6 +411,76 @@ public class OrderDaoImplTest {
         assertEquals(bookId, foundOrder.get().getBooks().get(0).getId());
     }
 
+    @Test
+    public void testAddAndRemoveBooksOfOrder() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDao.createOrder(order);
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+        Book book3 = new Book(null, "Title3", "Author3", "Genre3", 30.0);
+        bookDao.createBook(book1);
+        bookDao.createBook(book2);
+        bookDao.createBook(book3);
+        orderDao.addBookToOrder(order.getId(), book1.getId());
+
+        int added = orderDao.addBooksToOrder(order.getId(), List.of(book1.getId(), book2.getId(), book3.getId()))
+                .orElseThrow();
+        int removed = orderDao.removeBooksFromOrder(order.getId(), List.of(book1.getId(), book3.getId()))
+                .orElseThrow();
+
+        assertEquals(2, added);
+        assertEquals(2, removed);
+        Optional<Order> foundOrder = orderDao.getOrderById(order.getId());
+        assertTrue(foundOrder.isPresent());
+        assertEquals(List.of(book2), foundOrder.get().getBooks());
+    }
+
+    @Test
+    public void testAddBooksToUnknownOrderOrUnknownBooks() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDao.createOrder(order);
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book = new Book(null, "Title", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        String version = orderDao.getOrderVersion(order.getId()).orElseThrow();
+
+        assertTrue(orderDao.addBooksToOrder(order.getId() + 1000, List.of(book.getId())).isEmpty());
+        assertTrue(orderDao.removeBooksFromOrder(order.getId() + 1000, List.of(book.getId())).isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> orderDao.addBooksToOrder(order.getId(), List.of(book.getId(), book.getId() + 1000)));
+
+        assertTrue(orderDao.getOrderById(order.getId()).orElseThrow().getBooks().isEmpty());
+        assertEquals(version, orderDao.getOrderVersion(order.getId()).orElseThrow());
+    }
+
+    @Test
+    public void testOrderVersionFollowsOrderAndItsBooks() {
+        Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDao.createOrder(order);
+        BookDao bookDao = new BookDaoImpl(dataSource);
+        Book book = new Book(null, "Title", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        List<String> versions = new ArrayList<>();
+        versions.add(orderDao.getOrderVersion(order.getId()).orElseThrow());
+
+        orderDao.addBooksToOrder(order.getId(), List.of(book.getId()));
+        versions.add(orderDao.getOrderVersion(order.getId()).orElseThrow());
+        orderDao.addBooksToOrder(order.getId(), List.of(book.getId()));
+        assertEquals(versions.get(1), orderDao.getOrderVersion(order.getId()).orElseThrow());
+        book.setPrice(12.0);
+        bookDao.updateBook(book);
+        versions.add(orderDao.getOrderVersion(order.getId()).orElseThrow());
+        order.setStatus("Shipped");
+        assertTrue(orderDao.updateOrder(order, versions.get(2)));
+        versions.add(orderDao.getOrderVersion(order.getId()).orElseThrow());
+        assertFalse(orderDao.updateOrder(order, versions.get(2)));
+        orderDao.removeBooksFromOrder(order.getId(), List.of(book.getId()));
+        versions.add(orderDao.getOrderVersion(order.getId()).orElseThrow());
+
+        assertEquals(versions.size(), versions.stream().distinct().count());
+    }
+
     @Test
     public void testRemoveBookFromOrder() {
         Order order = new Order(null, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
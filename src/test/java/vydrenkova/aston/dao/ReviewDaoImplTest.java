@@ -7,6 +7,7 @@ import vydrenkova.aston.containers.PostgresTestContainer;
 import vydrenkova.aston.dao.impl.BookDaoImpl;
 import vydrenkova.aston.dao.impl.ReviewDaoImpl;
 import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.BookRating;
 import vydrenkova.aston.entities.Review;
 
 import javax.sql.DataSource;
@@ -51,13 +52,104 @@ public class ReviewDaoImplTest {
         reviewDao.createReview(review1);
         reviewDao.createReview(review2);
 
-        List<Review> reviews = reviewDao.getAllReviews();
+        List<Review> reviews = reviewDao.getAllReviews(true);
 
         assertEquals(2, reviews.size());
         assertTrue(reviews.contains(review1));
         assertTrue(reviews.contains(review2));
     }
 
+    @Test
+    public void testGetAllReviewsWithoutBooks() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        bookDao.createBook(book);
+        reviewDao.createReview(new Review(null, book, "Reviewer1", 5, "Text1"));
+        reviewDao.createReview(new Review(null, book, "Reviewer2", 4, "Text2"));
+
+        List<Review> reviews = reviewDao.getAllReviews(false);
+        Review withBook = reviewDao.getReviewById(reviews.get(0).getId(), true).orElseThrow();
+
+        assertEquals(2, reviews.size());
+        assertEquals(new Book(book.getId(), null, null, null, null), reviews.get(0).getBook());
+        assertEquals(book, withBook.getBook());
+    }
+
+    @Test
+    public void testGetReviewsByBookId() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        Book other = new Book(null, "Other", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        bookDao.createBook(other);
+        reviewDao.createReview(new Review(null, book, "Reviewer1", 5, "Text1"));
+        reviewDao.createReview(new Review(null, other, "Reviewer2", 4, "Text2"));
+        reviewDao.createReview(new Review(null, book, "Reviewer3", 3, "Text3"));
+        reviewDao.createReview(new Review(null, book, "Reviewer4", 2, "Text4"));
+
+        List<Review> firstPage = reviewDao.getReviewsByBookId(book.getId(), null, 2);
+        List<Review> secondPage = reviewDao.getReviewsByBookId(book.getId(), firstPage.get(1).getId(), 2);
+
+        assertEquals(List.of("Reviewer1", "Reviewer3"), firstPage.stream().map(Review::getReviewer).toList());
+        assertEquals(List.of("Reviewer4"), secondPage.stream().map(Review::getReviewer).toList());
+        assertEquals(book.getId(), secondPage.get(0).getBook().getId());
+        assertTrue(reviewDao.getReviewsByBookId(other.getId() + 1, null, 10).isEmpty());
+    }
+
+    @Test
+    public void testSearchReviews() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        bookDao.createBook(book);
+
+        Review best = new Review(null, book, "Reviewer1", 5, "Great plot, great characters");
+        Review good = new Review(null, book, "Reviewer2", 4, "A great read with a slow start");
+        Review other = new Review(null, book, "Reviewer3", 2, "Boring");
+        reviewDao.createReview(best);
+        reviewDao.createReview(good);
+        reviewDao.createReview(other);
+
+        List<Review> firstPage = reviewDao.searchReviews("great", null, null, 1, true);
+        Review cursor = firstPage.get(0);
+        reviewDao.deleteReview(cursor.getId());
+        List<Review> secondPage = reviewDao.searchReviews("great", cursor.getRank(), cursor.getId(), 10, true);
+
+        assertEquals(List.of(best), firstPage);
+        assertEquals(List.of(good), secondPage);
+        assertTrue(cursor.getRank() > secondPage.get(0).getRank());
+        assertTrue(reviewDao.searchReviews("\"slow start\" -plot", null, null, 10, true).contains(good));
+        assertTrue(reviewDao.searchReviews("missing", null, null, 10, false).isEmpty());
+    }
+
+    @Test
+    public void testRatingStatsFollowReviewWrites() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        Book otherBook = new Book(null, "Other", "Author", "Genre", 10.0);
+        bookDao.createBook(book);
+        bookDao.createBook(otherBook);
+
+        Review review1 = new Review(null, book, "Reviewer1", 5, "Text1");
+        Review review2 = new Review(null, book, "Reviewer2", 3, "Text2");
+        reviewDao.createReview(review1);
+        reviewDao.createReview(review2);
+        assertEquals(new BookRating(book.getId(), 2, 8, new long[]{0, 0, 1, 0, 1}),
+                bookDao.getBookRating(book.getId()).orElseThrow());
+
+        review2.setRating(4);
+        reviewDao.updateReview(review2);
+        assertEquals(new BookRating(book.getId(), 2, 9, new long[]{0, 0, 0, 1, 1}),
+                bookDao.getBookRating(book.getId()).orElseThrow());
+
+        review1.setBook(otherBook);
+        reviewDao.updateReview(review1);
+        reviewDao.deleteReview(review2.getId());
+        assertEquals(new BookRating(book.getId(), 0, 0, new long[5]),
+                bookDao.getBookRating(book.getId()).orElseThrow());
+        assertEquals(new BookRating(otherBook.getId(), 1, 5, new long[]{0, 0, 0, 0, 1}),
+                bookDao.getBookRating(otherBook.getId()).orElseThrow());
+
+        reviewDao.copyReviews(List.of(new Review(null, otherBook, "Reviewer3", 1, "Text3")).iterator());
+        assertEquals(new BookRating(otherBook.getId(), 2, 6, new long[]{1, 0, 0, 0, 1}),
+                bookDao.getBookRating(otherBook.getId()).orElseThrow());
+    }
+
     @Test
     public void testGetReviewById() {
         Book book = new Book(null, "Title", "Author", "Genre", 15.0);
@@ -67,7 +159,7 @@ public class ReviewDaoImplTest {
         reviewDao.createReview(review);
         Long reviewId = review.getId();
 
-        Optional<Review> foundReview = reviewDao.getReviewById(reviewId);
+        Optional<Review> foundReview = reviewDao.getReviewById(reviewId, false);
 
         assertTrue(foundReview.isPresent());
         assertEquals(reviewId, foundReview.get().getId());
@@ -86,13 +178,32 @@ public class ReviewDaoImplTest {
         reviewDao.createReview(review);
 
         assertNotNull(review.getId());
-        Optional<Review> foundReview = reviewDao.getReviewById(review.getId());
+        Optional<Review> foundReview = reviewDao.getReviewById(review.getId(), false);
         assertTrue(foundReview.isPresent());
         assertEquals("Reviewer", foundReview.get().getReviewer());
         assertEquals(5, foundReview.get().getRating());
         assertEquals("Text", foundReview.get().getText());
     }
 
+    @Test
+    public void testCopyReviewsSkipsUnknownBooks() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        bookDao.createBook(book);
+        Book unknownBook = new Book(book.getId() + 1000, "Unknown", "Author", "Genre", 1.0);
+        List<Review> reviews = List.of(
+                new Review(null, book, "Reviewer1", 5, "Text, with comma"),
+                new Review(null, unknownBook, "Reviewer2", 4, "Text"),
+                new Review(null, book, "Reviewer3", 3, "Multi\nline"));
+
+        long copied = reviewDao.copyReviews(reviews.iterator());
+
+        assertEquals(2, copied);
+        List<Review> found = reviewDao.getAllReviews(false);
+        assertEquals(2, found.size());
+        assertTrue(found.stream().allMatch(review -> review.getBook().getId().equals(book.getId())));
+        assertTrue(found.stream().anyMatch(review -> review.getText().equals("Multi\nline")));
+    }
+
     @Test
     public void testUpdateReview() {
         Book book = new Book(null, "Title", "Author", "Genre", 15.0);
@@ -107,13 +218,37 @@ public class ReviewDaoImplTest {
         review.setText("New Text");
         reviewDao.updateReview(review);
 
-        Optional<Review> updatedReview = reviewDao.getReviewById(reviewId);
+        Optional<Review> updatedReview = reviewDao.getReviewById(reviewId, false);
         assertTrue(updatedReview.isPresent());
         assertEquals("New Reviewer", updatedReview.get().getReviewer());
         assertEquals(4, updatedReview.get().getRating());
         assertEquals("New Text", updatedReview.get().getText());
     }
 
+    @Test
+    public void testUpdateReviewIfVersionMatches() {
+        Book book = new Book(null, "Title", "Author", "Genre", 15.0);
+        bookDao.createBook(book);
+        String bookVersion = bookDao.getBookVersion(book.getId()).orElseThrow();
+        Review review = new Review(null, book, "Reviewer", 5, "Text");
+        reviewDao.createReview(review);
+        assertNotEquals(bookVersion, bookDao.getBookVersion(book.getId()).orElseThrow());
+        String version = reviewDao.getReviewVersion(review.getId()).orElseThrow();
+
+        book.setTitle("New Title");
+        bookDao.updateBook(book);
+        String staleVersion = version;
+        version = reviewDao.getReviewVersion(review.getId()).orElseThrow();
+        assertNotEquals(staleVersion, version);
+
+        review.setRating(3);
+        assertFalse(reviewDao.updateReview(review, staleVersion));
+        assertEquals(5, reviewDao.getReviewById(review.getId(), false).orElseThrow().getRating());
+        assertTrue(reviewDao.updateReview(review, version));
+        assertEquals(3, reviewDao.getReviewById(review.getId(), false).orElseThrow().getRating());
+        assertEquals(3L, bookDao.getBookRating(book.getId()).orElseThrow().getRatingSum());
+    }
+
     @Test
     public void testDeleteReview() {
         Book book = new Book(null, "Title", "Author", "Genre", 15.0);
@@ -125,7 +260,7 @@ public class ReviewDaoImplTest {
 
         reviewDao.deleteReview(reviewId);
 
-        Optional<Review> deletedReview = reviewDao.getReviewById(reviewId);
+        Optional<Review> deletedReview = reviewDao.getReviewById(reviewId, false);
         assertFalse(deletedReview.isPresent());
     }
 }
@@ -0,0 +1,137 @@
+package vydrenkova.aston.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TransactionManagerTest {
+
+    private DataSource primary;
+    private DataSource replica;
+    private Connection connection;
+    private DataSourceRouter router;
+    private TransactionManager transactionManager;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        replica = mock(DataSource.class);
+        connection = mock(Connection.class);
+        when(primary.getConnection()).thenReturn(connection);
+        when(replica.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true);
+        router = new DataSourceRouter(primary, List.of(replica), 0);
+        transactionManager = new TransactionManager(router);
+    }
+
+    @Test
+    public void testDaoCallsShareOneConnection() throws SQLException {
+        transactionManager.inTransaction(() -> {
+            runDaoTransaction(router.forWrite());
+            runDaoTransaction(router.forRead());
+        });
+
+        verify(primary, times(1)).getConnection();
+        verifyNoInteractions(replica);
+        InOrder inOrder = inOrder(connection);
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(connection, times(2)).prepareStatement("SELECT 1");
+        inOrder.verify(connection).commit();
+        inOrder.verify(connection).setAutoCommit(true);
+        inOrder.verify(connection).close();
+        verify(connection, never()).rollback();
+    }
+
+    @Test
+    public void testFailureRollsBack() throws SQLException {
+        RuntimeException failure = new RuntimeException("Failed");
+
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> transactionManager.inTransaction(() -> {
+            runDaoTransaction(router.forWrite());
+            throw failure;
+        }));
+
+        assertSame(failure, thrown);
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+        assertNull(router.boundConnection());
+    }
+
+    @Test
+    public void testErrorRollsBackBeforeRestoringAutoCommit() throws SQLException {
+        Error failure = new AssertionError("Failed");
+
+        Error thrown = assertThrows(Error.class, () -> transactionManager.inTransaction(() -> {
+            runDaoTransaction(router.forWrite());
+            throw failure;
+        }));
+
+        assertSame(failure, thrown);
+        InOrder inOrder = inOrder(connection);
+        inOrder.verify(connection).setAutoCommit(false);
+        inOrder.verify(connection).rollback();
+        inOrder.verify(connection).setAutoCommit(true);
+        verify(connection, never()).commit();
+        assertNull(router.boundConnection());
+    }
+
+    @Test
+    public void testNestedBlockJoinsOuterTransaction() throws SQLException {
+        String result = transactionManager.inTransaction(() ->
+                transactionManager.inTransaction(() -> "done"));
+
+        assertEquals("done", result);
+        verify(primary, times(1)).getConnection();
+        verify(connection, times(1)).commit();
+    }
+
+    @Test
+    public void testReadOnlyTransactionRunsOnReplica() throws SQLException {
+        transactionManager.inReadOnlyTransaction(() -> runDaoTransaction(router.forRead()));
+
+        verify(replica, times(1)).getConnection();
+        verifyNoInteractions(primary);
+        verify(connection).setReadOnly(true);
+    }
+
+    @Test
+    public void testReadWriteInsideReadOnlyIsRejected() throws SQLException {
+        when(connection.isReadOnly()).thenReturn(true);
+
+        assertThrows(IllegalStateException.class, () -> transactionManager.inReadOnlyTransaction(() ->
+                transactionManager.inTransaction(() -> "write")));
+        verify(connection).rollback();
+    }
+
+    @Test
+    public void testNoneRunsWorkDirectly() {
+        assertEquals("done", TransactionManager.none().inTransaction(() -> "done"));
+    }
+
+    /**
+     * Uses a connection the way DAO methods that manage their own transaction do.
+     */
+    private static Void runDaoTransaction(DataSource dataSource) {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                conn.prepareStatement("SELECT 1");
+                conn.commit();
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return null;
+    }
+}
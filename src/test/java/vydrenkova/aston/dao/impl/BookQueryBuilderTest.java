@@ -0,0 +1,94 @@
+package vydrenkova.aston.dao.impl;
+
+import org.junit.jupiter.api.Test;
+import vydrenkova.aston.dao.BookCriteria;
+import vydrenkova.aston.dao.BookField;
+import vydrenkova.aston.dao.BookSort;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumSet;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BookQueryBuilderTest {
+
+    @Test
+    public void testDefaultCriteria() throws SQLException {
+        BookQueryBuilder query = BookQueryBuilder.forCriteria(new BookCriteria(null, 20));
+        PreparedStatement pstmt = mock(PreparedStatement.class);
+
+        query.bind(pstmt);
+
+        assertEquals("SELECT * FROM books ORDER BY id LIMIT ?", query.getSql());
+        verify(pstmt).setObject(1, 20);
+        verifyNoMoreInteractions(pstmt);
+    }
+
+    @Test
+    public void testFiltersAndSortAfterCursor() throws SQLException {
+        BookCriteria criteria = new BookCriteria(7L, 10);
+        criteria.setAfterValue(25.0);
+        criteria.setGenre("Fantasy");
+        criteria.setMaxPrice(30.0);
+        criteria.setSort(BookSort.PRICE);
+        criteria.setDescending(true);
+        BookQueryBuilder query = BookQueryBuilder.forCriteria(criteria);
+        PreparedStatement pstmt = mock(PreparedStatement.class);
+
+        query.bind(pstmt);
+
+        assertEquals("SELECT * FROM books WHERE genre = ? AND price <= ? " +
+                "AND (price, id) < (?, ?) " +
+                "ORDER BY price DESC, id DESC LIMIT ?", query.getSql());
+        verify(pstmt).setObject(1, "Fantasy");
+        verify(pstmt).setObject(2, 30.0);
+        verify(pstmt).setObject(3, 25.0);
+        verify(pstmt).setObject(4, 7L);
+        verify(pstmt).setObject(5, 10);
+    }
+
+    @Test
+    public void testSortedCursorNeedsValue() {
+        BookCriteria criteria = new BookCriteria(7L, 10);
+        criteria.setSort(BookSort.TITLE);
+
+        assertThrows(IllegalArgumentException.class, () -> BookQueryBuilder.forCriteria(criteria));
+    }
+
+    @Test
+    public void testFilterValuesNeverReachSql() {
+        BookCriteria criteria = new BookCriteria(null, 10);
+        criteria.setAuthor("x' OR '1'='1");
+
+        BookQueryBuilder query = BookQueryBuilder.forCriteria(criteria);
+
+        assertEquals("SELECT * FROM books WHERE author = ? ORDER BY id LIMIT ?", query.getSql());
+    }
+
+    @Test
+    public void testSelectedFieldsAndId() {
+        BookCriteria criteria = new BookCriteria(null, 10);
+        criteria.setSort(BookSort.GENRE);
+        criteria.setFields(EnumSet.of(BookField.TITLE, BookField.PRICE));
+
+        BookQueryBuilder query = BookQueryBuilder.forCriteria(criteria);
+
+        assertEquals("SELECT id, title, genre, price FROM books ORDER BY genre, id LIMIT ?", query.getSql());
+    }
+
+    @Test
+    public void testSortAndFieldNamesIgnoreDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+
+            assertEquals(BookSort.TITLE, BookSort.fromName("title"));
+            assertEquals(BookField.PRICE, BookField.fromName("price"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package vydrenkova.aston.filters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class CompressionFilterTest {
+
+    private static final String LARGE_BODY = "[" + "{\"id\":1,\"title\":\"Book\"},".repeat(200) + "{}]";
+
+    private CompressionFilter filter;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private ByteArrayOutputStream body;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        filter = new CompressionFilter();
+        filter.init(null);
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        });
+        when(response.getContentType()).thenReturn("application/json");
+        when(response.getCharacterEncoding()).thenReturn("UTF-8");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        filter.destroy();
+    }
+
+    @Test
+    public void testSmallResponseIsNotCompressed() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+
+        filter.doFilter(request, response, writing("[{}]"));
+
+        assertEquals("[{}]", body.toString(StandardCharsets.UTF_8));
+        verify(response).setContentLength(4);
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+        verify(response).addHeader("Vary", "Accept-Encoding");
+    }
+
+    @Test
+    public void testLargeResponseIsGzipped() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("deflate, gzip;q=0.8");
+
+        filter.doFilter(request, response, writing(LARGE_BODY));
+
+        verify(response).setHeader("Content-Encoding", "gzip");
+        verify(response, never()).setContentLength(anyInt());
+        assertTrue(body.size() < LARGE_BODY.length());
+        assertEquals(LARGE_BODY, decode(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+    @Test
+    public void testLargeResponseIsDeflated() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip;q=0, deflate");
+
+        filter.doFilter(request, response, writing(LARGE_BODY));
+
+        verify(response).setHeader("Content-Encoding", "deflate");
+        assertEquals(LARGE_BODY, decode(new InflaterInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+    @Test
+    public void testStreamedResponseIsGzippedAcrossFlushes() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        filter.doFilter(request, response, (req, resp) -> {
+            ServletOutputStream out = resp.getOutputStream();
+            for (int i = 0; i < 4; i++) {
+                out.write(LARGE_BODY.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            out.close();
+        });
+
+        assertEquals(LARGE_BODY.repeat(4), decode(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))));
+    }
+
+    @Test
+    public void testResponseWithoutAcceptEncodingIsPassedThrough() throws ServletException, IOException {
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        verify(chain).doFilter(any(), eq(response));
+    }
+
+    @Test
+    public void testNonCompressibleResponseIsPassedThrough() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        when(response.getContentType()).thenReturn("application/gzip");
+
+        filter.doFilter(request, response, writing(LARGE_BODY));
+
+        assertEquals(LARGE_BODY, body.toString(StandardCharsets.UTF_8));
+        verify(response, never()).setHeader(eq("Content-Encoding"), anyString());
+    }
+
+    @Test
+    public void testDeflatersAreReturnedToPool() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        filter.doFilter(request, response, writing(LARGE_BODY));
+        filter.doFilter(request, response, writing(LARGE_BODY));
+
+        assertEquals(1, filter.getGzipPool().idleCount());
+    }
+
+    @Test
+    public void testDeflaterIsReturnedWhenChainFails() throws IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        assertThrows(IllegalStateException.class, () -> filter.doFilter(request, response, (req, resp) -> {
+            resp.getOutputStream().write(LARGE_BODY.getBytes(StandardCharsets.UTF_8));
+            throw new IllegalStateException("Failed");
+        }));
+
+        assertEquals(1, filter.getGzipPool().idleCount());
+    }
+
+    @Test
+    public void testCompressedResponseGetsEncodingSpecificETag() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+        when(request.getHeader("If-None-Match")).thenReturn("\"3.1--gzip\"");
+
+        filter.doFilter(request, response, (req, resp) -> {
+            assertEquals("\"3.1\"", ((HttpServletRequest) req).getHeader("If-None-Match"));
+            ((HttpServletResponse) resp).setHeader("ETag", "\"3.1\"");
+            resp.getWriter().write(LARGE_BODY);
+        });
+
+        verify(response).setHeader("ETag", "\"3.1--gzip\"");
+    }
+
+    @Test
+    public void testAddedETagGetsEncodingSpecificETag() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("deflate");
+
+        filter.doFilter(request, response, (req, resp) -> {
+            ((HttpServletResponse) resp).addHeader("ETag", "\"3.1\"");
+            resp.getWriter().write(LARGE_BODY);
+        });
+
+        verify(response).setHeader("ETag", "\"3.1--deflate\"");
+    }
+
+    @Test
+    public void testWriteListenerIsRejected() throws ServletException, IOException {
+        when(request.getHeader("Accept-Encoding")).thenReturn("gzip");
+
+        filter.doFilter(request, response, (req, resp) ->
+                assertThrows(IllegalStateException.class, () -> resp.getOutputStream().setWriteListener(null)));
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertEquals("gzip", CompressionFilter.negotiate("br, *"));
+        assertEquals("gzip", CompressionFilter.negotiate("GZIP"));
+        assertEquals("deflate", CompressionFilter.negotiate("deflate;q=0.5"));
+        assertNull(CompressionFilter.negotiate("identity"));
+        assertNull(CompressionFilter.negotiate("gzip;q=0"));
+    }
+
+    private static FilterChain writing(String content) {
+        return (req, resp) -> write(resp, content);
+    }
+
+    private static void write(ServletResponse resp, String content) throws IOException {
+        resp.getWriter().write(content);
+    }
+
+    private static String decode(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package vydrenkova.aston.filters;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import vydrenkova.aston.dao.DataSourceRouter;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ReadYourWritesFilterTest {
+
+    private DataSource primary;
+    private DataSource replica;
+    private DataSourceRouter router;
+    private ReadYourWritesFilter filter;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        primary = mock(DataSource.class);
+        replica = mock(DataSource.class);
+        when(primary.getConnection()).thenReturn(mock(Connection.class));
+        router = new DataSourceRouter(primary, List.of(replica), 60_000);
+        filter = new ReadYourWritesFilter(router);
+        filter.init(null);
+    }
+
+    @Test
+    public void testWriteSetsCookieAndKeepsOwnReadsOnPrimary() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getContextPath()).thenReturn("");
+        List<DataSource> reads = new ArrayList<>();
+
+        filter.doFilter(request, response, (req, resp) -> {
+            reads.add(router.forRead());
+            try {
+                router.forWrite().getConnection().close();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            reads.add(router.forRead());
+        });
+
+        assertEquals(List.of(replica, primary), reads);
+        assertSame(replica, router.forRead());
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        assertEquals(ReadYourWritesFilter.LAST_WRITE_COOKIE, cookie.getValue().getName());
+        assertEquals("/", cookie.getValue().getPath());
+        assertEquals(60, cookie.getValue().getMaxAge());
+
+        HttpServletRequest next = mock(HttpServletRequest.class);
+        when(next.getCookies()).thenReturn(new Cookie[]{cookie.getValue()});
+        filter.doFilter(next, mock(HttpServletResponse.class), (req, resp) -> reads.add(router.forRead()));
+
+        assertEquals(List.of(replica, primary, primary), reads);
+    }
+
+    @Test
+    public void testRequestWithoutCookieReadsFromReplica() throws Exception {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getCookies()).thenReturn(new Cookie[]{new Cookie(ReadYourWritesFilter.LAST_WRITE_COOKIE, "x")});
+        List<DataSource> reads = new ArrayList<>();
+
+        filter.doFilter(request, response, (req, resp) -> reads.add(router.forRead()));
+
+        assertEquals(List.of(replica), reads);
+        verify(response, never()).addCookie(any());
+    }
+}
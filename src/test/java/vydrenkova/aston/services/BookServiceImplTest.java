@@ -5,14 +5,24 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import vydrenkova.aston.dao.BookCriteria;
 import vydrenkova.aston.dao.BookDao;
+import vydrenkova.aston.dao.BookRanking;
 import vydrenkova.aston.dto.BookDTO;
+import vydrenkova.aston.dto.BookRatingDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
 import vydrenkova.aston.entities.Book;
+import vydrenkova.aston.entities.BookRating;
 import vydrenkova.aston.mappers.BookMapper;
 import vydrenkova.aston.services.impl.BookServiceImpl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,6 +65,42 @@ public class BookServiceImplTest {
         assertEquals(bookDTO2, result.get(1));
     }
 
+    @Test
+    public void testGetBooks() {
+        Book book = new Book(3L, "Title3", "Author3", "Genre3", 30.0);
+        BookDTO bookDTO = new BookDTO(3L, "Title3", "Author3", "Genre3", 30.0);
+
+        when(bookDao.getBooks(new BookCriteria(2L, 1))).thenReturn(List.of(book));
+        when(bookMapper.toDTO(book)).thenReturn(bookDTO);
+
+        List<BookDTO> result = bookService.getBooks(new BookCriteria(2L, 1));
+
+        assertEquals(1, result.size());
+        assertEquals(bookDTO, result.get(0));
+    }
+
+    @Test
+    public void testSearchBooks() {
+        Book book = new Book(1L, "Title", "Author", "Genre", 10.0);
+        BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 10.0);
+
+        when(bookDao.searchBooks("titel", 5)).thenReturn(List.of(book));
+        when(bookMapper.toDTO(book)).thenReturn(bookDTO);
+
+        assertEquals(List.of(bookDTO), bookService.searchBooks("titel", 5));
+    }
+
+    @Test
+    public void testGetTopBooks() {
+        Book book = new Book(1L, "Title", "Author", "Genre", 10.0);
+        BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 10.0);
+
+        when(bookDao.getTopBooks(BookRanking.RATING, "Genre", 3)).thenReturn(List.of(book));
+        when(bookMapper.toDTO(book)).thenReturn(bookDTO);
+
+        assertEquals(List.of(bookDTO), bookService.getTopBooks(BookRanking.RATING, "Genre", 3));
+    }
+
     @Test
     public void testGetBookById() {
         Book book = new Book(1L, "Title", "Author", "Genre", 15.0);
@@ -69,6 +115,29 @@ public class BookServiceImplTest {
         assertEquals(bookDTO, result.get());
     }
 
+    @Test
+    public void testGetBookRating() {
+        BookRating rating = new BookRating(1L, 4, 14, new long[]{0, 1, 0, 1, 2});
+        when(bookDao.getBookRating(1L)).thenReturn(Optional.of(rating));
+
+        Optional<BookRatingDTO> result = bookService.getBookRating(1L);
+
+        assertTrue(result.isPresent());
+        assertEquals(4, result.get().getReviewCount());
+        assertEquals(3.5, result.get().getAverageRating());
+        assertEquals(Map.of(1, 0L, 2, 1L, 3, 0L, 4, 1L, 5, 2L), result.get().getHistogram());
+    }
+
+    @Test
+    public void testGetBookRatingWithoutReviews() {
+        when(bookDao.getBookRating(1L)).thenReturn(Optional.of(new BookRating(1L, 0, 0, new long[5])));
+
+        Optional<BookRatingDTO> result = bookService.getBookRating(1L);
+
+        assertTrue(result.isPresent());
+        assertNull(result.get().getAverageRating());
+    }
+
     @Test
     public void testGetBookByIdNotFound() {
         when(bookDao.getBookById(1L)).thenReturn(Optional.empty());
@@ -86,6 +155,89 @@ public class BookServiceImplTest {
         verify(bookDao, times(1)).createBook(book);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCreateBooks() {
+        BookDTO bookDTO1 = new BookDTO(null, "Title1", "Author1", "Genre1", 10.0);
+        BookDTO bookDTO2 = new BookDTO(null, "Title2", "Author2", "Genre2", 20.0);
+        Book book1 = new Book(null, "Title1", "Author1", "Genre1", 10.0);
+        Book book2 = new Book(null, "Title2", "Author2", "Genre2", 20.0);
+
+        when(bookMapper.toEntity(bookDTO1)).thenReturn(book1);
+        when(bookMapper.toEntity(bookDTO2)).thenReturn(book2);
+        when(bookDao.createBooks(any(Iterator.class))).thenAnswer(invocation -> {
+            Iterator<Book> books = invocation.getArgument(0);
+            assertEquals(book1, books.next());
+            assertEquals(book2, books.next());
+            assertFalse(books.hasNext());
+            return List.of(1L, 2L);
+        });
+
+        List<Long> ids = bookService.createBooks(List.of(bookDTO1, bookDTO2).iterator());
+
+        assertEquals(List.of(1L, 2L), ids);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportBooksFromCsv() {
+        String csv = "title,author,genre,price\r\n" +
+                "Title1,Author1,Genre1,10.5\r\n" +
+                "\"Title, with \"\"quotes\"\"\",\"Multi\nline\",Genre2,20\n" +
+                "Title3,Author3,Genre3,not-a-price\n" +
+                "Title4,Author4\n" +
+                ",Author5,Genre5,5\n";
+        List<Book> copied = new ArrayList<>();
+        when(bookMapper.toEntity(any(BookDTO.class))).thenAnswer(invocation -> {
+            BookDTO dto = invocation.getArgument(0);
+            return new Book(null, dto.getTitle(), dto.getAuthor(), dto.getGenre(), dto.getPrice());
+        });
+        when(bookDao.copyBooks(any(Iterator.class))).thenAnswer(invocation -> {
+            ((Iterator<Book>) invocation.getArgument(0)).forEachRemaining(copied::add);
+            return (long) copied.size();
+        });
+
+        ImportResultDTO result = bookService.importBooks(new StringReader(csv), ImportFormat.CSV);
+
+        assertEquals(List.of(
+                new Book(null, "Title1", "Author1", "Genre1", 10.5),
+                new Book(null, "Title, with \"quotes\"", "Multi\nline", "Genre2", 20.0)), copied);
+        assertEquals(2, result.getImportedRows());
+        assertEquals(3, result.getRejectedRows());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportBooksFromNdjson() {
+        String ndjson = "{\"title\":\"Title1\",\"author\":\"Author1\",\"genre\":\"Genre1\",\"price\":10.0}\n" +
+                "\n" +
+                "{\"title\":\"Title2\",\"author\":\"Author2\"}\n" +
+                "{not json}\n";
+        List<Book> copied = new ArrayList<>();
+        when(bookMapper.toEntity(any(BookDTO.class))).thenAnswer(invocation -> {
+            BookDTO dto = invocation.getArgument(0);
+            return new Book(null, dto.getTitle(), dto.getAuthor(), dto.getGenre(), dto.getPrice());
+        });
+        when(bookDao.copyBooks(any(Iterator.class))).thenAnswer(invocation -> {
+            ((Iterator<Book>) invocation.getArgument(0)).forEachRemaining(copied::add);
+            return (long) copied.size();
+        });
+
+        ImportResultDTO result = bookService.importBooks(new StringReader(ndjson), ImportFormat.NDJSON);
+
+        assertEquals(List.of(new Book(null, "Title1", "Author1", "Genre1", 10.0)), copied);
+        assertEquals(1, result.getImportedRows());
+        assertEquals(2, result.getRejectedRows());
+    }
+
+    @Test
+    public void testExportBooks() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        when(bookDao.exportBooks(out)).thenReturn(3L);
+
+        assertEquals(3L, bookService.exportBooks(out));
+    }
+
     @Test
     public void testUpdateBook() {
         BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
@@ -3,7 +3,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import vydrenkova.aston.dao.DataSourceRouter;
 import vydrenkova.aston.dao.OrderDao;
+import vydrenkova.aston.dao.OrderField;
+import vydrenkova.aston.dao.TransactionManager;
 import vydrenkova.aston.dto.BookDTO;
 import vydrenkova.aston.dto.OrderDTO;
 import vydrenkova.aston.entities.Book;
@@ -12,11 +15,18 @@ import vydrenkova.aston.mappers.BookMapper;
 import vydrenkova.aston.mappers.OrderMapper;
 import vydrenkova.aston.services.impl.OrderServiceImpl;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -71,6 +81,65 @@ public class OrderServiceImplTest {
         assertFalse(result.isPresent());
     }
 
+    @Test
+    public void testGetOrderSummaries() {
+        Order order = new Order(1L, "Customer", new Timestamp(0), "Status");
+        order.setItemCount(2);
+        order.setTotalPrice(30.0);
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer", new Timestamp(0), "Status");
+
+        when(orderDao.getOrderSummaries()).thenReturn(List.of(order));
+        when(orderMapper.toDTO(order)).thenReturn(orderDTO);
+
+        assertEquals(List.of(orderDTO), orderService.getOrderSummaries());
+        verifyNoInteractions(bookMapper);
+    }
+
+    @Test
+    public void testGetOrderSummariesByDate() {
+        Order order = new Order(1L, "Customer", new Timestamp(1500), "Status");
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer", new Timestamp(1500), "Status");
+        Date from = new Date(1000);
+        Date to = new Date(2000);
+
+        when(orderDao.getOrderSummaries(from, to)).thenReturn(List.of(order));
+        when(orderMapper.toDTO(order)).thenReturn(orderDTO);
+
+        assertEquals(List.of(orderDTO), orderService.getOrderSummaries(from, to));
+        verifyNoInteractions(bookMapper);
+    }
+
+    @Test
+    public void testGetCustomerOrders() {
+        Order order = new Order(7L, "Customer", new Timestamp(0), "Status");
+        OrderDTO orderDTO = new OrderDTO(7L, "Customer", new Timestamp(0), "Status");
+        Date before = new Date(1000);
+
+        Date afterDate = new Date(500);
+
+        when(orderDao.getCustomerOrders("Customer", before, afterDate, 9L, 20)).thenReturn(List.of(order));
+        when(orderMapper.toDTO(order)).thenReturn(orderDTO);
+
+        assertEquals(List.of(orderDTO), orderService.getCustomerOrders("Customer", before, afterDate, 9L, 20));
+        verifyNoInteractions(bookMapper);
+    }
+
+    @Test
+    public void testGetOrdersWithFields() {
+        Set<OrderField> fields = EnumSet.of(OrderField.ID, OrderField.STATUS);
+        Order order = new Order(1L, null, null, "Status");
+        OrderDTO orderDTO = new OrderDTO(1L, null, null, "Status");
+
+        when(orderDao.getOrders(fields)).thenReturn(List.of(order));
+        when(orderMapper.toDTO(order)).thenReturn(orderDTO);
+
+        List<OrderDTO> result = orderService.getOrders(fields);
+
+        assertEquals(List.of(orderDTO), result);
+        assertNull(result.get(0).getBooks());
+        verifyNoInteractions(bookMapper);
+    }
+
     @Test
     public void testGetAllOrders() {
         Book book1 = new Book(1L, "Title1", "Author1", "Genre1", 15.0);
@@ -112,6 +181,32 @@ public class OrderServiceImplTest {
         assertEquals(bookDTO2, result.get(1).getBooks().get(0));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamAllOrders() {
+        Book book = new Book(1L, "Title", "Author", "Genre", 15.0);
+        Order order = new Order(1L, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        order.addBook(book);
+
+        BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer", order.getDate(), "Status");
+
+        doAnswer(invocation -> {
+            Consumer<Order> consumer = invocation.getArgument(0);
+            consumer.accept(order);
+            return null;
+        }).when(orderDao).streamAllOrders(any(Consumer.class));
+        when(orderMapper.toDTO(order)).thenReturn(orderDTO);
+        when(bookMapper.toDTO(book)).thenReturn(bookDTO);
+
+        List<OrderDTO> result = new ArrayList<>();
+        orderService.streamAllOrders(result::add);
+
+        assertEquals(1, result.size());
+        assertEquals(orderDTO, result.get(0));
+        assertEquals(List.of(bookDTO), result.get(0).getBooks());
+    }
+
     @Test
     public void testCreateOrder() {
         BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
@@ -125,8 +220,10 @@ public class OrderServiceImplTest {
         order.setBooks(books);
 
         when(orderMapper.toEntity(orderDTO)).thenReturn(order);
+        when(bookMapper.toEntity(bookDTO)).thenReturn(book);
         orderService.createOrder(orderDTO);
         verify(orderDao, times(1)).createOrder(order);
+        assertEquals(books, order.getBooks());
     }
 
     @Test
@@ -146,10 +243,51 @@ public class OrderServiceImplTest {
         verify(orderDao, times(1)).updateOrder(order);
     }
 
+    @Test
+    public void testUpdateOrderReplacesBooksInOneTransaction() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(true);
+        orderService = new OrderServiceImpl(orderDao, orderMapper, bookMapper,
+                new TransactionManager(new DataSourceRouter(dataSource)));
+
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        orderDTO.setBooks(List.of(new BookDTO(2L, "Title", "Author", "Genre", 15.0)));
+        Order order = new Order(1L, "Customer", orderDTO.getDate(), "Status");
+        Order stored = new Order(1L, "Customer", orderDTO.getDate(), "Status");
+        stored.setBooks(List.of(new Book(1L, "Old", "Author", "Genre", 10.0)));
+        when(orderMapper.toEntity(orderDTO)).thenReturn(order);
+        when(orderDao.getOrderById(1L)).thenReturn(Optional.of(stored));
+        when(orderDao.addBooksToOrder(1L, List.of(2L))).thenThrow(new IllegalArgumentException("1 of the books do not exist"));
+
+        assertThrows(IllegalArgumentException.class, () -> orderService.updateOrder(orderDTO));
+
+        verify(orderDao).updateOrder(order);
+        verify(orderDao).removeBooksFromOrder(1L, List.of(1L));
+        verify(dataSource, times(1)).getConnection();
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+    }
+
     @Test
     public void testDeleteOrder() {
         Long orderId = 1L;
         orderService.deleteOrder(orderId);
         verify(orderDao, times(1)).deleteOrder(orderId);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAddBooksToOrder() {
+        when(orderDao.addBooksToOrder(1L, List.of(2L, 3L))).thenReturn(Optional.of(2));
+
+        assertEquals(Optional.of(2), orderService.addBooksToOrder(1L, List.of(2L, 3L)));
+    }
+
+    @Test
+    public void testRemoveBooksFromOrder() {
+        when(orderDao.removeBooksFromOrder(1L, List.of(2L))).thenReturn(Optional.of(1));
+
+        assertEquals(Optional.of(1), orderService.removeBooksFromOrder(1L, List.of(2L)));
+    }
+}
@@ -6,6 +6,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import vydrenkova.aston.dao.ReviewDao;
 import vydrenkova.aston.dto.BookDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
 import vydrenkova.aston.dto.ReviewDTO;
 import vydrenkova.aston.entities.Book;
 import vydrenkova.aston.entities.Review;
@@ -13,7 +14,10 @@ import vydrenkova.aston.mappers.BookMapper;
 import vydrenkova.aston.mappers.ReviewMapper;
 import vydrenkova.aston.services.impl.ReviewServiceImpl;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 
@@ -47,21 +51,39 @@ public class ReviewServiceImplTest {
         BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
         ReviewDTO reviewDTO = new ReviewDTO(1L, bookDTO, "Reviewer", 5, "Text");
 
-        when(reviewDao.getReviewById(1L)).thenReturn(Optional.of(review));
+        when(reviewDao.getReviewById(1L, true)).thenReturn(Optional.of(review));
         when(reviewMapper.toDTO(review)).thenReturn(reviewDTO);
         when(bookMapper.toDTO(book)).thenReturn(bookDTO);
 
-        Optional<ReviewDTO> result = reviewService.getReviewById(1L);
+        Optional<ReviewDTO> result = reviewService.getReviewById(1L, true);
 
         assertTrue(result.isPresent());
         assertEquals(reviewDTO, result.get());
         assertEquals(bookDTO, result.get().getBook());
     }
 
+    @Test
+    public void testSearchReviews() {
+        Book book = new Book(1L, "Title", "Author", "Genre", 15.0);
+        Review review = new Review(2L, book, "Reviewer", 5, "Great book");
+
+        BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
+        ReviewDTO reviewDTO = new ReviewDTO(2L, null, "Reviewer", 5, "Great book");
+
+        when(reviewDao.searchReviews("great", 0.5f, 1L, 10, true)).thenReturn(List.of(review));
+        when(reviewMapper.toDTO(review)).thenReturn(reviewDTO);
+        when(bookMapper.toDTO(book)).thenReturn(bookDTO);
+
+        List<ReviewDTO> result = reviewService.searchReviews("great", 0.5f, 1L, 10, true);
+
+        assertEquals(List.of(reviewDTO), result);
+        assertEquals(bookDTO, result.get(0).getBook());
+    }
+
     @Test
     public void testGetReviewByIdNotFound() {
-        when(reviewDao.getReviewById(1L)).thenReturn(Optional.empty());
-        Optional<ReviewDTO> result = reviewService.getReviewById(1L);
+        when(reviewDao.getReviewById(1L, false)).thenReturn(Optional.empty());
+        Optional<ReviewDTO> result = reviewService.getReviewById(1L, false);
         assertFalse(result.isPresent());
     }
 
@@ -80,13 +102,13 @@ public class ReviewServiceImplTest {
         ReviewDTO reviewDTO1 = new ReviewDTO(1L, bookDTO1, "Reviewer1", 5, "Text1");
         ReviewDTO reviewDTO2 = new ReviewDTO(2L, bookDTO2, "Reviewer2", 4, "Text2");
 
-        when(reviewDao.getAllReviews()).thenReturn(reviews);
+        when(reviewDao.getAllReviews(true)).thenReturn(reviews);
         when(reviewMapper.toDTO(review1)).thenReturn(reviewDTO1);
         when(reviewMapper.toDTO(review2)).thenReturn(reviewDTO2);
         when(bookMapper.toDTO(book1)).thenReturn(bookDTO1);
         when(bookMapper.toDTO(book2)).thenReturn(bookDTO2);
 
-        List<ReviewDTO> result = reviewService.getAllReviews();
+        List<ReviewDTO> result = reviewService.getAllReviews(true);
 
         assertEquals(2, result.size());
         assertEquals(reviewDTO1, result.get(0));
@@ -95,6 +117,38 @@ public class ReviewServiceImplTest {
         assertEquals(bookDTO2, result.get(1).getBook());
     }
 
+    @Test
+    public void testGetAllReviewsWithoutBooks() {
+        Review review = new Review(1L, new Book(3L, null, null, null, null), "Reviewer1", 5, "Text1");
+        ReviewDTO reviewDTO = new ReviewDTO(1L, null, "Reviewer1", 5, "Text1");
+        reviewDTO.setBookId(3L);
+
+        when(reviewDao.getAllReviews(false)).thenReturn(List.of(review));
+        when(reviewMapper.toDTO(review)).thenReturn(reviewDTO);
+
+        List<ReviewDTO> result = reviewService.getAllReviews(false);
+
+        assertEquals(List.of(reviewDTO), result);
+        assertNull(result.get(0).getBook());
+        assertEquals(3L, result.get(0).getBookId());
+        verifyNoInteractions(bookMapper);
+    }
+
+    @Test
+    public void testGetReviewsByBookId() {
+        Review review = new Review(4L, new Book(3L, null, null, null, null), "Reviewer1", 5, "Text1");
+        ReviewDTO reviewDTO = new ReviewDTO(4L, null, "Reviewer1", 5, "Text1");
+        reviewDTO.setBookId(3L);
+
+        when(reviewDao.getReviewsByBookId(3L, 2L, 10)).thenReturn(List.of(review));
+        when(reviewMapper.toDTO(review)).thenReturn(reviewDTO);
+
+        List<ReviewDTO> result = reviewService.getReviewsByBookId(3L, 2L, 10);
+
+        assertEquals(List.of(reviewDTO), result);
+        verifyNoInteractions(bookMapper);
+    }
+
     @Test
     public void testCreateReview() {
         BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
@@ -108,6 +162,26 @@ public class ReviewServiceImplTest {
         verify(reviewDao, times(1)).createReview(review);
     }
 
+    @Test
+    public void testCreateReviewWithBookIdOnly() {
+        ReviewService service = new ReviewServiceImpl(reviewDao, ReviewMapper.INSTANCE, bookMapper);
+        ReviewDTO reviewDTO = new ReviewDTO(null, null, "Reviewer", 5, "Text");
+        reviewDTO.setBookId(1L);
+
+        service.createReview(reviewDTO);
+
+        verify(reviewDao).createReview(new Review(null, new Book(1L, null, null, null, null), "Reviewer", 5, "Text"));
+    }
+
+    @Test
+    public void testCreateReviewWithoutBookId() {
+        ReviewService service = new ReviewServiceImpl(reviewDao, ReviewMapper.INSTANCE, bookMapper);
+        ReviewDTO reviewDTO = new ReviewDTO(null, null, "Reviewer", 5, "Text");
+
+        assertThrows(IllegalArgumentException.class, () -> service.createReview(reviewDTO));
+        verifyNoInteractions(reviewDao);
+    }
+
     @Test
     public void testUpdateReview() {
         BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
@@ -127,4 +201,32 @@ public class ReviewServiceImplTest {
         reviewService.deleteReview(reviewId);
         verify(reviewDao, times(1)).deleteReview(reviewId);
     }
-}
\ No newline at end of file
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testImportReviewsCountsSkippedReviewsAsRejected() {
+        String csv = "book_id,reviewer,rating,text\n" +
+                "1,Reviewer1,5,Great\n" +
+                "2,Reviewer2,4,\"Good, but long\"\n" +
+                "x,Reviewer3,3,Bad book id\n";
+        List<Review> copied = new ArrayList<>();
+        when(reviewMapper.toEntity(any(ReviewDTO.class))).thenAnswer(invocation -> {
+            ReviewDTO dto = invocation.getArgument(0);
+            return new Review(null, new Book(dto.getBook().getId(), null, null, null, null), dto.getReviewer(),
+                    dto.getRating(), dto.getText());
+        });
+        // the DAO skips the review of book 2 as if that book did not exist
+        when(reviewDao.copyReviews(any(Iterator.class))).thenAnswer(invocation -> {
+            ((Iterator<Review>) invocation.getArgument(0)).forEachRemaining(copied::add);
+            return 1L;
+        });
+
+        ImportResultDTO result = reviewService.importReviews(new StringReader(csv), ImportFormat.CSV);
+
+        assertEquals(2, copied.size());
+        assertEquals(new Review(null, new Book(1L, null, null, null, null), "Reviewer1", 5, "Great"), copied.get(0));
+        assertEquals("Good, but long", copied.get(1).getText());
+        assertEquals(1, result.getImportedRows());
+        assertEquals(2, result.getRejectedRows());
+    }
+}
@@ -4,18 +4,39 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import vydrenkova.aston.dao.BookCriteria;
+import vydrenkova.aston.dao.BookField;
+import vydrenkova.aston.dao.BookRanking;
+import vydrenkova.aston.dao.BookSort;
 import vydrenkova.aston.dto.BookDTO;
+import vydrenkova.aston.dto.BookRatingDTO;
+import vydrenkova.aston.dto.ImportResultDTO;
+import vydrenkova.aston.dto.ReviewDTO;
 import vydrenkova.aston.services.BookService;
+import vydrenkova.aston.services.ImportFormat;
+import vydrenkova.aston.services.ReviewService;
 
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,6 +46,9 @@ public class BookServletTest {
     @Mock
     private BookService bookService;
 
+    @Mock
+    private ReviewService reviewService;
+
     @Mock
     private ObjectMapper objectMapper;
 
@@ -35,6 +59,7 @@ public class BookServletTest {
         MockitoAnnotations.openMocks(this);
         bookServlet = new BookServlet();
         bookServlet.setBookService(bookService);
+        bookServlet.setReviewService(reviewService);
         bookServlet.setObjectMapper(objectMapper);
     }
 
@@ -44,7 +69,7 @@ public class BookServletTest {
         BookDTO bookDTO2 = new BookDTO(2L, "Title2", "Author2", "Genre2", 20.0);
         List<BookDTO> books = Arrays.asList(bookDTO1, bookDTO2);
 
-        when(bookService.getAllBooks()).thenReturn(books);
+        when(bookService.getBooks(new BookCriteria(null, PageRequest.DEFAULT_PAGE_SIZE))).thenReturn(books);
         when(objectMapper.writeValueAsString(books)).thenReturn("[{}]");
 
         HttpServletRequest request = mock(HttpServletRequest.class);
@@ -59,8 +84,269 @@ public class BookServletTest {
         writer.flush();
         String responseJson = stringWriter.toString();
         assertEquals("[{}]", responseJson);
+        verify(response, never()).setHeader(eq(PageRequest.NEXT_CURSOR_HEADER), anyString());
+    }
+
+    @Test
+    public void testGetBooksPage() throws ServletException, IOException {
+        BookDTO bookDTO1 = new BookDTO(11L, "Title1", "Author1", "Genre1", 10.0);
+        BookDTO bookDTO2 = new BookDTO(12L, "Title2", "Author2", "Genre2", 20.0);
+        List<BookDTO> books = Arrays.asList(bookDTO1, bookDTO2);
+
+        when(bookService.getBooks(new BookCriteria(10L, 2))).thenReturn(books);
+        when(objectMapper.writeValueAsString(books)).thenReturn("[{},{}]");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getParameter("after")).thenReturn("10");
+        when(request.getParameter("limit")).thenReturn("2");
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{},{}]", stringWriter.toString());
+        verify(response).setHeader(PageRequest.NEXT_CURSOR_HEADER, "12");
+    }
+
+    @Test
+    public void testGetBooksWithFields() throws ServletException, IOException {
+        BookCriteria criteria = new BookCriteria(null, PageRequest.DEFAULT_PAGE_SIZE);
+        criteria.setFields(EnumSet.of(BookField.ID, BookField.TITLE, BookField.PRICE));
+        when(bookService.getBooks(criteria)).thenReturn(List.of(new BookDTO(1L, "Title1", null, null, 10.0)));
+        bookServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getParameter("fields")).thenReturn("id, title,price");
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{\"id\":1,\"title\":\"Title1\",\"price\":10.0}]", stringWriter.toString());
+    }
+
+    @Test
+    public void testGetBooksInvalidFields() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("fields")).thenReturn("id,version");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid fields parameter");
+        verify(bookService, never()).getBooks(any());
+    }
+
+    @Test
+    public void testGetBooksPageSizeIsCapped() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        when(request.getParameter("limit")).thenReturn("100000");
+        when(bookService.getBooks(new BookCriteria(null, PageRequest.MAX_PAGE_SIZE))).thenReturn(List.of());
+        when(response.getWriter()).thenReturn(mock(PrintWriter.class));
+
+        bookServlet.doGet(request, response);
+
+        verify(bookService).getBooks(new BookCriteria(null, PageRequest.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    public void testGetBooksInvalidLimit() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        when(request.getParameter("limit")).thenReturn("abc");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameters");
+        verifyNoInteractions(bookService);
+    }
+
+
+    @Test
+    public void testGetBooksFilteredAndSorted() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("genre")).thenReturn("Fantasy");
+        when(request.getParameter("author")).thenReturn("Author");
+        when(request.getParameter("minPrice")).thenReturn("10");
+        when(request.getParameter("maxPrice")).thenReturn("20.5");
+        when(request.getParameter("sort")).thenReturn("-price");
+        when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        BookCriteria criteria = new BookCriteria(null, PageRequest.DEFAULT_PAGE_SIZE);
+        criteria.setGenre("Fantasy");
+        criteria.setAuthor("Author");
+        criteria.setMinPrice(10.0);
+        criteria.setMaxPrice(20.5);
+        criteria.setSort(BookSort.PRICE);
+        criteria.setDescending(true);
+        when(bookService.getBooks(criteria)).thenReturn(List.of());
+        when(objectMapper.writeValueAsString(List.of())).thenReturn("[]");
+
+        bookServlet.doGet(request, response);
+
+        verify(bookService).getBooks(criteria);
+    }
+
+    @Test
+    public void testGetBooksSortedPageCarriesSortValue() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("sort")).thenReturn("price");
+        when(request.getParameter("after")).thenReturn(PageCursor.encode(10L, "9.5"));
+        when(request.getParameter("limit")).thenReturn("1");
+        when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        BookCriteria criteria = new BookCriteria(10L, 1);
+        criteria.setSort(BookSort.PRICE);
+        criteria.setAfterValue(9.5);
+        List<BookDTO> books = List.of(new BookDTO(12L, "Title", "Author", "Genre", 12.25));
+        when(bookService.getBooks(criteria)).thenReturn(books);
+        when(objectMapper.writeValueAsString(books)).thenReturn("[{}]");
+
+        bookServlet.doGet(request, response);
+
+        verify(bookService).getBooks(criteria);
+        verify(response).setHeader(PageRequest.NEXT_CURSOR_HEADER, PageCursor.encode(12L, "12.25"));
+    }
+
+    @Test
+    public void testGetBooksSortedPageRejectsPlainIdCursor() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("sort")).thenReturn("title");
+        when(request.getParameter("after")).thenReturn("10");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameters");
+        verifyNoInteractions(bookService);
+    }
+
+    @Test
+    public void testPageCursorRoundTrip() {
+        PageCursor cursor = PageCursor.decode(PageCursor.encode(42L, "Title, with. dots ü"));
+
+        assertEquals(42L, cursor.getId());
+        assertEquals("Title, with. dots ü", cursor.getValue());
+        assertEquals("42", PageCursor.encode(42L, null));
+        assertNull(PageCursor.decode("42").getValue());
+        assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("42.not base64!"));
+    }
+
+    @Test
+    public void testGetBooksInvalidSort() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("sort")).thenReturn("title; DROP TABLE books");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid sort parameter");
+        verifyNoInteractions(bookService);
+    }
+
+    @Test
+    public void testGetBooksInvalidPrice() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("minPrice")).thenReturn("cheap");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid price filter");
+        verifyNoInteractions(bookService);
+    }
+
+    @Test
+    public void testSearchBooks() throws ServletException, IOException {
+        List<BookDTO> books = List.of(new BookDTO(1L, "The Master and Margarita", "Mikhail Bulgakov", "Novel", 10.0));
+        when(bookService.searchBooks("margarta", PageRequest.MAX_PAGE_SIZE)).thenReturn(books);
+        when(objectMapper.writeValueAsString(books)).thenReturn("[{}]");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getPathInfo()).thenReturn(BookServlet.SEARCH_PATH);
+        when(request.getParameter("q")).thenReturn(" margarta ");
+        when(request.getParameter("limit")).thenReturn("1000");
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{}]", stringWriter.toString());
+    }
+
+    @Test
+    public void testSearchBooksWithoutQuery() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn(BookServlet.SEARCH_PATH);
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing search query");
+        verifyNoInteractions(bookService);
+    }
+
+    @Test
+    public void testGetTopBooks() throws ServletException, IOException {
+        List<BookDTO> books = List.of(new BookDTO(1L, "Title", "Author", "Novel", 10.0));
+        when(bookService.getTopBooks(BookRanking.SALES, "Novel", BookServlet.DEFAULT_TOP_SIZE)).thenReturn(books);
+        when(objectMapper.writeValueAsString(books)).thenReturn("[{}]");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getPathInfo()).thenReturn(BookServlet.TOP_PATH);
+        when(request.getParameter("genre")).thenReturn("Novel");
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{}]", stringWriter.toString());
+    }
+
+    @Test
+    public void testGetTopBooksInvalidLimit() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn(BookServlet.TOP_PATH);
+        when(request.getParameter("limit")).thenReturn("ten");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameters");
+        verifyNoInteractions(bookService);
     }
 
+    @Test
+    public void testGetTopBooksInvalidRanking() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn(BookServlet.TOP_PATH);
+        when(request.getParameter("by")).thenReturn("price");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid ranking");
+        verifyNoInteractions(bookService);
+    }
 
     @Test
     public void testGetBookById() throws ServletException, IOException {
@@ -83,6 +369,135 @@ public class BookServletTest {
         assertEquals("{}", responseJson);
     }
 
+    @Test
+    public void testGetBookByIdSetsETag() throws ServletException, IOException {
+        BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
+        when(bookService.getBookVersion(1L)).thenReturn(Optional.of("3.1"));
+        when(bookService.getBookById(1L)).thenReturn(Optional.of(bookDTO));
+        when(objectMapper.writeValueAsString(bookDTO)).thenReturn("{}");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getHeader("If-None-Match")).thenReturn("\"2.1\"");
+        when(response.getWriter()).thenReturn(mock(PrintWriter.class));
+
+        bookServlet.doGet(request, response);
+
+        verify(response).setHeader("ETag", "\"3.1\"");
+        verify(response, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(bookService).getBookById(1L);
+    }
+
+    @Test
+    public void testGetBookByIdNotModified() throws ServletException, IOException {
+        when(bookService.getBookVersion(1L)).thenReturn(Optional.of("3.1"));
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getHeader("If-None-Match")).thenReturn("\"2.1\", W/\"3.1\"");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).setHeader("ETag", "\"3.1\"");
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(bookService, never()).getBookById(anyLong());
+        verifyNoInteractions(objectMapper);
+    }
+
+    @Test
+    public void testGetBookRating() throws ServletException, IOException {
+        bookServlet.setObjectMapper(new ObjectMapper());
+        BookRatingDTO rating = new BookRatingDTO(1L, 2, 4.5, Map.of(4, 1L, 5, 1L));
+        when(bookService.getBookRating(1L)).thenReturn(Optional.of(rating));
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getPathInfo()).thenReturn("/1/rating");
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doGet(request, response);
+
+        writer.flush();
+        BookRatingDTO result = new ObjectMapper().readValue(stringWriter.toString(), BookRatingDTO.class);
+        assertEquals(2, result.getReviewCount());
+        assertEquals(4.5, result.getAverageRating());
+        assertEquals(Map.of(4, 1L, 5, 1L), result.getHistogram());
+    }
+
+    @Test
+    public void testGetBookReviews() throws ServletException, IOException {
+        bookServlet.setObjectMapper(new ObjectMapper());
+        ReviewDTO first = new ReviewDTO(4L, null, "Reviewer1", 5, "Text1");
+        first.setBookId(1L);
+        ReviewDTO second = new ReviewDTO(7L, null, "Reviewer2", 4, "Text2");
+        second.setBookId(1L);
+        when(reviewService.getReviewsByBookId(1L, 3L, 2)).thenReturn(List.of(first, second));
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getPathInfo()).thenReturn("/1/reviews");
+        when(request.getParameter("after")).thenReturn("3");
+        when(request.getParameter("limit")).thenReturn("2");
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doGet(request, response);
+
+        writer.flush();
+        verify(response).setHeader(PageRequest.NEXT_CURSOR_HEADER, "7");
+        assertEquals("[{\"id\":4,\"bookId\":1,\"reviewer\":\"Reviewer1\",\"rating\":5,\"text\":\"Text1\"}," +
+                "{\"id\":7,\"bookId\":1,\"reviewer\":\"Reviewer2\",\"rating\":4,\"text\":\"Text2\"}]",
+                stringWriter.toString());
+        verify(bookService, never()).getBookVersion(any());
+    }
+
+    @Test
+    public void testGetBookReviewsBookNotFound() throws ServletException, IOException {
+        when(reviewService.getReviewsByBookId(1L, null, PageRequest.DEFAULT_PAGE_SIZE)).thenReturn(List.of());
+        when(bookService.getBookVersion(1L)).thenReturn(Optional.empty());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1/reviews");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND, "Book not found");
+    }
+
+    @Test
+    public void testGetBookReviewsInvalidLimit() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1/reviews");
+        when(request.getParameter("limit")).thenReturn("0");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameters");
+        verifyNoInteractions(reviewService);
+    }
+
+    @Test
+    public void testGetBookRatingNotFound() throws ServletException, IOException {
+        when(bookService.getBookRating(1L)).thenReturn(Optional.empty());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1/rating");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND, "Book not found");
+    }
+
     @Test
     public void testGetBookByIdNotFound() throws ServletException, IOException {
         when(bookService.getBookById(1L)).thenReturn(Optional.empty());
@@ -113,6 +528,149 @@ public class BookServletTest {
         verify(response).setStatus(HttpServletResponse.SC_CREATED);
     }
 
+    @Test
+    public void testCreateBooksBatch() throws ServletException, IOException {
+        String json = "[{\"title\":\"Title1\",\"author\":\"Author1\",\"genre\":\"Genre1\",\"price\":10.0}," +
+                "{\"title\":\"Title2\",\"author\":\"Author2\",\"genre\":\"Genre2\",\"price\":20.0}]";
+        List<BookDTO> received = new ArrayList<>();
+        when(bookService.createBooks(any())).thenAnswer(invocation -> {
+            Iterator<BookDTO> books = invocation.getArgument(0);
+            books.forEachRemaining(received::add);
+            return List.of(7L, 8L);
+        });
+        bookServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getPathInfo()).thenReturn("/batch");
+        when(request.getReader()).thenReturn(new java.io.BufferedReader(new java.io.StringReader(json)));
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doPost(request, response);
+
+        writer.flush();
+        assertEquals(2, received.size());
+        assertEquals("Title1", received.get(0).getTitle());
+        assertEquals("Title2", received.get(1).getTitle());
+        assertEquals("[7,8]", stringWriter.toString());
+        verify(response).setStatus(HttpServletResponse.SC_CREATED);
+    }
+
+    @Test
+    public void testCreateBooksBatchMalformed() throws ServletException, IOException {
+        when(bookService.createBooks(any())).thenAnswer(invocation -> {
+            Iterator<BookDTO> books = invocation.getArgument(0);
+            books.forEachRemaining(book -> { });
+            return List.of();
+        });
+        bookServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        when(request.getPathInfo()).thenReturn("/batch");
+        when(request.getReader()).thenReturn(new java.io.BufferedReader(new java.io.StringReader("[{\"title\":")));
+
+        bookServlet.doPost(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid books payload");
+    }
+
+    @Test
+    public void testImportBooks() throws ServletException, IOException {
+        ImportResultDTO result = new ImportResultDTO(2, 1, 10);
+        BufferedReader body = new BufferedReader(new StringReader("Title,Author,Genre,10.0\n"));
+        when(bookService.importBooks(body, ImportFormat.CSV)).thenReturn(result);
+        when(objectMapper.writeValueAsString(result)).thenReturn("{}");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+        when(request.getPathInfo()).thenReturn(BookServlet.IMPORT_PATH);
+        when(request.getContentType()).thenReturn("text/csv; charset=UTF-8");
+        when(request.getCharacterEncoding()).thenReturn("UTF-8");
+        when(request.getReader()).thenReturn(body);
+        when(response.getWriter()).thenReturn(writer);
+
+        bookServlet.doPost(request, response);
+
+        writer.flush();
+        assertEquals("{}", stringWriter.toString());
+        verify(request, never()).setCharacterEncoding(anyString());
+    }
+
+    @Test
+    public void testImportBooksUnsupportedFormat() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn(BookServlet.IMPORT_PATH);
+        when(request.getContentType()).thenReturn("application/json");
+
+        bookServlet.doPost(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported import format");
+        verifyNoInteractions(bookService);
+    }
+
+    @Test
+    public void testExportBooks() throws ServletException, IOException {
+        when(bookService.exportBooks(any(OutputStream.class))).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(0)).write("id,title\n1,Title\n".getBytes());
+            return 1L;
+        });
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(request.getPathInfo()).thenReturn("/export");
+        when(response.getOutputStream()).thenReturn(servletOutputStream(body));
+
+        bookServlet.doGet(request, response);
+
+        assertEquals("id,title\n1,Title\n", body.toString());
+        verify(response).setContentType("text/csv");
+        verify(response).setHeader("Content-Disposition", "attachment; filename=\"books.csv\"");
+    }
+
+    @Test
+    public void testExportBooksGzip() throws ServletException, IOException {
+        when(bookService.exportBooks(any(OutputStream.class))).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(0)).write("id,title\n1,Title\n".getBytes());
+            return 1L;
+        });
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(request.getPathInfo()).thenReturn("/export");
+        when(request.getParameter("compress")).thenReturn("gzip");
+        when(response.getOutputStream()).thenReturn(servletOutputStream(body));
+
+        bookServlet.doGet(request, response);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))) {
+            assertEquals("id,title\n1,Title\n", new String(in.readAllBytes()));
+        }
+        verify(response).setContentType("application/gzip");
+    }
+
+    @Test
+    public void testExportBooksUnsupportedCompression() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/export");
+        when(request.getParameter("compress")).thenReturn("zip");
+
+        bookServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported compression");
+        verifyNoInteractions(bookService);
+    }
+
     @Test
     public void testUpdateBook() throws ServletException, IOException {
         BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
@@ -130,6 +688,45 @@ public class BookServletTest {
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
 
+    @Test
+    public void testUpdateBookIfMatch() throws ServletException, IOException {
+        BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
+        when(bookService.getBookVersion(1L)).thenReturn(Optional.of("3.1"));
+        when(bookService.updateBook(bookDTO, "3.1")).thenReturn(true);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getReader()).thenReturn(new java.io.BufferedReader(new java.io.StringReader("{}")));
+        when(request.getHeader("If-Match")).thenReturn("\"3.1\"");
+        when(objectMapper.readValue(any(java.io.Reader.class), eq(BookDTO.class))).thenReturn(bookDTO);
+
+        bookServlet.doPut(request, response);
+
+        verify(bookService).updateBook(bookDTO, "3.1");
+        verify(bookService, never()).updateBook(bookDTO);
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testUpdateBookIfMatchFails() throws ServletException, IOException {
+        BookDTO bookDTO = new BookDTO(1L, "Title", "Author", "Genre", 15.0);
+        when(bookService.getBookVersion(1L)).thenReturn(Optional.of("4.1"));
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getReader()).thenReturn(new java.io.BufferedReader(new java.io.StringReader("{}")));
+        when(request.getHeader("If-Match")).thenReturn("\"3.1\"");
+        when(objectMapper.readValue(any(java.io.Reader.class), eq(BookDTO.class))).thenReturn(bookDTO);
+
+        bookServlet.doPut(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_PRECONDITION_FAILED, "Book has been modified");
+        verify(bookService, never()).updateBook(any(BookDTO.class), anyString());
+        verify(bookService, never()).updateBook(any(BookDTO.class));
+    }
+
     @Test
     public void testDeleteBook() throws ServletException, IOException {
         HttpServletRequest request = mock(HttpServletRequest.class);
@@ -141,4 +738,22 @@ public class BookServletTest {
         verify(bookService, times(1)).deleteBook(1L);
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
-}
\ No newline at end of file
+
+    private static ServletOutputStream servletOutputStream(ByteArrayOutputStream body) {
+        return new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        };
+    }
+}
@@ -4,19 +4,31 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import vydrenkova.aston.dao.OrderField;
 import vydrenkova.aston.dto.OrderDTO;
 import vydrenkova.aston.services.OrderService;
 
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -39,6 +51,105 @@ public class OrderServletTest {
         orderServlet.setObjectMapper(objectMapper);
     }
 
+    @Test
+    public void testGetCustomerOrders() throws ServletException, IOException {
+        OrderDTO orderDTO1 = new OrderDTO(5L, "Customer", new Timestamp(2000), "Status1");
+        OrderDTO orderDTO2 = new OrderDTO(3L, "Customer", new Timestamp(1000), "Status2");
+        List<OrderDTO> orders = List.of(orderDTO1, orderDTO2);
+        Date before = Date.from(Instant.parse("2024-01-01T00:00:00Z"));
+
+        Timestamp afterDate = Timestamp.from(Instant.parse("2023-12-31T10:00:00.123456Z"));
+        when(orderService.getCustomerOrders("Customer", before, afterDate, 8L, 2)).thenReturn(orders);
+        when(objectMapper.writeValueAsString(orders)).thenReturn("[{}]");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getParameter(OrderServlet.CUSTOMER_PARAMETER)).thenReturn("Customer");
+        when(request.getParameter("before")).thenReturn("2024-01-01T00:00:00Z");
+        when(request.getParameter("after")).thenReturn(PageCursor.encode(8, "2023-12-31T10:00:00.123456Z"));
+        when(request.getParameter("limit")).thenReturn("2");
+        when(response.getWriter()).thenReturn(writer);
+
+        orderServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{}]", stringWriter.toString());
+        verify(response).setHeader(PageRequest.NEXT_CURSOR_HEADER, PageCursor.encode(3, "1970-01-01T00:00:01Z"));
+    }
+
+    @Test
+    public void testGetCustomerOrdersBeforeEpochMillis() throws ServletException, IOException {
+        when(orderService.getCustomerOrders("Customer", new Date(1704067200000L), null, null,
+                PageRequest.DEFAULT_PAGE_SIZE))
+                .thenReturn(List.of());
+        when(objectMapper.writeValueAsString(List.of())).thenReturn("[]");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getParameter(OrderServlet.CUSTOMER_PARAMETER)).thenReturn("Customer");
+        when(request.getParameter("before")).thenReturn("1704067200000");
+        when(response.getWriter()).thenReturn(writer);
+
+        orderServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[]", stringWriter.toString());
+        verify(response, never()).setHeader(eq(PageRequest.NEXT_CURSOR_HEADER), anyString());
+    }
+
+    @Test
+    public void testGetCustomerOrdersRejectsCursorWithoutDate() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter(OrderServlet.CUSTOMER_PARAMETER)).thenReturn("Customer");
+        when(request.getParameter("after")).thenReturn("8");
+
+        orderServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameters");
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    public void testGetOrdersRejectsConflictingParameters() throws ServletException, IOException {
+        List<Map<String, String>> conflicts = List.of(
+                Map.of(OrderServlet.CUSTOMER_PARAMETER, "Customer", FieldProjection.FIELDS_PARAMETER, "id"),
+                Map.of(OrderServlet.VIEW_PARAMETER, OrderServlet.SUMMARY_VIEW, OrderServlet.CUSTOMER_PARAMETER, "Customer"),
+                Map.of(FieldProjection.FIELDS_PARAMETER, "id", OrderServlet.STREAM_PARAMETER, "true"),
+                Map.of(OrderServlet.CUSTOMER_PARAMETER, "Customer", "from", "2024-01-01T00:00:00Z"),
+                Map.of(OrderServlet.VIEW_PARAMETER, OrderServlet.SUMMARY_VIEW, "limit", "10"),
+                Map.of("after", "5"));
+        for (Map<String, String> parameters : conflicts) {
+            HttpServletRequest request = mock(HttpServletRequest.class);
+            HttpServletResponse response = mock(HttpServletResponse.class);
+            parameters.forEach((name, value) -> when(request.getParameter(name)).thenReturn(value));
+
+            orderServlet.doGet(request, response);
+
+            verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Conflicting parameters");
+        }
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    public void testGetCustomerOrdersInvalidBefore() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter(OrderServlet.CUSTOMER_PARAMETER)).thenReturn("Customer");
+        when(request.getParameter("before")).thenReturn("yesterday");
+
+        orderServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameters");
+        verifyNoInteractions(orderService);
+    }
+
     @Test
     public void testGetAllOrders() throws ServletException, IOException {
         OrderDTO orderDTO1 = new OrderDTO(1L, "Customer1", new Timestamp(System.currentTimeMillis()), "Status1");
@@ -62,6 +173,315 @@ public class OrderServletTest {
         assertEquals("[{}]", responseJson);
     }
 
+    @Test
+    public void testGetOrderSummaries() throws ServletException, IOException {
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer1", new Timestamp(0), "Status1");
+        orderDTO.setTotalPrice(30.5);
+        orderDTO.setItemCount(2);
+        when(orderService.getOrderSummaries()).thenReturn(List.of(orderDTO));
+        orderServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getParameter(OrderServlet.VIEW_PARAMETER)).thenReturn(OrderServlet.SUMMARY_VIEW);
+        when(response.getWriter()).thenReturn(writer);
+
+        orderServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{\"id\":1,\"customer\":\"Customer1\",\"date\":0,\"status\":\"Status1\"," +
+                "\"totalPrice\":30.5,\"itemCount\":2}]", stringWriter.toString());
+        verify(orderService, never()).getAllOrders();
+    }
+
+    @Test
+    public void testGetOrderSummariesByDate() throws ServletException, IOException {
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer1", new Timestamp(0), "Status1");
+        Date from = Date.from(Instant.parse("2024-01-01T00:00:00Z"));
+        when(orderService.getOrderSummaries(from, new Date(1706745600000L))).thenReturn(List.of(orderDTO));
+        when(objectMapper.writeValueAsString(List.of(orderDTO))).thenReturn("[{}]");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getParameter(OrderServlet.VIEW_PARAMETER)).thenReturn(OrderServlet.SUMMARY_VIEW);
+        when(request.getParameter("from")).thenReturn("2024-01-01T00:00:00Z");
+        when(request.getParameter("to")).thenReturn("1706745600000");
+        when(response.getWriter()).thenReturn(writer);
+
+        orderServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{}]", stringWriter.toString());
+        verify(orderService, never()).getOrderSummaries();
+    }
+
+    @Test
+    public void testGetOrderSummariesInvalidDate() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter(OrderServlet.VIEW_PARAMETER)).thenReturn(OrderServlet.SUMMARY_VIEW);
+        when(request.getParameter("to")).thenReturn("next month");
+
+        orderServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid date range");
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    public void testGetOrdersWithFields() throws ServletException, IOException {
+        OrderDTO orderDTO = new OrderDTO(1L, null, null, "Status1");
+        when(orderService.getOrders(EnumSet.of(OrderField.ID, OrderField.STATUS))).thenReturn(List.of(orderDTO));
+        orderServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getParameter("fields")).thenReturn("id,status");
+        when(response.getWriter()).thenReturn(writer);
+
+        orderServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{\"id\":1,\"status\":\"Status1\"}]", stringWriter.toString());
+        verify(orderService, never()).getAllOrders();
+    }
+
+    @Test
+    public void testGetOrdersInvalidFields() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter("fields")).thenReturn(",");
+
+        orderServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid fields parameter");
+    }
+
+    @Test
+    public void testGetOrdersInvalidView() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter(OrderServlet.VIEW_PARAMETER)).thenReturn("compact");
+
+        orderServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid view");
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamAllOrders() throws ServletException, IOException {
+        OrderDTO orderDTO1 = new OrderDTO(1L, "Customer1", new Timestamp(0), "Status1");
+        OrderDTO orderDTO2 = new OrderDTO(2L, "Customer2", new Timestamp(0), "Status2");
+        doAnswer(invocation -> {
+            Consumer<OrderDTO> consumer = invocation.getArgument(0);
+            consumer.accept(orderDTO1);
+            consumer.accept(orderDTO2);
+            return null;
+        }).when(orderService).streamAllOrders(any(Consumer.class));
+        orderServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        when(request.getParameter("stream")).thenReturn("true");
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        orderServlet.doGet(request, response);
+
+        assertEquals("[{\"id\":1,\"customer\":\"Customer1\",\"date\":0,\"status\":\"Status1\"}," +
+                "{\"id\":2,\"customer\":\"Customer2\",\"date\":0,\"status\":\"Status2\"}]", body.toString());
+        verify(orderService, never()).getAllOrders();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamAllOrdersFailureLeavesArrayOpen() throws IOException {
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer1", new Timestamp(0), "Status1");
+        doAnswer(invocation -> {
+            Consumer<OrderDTO> consumer = invocation.getArgument(0);
+            consumer.accept(orderDTO);
+            throw new RuntimeException("Failed to stream orders");
+        }).when(orderService).streamAllOrders(any(Consumer.class));
+        orderServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        when(request.getParameter("stream")).thenReturn("true");
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        assertThrows(RuntimeException.class, () -> orderServlet.doGet(request, response));
+
+        assertEquals("[{\"id\":1,\"customer\":\"Customer1\",\"date\":0,\"status\":\"Status1\"}",
+                body.toString());
+    }
+
+    @Test
+    public void testExportOrders() throws ServletException, IOException {
+        when(orderService.exportOrders(any(OutputStream.class))).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(0)).write("order_id\n1\n".getBytes());
+            return 1L;
+        });
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(request.getPathInfo()).thenReturn("/export");
+        when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+
+        orderServlet.doGet(request, response);
+
+        assertEquals("order_id\n1\n", body.toString());
+        verify(response).setHeader("Content-Disposition", "attachment; filename=\"orders.csv\"");
+        verify(orderService, never()).getAllOrders();
+    }
+
+    @Test
+    public void testAddBooksToOrder() throws ServletException, IOException {
+        orderServlet.setObjectMapper(new ObjectMapper());
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/7/books");
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("[1, 2, 3]")));
+        when(orderService.addBooksToOrder(7L, List.of(1L, 2L, 3L))).thenReturn(Optional.of(3));
+
+        orderServlet.doPost(request, response);
+
+        verify(orderService).addBooksToOrder(7L, List.of(1L, 2L, 3L));
+        verify(orderService, never()).createOrder(any());
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testRemoveBooksFromOrder() throws ServletException, IOException {
+        orderServlet.setObjectMapper(new ObjectMapper());
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/7/books");
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("[2]")));
+        when(orderService.removeBooksFromOrder(7L, List.of(2L))).thenReturn(Optional.of(1));
+
+        orderServlet.doDelete(request, response);
+
+        verify(orderService).removeBooksFromOrder(7L, List.of(2L));
+        verify(orderService, never()).deleteOrder(any());
+        verify(response).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testAddBooksToUnknownOrder() throws ServletException, IOException {
+        orderServlet.setObjectMapper(new ObjectMapper());
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/7/books");
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("[1]")));
+        when(orderService.addBooksToOrder(7L, List.of(1L))).thenReturn(Optional.empty());
+
+        orderServlet.doPost(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND, "Order not found");
+        verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testRemoveBooksFromUnknownOrder() throws ServletException, IOException {
+        orderServlet.setObjectMapper(new ObjectMapper());
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/7/books");
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("[1]")));
+        when(orderService.removeBooksFromOrder(7L, List.of(1L))).thenReturn(Optional.empty());
+
+        orderServlet.doDelete(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_NOT_FOUND, "Order not found");
+    }
+
+    @Test
+    public void testAddUnknownBooksToOrder() throws ServletException, IOException {
+        orderServlet.setObjectMapper(new ObjectMapper());
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/7/books");
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("[1, 999]")));
+        when(orderService.addBooksToOrder(7L, List.of(1L, 999L)))
+                .thenThrow(new IllegalArgumentException("1 of the books do not exist"));
+
+        orderServlet.doPost(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown book IDs");
+        verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Test
+    public void testAddBooksToOrderInvalidBody() throws ServletException, IOException {
+        orderServlet.setObjectMapper(new ObjectMapper());
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/7/books");
+        when(request.getReader()).thenReturn(new BufferedReader(new StringReader("{\"id\":1}")));
+
+        orderServlet.doPost(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid book IDs");
+        verifyNoInteractions(orderService);
+    }
+
     @Test
     public void testGetOrderById() throws ServletException, IOException {
         OrderDTO orderDTO = new OrderDTO(1L, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
@@ -83,6 +503,22 @@ public class OrderServletTest {
         assertEquals("{}", responseJson);
     }
 
+    @Test
+    public void testGetOrderByIdNotModified() throws ServletException, IOException {
+        when(orderService.getOrderVersion(1L)).thenReturn(Optional.of("2.7"));
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getHeader("If-None-Match")).thenReturn("\"2.7\"");
+
+        orderServlet.doGet(request, response);
+
+        verify(response).setHeader("ETag", "\"2.7\"");
+        verify(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        verify(orderService, never()).getOrderById(anyLong());
+    }
+
     @Test
     public void testGetOrderByIdNotFound() throws ServletException, IOException {
         when(orderService.getOrderById(1L)).thenReturn(Optional.empty());
@@ -131,6 +567,22 @@ public class OrderServletTest {
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
 
+    @Test
+    public void testUpdateOrderWithUnknownBooks() throws ServletException, IOException {
+        OrderDTO orderDTO = new OrderDTO(1L, "Customer", new Timestamp(System.currentTimeMillis()), "Status");
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getReader()).thenReturn(new java.io.BufferedReader(new java.io.StringReader("{}")));
+        when(objectMapper.readValue(any(java.io.Reader.class), eq(OrderDTO.class))).thenReturn(orderDTO);
+        doThrow(new IllegalArgumentException("1 of the books do not exist")).when(orderService).updateOrder(orderDTO);
+
+        orderServlet.doPut(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown book IDs");
+        verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+    }
+
     @Test
     public void testDeleteOrder() throws ServletException, IOException {
         HttpServletRequest request = mock(HttpServletRequest.class);
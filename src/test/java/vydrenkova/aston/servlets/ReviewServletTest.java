@@ -5,14 +5,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import vydrenkova.aston.dto.ImportResultDTO;
+import vydrenkova.aston.dto.BookDTO;
 import vydrenkova.aston.dto.ReviewDTO;
+import vydrenkova.aston.services.ImportFormat;
 import vydrenkova.aston.services.ReviewService;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.List;
@@ -45,7 +50,7 @@ public class ReviewServletTest {
         ReviewDTO reviewDTO2 = new ReviewDTO(2L, null, "Reviewer2", 4, "Text2");
         List<ReviewDTO> reviews = Arrays.asList(reviewDTO1, reviewDTO2);
 
-        when(reviewService.getAllReviews()).thenReturn(reviews);
+        when(reviewService.getAllReviews(false)).thenReturn(reviews);
         when(objectMapper.writeValueAsString(reviews)).thenReturn("[{}]"); // Mock the JSON serialization
 
         HttpServletRequest request = mock(HttpServletRequest.class);
@@ -62,10 +67,63 @@ public class ReviewServletTest {
         assertEquals("[{}]", responseJson);
     }
 
+    @Test
+    public void testSearchReviews() throws ServletException, IOException {
+        ReviewDTO review = new ReviewDTO(7L, null, "Reviewer", 5, "Great");
+        review.setRank(0.25f);
+        List<ReviewDTO> reviews = List.of(review);
+        when(reviewService.searchReviews("great book", 0.5f, 3L, 1, false)).thenReturn(reviews);
+        when(objectMapper.writeValueAsString(reviews)).thenReturn("[{}]");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getPathInfo()).thenReturn(ReviewServlet.SEARCH_PATH);
+        when(request.getParameter("q")).thenReturn("great book");
+        when(request.getParameter("after")).thenReturn(PageCursor.encode(3L, "0.5"));
+        when(request.getParameter("limit")).thenReturn("1");
+        when(response.getWriter()).thenReturn(writer);
+
+        reviewServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{}]", stringWriter.toString());
+        verify(response).setHeader(PageRequest.NEXT_CURSOR_HEADER, PageCursor.encode(7L, "0.25"));
+    }
+
+    @Test
+    public void testSearchReviewsRejectsCursorWithoutRank() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn(ReviewServlet.SEARCH_PATH);
+        when(request.getParameter("q")).thenReturn("great book");
+        when(request.getParameter("after")).thenReturn("3");
+
+        reviewServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid paging parameters");
+        verifyNoInteractions(reviewService);
+    }
+
+    @Test
+    public void testSearchReviewsWithoutQuery() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn(ReviewServlet.SEARCH_PATH);
+        when(request.getParameter("q")).thenReturn(" ");
+
+        reviewServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing search query");
+        verifyNoInteractions(reviewService);
+    }
+
     @Test
     public void testGetReviewById() throws ServletException, IOException {
         ReviewDTO reviewDTO = new ReviewDTO(1L, null, "Reviewer", 5, "Text");
-        when(reviewService.getReviewById(1L)).thenReturn(Optional.of(reviewDTO));
+        when(reviewService.getReviewById(1L, false)).thenReturn(Optional.of(reviewDTO));
         when(objectMapper.writeValueAsString(reviewDTO)).thenReturn("{}"); // Mock the JSON serialization
 
         HttpServletRequest request = mock(HttpServletRequest.class);
@@ -83,9 +141,66 @@ public class ReviewServletTest {
         assertEquals("{}", responseJson);
     }
 
+    @Test
+    public void testGetReviewByIdExpandBook() throws ServletException, IOException {
+        ReviewDTO reviewDTO = new ReviewDTO(1L, new BookDTO(3L, "Title", "Author", "Genre", 15.0), "Reviewer", 5, "Text");
+        reviewDTO.setBookId(3L);
+        when(reviewService.getReviewById(1L, true)).thenReturn(Optional.of(reviewDTO));
+        reviewServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getParameter(ReviewServlet.EXPAND_PARAMETER)).thenReturn(ReviewServlet.EXPAND_BOOK);
+        when(response.getWriter()).thenReturn(writer);
+
+        reviewServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("{\"id\":1,\"bookId\":3,\"book\":{\"id\":3,\"title\":\"Title\",\"author\":\"Author\"," +
+                "\"genre\":\"Genre\",\"price\":15.0},\"reviewer\":\"Reviewer\",\"rating\":5,\"text\":\"Text\"}",
+                stringWriter.toString());
+    }
+
+    @Test
+    public void testGetAllReviewsWithoutBooks() throws ServletException, IOException {
+        ReviewDTO reviewDTO = new ReviewDTO(1L, null, "Reviewer", 5, "Text");
+        reviewDTO.setBookId(3L);
+        when(reviewService.getAllReviews(false)).thenReturn(List.of(reviewDTO));
+        reviewServlet.setObjectMapper(new ObjectMapper());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+
+        when(response.getWriter()).thenReturn(writer);
+
+        reviewServlet.doGet(request, response);
+
+        writer.flush();
+        assertEquals("[{\"id\":1,\"bookId\":3,\"reviewer\":\"Reviewer\",\"rating\":5,\"text\":\"Text\"}]",
+                stringWriter.toString());
+    }
+
+    @Test
+    public void testGetReviewsInvalidExpand() throws ServletException, IOException {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getParameter(ReviewServlet.EXPAND_PARAMETER)).thenReturn("order");
+
+        reviewServlet.doGet(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid expand parameter");
+        verifyNoInteractions(reviewService);
+    }
+
     @Test
     public void testGetReviewByIdNotFound() throws ServletException, IOException {
-        when(reviewService.getReviewById(1L)).thenReturn(Optional.empty());
+        when(reviewService.getReviewById(1L, false)).thenReturn(Optional.empty());
 
         HttpServletRequest request = mock(HttpServletRequest.class);
         HttpServletResponse response = mock(HttpServletResponse.class);
@@ -114,6 +229,45 @@ public class ReviewServletTest {
         verify(response).setStatus(HttpServletResponse.SC_CREATED);
     }
 
+    @Test
+    public void testCreateReviewWithoutBookId() throws ServletException, IOException {
+        ReviewDTO reviewDTO = new ReviewDTO(null, null, "Reviewer", 5, "Text");
+        doThrow(new IllegalArgumentException("Missing book ID")).when(reviewService).createReview(reviewDTO);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getReader()).thenReturn(new java.io.BufferedReader(new java.io.StringReader("{}")));
+        when(objectMapper.readValue(any(java.io.Reader.class), eq(ReviewDTO.class))).thenReturn(reviewDTO);
+
+        reviewServlet.doPost(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing book ID");
+        verify(response, never()).setStatus(HttpServletResponse.SC_CREATED);
+    }
+
+    @Test
+    public void testImportReviews() throws ServletException, IOException {
+        ImportResultDTO result = new ImportResultDTO(1, 0, 5);
+        BufferedReader body = new BufferedReader(new StringReader("{\"book\":{\"id\":1},\"reviewer\":\"R\"}\n"));
+        when(reviewService.importReviews(body, ImportFormat.NDJSON)).thenReturn(result);
+        when(objectMapper.writeValueAsString(result)).thenReturn("{}");
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+        when(request.getPathInfo()).thenReturn(ReviewServlet.IMPORT_PATH);
+        when(request.getContentType()).thenReturn("application/x-ndjson");
+        when(request.getReader()).thenReturn(body);
+        when(response.getWriter()).thenReturn(writer);
+
+        reviewServlet.doPost(request, response);
+
+        writer.flush();
+        assertEquals("{}", stringWriter.toString());
+        verify(request).setCharacterEncoding("UTF-8");
+    }
+
     @Test
     public void testUpdateReview() throws ServletException, IOException {
         ReviewDTO reviewDTO = new ReviewDTO(1L, null, "Reviewer", 5, "Text");
@@ -131,6 +285,24 @@ public class ReviewServletTest {
         verify(response).setStatus(HttpServletResponse.SC_OK);
     }
 
+    @Test
+    public void testUpdateReviewIfMatchOnMissingReview() throws ServletException, IOException {
+        ReviewDTO reviewDTO = new ReviewDTO(1L, null, "Reviewer", 5, "Text");
+        when(reviewService.getReviewVersion(1L)).thenReturn(Optional.empty());
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        when(request.getPathInfo()).thenReturn("/1");
+        when(request.getReader()).thenReturn(new java.io.BufferedReader(new java.io.StringReader("{}")));
+        when(request.getHeader("If-Match")).thenReturn("*");
+        when(objectMapper.readValue(any(java.io.Reader.class), eq(ReviewDTO.class))).thenReturn(reviewDTO);
+
+        reviewServlet.doPut(request, response);
+
+        verify(response).sendError(HttpServletResponse.SC_PRECONDITION_FAILED, "Review has been modified");
+        verify(reviewService, never()).updateReview(reviewDTO);
+    }
+
     @Test
     public void testDeleteReview() throws ServletException, IOException {
         HttpServletRequest request = mock(HttpServletRequest.class);